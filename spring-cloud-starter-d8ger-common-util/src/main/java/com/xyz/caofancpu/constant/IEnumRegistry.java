@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.constant;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * IEnum枚举查找表注册表
+ * 每个枚举类只构建一次索引: value -> 数组或有序int表, name/viewName -> 哈希表
+ * 查找过程不装箱、不抛异常, 逐行转换时无额外对象分配
+ * 多个常量取值相同时, 与原线性扫描一致, 以最后声明的常量为准
+ *
+ * @author D8GER
+ */
+public class IEnumRegistry {
+
+    /**
+     * value跨度不超过该值时使用数组直接寻址, 否则使用有序int表二分查找
+     */
+    private static final int DENSE_SPAN_LIMIT = 1024;
+
+    /**
+     * 非法整数标记
+     */
+    private static final long NOT_INT = Long.MIN_VALUE;
+
+    private static final ClassValue<EnumIndex<?>> ENUM_INDEXES = new ClassValue<EnumIndex<?>>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected EnumIndex<?> computeValue(Class<?> type) {
+            return new EnumIndex(type);
+        }
+    };
+
+    private IEnumRegistry() {
+    }
+
+    /**
+     * 获取枚举类的查找表
+     *
+     * @param enumType 枚举类
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Enum<E>> EnumIndex<E> forEnum(Class<E> enumType) {
+        return (EnumIndex<E>) ENUM_INDEXES.get(Objects.requireNonNull(enumType));
+    }
+
+    /**
+     * 单个枚举类的查找表, 非IEnum的枚举类各索引均为空
+     */
+    public static class EnumIndex<E extends Enum<E>> {
+        private final Class<E> enumType;
+        private final boolean iEnum;
+        /**
+         * 数组寻址时的value偏移量
+         */
+        private final int minValue;
+        private final E[] denseValues;
+        private final int[] sortedKeys;
+        private final E[] sortedValues;
+        private final Map<String, E> nameMap = new HashMap<>();
+        private final Map<String, E> viewNameMap = new HashMap<>();
+
+        @SuppressWarnings("unchecked")
+        private EnumIndex(Class<E> enumType) {
+            E[] enumConstants = enumType.getEnumConstants();
+            if (Objects.isNull(enumConstants)) {
+                throw new IllegalArgumentException(enumType.getSimpleName() + " does not represent an enum type.");
+            }
+            this.enumType = enumType;
+            this.iEnum = IEnum.class.isAssignableFrom(enumType);
+            // 按声明顺序覆盖, 取值重复时保留最后一个
+            Map<Integer, E> valueMap = new HashMap<>();
+            for (E enumConstant : enumConstants) {
+                if (!(enumConstant instanceof IEnum)) {
+                    continue;
+                }
+                IEnum temp = (IEnum) enumConstant;
+                if (Objects.nonNull(temp.getValue())) {
+                    valueMap.put(temp.getValue(), enumConstant);
+                }
+                if (Objects.nonNull(temp.getName())) {
+                    nameMap.put(temp.getName(), enumConstant);
+                }
+                if (Objects.nonNull(temp.getViewName())) {
+                    viewNameMap.put(temp.getViewName(), enumConstant);
+                }
+            }
+            int[] keys = valueMap.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            if (keys.length > 0 && (long) keys[keys.length - 1] - keys[0] < DENSE_SPAN_LIMIT) {
+                this.minValue = keys[0];
+                this.denseValues = (E[]) Array.newInstance(enumType, keys[keys.length - 1] - keys[0] + 1);
+                valueMap.forEach((value, enumConstant) -> denseValues[value - minValue] = enumConstant);
+                this.sortedKeys = null;
+                this.sortedValues = null;
+            } else {
+                this.minValue = 0;
+                this.denseValues = null;
+                this.sortedKeys = keys;
+                this.sortedValues = (E[]) Array.newInstance(enumType, keys.length);
+                for (int i = 0; i < keys.length; i++) {
+                    sortedValues[i] = valueMap.get(keys[i]);
+                }
+            }
+        }
+
+        public Class<E> getEnumType() {
+            return enumType;
+        }
+
+        /**
+         * 是否为IEnum枚举
+         *
+         * @return
+         */
+        public boolean isIEnum() {
+            return iEnum;
+        }
+
+        /**
+         * 按value查找, 未找到返回null
+         *
+         * @param value 枚举值
+         * @return
+         */
+        public E ofValue(int value) {
+            if (Objects.nonNull(denseValues)) {
+                long offset = (long) value - minValue;
+                return offset >= 0 && offset < denseValues.length ? denseValues[(int) offset] : null;
+            }
+            int index = Arrays.binarySearch(sortedKeys, value);
+            return index >= 0 ? sortedValues[index] : null;
+        }
+
+        /**
+         * 按name查找, 未找到返回null
+         *
+         * @param name 枚举名称
+         * @return
+         */
+        public E ofName(String name) {
+            return nameMap.get(name);
+        }
+
+        /**
+         * 按viewName查找, 未找到返回null
+         *
+         * @param viewName 枚举别名
+         * @return
+         */
+        public E ofViewName(String viewName) {
+            return viewNameMap.get(viewName);
+        }
+
+        /**
+         * 依次按value、name、viewName匹配, 未找到返回null
+         * 多个常量同时命中时取最后声明的常量, 与原线性扫描结果一致
+         *
+         * @param source 请求传值
+         * @return
+         */
+        public E match(String source) {
+            long value = parseInt(source);
+            E result = value == NOT_INT ? null : ofValue((int) value);
+            result = later(result, ofName(source));
+            return later(result, ofViewName(source));
+        }
+
+        private E later(E current, E candidate) {
+            if (Objects.isNull(current)) {
+                return candidate;
+            }
+            return Objects.nonNull(candidate) && candidate.ordinal() > current.ordinal() ? candidate : current;
+        }
+    }
+
+    /**
+     * 与Integer.parseInt规则一致的整数解析, 非法时返回NOT_INT而不抛出异常
+     *
+     * @param source 字符串
+     * @return
+     */
+    static long parseInt(String source) {
+        if (Objects.isNull(source) || source.isEmpty()) {
+            return NOT_INT;
+        }
+        int i = 0;
+        boolean negative = false;
+        char first = source.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (source.length() == 1) {
+                return NOT_INT;
+            }
+            i++;
+        }
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < source.length(); i++) {
+            int digit = Character.digit(source.charAt(i), 10);
+            if (digit < 0) {
+                return NOT_INT;
+            }
+            result = result * 10 + digit;
+            if (result > limit) {
+                return NOT_INT;
+            }
+        }
+        return negative ? -result : result;
+    }
+}
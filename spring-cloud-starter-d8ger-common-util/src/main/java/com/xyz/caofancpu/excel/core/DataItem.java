@@ -47,6 +47,22 @@ public class DataItem<T> {
         this.parent = parent;
     }
 
+    /**
+     * 流式数据, 总数未知, total记为-1
+     *
+     * @param it     数据迭代器, 只能遍历一次
+     * @param parent 父节点
+     */
+    public DataItem(Iterator<T> it, DataItem<?> parent) {
+        this.index = -1;
+        this.total = -1;
+        this.it = it;
+        this.parent = parent;
+    }
+
+    /**
+     * 数据总数, 流式数据返回-1
+     */
     public int getTotal() {
         return total;
     }
@@ -80,6 +96,9 @@ public class DataItem<T> {
     }
 
     public boolean isLast() {
+        if (total < 0) {
+            return index >= 0 && !it.hasNext();
+        }
         return index == total - 1;
     }
 
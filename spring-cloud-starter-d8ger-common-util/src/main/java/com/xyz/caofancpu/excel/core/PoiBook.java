@@ -19,6 +19,7 @@
 package com.xyz.caofancpu.excel.core;
 
 import com.xyz.caofancpu.constant.SymbolConstantUtil;
+import com.xyz.caofancpu.excel.util.PoiStyleCache;
 import lombok.Getter;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -26,6 +27,8 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -56,6 +59,11 @@ public class PoiBook extends Node {
     private final Map<String, Sheet> cacheMap = new ConcurrentHashMap<>();
     @Getter
     private final Workbook workbook;
+    /**
+     * workbook级别的样式缓存, PoiBuilder与PoiUtil共用
+     */
+    @Getter
+    private final PoiStyleCache styleCache;
 
     /**
      * @param name           excel名称,自动添加后缀
@@ -65,6 +73,7 @@ public class PoiBook extends Node {
         this.name = name;
         // 初始化时就创建
         workbook = createFunction.get();
+        styleCache = new PoiStyleCache(workbook);
     }
 
     /**
@@ -141,6 +150,17 @@ public class PoiBook extends Node {
         return PoiBuilder.build(this);
     }
 
+    /**
+     * 构建并直接写入输出流, 流式表格推荐使用该方法
+     *
+     * @param out 输出流, 由调用方关闭
+     * @throws IOException
+     */
+    public void writeWorkbook(OutputStream out)
+            throws IOException {
+        PoiBuilder.write(this, out);
+    }
+
     /**
      * Excel的文件全名
      *
@@ -24,11 +24,13 @@ import com.xyz.caofancpu.core.CollectionFunUtil;
 import com.xyz.caofancpu.excel.core.face.Area;
 import com.xyz.caofancpu.excel.core.face.Column;
 import com.xyz.caofancpu.excel.enums.ListAlign;
+import com.xyz.caofancpu.excel.exception.ExcelException;
 import com.xyz.caofancpu.excel.tmp.AreaIndex;
 import com.xyz.caofancpu.excel.tmp.CellRegion;
 import com.xyz.caofancpu.excel.tmp.Tmp;
 import com.xyz.caofancpu.excel.util.BitmapUtil;
 import com.xyz.caofancpu.excel.util.PoiAssert;
+import com.xyz.caofancpu.excel.util.PoiStyleCache;
 import com.xyz.caofancpu.excel.util.PoiUtil;
 import lombok.Getter;
 import org.apache.poi.ss.usermodel.BorderStyle;
@@ -37,7 +39,11 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -57,18 +63,40 @@ import java.util.TreeMap;
 public class PoiBuilder {
     private final PoiBook poiBook;
     private final Workbook wb;
-    private final Map<String, CellStyle> cellStyleMap = new HashMap<>();
+    private final PoiStyleCache styleCache;
     private CellStyle defaultStyle;
 
     private PoiBuilder(PoiBook poiBook) {
         this.poiBook = poiBook;
         this.wb = poiBook.getWorkbook();
+        this.styleCache = poiBook.getStyleCache();
     }
 
     public static Workbook build(PoiBook poiBook) {
         return new PoiBuilder(poiBook).build();
     }
 
+    /**
+     * 构建并直接写入输出流, 写完后释放SXSSFWorkbook的临时文件并关闭workbook
+     * 输出流由调用方关闭
+     *
+     * @param poiBook poiBook
+     * @param out     输出流
+     */
+    public static void write(PoiBook poiBook, OutputStream out)
+            throws IOException {
+        Workbook workbook = build(poiBook);
+        try {
+            workbook.write(out);
+            out.flush();
+        } finally {
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+            workbook.close();
+        }
+    }
+
     private Workbook build() {
         for (PoiSheet poiSheet : poiBook.getPoiSheetList()) {
             buildSheet(poiSheet);
@@ -141,7 +169,11 @@ public class PoiBuilder {
         }
 
         rowCel.setCel(celNum);
-        rowNum = table.setCellValue(rowNum, startCelNum, (firstRow, lastRow, firstCel, lastCel, value, style) -> PoiUtil.mergedRegion(sheet, firstRow, lastRow, firstCel, lastCel, value, getCellStyle(style)));
+        CelValueFunction celFunction = (firstRow, lastRow, firstCel, lastCel, value, style) -> PoiUtil.mergedRegion(sheet, firstRow, lastRow, firstCel, lastCel, value, getCellStyle(style));
+        if (table instanceof PoiStreamTable && sheet instanceof SXSSFSheet) {
+            celFunction = new FlushCelValueFunction((SXSSFSheet) sheet, ((PoiStreamTable) table).getFlushRowInterval(), celFunction);
+        }
+        rowNum = table.setCellValue(rowNum, startCelNum, celFunction);
         rowCel.setRow(rowNum);
     }
 
@@ -420,7 +452,7 @@ public class PoiBuilder {
         if (style == null) {
             return getDefaultStyle();
         }
-        return cellStyleMap.computeIfAbsent(style.getKey(), k -> style.createCellStyle(wb));
+        return styleCache.getCellStyle(style);
     }
 
     private CellStyle getCellStyle(PoiStyle style, Object data) {
@@ -428,8 +460,7 @@ public class PoiBuilder {
             return getDefaultStyle();
         }
         if (style instanceof DynamicStyle) {
-            PoiStyle finalStyle = ((DynamicStyle) style).parserDynamic(data);
-            return cellStyleMap.computeIfAbsent(finalStyle.getKey(), k -> finalStyle.createCellStyle(wb));
+            return styleCache.getCellStyle(((DynamicStyle) style).parserDynamic(data));
         }
         return getCellStyle(style);
     }
@@ -455,6 +486,47 @@ public class PoiBuilder {
         }
 
         void setCelValue(int firstRow, int lastRow, int firstCel, int lastCel, Object value, PoiStyle style);
+
+        /**
+         * 一行数据写完后回调
+         *
+         * @param row 行号
+         */
+        default void afterRow(int row) {
+        }
+    }
+
+    /**
+     * 流式表格写值, 每写入flushRowInterval行主动刷盘
+     */
+    private static class FlushCelValueFunction implements CelValueFunction {
+        private final SXSSFSheet sheet;
+        private final int flushRowInterval;
+        private final CelValueFunction delegate;
+        private int unFlushedRows;
+
+        FlushCelValueFunction(SXSSFSheet sheet, int flushRowInterval, CelValueFunction delegate) {
+            this.sheet = sheet;
+            this.flushRowInterval = flushRowInterval;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setCelValue(int firstRow, int lastRow, int firstCel, int lastCel, Object value, PoiStyle style) {
+            delegate.setCelValue(firstRow, lastRow, firstCel, lastCel, value, style);
+        }
+
+        @Override
+        public void afterRow(int row) {
+            if (flushRowInterval > 0 && ++unFlushedRows >= flushRowInterval) {
+                try {
+                    sheet.flushRows();
+                } catch (IOException e) {
+                    throw new ExcelException("流式写入Excel刷盘失败", e);
+                }
+                unFlushedRows = 0;
+            }
+        }
     }
 
     private static class TitleHandler {
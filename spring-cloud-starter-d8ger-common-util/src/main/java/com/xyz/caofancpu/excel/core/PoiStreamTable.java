@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.excel.core;
+
+import com.xyz.caofancpu.excel.util.PoiAssert;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * 流式单层表格
+ * 数据源为迭代器/流/分页加载函数, 逐行写入, 不会一次性持有全部数据
+ * 需配合SXSSFWorkbook使用, 每写入flushRowInterval行主动刷盘一次, 内存占用与总行数无关
+ * 注意: 数据只能遍历一次, 同一个表格不能重复构建
+ *
+ * @author D8GER
+ */
+@Accessors(chain = true)
+public class PoiStreamTable<T1> extends PoiTable1<T1> {
+    /**
+     * 数据迭代器
+     */
+    private final Iterator<T1> iterator;
+    /**
+     * 刷盘间隔行数, 默认与SXSSFWorkbook的默认窗口大小一致
+     */
+    @Getter
+    @Setter
+    private int flushRowInterval = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+    /**
+     * 预读的首行数据, 用于生成标题
+     */
+    private T1 head;
+    private boolean hasHead;
+    private boolean headLoaded;
+    private boolean consumed;
+
+    public PoiStreamTable(Iterator<T1> iterator) {
+        super(Collections.emptyList());
+        this.iterator = Objects.requireNonNull(iterator);
+    }
+
+    /**
+     * 流的关闭由调用方负责
+     *
+     * @param stream 数据流
+     */
+    public PoiStreamTable(Stream<T1> stream) {
+        this(stream.iterator());
+    }
+
+    /**
+     * 分页加载数据, 页码从1开始, 加载到空页时结束
+     *
+     * @param pageLoader 页码 -> 该页数据
+     */
+    public static <T1> PoiStreamTable<T1> ofPage(IntFunction<? extends Collection<T1>> pageLoader) {
+        return new PoiStreamTable<>(new PageIterator<>(pageLoader));
+    }
+
+    @Override
+    DataItem<T1> newItem() {
+        PoiAssert.isTrue(!consumed, "流式表格数据只能遍历一次");
+        consumed = true;
+        loadHead();
+        if (!hasHead) {
+            return new DataItem<>(Collections.emptyList());
+        }
+        return new DataItem<>(new HeadIterator<>(head, iterator), null);
+    }
+
+    /**
+     * 标题只依赖首行数据, 重复获取时返回同一行
+     */
+    @Override
+    DataItem getLeafItem() {
+        loadHead();
+        return new DataItem<>(hasHead ? Collections.singletonList(head) : Collections.emptyList());
+    }
+
+    private void loadHead() {
+        if (!headLoaded) {
+            headLoaded = true;
+            hasHead = iterator.hasNext();
+            head = hasHead ? iterator.next() : null;
+        }
+    }
+
+    /**
+     * 首行 + 剩余数据
+     */
+    private static class HeadIterator<T> implements Iterator<T> {
+        private final Iterator<T> rest;
+        private T head;
+        private boolean headPending = true;
+
+        HeadIterator(T head, Iterator<T> rest) {
+            this.head = head;
+            this.rest = rest;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return headPending || rest.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (headPending) {
+                T value = head;
+                head = null;
+                headPending = false;
+                return value;
+            }
+            return rest.next();
+        }
+    }
+
+    /**
+     * 分页迭代器, 同一时刻只持有一页数据
+     */
+    private static class PageIterator<T> implements Iterator<T> {
+        private final IntFunction<? extends Collection<T>> pageLoader;
+        private Iterator<T> current = Collections.emptyIterator();
+        private int pageNum;
+        private boolean finished;
+
+        PageIterator(IntFunction<? extends Collection<T>> pageLoader) {
+            this.pageLoader = pageLoader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && !finished) {
+                Collection<T> page = pageLoader.apply(++pageNum);
+                if (page == null || page.isEmpty()) {
+                    finished = true;
+                } else {
+                    current = page.iterator();
+                }
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
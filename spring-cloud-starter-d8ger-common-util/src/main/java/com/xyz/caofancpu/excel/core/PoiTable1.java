@@ -95,6 +95,7 @@ public class PoiTable1<T1> extends PoiTable<T1> {
                     cel = setCellValue(row, cel, item.child(valueFunction), poiColumns.getColumns(), celFunction);
                 }
             }
+            celFunction.afterRow(row);
             row++;
         }
         return row;
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.excel.util;
+
+import com.xyz.caofancpu.excel.core.PoiStyle;
+import com.xyz.caofancpu.excel.xml.config.PoiStyleConfig;
+import lombok.Value;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Workbook级别的单元格样式缓存
+ * 按样式的值(字体、颜色、边框、格式、对齐)去重, 相同样式只创建一次CellStyle,
+ * 避免大报表超出Excel单元格样式数量上限(xlsx为64000, xls为4000)
+ *
+ * @author D8GER
+ */
+public class PoiStyleCache {
+    private final Workbook workbook;
+    private final Map<StyleKey, CellStyle> cellStyleMap = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public PoiStyleCache(Workbook workbook) {
+        this.workbook = Objects.requireNonNull(workbook);
+    }
+
+    /**
+     * 获取样式, 样式为null时返回null
+     *
+     * @param style 样式, 动态样式需先解析
+     * @return
+     */
+    public CellStyle getCellStyle(PoiStyle style) {
+        if (Objects.isNull(style)) {
+            return null;
+        }
+        StyleKey key = new StyleKey(style.getFontName(), style.getFontSize(), style.getFontBold(), style.getFontColor(), style.getBgColor(), style.getWrapText(),
+                style.getAlign(), style.getVAlign(), style.getBorderBottom(), style.getBorderLeft(), style.getBorderTop(), style.getBorderRight(), style.getStyleFormat());
+        return getCellStyle(key, () -> style.createCellStyle(workbook));
+    }
+
+    /**
+     * 获取样式, 样式为null时返回null
+     *
+     * @param style 样式, 动态样式需先解析
+     * @return
+     */
+    public CellStyle getCellStyle(PoiStyleConfig style) {
+        if (Objects.isNull(style)) {
+            return null;
+        }
+        StyleKey key = new StyleKey(style.getFontName(), style.getFontSize(), style.getFontBold(), style.getFontColor(), style.getBgColor(), style.getWrapText(),
+                style.getAlign(), style.getVAlign(), style.getBorderBottom(), style.getBorderLeft(), style.getBorderTop(), style.getBorderRight(), style.getStyleFormat());
+        return getCellStyle(key, () -> style.createCellStyle(workbook));
+    }
+
+    private CellStyle getCellStyle(StyleKey key, Supplier<CellStyle> createFunction) {
+        CellStyle cellStyle = cellStyleMap.get(key);
+        if (Objects.nonNull(cellStyle)) {
+            hitCount.increment();
+            return cellStyle;
+        }
+        return cellStyleMap.computeIfAbsent(key, k -> {
+            missCount.increment();
+            return createFunction.get();
+        });
+    }
+
+    /**
+     * 命中缓存次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 新建样式次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 已创建的样式数量
+     */
+    public int getStyleCount() {
+        return cellStyleMap.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PoiStyleCache{styleCount=" + getStyleCount() + ", hitCount=" + getHitCount() + ", missCount=" + getMissCount() + "}";
+    }
+
+    /**
+     * 样式的值快照, PoiStyle是可变对象, 不能直接作为Key
+     */
+    @Value
+    private static class StyleKey {
+        String fontName;
+        Short fontSize;
+        Boolean fontBold;
+        IndexedColors fontColor;
+        IndexedColors bgColor;
+        Boolean wrapText;
+        HorizontalAlignment align;
+        VerticalAlignment vAlign;
+        BorderStyle borderBottom;
+        BorderStyle borderLeft;
+        BorderStyle borderTop;
+        BorderStyle borderRight;
+        String styleFormat;
+    }
+}
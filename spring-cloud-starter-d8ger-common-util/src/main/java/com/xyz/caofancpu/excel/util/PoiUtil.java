@@ -215,7 +215,7 @@ public class PoiUtil {
         lastRow = handleExcelCoordinateValue(lastRow);
         lastCol = handleExcelCoordinateValue(lastCol);
         Sheet sheet = poiBook.getSheet(poiSheet);
-        CellStyle cellStyle = Objects.isNull(mergedStyle) ? null : mergedStyle.createCellStyle(poiBook.getWorkbook());
+        CellStyle cellStyle = poiBook.getStyleCache().getCellStyle(mergedStyle);
         // 注意, 下面方法区域参数的位置与本方法入参是不一样的
         mergedRegion(sheet, firstRow, lastRow, firstCol, lastCol, value, cellStyle);
     }
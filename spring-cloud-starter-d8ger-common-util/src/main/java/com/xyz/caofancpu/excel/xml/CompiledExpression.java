@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.excel.xml;
+
+/**
+ * 编译后的表达式, 不可变, 可在多个线程、多个PoiXmlContext间共享
+ *
+ * @author D8GER
+ */
+public class CompiledExpression {
+    /**
+     * 原始表达式
+     */
+    private final String eval;
+    /**
+     * 语法树根节点
+     */
+    private final ExpressionCompiler.Node root;
+    /**
+     * 是否编译成功, 失败时退化为解释执行
+     */
+    private final boolean compiled;
+
+    CompiledExpression(String eval, ExpressionCompiler.Node root, boolean compiled) {
+        this.eval = eval;
+        this.root = root;
+        this.compiled = compiled;
+    }
+
+    /**
+     * 求值
+     *
+     * @param parser 上下文
+     * @param param  参数, 即表达式中的$$
+     * @return
+     */
+    public Object evaluate(ExpressionParser parser, Object param) {
+        return root.eval(parser, param);
+    }
+
+    public String getEval() {
+        return eval;
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    @Override
+    public String toString() {
+        return eval;
+    }
+}
@@ -0,0 +1,685 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.excel.xml;
+
+import com.xyz.caofancpu.excel.enums.Symbol;
+import com.xyz.caofancpu.excel.exception.ExcelException;
+import com.xyz.caofancpu.excel.tmp.Tmp;
+import com.xyz.caofancpu.excel.util.PoiAssert;
+import com.xyz.caofancpu.excel.xml.util.XExpressionUtil;
+import com.xyz.caofancpu.excel.xml.util.XStringUtil;
+import org.apache.commons.beanutils.MethodUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+
+/**
+ * 表达式编译器
+ * 按ExpressionParser完全相同的拆分规则, 把表达式字符串一次性编译为闭包树, 求值时不再做任何字符串解析
+ * 无法编译的表达式(语法错误等)退化为解释执行, 保证求值结果及异常与解释执行一致
+ *
+ * @author D8GER
+ */
+public class ExpressionCompiler {
+
+    private static final Node NULL_NODE = (parser, param) -> null;
+    private static final Node PARAM_NODE = (parser, param) -> param;
+    private static final Node TRUE_NODE = (parser, param) -> true;
+    private static final Node FALSE_NODE = (parser, param) -> false;
+
+    /**
+     * 字符串常量, 下标0为参数占位
+     */
+    private final List<Object> tmps;
+
+    private ExpressionCompiler(List<Object> tmps) {
+        this.tmps = tmps;
+    }
+
+    /**
+     * 编译表达式, 对应ExpressionParser#get(String, Object)
+     *
+     * @param eval 表达式
+     * @return
+     */
+    public static CompiledExpression compile(String eval) {
+        try {
+            List<Object> tmps = new ArrayList<>();
+            tmps.add(null);
+            String replaced = ExpressionParser.replaceString(eval, tmps);
+            return new CompiledExpression(eval, new ExpressionCompiler(tmps).compileExpression(replaced), true);
+        } catch (RuntimeException e) {
+            return new CompiledExpression(eval, (parser, param) -> parser.interpret(eval, param), false);
+        }
+    }
+
+    /**
+     * 编译格式化字符串, 对应ExpressionParser#formatStr(String)
+     *
+     * @param str 含{{表达式}}的字符串
+     * @return
+     */
+    public static CompiledExpression compileFormat(String str) {
+        if (str == null || str.length() < 5) {
+            return new CompiledExpression(str, (parser, param) -> str, true);
+        }
+        List<String> literals = new ArrayList<>();
+        List<CompiledExpression> expressions = new ArrayList<>();
+        Matcher matcher = ExpressionParser.FORMAT_PATTERN.matcher(str);
+        int end = 0;
+        while (matcher.find()) {
+            literals.add(str.substring(end, matcher.start()));
+            expressions.add(compile(matcher.group(1)));
+            end = matcher.end();
+        }
+        if (expressions.isEmpty()) {
+            return new CompiledExpression(str, (parser, param) -> str, true);
+        }
+        String tail = str.substring(end);
+        String[] literalArray = literals.toArray(new String[0]);
+        CompiledExpression[] expressionArray = expressions.toArray(new CompiledExpression[0]);
+        return new CompiledExpression(str, (parser, param) -> {
+            StringBuilder sb = new StringBuilder(str.length());
+            for (int i = 0; i < expressionArray.length; i++) {
+                Object value = expressionArray[i].evaluate(parser, null);
+                sb.append(literalArray[i]).append(value == null ? "" : value.toString());
+            }
+            return sb.append(tail).toString();
+        }, true);
+    }
+
+    /**
+     * 对应ExpressionParser#parseExpression(String)
+     */
+    private Node compileExpression(String key) {
+        if (key == null) {
+            return NULL_NODE;
+        }
+        key = key.trim();
+        if (key.isEmpty()) {
+            return NULL_NODE;
+        }
+
+        // 简单运算
+        int wildCardIndex = XStringUtil.lastIndexOfAny(key, ISymbol.EXPRESSION);
+        if (wildCardIndex > -1) {
+            return compileSymbol(Symbol.create(key.charAt(wildCardIndex)), key, wildCardIndex);
+        }
+
+        char ch = key.charAt(0);
+
+        // 大写,静态方法
+        if (Character.isUpperCase(ch)) {
+            return compileStaticMethod(key);
+        }
+
+        // 数字
+        if (Character.isDigit(ch)) {
+            Tmp<Integer, Number> numTmp = XStringUtil.getNum(key);
+            Number number = numTmp.getValue();
+            if (numTmp.getKey() < key.length() - 1) {
+                PathNode path = compilePath(key.substring(numTmp.getKey() + 1));
+                return (parser, param) -> path.apply(parser, param, number);
+            }
+            return (parser, param) -> number;
+        }
+
+        // 点, 属性方法
+        int spotIndex = key.indexOf(ISymbol.SPOT);
+        if (spotIndex > 0) {
+            Node target = compileExpression(key.substring(0, spotIndex).trim());
+            PathNode path = compilePath(key.substring(spotIndex + 1).trim());
+            return (parser, param) -> path.apply(parser, param, target.eval(parser, param));
+        }
+
+        // 数组
+        int indexStart = key.indexOf('[');
+        if (indexStart > -1) {
+            int indexEnd = key.indexOf(']');
+            Node arrayNode = compileExpression(key.substring(0, indexStart));
+            Node indexNode = compileExpression(key.substring(indexStart + 1, indexEnd));
+            return (parser, param) -> {
+                Object valueG = arrayNode.eval(parser, param);
+                if (valueG == null || !valueG.getClass().isArray()) {
+                    return null;
+                }
+                Object valueH = indexNode.eval(parser, param);
+                if (valueH instanceof Integer) {
+                    return ((Object[]) valueG)[(int) valueH];
+                }
+                return null;
+            };
+        }
+
+        // 占位对象替换
+        if ('$' == ch && '$' == key.charAt(1)) {
+            int index = key.length() == 2 ? 0 : Integer.parseInt(key.substring(2));
+            if (index == 0) {
+                return PARAM_NODE;
+            }
+            Object value = index < tmps.size() ? tmps.get(index) : null;
+            return (parser, param) -> value;
+        }
+
+        if ("true".equals(key)) {
+            return TRUE_NODE;
+        }
+
+        if ("false".equals(key)) {
+            return FALSE_NODE;
+        }
+
+        if ("null".equals(key)) {
+            return NULL_NODE;
+        }
+
+        String contextKey = key;
+        return (parser, param) -> parser.context.get(contextKey);
+    }
+
+    /**
+     * 对应ISymbol#parse(ISymbolParser, String, int)
+     */
+    private Node compileSymbol(Symbol symbol, String key, int index) {
+        switch (symbol) {
+            case SUB:
+                if (index == 0) {
+                    Node valueNode = compileExpression(key.substring(1));
+                    return (parser, param) -> {
+                        Object value = valueNode.eval(parser, param);
+                        if (!(value instanceof Number)) {
+                            return null;
+                        }
+                        return -((Number) value).doubleValue();
+                    };
+                }
+                break;
+            case GTE:
+            case LTE:
+            case OR:
+            case AND:
+            case NEQ:
+                return compileSymbol(symbol, key, index, compileExpression(key.substring(index + 2)));
+            case PARENTHESIS:
+                return compileParenthesis(key, index);
+            case QUESTION:
+                return compileQuestion(key, index);
+            default:
+                break;
+        }
+        return compileSymbol(symbol, key, index, compileExpression(key.substring(index + 1)));
+    }
+
+    /**
+     * 对应ISymbol#parse(ISymbolParser, String, int, Object), objectNode先求值
+     */
+    private Node compileSymbol(Symbol symbol, String key, int index, Node objectNode) {
+        switch (symbol) {
+            case ADD: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    return XExpressionUtil.add(left.eval(parser, param), object);
+                };
+            }
+            case SUB: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    return XExpressionUtil.sub(left.eval(parser, param), object);
+                };
+            }
+            case MUL: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    return XExpressionUtil.mul(left.eval(parser, param), object);
+                };
+            }
+            case DIV: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    return XExpressionUtil.div(left.eval(parser, param), object);
+                };
+            }
+            case MOD: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    return XExpressionUtil.mod(left.eval(parser, param), object);
+                };
+            }
+            case EQ: {
+                char c1 = key.charAt(index - 1);
+                if ('=' == c1) {
+                    return compileSymbol(Symbol.EQ, key, index - 1, objectNode);
+                }
+                if ('!' == c1) {
+                    return compileSymbol(Symbol.NEQ, key, index - 1, objectNode);
+                }
+                if ('>' == c1) {
+                    return compileSymbol(Symbol.GTE, key, index - 1, objectNode);
+                }
+                if ('<' == c1) {
+                    return compileSymbol(Symbol.LTE, key, index - 1, objectNode);
+                }
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    Object o = left.eval(parser, param);
+                    if (object == null && o == null) {
+                        return true;
+                    }
+                    return !(object == null || o == null) && object.equals(o);
+                };
+            }
+            case NEQ: {
+                Node eq = compileSymbol(Symbol.EQ, key, index, objectNode);
+                return (parser, param) -> !XExpressionUtil.getBoolean(eq.eval(parser, param));
+            }
+            case GT: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!(object instanceof Number)) {
+                        return true;
+                    }
+                    Object o = left.eval(parser, param);
+                    if (!(o instanceof Number)) {
+                        return false;
+                    }
+                    return ((Number) o).doubleValue() > ((Number) object).doubleValue();
+                };
+            }
+            case LT: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!(object instanceof Number)) {
+                        return false;
+                    }
+                    Object o = left.eval(parser, param);
+                    if (!(o instanceof Number)) {
+                        return true;
+                    }
+                    return ((Number) o).doubleValue() < ((Number) object).doubleValue();
+                };
+            }
+            case GTE: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!(object instanceof Number)) {
+                        return true;
+                    }
+                    Object o = left.eval(parser, param);
+                    if (!(o instanceof Number)) {
+                        return false;
+                    }
+                    return ((Number) o).doubleValue() >= ((Number) object).doubleValue();
+                };
+            }
+            case LTE: {
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!(object instanceof Number)) {
+                        return false;
+                    }
+                    Object o = left.eval(parser, param);
+                    if (!(o instanceof Number)) {
+                        return true;
+                    }
+                    return ((Number) o).doubleValue() <= ((Number) object).doubleValue();
+                };
+            }
+            case VERTICAL: {
+                if ('|' == key.charAt(index - 1)) {
+                    return compileSymbol(Symbol.OR, key, index - 1, objectNode);
+                }
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!(object instanceof Number)) {
+                        return null;
+                    }
+                    Object o = left.eval(parser, param);
+                    if (!(o instanceof Number)) {
+                        return null;
+                    }
+                    return ((Number) object).intValue() | ((Number) o).intValue();
+                };
+            }
+            case OR: {
+                Node left = compileExpression(key.substring(0, index - 1));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (XExpressionUtil.getBoolean(left.eval(parser, param))) {
+                        return true;
+                    }
+                    return XExpressionUtil.getBoolean(object);
+                };
+            }
+            case WITH: {
+                if ('&' == key.charAt(index - 1)) {
+                    return compileSymbol(Symbol.AND, key, index - 1, objectNode);
+                }
+                Node left = compileExpression(key.substring(0, index));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!(object instanceof Number)) {
+                        return null;
+                    }
+                    Object o = left.eval(parser, param);
+                    if (!(o instanceof Number)) {
+                        return null;
+                    }
+                    return ((Number) object).intValue() & ((Number) o).intValue();
+                };
+            }
+            case AND: {
+                Node left = compileExpression(key.substring(0, index - 1));
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!XExpressionUtil.getBoolean(left.eval(parser, param))) {
+                        return false;
+                    }
+                    return XExpressionUtil.getBoolean(object);
+                };
+            }
+            case TILDE:
+                return (parser, param) -> {
+                    Object object = objectNode.eval(parser, param);
+                    if (!(object instanceof Number)) {
+                        return null;
+                    }
+                    return ~((Number) object).intValue();
+                };
+            case NOT:
+                return (parser, param) -> !XExpressionUtil.getBoolean(objectNode.eval(parser, param));
+            case QUESTION: {
+                int indexA = key.lastIndexOf(":");
+                if (indexA < 0) {
+                    return (parser, param) -> {
+                        objectNode.eval(parser, param);
+                        return null;
+                    };
+                }
+                Node trueNode = compileExpression(key.substring(key.indexOf("?") + 1, indexA));
+                Node falseNode = compileExpression(key.substring(indexA + 1));
+                return (parser, param) -> XExpressionUtil.getBoolean(objectNode.eval(parser, param)) ? trueNode.eval(parser, param) : falseNode.eval(parser, param);
+            }
+            default: {
+                if (index <= 0) {
+                    return objectNode;
+                }
+                String message = "表达式错误:[" + key + "]";
+                return (parser, param) -> {
+                    objectNode.eval(parser, param);
+                    throw new ExcelException(message);
+                };
+            }
+        }
+    }
+
+    /**
+     * 对应Symbol.PARENTHESIS#parse(ISymbolParser, String, int)
+     */
+    private Node compileParenthesis(String key, int index) {
+        int startIndex = XStringUtil.getParenthesesStart(key, index);
+        if (startIndex <= 0) {
+            return compileExpression(key.substring(startIndex + 1, index));
+        }
+
+        String prev = key.substring(0, startIndex);
+
+        // 前边是表达式, 先算括号
+        int prevIndex = XStringUtil.lastIndexOfAny(prev, ISymbol.EXPRESSION_MID);
+        if (prevIndex > -1) {
+            Node object = compileSymbol(Symbol.create(key.charAt(prevIndex)), prev, prevIndex, compileExpression(key.substring(startIndex + 1, index).trim()));
+            if (index < key.length() - 1) {
+                PathNode path = compilePath(key.substring(index + 1));
+                return (parser, param) -> path.apply(parser, param, object.eval(parser, param));
+            }
+            return object;
+        }
+
+        // 大写,静态方法
+        if (Character.isUpperCase(key.charAt(0))) {
+            return compileStaticMethod(key);
+        }
+
+        // 方法,前边是点
+        int spotIndexB = prev.lastIndexOf(ISymbol.SPOT);
+        if (spotIndexB <= 0) {
+            throw new ExcelException("表达式错误:[" + key + "]");
+        }
+        Node valueB = compileExpression(prev.substring(0, spotIndexB).trim());
+        PathNode path = compilePath(key.substring(spotIndexB + 1).trim());
+        return (parser, param) -> path.apply(parser, param, valueB.eval(parser, param));
+    }
+
+    /**
+     * 对应Symbol.QUESTION#parse(ISymbolParser, String, int)
+     */
+    private Node compileQuestion(String key, int index) {
+        if (index == 0) {
+            return NULL_NODE;
+        }
+        // 前面是括号
+        String prev = key.substring(0, index).trim();
+        if (prev.charAt(prev.length() - 1) == ')') {
+            int start = XStringUtil.getParenthesesStart(prev, prev.length() - 1);
+            Node valueE = compileExpression(prev.substring(start + 1, prev.length() - 1));
+            if (start < 0) {
+                return compileSymbol(Symbol.QUESTION, key, index, valueE);
+            }
+            return compileStaticSymbol(prev.substring(0, start), compileSymbol(Symbol.QUESTION, key, index, valueE));
+        }
+
+        // 前面是表达式
+        int indexMid = XStringUtil.lastIndexOfAny(prev, ISymbol.EXPRESSION_MID);
+        if (indexMid < 0) {
+            return compileSymbol(Symbol.QUESTION, key, index, compileExpression(prev));
+        }
+
+        Symbol symbol = Symbol.create(key.charAt(indexMid));
+        return compileSymbol(Symbol.QUESTION, key, indexMid, compileSymbol(symbol, prev, indexMid, compileExpression(prev.substring(indexMid + 1))));
+    }
+
+    /**
+     * 对应Symbol#parse(ISymbolParser, String, Object)
+     */
+    private Node compileStaticSymbol(String key, Node objectNode) {
+        int index = XStringUtil.lastIndexOfAny(key, ISymbol.EXPRESSION_MID);
+        if (index < 0) {
+            return objectNode;
+        }
+        return compileSymbol(Symbol.create(key.charAt(index)), key, index, objectNode);
+    }
+
+    /**
+     * 对应ExpressionParser#invokeStaticMethod(String)
+     */
+    private Node compileStaticMethod(String eval) {
+        Node body;
+        int indexStart = eval.indexOf("(");
+        if (indexStart > 0) {
+            String classMethodStr = eval.substring(0, indexStart);
+            int indexOf = classMethodStr.lastIndexOf(".");
+            PoiAssert.isTrue(indexOf > 0, "invokeStaticMothod error");
+
+            String className = classMethodStr.substring(0, indexOf);
+            String methodName = classMethodStr.substring(indexOf + 1);
+            int indexEnd = XStringUtil.getParenthesesEnd(eval, indexStart);
+            ParamsNode paramsNode = compileParams(eval.substring(indexStart + 1, indexEnd));
+            PathNode tail = eval.length() > indexEnd + 1 ? compilePath(eval.substring(indexEnd + 1).trim()) : null;
+            body = (parser, param) -> {
+                Class<?> aClass = FunctionManager.getClassName(className);
+                if (aClass == null) {
+                    throw new ExcelException("类不存在[" + className + "]");
+                }
+                Object[] paramValues = paramsNode.eval(parser, param);
+                try {
+                    Object value = MethodUtils.invokeStaticMethod(aClass, methodName, paramValues);
+                    if (tail != null) {
+                        return tail.apply(parser, param, value);
+                    }
+                    return value;
+                } catch (Exception e) {
+                    throw new ExcelException("获取对象属性失败[" + eval + "]", e);
+                }
+            };
+        } else {
+            int indexOf = eval.lastIndexOf(".");
+            PoiAssert.isTrue(indexOf > 0, "invokeStaticMothod error");
+
+            String className = eval.substring(0, indexOf);
+            String methodName = eval.substring(indexOf + 1);
+            body = (parser, param) -> {
+                Class<?> aClass = FunctionManager.getClassName(className);
+                if (aClass == null) {
+                    return null;
+                }
+                try {
+                    return MethodUtils.invokeStaticMethod(aClass, methodName, (Object[]) null);
+                } catch (Exception e) {
+                    throw new ExcelException("获取对象属性失败[" + eval + "]", e);
+                }
+            };
+        }
+        // 注册的函数优先, 运行期才注册的函数也能生效
+        return (parser, param) -> {
+            Function function = FunctionManager.FUNCTION_MAP.get(eval);
+            if (function != null) {
+                //noinspection unchecked
+                return function.apply(param);
+            }
+            return body.eval(parser, param);
+        };
+    }
+
+    /**
+     * 对应ExpressionParser#getParamValues(String)
+     */
+    private ParamsNode compileParams(String paramsStr) {
+        if (paramsStr == null || paramsStr.isEmpty()) {
+            return (parser, param) -> null;
+        }
+        String[] params = paramsStr.split(",");
+        Node[] nodes = new Node[params.length];
+        for (int i = 0; i < params.length; i++) {
+            String trim = params[i].trim();
+            nodes[i] = "$$".equals(trim) ? PARAM_NODE : compileExpression(trim);
+        }
+        return (parser, param) -> {
+            Object[] paramValues = new Object[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                paramValues[i] = nodes[i].eval(parser, param);
+            }
+            return paramValues;
+        };
+    }
+
+    /**
+     * 对应ExpressionParser#getProperty(Object, String)
+     */
+    private PathNode compilePath(String eval) {
+        int indexOf = eval.indexOf(".");
+        while (indexOf == 0) {
+            eval = eval.substring(1);
+            indexOf = eval.indexOf(".");
+        }
+        if (indexOf > 0) {
+            int indexStart = eval.indexOf("(");
+            if (indexStart > 0 && indexStart < indexOf) {
+                return compileMethod(eval);
+            }
+            PathNode first = compilePath(eval.substring(0, indexOf).trim());
+            PathNode rest = compilePath(eval.substring(indexOf + 1));
+            return (parser, param, object) -> object == null ? null : rest.apply(parser, param, first.apply(parser, param, object));
+        } else if (eval.indexOf("(") > 0) {
+            return compileMethod(eval);
+        }
+
+        String name = eval;
+        return (parser, param, object) -> {
+            if (object == null) {
+                return null;
+            }
+            try {
+                return ExpressionParser.readProperty(object, name);
+            } catch (Exception e) {
+                throw new ExcelException("获取对象属性失败[" + name + "], class:" + object.getClass(), e);
+            }
+        };
+    }
+
+    /**
+     * 对应ExpressionParser#invokeMethod(Object, String)
+     */
+    private PathNode compileMethod(String eval) {
+        int indexStart = eval.indexOf("(");
+        int indexEnd = XStringUtil.getParenthesesEnd(eval, indexStart);
+        ParamsNode paramsNode = compileParams(eval.substring(indexStart + 1, indexEnd).trim());
+        String methodName = eval.substring(0, indexStart);
+        PathNode tail = eval.length() > indexEnd + 1 ? compilePath(eval.substring(indexEnd + 1).trim()) : null;
+        return (parser, param, object) -> {
+            if (object == null) {
+                return null;
+            }
+            try {
+                Object value = parser.invokeMethod(object, methodName, paramsNode.eval(parser, param));
+                if (value != null && tail != null) {
+                    return tail.apply(parser, param, value);
+                }
+                return value;
+            } catch (Exception e) {
+                throw new ExcelException("获取对象属性失败[" + eval + "], class:" + object.getClass(), e);
+            }
+        };
+    }
+
+    /**
+     * 语法树节点
+     */
+    @FunctionalInterface
+    interface Node {
+        Object eval(ExpressionParser parser, Object param);
+    }
+
+    /**
+     * 属性/方法访问节点
+     */
+    @FunctionalInterface
+    private interface PathNode {
+        Object apply(ExpressionParser parser, Object param, Object object);
+    }
+
+    /**
+     * 方法参数节点
+     */
+    @FunctionalInterface
+    private interface ParamsNode {
+        Object[] eval(ExpressionParser parser, Object param);
+    }
+}
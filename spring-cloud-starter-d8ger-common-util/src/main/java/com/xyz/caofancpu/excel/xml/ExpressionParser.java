@@ -23,6 +23,8 @@ import com.xyz.caofancpu.excel.exception.ExcelException;
 import com.xyz.caofancpu.excel.tmp.Tmp;
 import com.xyz.caofancpu.excel.util.PoiAssert;
 import com.xyz.caofancpu.excel.xml.util.XStringUtil;
+import com.xyz.caofancpu.extra.AccessorRegistry;
+import org.apache.commons.beanutils.DynaBean;
 import org.apache.commons.beanutils.MethodUtils;
 import org.apache.commons.beanutils.PropertyUtils;
 
@@ -49,9 +51,17 @@ public class ExpressionParser implements ISymbolParser {
      */
     private static final char SPOT = '.';
 
-    private static final Pattern FORMAT_PATTERN = Pattern.compile("\\{\\{(.*?)\\}\\}");
+    static final Pattern FORMAT_PATTERN = Pattern.compile("\\{\\{(.*?)\\}\\}");
     private final ThreadLocal<List<Object>> tmp = new ThreadLocal<>();
     protected Map<String, Object> context;
+    /**
+     * 预编译的表达式, 为null时解释执行
+     */
+    private Map<String, CompiledExpression> compiledExpressions;
+    /**
+     * 预编译的格式化字符串
+     */
+    private Map<String, CompiledExpression> compiledFormats;
 
     public ExpressionParser() {
         this(new HashMap<>());
@@ -66,11 +76,25 @@ public class ExpressionParser implements ISymbolParser {
         return context.put(key, value);
     }
 
+    /**
+     * 使用预编译的表达式, 未命中的表达式首次使用时编译并放入缓存
+     *
+     * @param compiledExpressions 表达式 -> 编译结果
+     * @param compiledFormats     格式化字符串 -> 编译结果
+     */
+    public void useCompiledExpressions(Map<String, CompiledExpression> compiledExpressions, Map<String, CompiledExpression> compiledFormats) {
+        this.compiledExpressions = compiledExpressions;
+        this.compiledFormats = compiledFormats;
+    }
+
 
     public String formatStr(String str) {
         if (str == null || str.length() < 5) {
             return str;
         }
+        if (compiledFormats != null) {
+            return (String) compiledFormats.computeIfAbsent(str, ExpressionCompiler::compileFormat).evaluate(this, null);
+        }
         Matcher matcher = FORMAT_PATTERN.matcher(str);
         StringBuffer sb = new StringBuffer();
         while (matcher.find()) {
@@ -81,10 +105,20 @@ public class ExpressionParser implements ISymbolParser {
     }
 
     public Object get(String eval, Object param) {
+        if (compiledExpressions != null && eval != null) {
+            return compiledExpressions.computeIfAbsent(eval, ExpressionCompiler::compile).evaluate(this, param);
+        }
+        return interpret(eval, param);
+    }
+
+    /**
+     * 解释执行, 每次都重新解析表达式字符串
+     */
+    Object interpret(String eval, Object param) {
         try {
             setTmp0(param);
             //noinspection unchecked
-            return parseExpression(replaceString(eval));
+            return parseExpression(replaceString(eval, tmp.get()));
         } finally {
             tmp.remove();
         }
@@ -109,8 +143,11 @@ public class ExpressionParser implements ISymbolParser {
 
     /**
      * 替换字符串和数值
+     *
+     * @param eval 表达式
+     * @param tmps 临时属性, 下标0为参数, 字符串常量依次追加在后面
      */
-    private String replaceString(String eval) {
+    static String replaceString(String eval, List<Object> tmps) {
         int start = eval.indexOf("'");
         if (start < 0) {
             return eval;
@@ -137,7 +174,8 @@ public class ExpressionParser implements ISymbolParser {
             }
             str += eval.substring(start + 1, end);
 
-            resultSb.append("$$").append(addTmp(str));
+            tmps.add(str);
+            resultSb.append("$$").append(tmps.size() - 1);
 
             start = eval.indexOf('\'', end + 1);
             str = "";
@@ -279,7 +317,7 @@ public class ExpressionParser implements ISymbolParser {
         return null;
     }
 
-    private Object invokeMethod(Object object, String methodName, Object[] paramValues)
+    Object invokeMethod(Object object, String methodName, Object[] paramValues)
             throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
         if ("get".equals(methodName)) {
             if (object instanceof Map) {
@@ -295,9 +333,52 @@ public class ExpressionParser implements ISymbolParser {
                 return ((List) object).get(paramValue);
             }
         }
+        if (paramValues == null || paramValues.length == 0) {
+            AccessorRegistry.Invoker invoker = AccessorRegistry.forClass(object.getClass()).matchingMethod(methodName);
+            if (invoker != null) {
+                return invoker.invoke(object);
+            }
+        } else {
+            Class<?>[] paramTypes = new Class<?>[paramValues.length];
+            for (int i = 0; i < paramValues.length; i++) {
+                if (paramValues[i] == null) {
+                    paramTypes = null;
+                    break;
+                }
+                paramTypes[i] = paramValues[i].getClass();
+            }
+            AccessorRegistry.Invoker invoker = paramTypes == null ? null : AccessorRegistry.forClass(object.getClass()).matchingMethod(methodName, paramTypes);
+            if (invoker != null) {
+                return invoker.invoke(object, paramValues);
+            }
+        }
         return MethodUtils.invokeMethod(object, methodName, paramValues);
     }
 
+    /**
+     * 读取属性, 简单属性使用缓存的读方法, Map、嵌套、索引属性仍交给PropertyUtils
+     */
+    static Object readProperty(Object object, String name)
+            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+        if (!(object instanceof Map) && !(object instanceof DynaBean) && isSimpleProperty(name)) {
+            AccessorRegistry.Invoker reader = AccessorRegistry.forClass(object.getClass()).readMethod(name);
+            if (reader != null) {
+                return reader.invoke(object);
+            }
+        }
+        return PropertyUtils.getProperty(object, name);
+    }
+
+    private static boolean isSimpleProperty(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch == '.' || ch == '[' || ch == '(') {
+                return false;
+            }
+        }
+        return !name.isEmpty();
+    }
+
     @Override
     public Object invokeStaticMethod(String eval) {
         Function function = FunctionManager.FUNCTION_MAP.get(eval);
@@ -378,27 +459,13 @@ public class ExpressionParser implements ISymbolParser {
         }
 
         try {
-            return PropertyUtils.getProperty(object, eval);
+            return readProperty(object, eval);
         } catch (Exception e) {
             throw new ExcelException("获取对象属性失败[" + eval + "], class:" + object.getClass(), e);
         }
     }
 
 
-    /**
-     * 添加线程临时属性
-     */
-    private int addTmp(Object object) {
-        List<Object> list = tmp.get();
-        if (list == null) {
-            list = new ArrayList<>();
-            list.add(null);
-            tmp.set(list);
-        }
-        list.add(object);
-        return list.size() - 1;
-    }
-
     /**
      * 添加线程临时属性
      */
@@ -23,6 +23,7 @@ import com.xyz.caofancpu.excel.enums.ListAlign;
 import com.xyz.caofancpu.excel.tmp.AreaIndex;
 import com.xyz.caofancpu.excel.tmp.Region;
 import com.xyz.caofancpu.excel.util.PoiAssert;
+import com.xyz.caofancpu.excel.util.PoiStyleCache;
 import com.xyz.caofancpu.excel.xml.config.AlignConfig;
 import com.xyz.caofancpu.excel.xml.config.DataConfig;
 import com.xyz.caofancpu.excel.xml.config.IAreaConfig;
@@ -63,12 +64,13 @@ import static com.xyz.caofancpu.excel.util.PoiUtil.getColumnWidth;
 public class PoiXmlBuilder {
     private final WorkbookConfig config;
     private final PoiXmlContext context = new PoiXmlContext();
-    private final Map<String, CellStyle> cellStyleMap = new HashMap<>();
     private Workbook wb;
+    private PoiStyleCache styleCache;
     private String fileName;
 
     public PoiXmlBuilder(WorkbookConfig config, Map<String, Object> params) {
         this.config = config;
+        context.useCompiledExpressions(config.getCompiledExpressions(), config.getCompiledFormats());
         context.beginStack(params);
     }
 
@@ -80,12 +82,17 @@ public class PoiXmlBuilder {
         return wb;
     }
 
+    public PoiStyleCache getStyleCache() {
+        return styleCache;
+    }
+
     public String getFileName() {
         return fileName;
     }
 
     public PoiXmlBuilder build() {
         wb = new HSSFWorkbook();
+        styleCache = new PoiStyleCache(wb);
         for (SetConfig setConfig : config.getSets()) {
             buildSet(setConfig);
         }
@@ -606,7 +613,6 @@ public class PoiXmlBuilder {
     }
 
     private CellStyle getCellStyle(PoiStyleConfig style, ExpressionParser parser) {
-        PoiStyleConfig finalStyle = style.parserDynamic(parser);
-        return cellStyleMap.computeIfAbsent(finalStyle.getKey(), k -> finalStyle.createCellStyle(wb));
+        return styleCache.getCellStyle(style.parserDynamic(parser));
     }
 }
@@ -35,6 +35,7 @@ import com.xyz.caofancpu.excel.xml.config.TableHeadConfig;
 import com.xyz.caofancpu.excel.xml.config.WorkbookConfig;
 import com.xyz.caofancpu.excel.xml.config.field.FieldConfig;
 import com.xyz.caofancpu.excel.xml.config.field.GroupConfig;
+import com.xyz.caofancpu.excel.xml.config.field.IFieldConfig;
 import com.xyz.caofancpu.excel.xml.util.XmlElementUtil;
 import com.xyz.caofancpu.excel.xml.util.XmlExcelUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -186,9 +187,103 @@ public class PoiXmlConfigManager {
 
             workbookConfig.getSheets().add(sheetConfig);
         }
+        precompile(workbookConfig);
         return workbookConfig;
     }
 
+    /**
+     * 预编译模板内的表达式, 导出时不再重复解析表达式字符串
+     * 样式中的动态表达式等未覆盖到的表达式, 在首次求值时编译并缓存
+     */
+    private void precompile(WorkbookConfig workbookConfig) {
+        Map<String, CompiledExpression> expressions = workbookConfig.getCompiledExpressions();
+        Map<String, CompiledExpression> formats = workbookConfig.getCompiledFormats();
+        compileFormat(formats, workbookConfig.getName());
+        for (SetConfig setConfig : workbookConfig.getSets()) {
+            compileArea(expressions, formats, setConfig);
+        }
+        for (SheetConfig sheetConfig : workbookConfig.getSheets()) {
+            compileFormat(formats, sheetConfig.getName());
+            compileExpression(expressions, sheetConfig.getData());
+            for (IAreaConfig area : sheetConfig.getAreaList()) {
+                compileArea(expressions, formats, area);
+            }
+        }
+    }
+
+    private void compileArea(Map<String, CompiledExpression> expressions, Map<String, CompiledExpression> formats, IAreaConfig area) {
+        if (area instanceof AlignConfig) {
+            AlignConfig alignConfig = (AlignConfig) area;
+            compileExpression(expressions, alignConfig.getFilter());
+            for (IAreaConfig child : alignConfig.getAreaList()) {
+                compileArea(expressions, formats, child);
+            }
+        } else if (area instanceof ListConfig) {
+            ListConfig listConfig = (ListConfig) area;
+            compileExpression(expressions, listConfig.getData());
+            for (IAreaConfig child : listConfig.getAreaList()) {
+                compileArea(expressions, formats, child);
+            }
+        } else if (area instanceof RowConfig) {
+            RowConfig rowConfig = (RowConfig) area;
+            compileExpression(expressions, rowConfig.getFilter());
+            for (RowConfig.D8Cell d8Cell : rowConfig.getCellList()) {
+                compileExpression(expressions, d8Cell.getFilter());
+                compileFormat(formats, d8Cell.getValue());
+            }
+        } else if (area instanceof SplitConfig) {
+            compileExpression(expressions, ((SplitConfig) area).getFilter());
+        } else if (area instanceof SetConfig) {
+            SetConfig setConfig = (SetConfig) area;
+            compileExpression(expressions, setConfig.getData());
+            compileExpression(expressions, setConfig.getEval());
+        } else if (area instanceof TableConfig) {
+            TableConfig tableConfig = (TableConfig) area;
+            compileExpression(expressions, tableConfig.getFilter());
+            for (DataConfig dataConfig : tableConfig.getDataList()) {
+                compileExpression(expressions, dataConfig.getData());
+            }
+            for (SetConfig setConfig : tableConfig.getSets()) {
+                compileArea(expressions, formats, setConfig);
+            }
+            if (tableConfig.getTableHead() != null) {
+                compileFormat(formats, tableConfig.getTableHead().getName());
+            }
+            compileFields(expressions, formats, tableConfig.getFields());
+        }
+    }
+
+    private void compileFields(Map<String, CompiledExpression> expressions, Map<String, CompiledExpression> formats, List<IFieldConfig> fields) {
+        for (IFieldConfig field : fields) {
+            if (field instanceof GroupConfig) {
+                GroupConfig groupConfig = (GroupConfig) field;
+                compileExpression(expressions, groupConfig.getData());
+                compileFields(expressions, formats, groupConfig.getFieldList());
+            } else if (field instanceof FieldConfig) {
+                FieldConfig fieldConfig = (FieldConfig) field;
+                compileExpression(expressions, fieldConfig.getName());
+                compileExpression(expressions, fieldConfig.getEval());
+                compileExpression(expressions, fieldConfig.getFilter());
+                for (String title : fieldConfig.getTitles()) {
+                    compileFormat(formats, title);
+                }
+                compileFormat(formats, XmlExcelUtil.join(fieldConfig.getTitles(), "@@@@"));
+            }
+        }
+    }
+
+    private void compileExpression(Map<String, CompiledExpression> expressions, String eval) {
+        if (eval != null) {
+            expressions.computeIfAbsent(eval, ExpressionCompiler::compile);
+        }
+    }
+
+    private void compileFormat(Map<String, CompiledExpression> formats, String str) {
+        if (str != null && str.length() >= 5) {
+            formats.computeIfAbsent(str, ExpressionCompiler::compileFormat);
+        }
+    }
+
     private List<IAreaConfig> getAreaConfigs(List<Element> elements, PoiStyleConfig style) {
         List<IAreaConfig> areas = new ArrayList<>();
         for (Element areaEle : elements) {
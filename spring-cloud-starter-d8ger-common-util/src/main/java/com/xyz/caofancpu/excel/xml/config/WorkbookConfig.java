@@ -18,11 +18,18 @@
 
 package com.xyz.caofancpu.excel.xml.config;
 
+import com.xyz.caofancpu.excel.xml.CompiledExpression;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
 import lombok.experimental.Accessors;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Excel定义
@@ -40,4 +47,19 @@ public class WorkbookConfig {
     private List<SheetConfig> sheets = new ArrayList<>();
 
     private List<SetConfig> sets = new ArrayList<>();
+
+    /**
+     * 模板内表达式的编译结果, 加载模板时预编译, 同一模板的多次导出共享
+     */
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final Map<String, CompiledExpression> compiledExpressions = new ConcurrentHashMap<>();
+    /**
+     * 模板内格式化字符串({{表达式}})的编译结果
+     */
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final Map<String, CompiledExpression> compiledFormats = new ConcurrentHashMap<>();
 }
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.extra;
+
+import org.apache.commons.beanutils.MethodUtils;
+import org.apache.commons.beanutils.PropertyUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类成员访问器注册表
+ * 按类缓存方法、字段、JavaBean属性的查找结果, 并转换为MethodHandle, 热点路径上不再重复反射查找
+ * 缓存挂在ClassValue上, 类卸载时随类一起回收
+ *
+ * @author D8GER
+ */
+public class AccessorRegistry {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final ClassValue<ClassAccessor> CLASS_ACCESSORS = new ClassValue<ClassAccessor>() {
+        @Override
+        protected ClassAccessor computeValue(Class<?> type) {
+            return new ClassAccessor(type);
+        }
+    };
+
+    private AccessorRegistry() {
+    }
+
+    /**
+     * 获取类的访问器
+     *
+     * @param type 类
+     * @return
+     */
+    public static ClassAccessor forClass(Class<?> type) {
+        return CLASS_ACCESSORS.get(Objects.requireNonNull(type));
+    }
+
+    /**
+     * 单个类的成员访问器, 未找到的成员同样缓存
+     */
+    public static class ClassAccessor {
+        private final Class<?> type;
+        private final Map<MemberKey, Optional<Invoker>> methodMap = new ConcurrentHashMap<>();
+        private final Map<MemberKey, Optional<Invoker>> matchingMethodMap = new ConcurrentHashMap<>();
+        private final Map<String, Optional<Invoker>> methodByNameMap = new ConcurrentHashMap<>();
+        private final Map<String, Optional<Invoker>> readMethodMap = new ConcurrentHashMap<>();
+        private final Map<String, Optional<FieldAccessor>> fieldMap = new ConcurrentHashMap<>();
+
+        private ClassAccessor(Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * 循环向上转型查找DeclaredMethod, 匹配方法名+参数类型, 不含Object类
+         *
+         * @return 未找到时返回null
+         */
+        public Invoker method(String methodName, Class<?>... parameterTypes) {
+            MemberKey key = new MemberKey(methodName, parameterTypes);
+            return methodMap.computeIfAbsent(key, k -> {
+                for (Class<?> searchType = type; searchType != null && searchType != Object.class; searchType = searchType.getSuperclass()) {
+                    try {
+                        return Optional.of(new Invoker(searchType.getDeclaredMethod(methodName, parameterTypes)));
+                    } catch (NoSuchMethodException e) {
+                        // Method不在当前类定义,继续向上转型
+                    }
+                }
+                return Optional.empty();
+            }).orElse(null);
+        }
+
+        /**
+         * 循环向上转型查找DeclaredMethod, 只匹配方法名, 有多个同名方法时取第一个, 不含Object类
+         *
+         * @return 未找到时返回null
+         */
+        public Invoker methodByName(String methodName) {
+            return methodByNameMap.computeIfAbsent(methodName, k -> {
+                for (Class<?> searchType = type; searchType != null && searchType != Object.class; searchType = searchType.getSuperclass()) {
+                    for (Method method : searchType.getDeclaredMethods()) {
+                        if (method.getName().equals(methodName)) {
+                            return Optional.of(new Invoker(method));
+                        }
+                    }
+                }
+                return Optional.empty();
+            }).orElse(null);
+        }
+
+        /**
+         * 按实参类型匹配可访问的public方法, 规则与MethodUtils#getMatchingAccessibleMethod一致
+         *
+         * @return 未找到时返回null
+         */
+        public Invoker matchingMethod(String methodName, Class<?>... argTypes) {
+            MemberKey key = new MemberKey(methodName, argTypes);
+            return matchingMethodMap.computeIfAbsent(key, k -> {
+                Method method = MethodUtils.getMatchingAccessibleMethod(type, methodName, argTypes);
+                return method == null ? Optional.empty() : Optional.of(new Invoker(method));
+            }).orElse(null);
+        }
+
+        /**
+         * JavaBean属性的读方法, 规则与PropertyUtils#getSimpleProperty一致
+         *
+         * @return 未找到时返回null
+         */
+        public Invoker readMethod(String propertyName) {
+            return readMethodMap.computeIfAbsent(propertyName, k -> {
+                for (PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(type)) {
+                    // 索引属性、Map属性仍交给PropertyUtils处理
+                    if (propertyName.equals(descriptor.getName()) && descriptor.getClass() == PropertyDescriptor.class) {
+                        Method readMethod = descriptor.getReadMethod() == null ? null : MethodUtils.getAccessibleMethod(type, descriptor.getReadMethod());
+                        return readMethod == null ? Optional.empty() : Optional.of(new Invoker(readMethod));
+                    }
+                }
+                return Optional.empty();
+            }).orElse(null);
+        }
+
+        /**
+         * 循环向上转型查找DeclaredField, 不含Object类
+         *
+         * @return 未找到时返回null
+         */
+        public FieldAccessor field(String fieldName) {
+            return fieldMap.computeIfAbsent(fieldName, k -> {
+                for (Class<?> searchType = type; searchType != null && searchType != Object.class; searchType = searchType.getSuperclass()) {
+                    try {
+                        return Optional.of(new FieldAccessor(searchType.getDeclaredField(fieldName)));
+                    } catch (NoSuchFieldException e) {
+                        // Field不在当前类定义,继续向上转型
+                    }
+                }
+                return Optional.empty();
+            }).orElse(null);
+        }
+
+        @Override
+        public String toString() {
+            return "ClassAccessor{" + type.getName() + "}";
+        }
+    }
+
+    /**
+     * 方法调用器, 调用语义与Method#invoke一致:
+     * 参数不匹配抛IllegalArgumentException, 方法自身抛出的异常包装为InvocationTargetException
+     */
+    public static class Invoker {
+        private final Method method;
+        private final Class<?>[] parameterTypes;
+        /**
+         * (Object, Object[])Object
+         */
+        private final MethodHandle handle;
+
+        private Invoker(Method method) {
+            ReflectionUtil.makeAccessible(method);
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+            MethodHandle methodHandle;
+            try {
+                methodHandle = LOOKUP.unreflect(method);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+            if (Modifier.isStatic(method.getModifiers())) {
+                methodHandle = MethodHandles.dropArguments(methodHandle, 0, Object.class);
+            }
+            this.handle = methodHandle.asType(methodHandle.type().generic())
+                    .asSpreader(Object[].class, parameterTypes.length)
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+        }
+
+        public Object invoke(Object target, Object... args)
+                throws InvocationTargetException {
+            Object[] actualArgs = args == null ? new Object[0] : args;
+            if (actualArgs.length != parameterTypes.length) {
+                throw new IllegalArgumentException("wrong number of arguments");
+            }
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (!isInstance(parameterTypes[i], actualArgs[i])) {
+                    throw new IllegalArgumentException("argument type mismatch");
+                }
+            }
+            if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(target)) {
+                throw new IllegalArgumentException("object is not an instance of declaring class");
+            }
+            try {
+                return (Object) handle.invokeExact(target, actualArgs);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * 字段访问器, 无视private/protected修饰符
+     */
+    public static class FieldAccessor {
+        private final Field field;
+        /**
+         * (Object)Object
+         */
+        private final MethodHandle getter;
+        /**
+         * (Object, Object)void, final字段无法生成时为null, 退化为Field#set
+         */
+        private final MethodHandle setter;
+
+        private FieldAccessor(Field field) {
+            ReflectionUtil.makeAccessible(field);
+            this.field = field;
+            try {
+                MethodHandle getterHandle = LOOKUP.unreflectGetter(field);
+                if (Modifier.isStatic(field.getModifiers())) {
+                    getterHandle = MethodHandles.dropArguments(getterHandle, 0, Object.class);
+                }
+                this.getter = getterHandle.asType(MethodType.methodType(Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+            MethodHandle setterHandle = null;
+            if (!Modifier.isFinal(field.getModifiers())) {
+                try {
+                    setterHandle = LOOKUP.unreflectSetter(field);
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        setterHandle = MethodHandles.dropArguments(setterHandle, 0, Object.class);
+                    }
+                    setterHandle = setterHandle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+                } catch (IllegalAccessException e) {
+                    setterHandle = null;
+                }
+            }
+            this.setter = setterHandle;
+        }
+
+        public Object get(Object target) {
+            checkTarget(target);
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void set(Object target, Object value)
+                throws IllegalAccessException {
+            checkTarget(target);
+            if (setter == null) {
+                field.set(target, value);
+                return;
+            }
+            if (!isInstance(field.getType(), value)) {
+                throw new IllegalArgumentException("Can not set " + field.getType().getName() + " field " + field.getName() + " to " + value);
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        private void checkTarget(Object target) {
+            if (!Modifier.isStatic(field.getModifiers()) && !field.getDeclaringClass().isInstance(target)) {
+                throw new IllegalArgumentException("Can not access field " + field.getName() + " on " + target);
+            }
+        }
+    }
+
+    /**
+     * 参数是否可以传给该类型, 与Method#invoke一致, 基本类型允许拆箱后宽化
+     */
+    private static boolean isInstance(Class<?> parameterType, Object arg) {
+        if (!parameterType.isPrimitive()) {
+            return arg == null || parameterType.isInstance(arg);
+        }
+        if (arg == null) {
+            return false;
+        }
+        Class<?> argType = MethodUtils.getPrimitiveType(arg.getClass());
+        if (argType == null) {
+            return false;
+        }
+        if (argType == parameterType) {
+            return true;
+        }
+        if (parameterType == double.class) {
+            return argType == float.class || argType == long.class || argType == int.class || argType == char.class || argType == short.class || argType == byte.class;
+        }
+        if (parameterType == float.class) {
+            return argType == long.class || argType == int.class || argType == char.class || argType == short.class || argType == byte.class;
+        }
+        if (parameterType == long.class) {
+            return argType == int.class || argType == char.class || argType == short.class || argType == byte.class;
+        }
+        if (parameterType == int.class) {
+            return argType == char.class || argType == short.class || argType == byte.class;
+        }
+        if (parameterType == short.class) {
+            return argType == byte.class;
+        }
+        return false;
+    }
+
+    /**
+     * 成员名+参数类型
+     */
+    private static class MemberKey {
+        private final String name;
+        private final Class<?>[] types;
+        private final int hash;
+
+        MemberKey(String name, Class<?>[] types) {
+            this.name = name;
+            this.types = types == null ? new Class<?>[0] : types.clone();
+            this.hash = 31 * name.hashCode() + Arrays.hashCode(this.types);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MemberKey)) {
+                return false;
+            }
+            MemberKey that = (MemberKey) o;
+            return name.equals(that.name) && Arrays.equals(types, that.types);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
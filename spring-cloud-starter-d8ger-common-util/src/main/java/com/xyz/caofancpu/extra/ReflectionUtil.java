@@ -67,26 +67,20 @@ public class ReflectionUtil {
      * 直接读取对象属性值, 无视private/protected修饰符, 不经过getter函数.
      */
     public static Object getFieldValue(final Object obj, final String fieldName) {
-        Field field = getAccessibleField(obj, fieldName);
+        AccessorRegistry.FieldAccessor field = getFieldAccessor(obj, fieldName);
 
         if (field == null) {
             throw new IllegalArgumentException("Could not find field ["
                     + fieldName + "] on target [" + obj + "]");
         }
-        Object result = null;
-        try {
-            result = field.get(obj);
-        } catch (IllegalAccessException e) {
-            log.error("不可能抛出的异常{}", e.getMessage());
-        }
-        return result;
+        return field.get(obj);
     }
 
     /**
      * 直接设置对象属性值, 无视private/protected修饰符, 不经过setter函数.
      */
     public static void setFieldValue(final Object obj, final String fieldName, final Object value) {
-        Field field = getAccessibleField(obj, fieldName);
+        AccessorRegistry.FieldAccessor field = getFieldAccessor(obj, fieldName);
 
         if (field == null) {
             throw new IllegalArgumentException("Could not find field [" + fieldName + "] on target [" + obj + "]");
@@ -100,21 +94,21 @@ public class ReflectionUtil {
 
     /**
      * 直接调用对象方法, 无视private/protected修饰符.
-     * 用于一次性调用的情况，否则应使用getAccessibleMethod()函数获得Method后反复调用. 同时匹配方法名+参数类型，
+     * 同时匹配方法名+参数类型, 方法查找结果按类缓存
      */
     public static Object invokeMethod(
             final Object obj,
             final String methodName,
             final Class<?>[] parameterTypes,
             final Object[] args) {
-        Method method = getAccessibleMethod(obj, methodName, parameterTypes);
-        if (method == null) {
+        AccessorRegistry.Invoker invoker = getMethodInvoker(obj, methodName, parameterTypes);
+        if (invoker == null) {
             throw new IllegalArgumentException("Could not find method ["
                     + methodName + "] on target [" + obj + "]");
         }
 
         try {
-            return method.invoke(obj, args);
+            return invoker.invoke(obj, args);
         } catch (Exception e) {
             throw convertReflectionExceptionToUnchecked(e);
         }
@@ -122,46 +116,63 @@ public class ReflectionUtil {
 
     /**
      * 直接调用对象方法, 无视private/protected修饰符，
-     * 用于一次性调用的情况，否则应使用getAccessibleMethodByName()函数获得Method后反复调用.
-     * 只匹配函数名，如果有多个同名函数调用第一个。
+     * 只匹配函数名，如果有多个同名函数调用第一个, 方法查找结果按类缓存
      */
     public static Object invokeMethodByName(
             final Object obj,
             final String methodName, final Object[] args) {
-        Method method = getAccessibleMethodByName(obj, methodName);
-        if (method == null) {
+        Validate.notNull(obj, "object can't be null");
+        Validate.notBlank(methodName, "methodName can't be blank");
+        AccessorRegistry.Invoker invoker = AccessorRegistry.forClass(obj.getClass()).methodByName(methodName);
+        if (invoker == null) {
             throw new IllegalArgumentException("Could not find method ["
                     + methodName + "] on target [" + obj + "]");
         }
 
         try {
-            return method.invoke(obj, args);
+            return invoker.invoke(obj, args);
         } catch (Exception e) {
             throw convertReflectionExceptionToUnchecked(e);
         }
     }
 
     /**
-     * 循环向上转型, 获取对象的DeclaredField, 并强制设置为可访问.
+     * 循环向上转型, 获取对象的字段访问器, 查找结果按类缓存
      * <p>
      * 如向上转型到Object仍无法找到, 返回null.
      */
-    public static Field getAccessibleField(
+    public static AccessorRegistry.FieldAccessor getFieldAccessor(
             final Object obj,
             final String fieldName) {
         Validate.notNull(obj, "object can't be null");
         Validate.notBlank(fieldName, "fieldName can't be blank");
-        for (Class<?> superClass = obj.getClass(); superClass != Object.class; superClass = superClass
-                .getSuperclass()) {
-            try {
-                Field field = superClass.getDeclaredField(fieldName);
-                makeAccessible(field);
-                return field;
-            } catch (NoSuchFieldException e) {// NOSONAR
-                // Field不在当前类定义,继续向上转型
-            }
-        }
-        return null;
+        return AccessorRegistry.forClass(obj.getClass()).field(fieldName);
+    }
+
+    /**
+     * 循环向上转型, 获取对象方法的调用器, 匹配函数名+参数类型, 查找结果按类缓存
+     * <p>
+     * 如向上转型到Object仍无法找到, 返回null.
+     */
+    public static AccessorRegistry.Invoker getMethodInvoker(
+            final Object obj,
+            final String methodName,
+            final Class<?>... parameterTypes) {
+        Validate.notNull(obj, "object can't be null");
+        Validate.notBlank(methodName, "methodName can't be blank");
+        return AccessorRegistry.forClass(obj.getClass()).method(methodName, parameterTypes);
+    }
+
+    /**
+     * 循环向上转型, 获取对象的DeclaredField, 并强制设置为可访问.
+     * <p>
+     * 如向上转型到Object仍无法找到, 返回null.
+     */
+    public static Field getAccessibleField(
+            final Object obj,
+            final String fieldName) {
+        AccessorRegistry.FieldAccessor field = getFieldAccessor(obj, fieldName);
+        return field == null ? null : field.getField();
     }
 
     /**
@@ -175,21 +186,8 @@ public class ReflectionUtil {
             final Object obj,
             final String methodName,
             final Class<?>... parameterTypes) {
-        Validate.notNull(obj, "object can't be null");
-        Validate.notBlank(methodName, "methodName can't be blank");
-
-        for (Class<?> searchType = obj.getClass();
-             searchType != Object.class;
-             searchType = searchType.getSuperclass()) {
-            try {
-                Method method = searchType.getDeclaredMethod(methodName, parameterTypes);
-                makeAccessible(method);
-                return method;
-            } catch (NoSuchMethodException e) {
-                // Method不在当前类定义,继续向上转型
-            }
-        }
-        return null;
+        AccessorRegistry.Invoker invoker = getMethodInvoker(obj, methodName, parameterTypes);
+        return invoker == null ? null : invoker.getMethod();
     }
 
     /**
@@ -203,18 +201,8 @@ public class ReflectionUtil {
             final String methodName) {
         Validate.notNull(obj, "object can't be null");
         Validate.notBlank(methodName, "methodName can't be blank");
-
-        for (Class<?> searchType = obj.getClass(); searchType != Object.class; searchType = searchType
-                .getSuperclass()) {
-            Method[] methods = searchType.getDeclaredMethods();
-            for (Method method : methods) {
-                if (method.getName().equals(methodName)) {
-                    makeAccessible(method);
-                    return method;
-                }
-            }
-        }
-        return null;
+        AccessorRegistry.Invoker invoker = AccessorRegistry.forClass(obj.getClass()).methodByName(methodName);
+        return invoker == null ? null : invoker.getMethod();
     }
 
     /**
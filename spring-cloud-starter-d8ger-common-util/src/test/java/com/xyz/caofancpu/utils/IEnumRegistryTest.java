@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.utils;
+
+import com.xyz.caofancpu.constant.IEnum;
+import com.xyz.caofancpu.constant.IEnumRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * IEnum查找表
+ *
+ * @author D8GER
+ */
+@RunWith(JUnit4.class)
+public class IEnumRegistryTest {
+
+    @Test
+    public void denseIndex() {
+        IEnumRegistry.EnumIndex<Level> index = IEnumRegistry.forEnum(Level.class);
+        Assert.assertSame(index, IEnumRegistry.forEnum(Level.class));
+        Assert.assertTrue(index.isIEnum());
+        Assert.assertEquals(Level.LOW, index.ofValue(1));
+        Assert.assertNull(index.ofValue(0));
+        Assert.assertNull(index.ofValue(Integer.MIN_VALUE));
+        // 取值重复时以最后声明的常量为准
+        Assert.assertEquals(Level.HIGH_ALIAS, index.ofValue(3));
+        Assert.assertEquals(Level.MIDDLE, index.ofName("中"));
+        Assert.assertEquals(Level.LOW, index.ofViewName("low"));
+    }
+
+    @Test
+    public void sparseIndex() {
+        IEnumRegistry.EnumIndex<Code> index = IEnumRegistry.forEnum(Code.class);
+        Assert.assertEquals(Code.MIN, index.ofValue(Integer.MIN_VALUE));
+        Assert.assertEquals(Code.ZERO, index.ofValue(0));
+        Assert.assertEquals(Code.MAX, index.ofValue(Integer.MAX_VALUE));
+        Assert.assertNull(index.ofValue(1));
+    }
+
+    @Test
+    public void match() {
+        IEnumRegistry.EnumIndex<Level> index = IEnumRegistry.forEnum(Level.class);
+        Assert.assertEquals(Level.LOW, index.match("1"));
+        Assert.assertEquals(Level.LOW, index.match("+1"));
+        Assert.assertEquals(Level.MIDDLE, index.match("中"));
+        Assert.assertEquals(Level.LOW, index.match("low"));
+        Assert.assertNull(index.match("1.0"));
+        Assert.assertNull(index.match("-"));
+        Assert.assertNull(index.match("99999999999"));
+        // value命中LOW, name命中后声明的NUMERIC, 取后声明者
+        Assert.assertEquals(Level.NUMERIC, index.match("2"));
+        Assert.assertEquals(Code.MIN, IEnumRegistry.forEnum(Code.class).match(String.valueOf(Integer.MIN_VALUE)));
+        Assert.assertFalse(IEnumRegistry.forEnum(Plain.class).isIEnum());
+        Assert.assertNull(IEnumRegistry.forEnum(Plain.class).match("0"));
+    }
+
+    enum Level implements IEnum {
+        LOW(1, "低", "low"),
+        MIDDLE(2, "中", "middle"),
+        HIGH(3, "高", "high"),
+        HIGH_ALIAS(3, "高级", "high"),
+        NUMERIC(10, "2", "numeric"),
+        ;
+
+        private final Integer value;
+        private final String name;
+        private final String viewName;
+
+        Level(Integer value, String name, String viewName) {
+            this.value = value;
+            this.name = name;
+            this.viewName = viewName;
+        }
+
+        @Override
+        public Integer getValue() {
+            return value;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getViewName() {
+            return viewName;
+        }
+    }
+
+    enum Code implements IEnum {
+        MIN(Integer.MIN_VALUE),
+        ZERO(0),
+        MAX(Integer.MAX_VALUE),
+        ;
+
+        private final Integer value;
+
+        Code(Integer value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer getValue() {
+            return value;
+        }
+
+        @Override
+        public String getName() {
+            return name();
+        }
+    }
+
+    enum Plain {
+        A
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.utils;
+
+import com.xyz.caofancpu.extra.AccessorRegistry;
+import com.xyz.caofancpu.extra.ReflectionUtil;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * 反射工具类, 访问器缓存
+ *
+ * @author D8GER
+ */
+@RunWith(JUnit4.class)
+public class ReflectionUtilTest {
+
+    @Test
+    public void getterSetter() {
+        Child child = new Child();
+        ReflectionUtil.invokeSetter(child, "name", "D8GER");
+        ReflectionUtil.invokeSetter(child, "age", 18);
+        // 与Method#invoke一致, 允许基本类型宽化
+        ReflectionUtil.invokeSetter(child, "score", 99);
+        Assert.assertEquals("D8GER", ReflectionUtil.invokeGetter(child, "name"));
+        Assert.assertEquals(18, ReflectionUtil.invokeGetter(child, "age"));
+        Assert.assertEquals(99L, ReflectionUtil.invokeGetter(child, "score"));
+        Assert.assertSame(AccessorRegistry.forClass(Child.class).method("getName"), AccessorRegistry.forClass(Child.class).method("getName"));
+    }
+
+    @Test
+    public void fieldValue() {
+        Child child = new Child();
+        ReflectionUtil.setFieldValue(child, "secret", "hidden");
+        ReflectionUtil.setFieldValue(child, "id", 7);
+        Assert.assertEquals("hidden", ReflectionUtil.getFieldValue(child, "secret"));
+        Assert.assertEquals(7, ReflectionUtil.getFieldValue(child, "id"));
+        Assert.assertNull(ReflectionUtil.getAccessibleField(child, "missing"));
+    }
+
+    @Test
+    public void exceptions() {
+        Child child = new Child();
+        try {
+            ReflectionUtil.invokeGetter(child, "missing");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Could not find method"));
+        }
+        try {
+            ReflectionUtil.invokeSetter(child, "age", "18");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 参数类型不匹配
+        }
+        try {
+            ReflectionUtil.invokeGetter(child, "broken");
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        }
+    }
+
+    public static class Parent {
+        private int id;
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Child extends Parent {
+        private String secret;
+        private Integer age;
+        private long score;
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(Integer age) {
+            this.age = age;
+        }
+
+        long getScore() {
+            return score;
+        }
+
+        void setScore(long score) {
+            this.score = score;
+        }
+
+        public String getBroken() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
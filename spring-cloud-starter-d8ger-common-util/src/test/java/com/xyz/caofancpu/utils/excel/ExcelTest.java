@@ -23,18 +23,28 @@ import com.xyz.caofancpu.core.JSONUtil;
 import com.xyz.caofancpu.excel.core.PoiBook;
 import com.xyz.caofancpu.excel.core.PoiColumns;
 import com.xyz.caofancpu.excel.core.PoiSheet;
+import com.xyz.caofancpu.excel.core.PoiStreamTable;
 import com.xyz.caofancpu.excel.core.PoiStyle;
 import com.xyz.caofancpu.excel.core.PoiTable3;
 import com.xyz.caofancpu.excel.util.PoiUtil;
 import com.xyz.caofancpu.extra.NormalUseForTestUtil;
 import com.xyz.caofancpu.utils.excel.domain.LOLAnalysisResp;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Excel样例
@@ -106,6 +116,35 @@ public class ExcelTest {
         PoiUtil.mergedRegion(poiBook, poiSheet, 24, 2, 25, 6, "LOL.S10冠军", greenFont);
         String excelSaveFullPath = baseDirFullPath + File.separator + poiBook.getFileName();
         FileUtil.saveExcelFile(excelSaveFullPath, poiBook.buildWorkbook());
+        // 相同样式只创建一次
+        NormalUseForTestUtil.out(poiBook.getStyleCache().toString());
+        Assert.assertTrue(poiBook.getStyleCache().getHitCount() > poiBook.getStyleCache().getMissCount());
+        Assert.assertEquals(poiBook.getStyleCache().getMissCount(), poiBook.getStyleCache().getStyleCount());
+    }
+
+    /**
+     * 流式导出: 分页加载数据, 直接写入输出流
+     */
+    @Test
+    public void streamExcel()
+            throws Exception {
+        int total = 10000;
+        int pageSize = 1000;
+        PoiBook poiBook = PoiBook.newSXSSFBook("流式导出", 100);
+        PoiSheet poiSheet = poiBook.addSheet(new PoiSheet("帝八哥"));
+        PoiStreamTable<Integer> table = poiSheet.addTable(PoiStreamTable.<Integer>ofPage(pageNum -> pageNum * pageSize > total ? Collections.emptyList()
+                : IntStream.rangeClosed((pageNum - 1) * pageSize + 1, pageNum * pageSize).boxed().collect(Collectors.toList())))
+                .setFlushRowInterval(500);
+        table.addColumn1(item -> item, "编号");
+        table.addColumn1(item -> "D8GER-" + item, "名称");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        poiBook.writeWorkbook(out);
+        try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = workbook.getSheetAt(0);
+            Assert.assertEquals("编号", sheet.getRow(0).getCell(0).getStringCellValue());
+            Assert.assertEquals(total, sheet.getLastRowNum());
+            Assert.assertEquals(total, (int) sheet.getRow(total).getCell(0).getNumericCellValue());
+        }
     }
 
 
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.utils.excel;
+
+import com.xyz.caofancpu.excel.xml.PoiXmlConfigManager;
+import com.xyz.caofancpu.excel.xml.PoiXmlContext;
+import com.xyz.caofancpu.excel.xml.config.TableConfig;
+import com.xyz.caofancpu.excel.xml.config.WorkbookConfig;
+import com.xyz.caofancpu.excel.xml.config.field.FieldConfig;
+import com.xyz.caofancpu.excel.xml.config.field.IFieldConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XML模板表达式基准: 解释执行 vs 预编译执行
+ * 对10万行数据逐行求值模板中每个字段的name/eval/filter表达式, 与PoiXmlBuilder写单元格时的求值过程一致
+ * HSSF单个sheet最多65536行, 因此只基准表达式求值部分, 不生成Workbook
+ * 非单元测试, 直接运行main方法
+ *
+ * @author D8GER
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpressionCompileBenchmark {
+
+    private static final int TOTAL_ROWS = 100_000;
+
+    private static final String TEMPLATE = "<excel id=\"benchmark\" name=\"英雄{{title}}\">"
+            + "<sheet name=\"英雄\">"
+            + "<table data=\"heroes\" item=\"hero\">"
+            + "<field name=\"hero.name\" title=\"名称\"/>"
+            + "<field name=\"hero.score\" title=\"分数\" eval=\"$$ * 1.5\" filter=\"showScore &amp;&amp; (hero.name != null)\"/>"
+            + "<field name=\"hero.score\" title=\"等级\" eval=\"($$ % 3 == 0) ? 'A' : 'B'\"/>"
+            + "<field name=\"hero.name.length()\" title=\"名称长度\" eval=\"$$ + 1\"/>"
+            + "</table>"
+            + "</sheet>"
+            + "</excel>";
+
+    private List<ExpressionCompilerTest.Hero> heroes;
+    private List<FieldConfig> fields;
+    private WorkbookConfig config;
+
+    public static void main(String[] args)
+            throws Exception {
+        new Runner(new OptionsBuilder().include(ExpressionCompileBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        config = new PoiXmlConfigManager().loadFromStr("benchmark", TEMPLATE);
+        fields = new ArrayList<>();
+        for (IFieldConfig field : ((TableConfig) config.getSheets().get(0).getAreaList().get(0)).getFields()) {
+            fields.add((FieldConfig) field);
+        }
+        heroes = new ArrayList<>(TOTAL_ROWS);
+        for (int i = 0; i < TOTAL_ROWS; i++) {
+            heroes.add(new ExpressionCompilerTest.Hero("D8GER-" + i, i % 100));
+        }
+    }
+
+    @Benchmark
+    public void interpreted(Blackhole blackhole) {
+        evaluate(new PoiXmlContext(), blackhole);
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        PoiXmlContext context = new PoiXmlContext();
+        context.useCompiledExpressions(config.getCompiledExpressions(), config.getCompiledFormats());
+        evaluate(context, blackhole);
+    }
+
+    private void evaluate(PoiXmlContext context, Blackhole blackhole) {
+        context.put("showScore", true);
+        context.beginStack();
+        for (ExpressionCompilerTest.Hero hero : heroes) {
+            context.put("hero", hero);
+            for (FieldConfig field : fields) {
+                if (field.getFilter() != null && !Boolean.TRUE.equals(context.get(field.getFilter()))) {
+                    continue;
+                }
+                Object value = context.get(field.getName());
+                if (field.getEval() != null) {
+                    value = context.get(field.getEval(), value);
+                }
+                blackhole.consume(value);
+            }
+        }
+        context.endStack();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.utils.excel;
+
+import com.xyz.caofancpu.excel.xml.CompiledExpression;
+import com.xyz.caofancpu.excel.xml.ExpressionCompiler;
+import com.xyz.caofancpu.excel.xml.FunctionManager;
+import com.xyz.caofancpu.excel.xml.PoiXmlBuilder;
+import com.xyz.caofancpu.excel.xml.PoiXmlConfigManager;
+import com.xyz.caofancpu.excel.xml.PoiXmlContext;
+import com.xyz.caofancpu.excel.xml.config.WorkbookConfig;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编译执行与解释执行的结果一致性
+ *
+ * @author D8GER
+ */
+@RunWith(JUnit4.class)
+public class ExpressionCompilerTest {
+
+    private static final List<String> EXPRESSIONS = Arrays.asList(
+            "a + b", "a - b", "a * b", "a / b", "a % 3", "(a + b) * 2", "-a", "a | b", "a & b",
+            "a == 3", "a != b", "a >= b", "a <= b", "a > b", "a < b", "hero.name == 'D8GER'",
+            "flag && a > 1", "flag || a > 100", "!flag", "a > 1 ? 'big' : 'small'", "(a > 100) ? 'big' : 'small'",
+            "'abc'", "'it\\'s'", "$$", "$$.name", "true", "false", "null", "missing", "missing.name", "12", "1.5",
+            "hero.name", "hero.getName()", "hero.name.length()", "hero.tags.get(0)", "hero.tags.get('1')",
+            "hero.map.get('k')", "hero.name.concat('-x')", "hero.name.concat($$.name)", "hero.score / 2",
+            "Integer.valueOf('12')", "Integer.valueOf('12').longValue()", "Integer.MAX_VALUE",
+            "hero.unknown", "Unknown.call()", "hero.name.", "a +", "'abc"
+    );
+
+    @BeforeClass
+    public static void beforeClass() {
+        FunctionManager.initClass("Integer", Integer.class);
+    }
+
+    @Test
+    public void compiledEqualsInterpreted() {
+        PoiXmlContext interpreted = newContext();
+        PoiXmlContext compiled = newContext();
+        compiled.useCompiledExpressions(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        Hero param = new Hero("PARAM", 1);
+        for (String eval : EXPRESSIONS) {
+            Assert.assertEquals(eval, evaluate(interpreted, eval, param), evaluate(compiled, eval, param));
+            // 同一编译结果重复求值
+            Assert.assertEquals(eval, evaluate(interpreted, eval, param), evaluate(compiled, eval, param));
+        }
+        String format = "名称:{{hero.name}}, 合计:{{a + b}}, 缺失:{{missing}}";
+        Assert.assertEquals(interpreted.formatStr(format), compiled.formatStr(format));
+    }
+
+    @Test
+    public void compileFallback() {
+        CompiledExpression expression = ExpressionCompiler.compile("hero.name");
+        Assert.assertTrue(expression.isCompiled());
+        // 字符串未闭合, 编译失败后退化为解释执行
+        CompiledExpression broken = ExpressionCompiler.compile("'abc");
+        Assert.assertFalse(broken.isCompiled());
+    }
+
+    @Test
+    public void templateCompiledOnce() {
+        String xml = "<excel id=\"compiled\" name=\"英雄{{title}}\">"
+                + "<sheet name=\"英雄\">"
+                + "<table data=\"heroes\" item=\"hero\">"
+                + "<field name=\"hero.name\" title=\"名称\"/>"
+                + "<field name=\"hero.score\" title=\"分数\" eval=\"$$ * 2\"/>"
+                + "</table>"
+                + "</sheet>"
+                + "</excel>";
+        WorkbookConfig config = new PoiXmlConfigManager().loadFromStr("compiled", xml);
+        Assert.assertTrue(config.getCompiledExpressions().containsKey("hero.name"));
+        Assert.assertTrue(config.getCompiledExpressions().containsKey("$$ * 2"));
+        int compiledCount = config.getCompiledExpressions().size();
+
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("title", "列表");
+            params.put("heroes", Arrays.asList(new Hero("D8GER", 3), new Hero("NEO", 4)));
+            PoiXmlBuilder builder = new PoiXmlBuilder(config, params).build();
+            Assert.assertEquals("英雄列表", builder.getFileName());
+            Sheet sheet = builder.getWorkbook().getSheetAt(0);
+            Assert.assertEquals("D8GER", sheet.getRow(1).getCell(0).getStringCellValue());
+            Assert.assertEquals("8.0", sheet.getRow(2).getCell(1).getStringCellValue());
+        }
+        // 多次导出不再新增编译结果
+        Assert.assertEquals(compiledCount, config.getCompiledExpressions().size());
+    }
+
+    private static PoiXmlContext newContext() {
+        PoiXmlContext context = new PoiXmlContext();
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", 3);
+        values.put("b", 2);
+        values.put("flag", true);
+        Hero hero = new Hero("D8GER", 9.5);
+        hero.setTags(Arrays.asList("top", "mid"));
+        hero.setMap(Collections.singletonMap("k", "v"));
+        values.put("hero", hero);
+        context.beginStack(values);
+        return context;
+    }
+
+    /**
+     * 求值结果, 异常时返回异常类型
+     */
+    private static Object evaluate(PoiXmlContext context, String eval, Object param) {
+        try {
+            return context.get(eval, param);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    public static class Hero {
+        private final String name;
+        private final double score;
+        private List<String> tags;
+        private Map<String, String> map;
+
+        public Hero(String name, double score) {
+            this.name = name;
+            this.score = score;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public Map<String, String> getMap() {
+            return map;
+        }
+
+        public void setMap(Map<String, String> map) {
+            this.map = map;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Hero && Objects.equals(name, ((Hero) o).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(name);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.utils.excel;
+
+import com.xyz.caofancpu.excel.core.PoiBook;
+import com.xyz.caofancpu.excel.core.PoiSheet;
+import com.xyz.caofancpu.excel.core.PoiStreamTable;
+import com.xyz.caofancpu.extra.NormalUseForTestUtil;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * 流式导出基准: 导出100万行, 输出耗时与堆内存峰值
+ * 非单元测试, 直接运行main方法, 建议加上 -Xmx256m 验证内存占用不随行数增长
+ *
+ * @author D8GER
+ */
+public class PoiStreamExportBenchmark {
+
+    private static final int TOTAL_ROWS = 1_000_000;
+
+    public static void main(String[] args)
+            throws Exception {
+        int totalRows = args.length > 0 ? Integer.parseInt(args[0]) : TOTAL_ROWS;
+        System.gc();
+        HeapSampler sampler = new HeapSampler();
+        sampler.start();
+        long start = System.nanoTime();
+
+        PoiBook poiBook = PoiBook.newSXSSFBook("流式导出基准", 100);
+        PoiSheet poiSheet = poiBook.addSheet(new PoiSheet("benchmark"));
+        poiSheet.addTable(new PoiStreamTable<Row>(IntStream.range(0, totalRows).mapToObj(Row::new)) {{
+            addColumn1(Row::getId, "编号");
+            addColumn1(Row::getName, "名称");
+            addColumn1(Row::getScore, "分数");
+        }}.setFlushRowInterval(1000));
+        poiBook.writeWorkbook(NullOutputStream.NULL_OUTPUT_STREAM);
+
+        long costMillis = (System.nanoTime() - start) / 1_000_000;
+        sampler.interrupt();
+        sampler.join();
+        NormalUseForTestUtil.out("导出行数: " + totalRows + ", 耗时: " + costMillis + "ms, 堆内存峰值: " + sampler.getPeakBytes() / 1024 / 1024 + "MB");
+    }
+
+    /**
+     * 每10ms采样一次已用堆内存
+     */
+    private static class HeapSampler extends Thread {
+        private final AtomicLong peakBytes = new AtomicLong();
+
+        HeapSampler() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!isInterrupted()) {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                peakBytes.accumulateAndGet(used, Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long getPeakBytes() {
+            return peakBytes.get();
+        }
+    }
+
+    private static class Row {
+        private final int id;
+
+        Row(int id) {
+            this.id = id;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        String getName() {
+            return "D8GER-" + id;
+        }
+
+        double getScore() {
+            return id % 100 / 10.0;
+        }
+    }
+}
@@ -53,6 +53,21 @@ public final class D8gerConstants {
      */
     public static final String D8_REDIS_ENABLE = "spring.cloud.d8ger.redis.enable";
 
+    /**
+     * Redis近端缓存开关, 默认false关闭
+     */
+    public static final String D8_REDIS_NEAR_CACHE_ENABLE = "spring.cloud.d8ger.redis.near-cache-enable";
+
+    /**
+     * Redis连接池统计开关, 默认false关闭
+     */
+    public static final String D8_REDIS_POOL_METRICS_ENABLE = "spring.cloud.d8ger.redis.pool-metrics-enable";
+
+    /**
+     * Redis连接池自适应调节开关, 默认false关闭, 需同时开启连接池统计
+     */
+    public static final String D8_REDIS_POOL_AUTO_SIZE_ENABLE = "spring.cloud.d8ger.redis.pool-auto-size-enable";
+
     /**
      * Mail开关, 默认true打开
      */
@@ -73,6 +88,11 @@ public final class D8gerConstants {
      */
     public static final String D8_MQ_CONSUMER_ENABLE = "spring.cloud.d8ger.mq.consumer.enable";
 
+    /**
+     * 接口统计开关, 默认true打开
+     */
+    public static final String D8_METRICS_ENABLE = "spring.cloud.d8ger.metrics.enable";
+
     /**
      * RestTemplate属性配置前缀
      */
@@ -103,6 +123,11 @@ public final class D8gerConstants {
      */
     public static final String MQ_PROPERTY_PREFIX = "spring.cloud.d8ger.mq";
 
+    /**
+     * 接口统计属性配置前缀
+     */
+    public static final String METRICS_PROPERTY_PREFIX = "spring.cloud.d8ger.metrics";
+
     private D8gerConstants() {
         throw new AssertionError("Must not instantiate constant utility class");
     }
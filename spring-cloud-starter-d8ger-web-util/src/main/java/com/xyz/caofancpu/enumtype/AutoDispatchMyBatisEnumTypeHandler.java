@@ -18,7 +18,7 @@
 
 package com.xyz.caofancpu.enumtype;
 
-import com.xyz.caofancpu.constant.IEnum;
+import com.xyz.caofancpu.constant.IEnumRegistry;
 import com.xyz.caofancpu.enumtype.converter.BaseMybatisEnumTypeHandler;
 import com.xyz.caofancpu.result.GlobalErrorInfoRuntimeException;
 import lombok.extern.slf4j.Slf4j;
@@ -46,7 +46,7 @@ public class AutoDispatchMyBatisEnumTypeHandler<E extends Enum<E>> extends BaseT
         if (Objects.isNull(enumType)) {
             throw new GlobalErrorInfoRuntimeException("参数非法, 类型不能为空");
         }
-        if (IEnum.class.isAssignableFrom(enumType)) {
+        if (IEnumRegistry.forEnum(enumType).isIEnum()) {
             typeHandler = new BaseMybatisEnumTypeHandler<>(enumType);
             log.info("创建枚举类型: [{}]的自定义DB转换器: [{}]", enumType.getSimpleName(), typeHandler.getClass().getSimpleName());
         } else {
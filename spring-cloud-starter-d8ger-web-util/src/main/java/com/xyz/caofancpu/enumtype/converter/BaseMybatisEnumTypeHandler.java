@@ -19,6 +19,7 @@
 package com.xyz.caofancpu.enumtype.converter;
 
 import com.xyz.caofancpu.constant.IEnum;
+import com.xyz.caofancpu.constant.IEnumRegistry;
 import com.xyz.caofancpu.result.GlobalErrorInfoRuntimeException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.type.BaseTypeHandler;
@@ -32,6 +33,7 @@ import java.util.Objects;
 
 /**
  * MyBatis枚举类型转换处理器
+ * 按value查找走IEnumRegistry预建的查找表, 逐行映射不再线性扫描枚举常量
  *
  * @author D8GER
  */
@@ -39,17 +41,14 @@ import java.util.Objects;
 public class BaseMybatisEnumTypeHandler<E extends Enum<E>> extends BaseTypeHandler<E> {
 
     private final Class<E> type;
-    private final E[] enums;
+    private final IEnumRegistry.EnumIndex<E> enumIndex;
 
     public BaseMybatisEnumTypeHandler(Class<E> type) {
         if (Objects.isNull(type)) {
             throw new IllegalArgumentException("Type argument cannot be null");
         }
         this.type = type;
-        this.enums = type.getEnumConstants();
-        if (Objects.isNull(this.enums)) {
-            throw new IllegalArgumentException(type.getSimpleName() + " does not represent an enum type.");
-        }
+        this.enumIndex = IEnumRegistry.forEnum(type);
     }
 
     @Override
@@ -80,16 +79,7 @@ public class BaseMybatisEnumTypeHandler<E extends Enum<E>> extends BaseTypeHandl
     }
 
     private E valueOf(int value) {
-        E resultEnum = null;
-        for (E enumConstant : enums) {
-            if (!(enumConstant instanceof IEnum)) {
-                continue;
-            }
-            IEnum temp = (IEnum) enumConstant;
-            if (value == temp.getValue()) {
-                resultEnum = enumConstant;
-            }
-        }
+        E resultEnum = enumIndex.ofValue(value);
         if (Objects.isNull(resultEnum)) {
             log.error("枚举转换异常: 值[{}]无法转换为枚举类[{}]", value, type.getSimpleName());
             throw new GlobalErrorInfoRuntimeException("Cannot convert " + value + " to " + type.getSimpleName() + " by enum value.");
@@ -24,7 +24,7 @@ import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
-import com.xyz.caofancpu.constant.IEnum;
+import com.xyz.caofancpu.constant.IEnumRegistry;
 import com.xyz.caofancpu.result.GlobalErrorInfoRuntimeException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -37,6 +37,7 @@ import java.util.Objects;
  * 请求字段对应枚举类型序列化处理器
  * 如果发现是自定义IEnum的子类, 走自定义枚举转换: value -> name -> viewName
  * 否则, 走默认枚举转换: Enum.original() -> Enum.name(), 参见: StringToEnumIgnoringCaseConverterFactory
+ * 上下文转换器按枚举类缓存, 自定义枚举转换走IEnumRegistry预建的查找表
  *
  * @author D8GER
  */
@@ -44,13 +45,23 @@ import java.util.Objects;
 public class EnumRequestJSONConverter<E extends Enum<E>> extends JsonDeserializer<E> implements
         ContextualDeserializer {
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final ClassValue<EnumRequestJSONConverter<?>> CONVERTER_CACHE = new ClassValue<EnumRequestJSONConverter<?>>() {
+        @Override
+        protected EnumRequestJSONConverter<?> computeValue(Class<?> type) {
+            return new EnumRequestJSONConverter(type);
+        }
+    };
+
     private Class<E> enumType;
+    private IEnumRegistry.EnumIndex<E> enumIndex;
 
     public EnumRequestJSONConverter() {
     }
 
     private EnumRequestJSONConverter(Class<E> enumType) {
         this.enumType = enumType;
+        this.enumIndex = IEnumRegistry.forEnum(enumType);
     }
 
     @Override
@@ -61,44 +72,24 @@ public class EnumRequestJSONConverter<E extends Enum<E>> extends JsonDeserialize
             log.warn("请求传参枚举字段为空, 则目标枚举类[{}]转换为null", this.enumType.getSimpleName());
             return null;
         }
-        return IEnum.class.isAssignableFrom(enumType) ? this.customEnumParse(enumType, source) : this.originEnumParse(enumType, source);
+        return enumIndex.isIEnum() ? this.customEnumParse(source) : this.originEnumParse(enumType, source);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public JsonDeserializer<?> createContextual(DeserializationContext deserializationContext, BeanProperty beanProperty)
             throws JsonMappingException {
         Class<?> rawClass = deserializationContext.getContextualType().getRawClass();
-        return new EnumRequestJSONConverter(rawClass);
+        return CONVERTER_CACHE.get(rawClass);
     }
 
     /**
      * 转换顺序: value -> name -> viewName
      *
-     * @param enumType
      * @param source
      * @return
      */
-    private E customEnumParse(Class<E> enumType, String source) {
-        Integer value = null;
-        E resultEnum = null;
-        try {
-            value = Integer.parseInt(source);
-        } catch (Exception e) {
-            // do nothing
-        }
-        E[] enumConstants = enumType.getEnumConstants();
-        for (E enumConstant : enumConstants) {
-            if (!(enumConstant instanceof IEnum)) {
-                continue;
-            }
-            IEnum temp = (IEnum) enumConstant;
-            if ((Objects.nonNull(value) && value.equals(temp.getValue())
-                    || source.equals(temp.getName())
-                    || source.equals(temp.getViewName()))) {
-                resultEnum = enumConstant;
-            }
-        }
+    private E customEnumParse(String source) {
+        E resultEnum = enumIndex.match(source);
         if (Objects.isNull(resultEnum)) {
             log.error("请求传参枚举转换错误, 原因: 传值[{}], 目标枚举类[{}]", source, this.enumType.getSimpleName());
             throw new GlobalErrorInfoRuntimeException("参数非法, [" + this.enumType.getSimpleName() + "]不存在枚举值[" + source + "]");
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger;
+
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步日志写入器
+ * 日志格式化与写入交由单个守护线程完成, 调用线程只负责入队
+ * 入队时携带MDC上下文, 保证traceId等信息与同步写入一致
+ * 队列已满时退化为调用线程同步写入, 不丢日志
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class AsyncLogAppender {
+
+    /**
+     * 默认队列容量
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private static final AsyncLogAppender DEFAULT_APPENDER = new AsyncLogAppender("d8-async-log", DEFAULT_QUEUE_CAPACITY);
+
+    private final String threadName;
+    private final BlockingQueue<Runnable> queue;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    /**
+     * 已入队但未写完的任务数
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public AsyncLogAppender(String threadName, int queueCapacity) {
+        this.threadName = threadName;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * 全局共享的写入器
+     *
+     * @return
+     */
+    public static AsyncLogAppender getDefault() {
+        return DEFAULT_APPENDER;
+    }
+
+    /**
+     * 提交日志写入任务
+     *
+     * @param task 格式化并写入日志
+     */
+    public void append(Runnable task) {
+        if (started.compareAndSet(false, true)) {
+            Thread worker = new Thread(this::drain, threadName);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Map<String, String> contextMap = MDC.getCopyOfContextMap();
+        Runnable wrapped = () -> runWithContext(contextMap, task);
+        pending.incrementAndGet();
+        if (!queue.offer(wrapped)) {
+            pending.decrementAndGet();
+            wrapped.run();
+        }
+    }
+
+    /**
+     * 等待已入队的日志写完, 超时返回false
+     *
+     * @param timeout 超时时间
+     * @param unit    时间单位
+     * @return
+     */
+    public boolean flush(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending.get() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return true;
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error("异步日志写入异常", e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    private static void runWithContext(Map<String, String> contextMap, Runnable task) {
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        if (Objects.isNull(contextMap)) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(contextMap);
+        }
+        try {
+            task.run();
+        } finally {
+            if (Objects.isNull(previous)) {
+                MDC.clear();
+            } else {
+                MDC.setContextMap(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个接口的耗时与错误统计
+ *
+ * @author D8GER
+ */
+public class EndpointMetrics {
+
+    private final String endpoint;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder errorCount = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    EndpointMetrics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param costNanos 耗时, 纳秒
+     * @param error     是否抛出异常
+     */
+    public void record(long costNanos, boolean error) {
+        histogram.record(costNanos);
+        if (error) {
+            errorCount.increment();
+        }
+    }
+
+    /**
+     * 累计快照, 吞吐量为统计开始以来的平均每秒调用数
+     *
+     * @return
+     */
+    public EndpointMetricsSnapshot snapshot() {
+        LatencyHistogram.Counts counts = histogram.counts();
+        double elapsedSeconds = Math.max(System.nanoTime() - startNanos, 1L) / 1e9;
+        return new EndpointMetricsSnapshot(endpoint, counts.getTotalCount(), errorCount.sum(), counts.getTotalCount() / elapsedSeconds,
+                counts.getMean(), counts.getValueAtPercentile(50), counts.getValueAtPercentile(95), counts.getValueAtPercentile(99), counts.getMaxValue());
+    }
+}
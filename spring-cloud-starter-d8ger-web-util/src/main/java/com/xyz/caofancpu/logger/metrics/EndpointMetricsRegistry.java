@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 接口统计注册表, 按接口全路径名称查询p50/p95/p99/max、吞吐量与异常数
+ * 可开启定时快照输出
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class EndpointMetricsRegistry {
+
+    private static final EndpointMetricsRegistry DEFAULT_REGISTRY = new EndpointMetricsRegistry();
+
+    private final Map<String, EndpointMetrics> metricsMap = new ConcurrentHashMap<>();
+    private final MetricsDumper dumper = new MetricsDumper("d8-endpoint-metrics-dump");
+    private volatile boolean enabled = true;
+
+    /**
+     * 全局共享的注册表
+     *
+     * @return
+     */
+    public static EndpointMetricsRegistry getDefault() {
+        return DEFAULT_REGISTRY;
+    }
+
+    /**
+     * 是否记录统计, 关闭后调用方不再记录, 已有统计保留
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * 获取接口统计, 不存在时创建
+     *
+     * @param endpoint 接口全路径名称
+     * @return
+     */
+    public EndpointMetrics forEndpoint(String endpoint) {
+        return metricsMap.computeIfAbsent(endpoint, EndpointMetrics::new);
+    }
+
+    /**
+     * 单个接口的统计快照, 无调用记录时返回null
+     *
+     * @param endpoint 接口全路径名称
+     * @return
+     */
+    public EndpointMetricsSnapshot snapshot(String endpoint) {
+        EndpointMetrics metrics = metricsMap.get(endpoint);
+        return Objects.isNull(metrics) ? null : metrics.snapshot();
+    }
+
+    /**
+     * 全部接口的统计快照, 按接口名称排序
+     *
+     * @return
+     */
+    public List<EndpointMetricsSnapshot> snapshots() {
+        return metricsMap.values().stream()
+                .map(EndpointMetrics::snapshot)
+                .sorted(Comparator.comparing(EndpointMetricsSnapshot::getEndpoint))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 开启定时快照输出, 每行附带本周期内的每秒调用数
+     *
+     * @param period 周期
+     * @param unit   时间单位
+     */
+    public void startDump(long period, TimeUnit unit) {
+        Map<String, Long> lastCounts = new HashMap<>();
+        double periodSeconds = unit.toNanos(period) / 1e9;
+        dumper.start(period, unit, () -> dump(lastCounts, periodSeconds));
+    }
+
+    /**
+     * 关闭定时快照输出
+     */
+    public void stopDump() {
+        dumper.stop();
+    }
+
+    private void dump(Map<String, Long> lastCounts, double periodSeconds) {
+        for (EndpointMetricsSnapshot snapshot : snapshots()) {
+            long lastCount = lastCounts.getOrDefault(snapshot.getEndpoint(), 0L);
+            lastCounts.put(snapshot.getEndpoint(), snapshot.getCount());
+            log.info("接口统计[{}]: 调用={}, 异常={}, 周期QPS={}, p50={}ms, p95={}ms, p99={}ms, max={}ms",
+                    snapshot.getEndpoint(), snapshot.getCount(), snapshot.getErrorCount(),
+                    String.format("%.2f", (snapshot.getCount() - lastCount) / periodSeconds),
+                    EndpointMetricsSnapshot.toMillis(snapshot.getP50Nanos()), EndpointMetricsSnapshot.toMillis(snapshot.getP95Nanos()),
+                    EndpointMetricsSnapshot.toMillis(snapshot.getP99Nanos()), EndpointMetricsSnapshot.toMillis(snapshot.getMaxNanos()));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接口统计快照, 耗时单位均为纳秒
+ *
+ * @author D8GER
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class EndpointMetricsSnapshot {
+    /**
+     * 接口全路径名称
+     */
+    private final String endpoint;
+    /**
+     * 调用次数
+     */
+    private final long count;
+    /**
+     * 异常次数
+     */
+    private final long errorCount;
+    /**
+     * 每秒调用数
+     */
+    private final double throughput;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p95Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    /**
+     * 纳秒转毫秒, 保留小数
+     *
+     * @param nanos 纳秒
+     * @return
+     */
+    public static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁延迟直方图(纳秒)
+ * 采用HDR式对数分桶: 每个2的幂区间再等分为32个子桶, 相对误差约3%, 2^40ns(约18分钟)以上归入最后一个桶
+ * 计数按线程分条带记录, 写入只有一次数组原子自增, 读取时汇总各条带
+ *
+ * @author D8GER
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_TRACKABLE_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+    private static final int STRIPE_COUNT = Integer.highestOneBit(Math.min(8, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPE_COUNT];
+    private final LongAdder totalValue = new LongAdder();
+    private final LongAccumulator maxValue = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new AtomicLongArray(BUCKET_COUNT);
+        }
+    }
+
+    /**
+     * 桶下标: 小于64的值一一对应, 其余按 指数*32 + 高6位 定位
+     *
+     * @param value 非负值
+     * @return
+     */
+    static int bucketIndex(long value) {
+        long clamped = Math.min(Math.max(value, 0L), MAX_TRACKABLE_VALUE);
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(clamped) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (clamped >>> shift);
+    }
+
+    /**
+     * 桶内最大值, 百分位取桶上界, 对SLO偏保守
+     *
+     * @param index 桶下标
+     * @return
+     */
+    static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long mantissa = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param value 纳秒
+     */
+    public void record(long value) {
+        stripes[(int) Thread.currentThread().getId() & (STRIPE_COUNT - 1)].incrementAndGet(bucketIndex(value));
+        totalValue.add(value);
+        maxValue.accumulate(value);
+    }
+
+    /**
+     * 汇总各条带的桶计数
+     *
+     * @return
+     */
+    public Counts counts() {
+        long[] buckets = new long[BUCKET_COUNT];
+        long total = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long count = stripe.get(i);
+                buckets[i] += count;
+                total += count;
+            }
+        }
+        return new Counts(buckets, total, totalValue.sum(), maxValue.get());
+    }
+
+    /**
+     * 某一时刻的计数汇总, 并发写入下各项之间可能有细微偏差
+     */
+    public static class Counts {
+        private final long[] buckets;
+        private final long totalCount;
+        private final long totalValue;
+        private final long maxValue;
+
+        private Counts(long[] buckets, long totalCount, long totalValue, long maxValue) {
+            this.buckets = buckets;
+            this.totalCount = totalCount;
+            this.totalValue = totalValue;
+            this.maxValue = maxValue;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public long getMaxValue() {
+            return maxValue;
+        }
+
+        public long getMean() {
+            return totalCount == 0 ? 0L : totalValue / totalCount;
+        }
+
+        /**
+         * 百分位值, 不超过记录到的最大值
+         *
+         * @param percentile 0~100
+         * @return
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), maxValue);
+                }
+            }
+            return maxValue;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个逻辑主题+tag的MQ收发统计
+ *
+ * @author D8GER
+ */
+public class MQMetrics {
+
+    private final String topic;
+    private final String tag;
+
+    private final LatencyHistogram sendHistogram = new LatencyHistogram();
+    private final LongAdder sendFailedCount = new LongAdder();
+    private final AtomicLong sendInFlight = new AtomicLong();
+
+    private final LatencyHistogram consumeHistogram = new LatencyHistogram();
+    private final LatencyHistogram endToEndHistogram = new LatencyHistogram();
+    private final LongAdder consumeFailedCount = new LongAdder();
+    private final LongAdder reconsumeCount = new LongAdder();
+    private final AtomicLong consumeInFlight = new AtomicLong();
+
+    MQMetrics(String topic, String tag) {
+        this.topic = topic;
+        this.tag = tag;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * 开始发送, 与{@link #recordSend}成对调用
+     */
+    public void beginSend() {
+        sendInFlight.incrementAndGet();
+    }
+
+    /**
+     * 记录一次发送结果
+     *
+     * @param costNanos 从提交发送到收到结果的耗时, 纳秒
+     * @param success   是否成功
+     */
+    public void recordSend(long costNanos, boolean success) {
+        sendInFlight.decrementAndGet();
+        sendHistogram.record(costNanos);
+        if (!success) {
+            sendFailedCount.increment();
+        }
+    }
+
+    /**
+     * 消息开始消费, 之后须调用{@link #recordConsume}或{@link #cancelConsume}
+     */
+    public void beginConsume() {
+        consumeInFlight.incrementAndGet();
+    }
+
+    /**
+     * 记录一条消息的消费结果
+     *
+     * @param costNanos      消费耗时, 纳秒
+     * @param success        是否成功
+     * @param bornTimestamp  消息产生时间戳, 毫秒, 端到端延迟为产生到消费完成
+     * @param reconsumeTimes 已重新消费次数
+     */
+    public void recordConsume(long costNanos, boolean success, long bornTimestamp, int reconsumeTimes) {
+        consumeInFlight.decrementAndGet();
+        consumeHistogram.record(costNanos);
+        if (!success) {
+            consumeFailedCount.increment();
+        }
+        if (bornTimestamp > 0) {
+            endToEndHistogram.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0L, System.currentTimeMillis() - bornTimestamp)));
+        }
+        if (reconsumeTimes > 0) {
+            reconsumeCount.increment();
+        }
+    }
+
+    /**
+     * 消息未被处理(批量中首条失败之后的消息), 不计入消费统计
+     */
+    public void cancelConsume() {
+        consumeInFlight.decrementAndGet();
+    }
+
+    public MQMetricsSnapshot snapshot() {
+        LatencyHistogram.Counts send = sendHistogram.counts();
+        LatencyHistogram.Counts consume = consumeHistogram.counts();
+        LatencyHistogram.Counts endToEnd = endToEndHistogram.counts();
+        return new MQMetricsSnapshot(topic, tag,
+                send.getTotalCount(), sendFailedCount.sum(), sendInFlight.get(),
+                send.getValueAtPercentile(50), send.getValueAtPercentile(99), send.getMaxValue(),
+                consume.getTotalCount(), consumeFailedCount.sum(), reconsumeCount.sum(), consumeInFlight.get(),
+                consume.getValueAtPercentile(50), consume.getValueAtPercentile(99), consume.getMaxValue(),
+                endToEnd.getValueAtPercentile(50), endToEnd.getValueAtPercentile(99), endToEnd.getMaxValue());
+    }
+}
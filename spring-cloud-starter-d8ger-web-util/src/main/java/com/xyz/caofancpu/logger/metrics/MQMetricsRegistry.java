@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * MQ统计注册表, 按逻辑主题+tag查询发送/消费耗时分布、端到端延迟、重新消费数及在途数
+ * 可开启定时快照输出
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class MQMetricsRegistry {
+
+    private static final MQMetricsRegistry DEFAULT_REGISTRY = new MQMetricsRegistry();
+
+    /**
+     * 未设置tag时的名称
+     */
+    private static final String NO_TAG = "*";
+
+    private final Map<String, MQMetrics> metricsMap = new ConcurrentHashMap<>();
+    private final MetricsDumper dumper = new MetricsDumper("d8-mq-metrics-dump");
+
+    /**
+     * 全局共享的注册表
+     *
+     * @return
+     */
+    public static MQMetricsRegistry getDefault() {
+        return DEFAULT_REGISTRY;
+    }
+
+    /**
+     * 获取逻辑主题+tag的统计, 不存在时创建
+     *
+     * @param topic 逻辑主题
+     * @param tag
+     * @return
+     */
+    public MQMetrics forTopic(String topic, String tag) {
+        String normalizedTag = StringUtils.isEmpty(tag) ? NO_TAG : tag;
+        return metricsMap.computeIfAbsent(topic + "|" + normalizedTag, key -> new MQMetrics(topic, normalizedTag));
+    }
+
+    /**
+     * 全部统计快照, 按主题、tag排序
+     *
+     * @return
+     */
+    public List<MQMetricsSnapshot> snapshots() {
+        return metricsMap.values().stream()
+                .map(MQMetrics::snapshot)
+                .sorted(Comparator.comparing(MQMetricsSnapshot::getTopic).thenComparing(MQMetricsSnapshot::getTag))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 开启定时快照输出, 每行附带本周期内的每秒收发条数
+     *
+     * @param period 周期
+     * @param unit   时间单位
+     */
+    public void startDump(long period, TimeUnit unit) {
+        Map<String, long[]> lastCounts = new HashMap<>();
+        double periodSeconds = unit.toNanos(period) / 1e9;
+        dumper.start(period, unit, () -> dump(lastCounts, periodSeconds));
+    }
+
+    /**
+     * 关闭定时快照输出
+     */
+    public void stopDump() {
+        dumper.stop();
+    }
+
+    private void dump(Map<String, long[]> lastCounts, double periodSeconds) {
+        for (MQMetricsSnapshot snapshot : snapshots()) {
+            long[] last = lastCounts.getOrDefault(snapshot.getTopic() + "|" + snapshot.getTag(), new long[2]);
+            lastCounts.put(snapshot.getTopic() + "|" + snapshot.getTag(), new long[]{snapshot.getSendCount(), snapshot.getConsumeCount()});
+            log.info("MQ统计[{}:{}]: 发送={}, 发送失败={}, 发送在途={}, 周期发送TPS={}, 发送p99={}ms; 消费={}, 消费失败={}, 重新消费={}, 消费在途={}, 周期消费TPS={}, 消费p99={}ms, 端到端p50={}ms, 端到端p99={}ms",
+                    snapshot.getTopic(), snapshot.getTag(), snapshot.getSendCount(), snapshot.getSendFailedCount(), snapshot.getSendInFlight(),
+                    String.format("%.2f", (snapshot.getSendCount() - last[0]) / periodSeconds), EndpointMetricsSnapshot.toMillis(snapshot.getSendP99Nanos()),
+                    snapshot.getConsumeCount(), snapshot.getConsumeFailedCount(), snapshot.getReconsumeCount(), snapshot.getConsumeInFlight(),
+                    String.format("%.2f", (snapshot.getConsumeCount() - last[1]) / periodSeconds), EndpointMetricsSnapshot.toMillis(snapshot.getConsumeP99Nanos()),
+                    EndpointMetricsSnapshot.toMillis(snapshot.getEndToEndP50Nanos()), EndpointMetricsSnapshot.toMillis(snapshot.getEndToEndP99Nanos()));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * MQ收发统计快照, 耗时单位均为纳秒
+ *
+ * @author D8GER
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class MQMetricsSnapshot {
+    /**
+     * 逻辑主题
+     */
+    private final String topic;
+    private final String tag;
+
+    /**
+     * 发送次数, 含失败
+     */
+    private final long sendCount;
+    private final long sendFailedCount;
+    /**
+     * 已提交未返回结果的发送数
+     */
+    private final long sendInFlight;
+    private final long sendP50Nanos;
+    private final long sendP99Nanos;
+    private final long sendMaxNanos;
+
+    /**
+     * 消费条数, 含失败; 批量消费时耗时按条均摊
+     */
+    private final long consumeCount;
+    private final long consumeFailedCount;
+    /**
+     * 重新投递的消费条数
+     */
+    private final long reconsumeCount;
+    /**
+     * 正在消费的条数
+     */
+    private final long consumeInFlight;
+    private final long consumeP50Nanos;
+    private final long consumeP99Nanos;
+    private final long consumeMaxNanos;
+
+    /**
+     * 消息产生到消费完成的耗时, 毫秒精度, 约18分钟以上的延迟归入同一桶, 百分位不再精确
+     */
+    private final long endToEndP50Nanos;
+    private final long endToEndP99Nanos;
+    private final long endToEndMaxNanos;
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 统计定时快照输出, 单个守护线程按固定周期执行输出任务, 各统计注册表共用
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class MetricsDumper {
+
+    private final String threadName;
+    private ScheduledExecutorService dumpExecutor;
+
+    /**
+     * @param threadName 输出线程名称
+     */
+    public MetricsDumper(@NonNull String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * 开启定时输出, 已开启时先关闭原任务; 单次输出异常只记录日志, 不影响后续周期
+     *
+     * @param period 周期
+     * @param unit   时间单位
+     * @param dump   输出任务
+     */
+    public synchronized void start(long period, TimeUnit unit, @NonNull Runnable dump) {
+        stop();
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleAtFixedRate(() -> {
+            try {
+                dump.run();
+            } catch (Exception e) {
+                log.error("统计输出异常, 线程=[{}]", threadName, e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * 关闭定时输出
+     */
+    public synchronized void stop() {
+        if (Objects.nonNull(dumpExecutor)) {
+            dumpExecutor.shutdownNow();
+            dumpExecutor = null;
+        }
+    }
+}
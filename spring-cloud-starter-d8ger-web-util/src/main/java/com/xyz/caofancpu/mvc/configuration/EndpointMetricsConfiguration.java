@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.configuration;
+
+import com.xyz.caofancpu.constant.D8gerConstants;
+import com.xyz.caofancpu.logger.metrics.EndpointMetricsRegistry;
+import com.xyz.caofancpu.logger.metrics.MQMetricsRegistry;
+import com.xyz.caofancpu.property.MetricsProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接口统计配置
+ *
+ * @author D8GER
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = D8gerConstants.D8_ENABLE, matchIfMissing = true)
+@EnableConfigurationProperties(MetricsProperties.class)
+@Slf4j
+public class EndpointMetricsConfiguration {
+
+    @Resource
+    private MetricsProperties metricsProperties;
+
+    /**
+     * 切面不由容器创建, 通过全局注册表的开关感知接口统计是否关闭
+     */
+    @PostConstruct
+    public void applyEnable() {
+        EndpointMetricsRegistry.getDefault().setEnabled(metricsProperties.isEnable());
+    }
+
+    @Bean(name = "endpointMetricsRegistry", destroyMethod = "stopDump")
+    @ConditionalOnProperty(name = D8gerConstants.D8_METRICS_ENABLE, matchIfMissing = true)
+    public EndpointMetricsRegistry endpointMetricsRegistry() {
+        log.info("D8GER....执行接口统计初始化");
+        EndpointMetricsRegistry registry = EndpointMetricsRegistry.getDefault();
+        if (metricsProperties.getDumpIntervalSeconds() > 0) {
+            registry.startDump(metricsProperties.getDumpIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        log.info("D8GER....[endpointMetricsRegistry]接口统计初始化完成!");
+        return registry;
+    }
+
+    @Bean(name = "mqMetricsRegistry", destroyMethod = "stopDump")
+    @ConditionalOnProperty(name = {D8gerConstants.D8_METRICS_ENABLE, D8gerConstants.D8_MQ_ENABLE}, matchIfMissing = true)
+    public MQMetricsRegistry mqMetricsRegistry() {
+        log.info("D8GER....执行MQ统计初始化");
+        MQMetricsRegistry registry = MQMetricsRegistry.getDefault();
+        if (metricsProperties.getDumpIntervalSeconds() > 0) {
+            registry.startDump(metricsProperties.getDumpIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        log.info("D8GER....[mqMetricsRegistry]MQ统计初始化完成!");
+        return registry;
+    }
+
+}
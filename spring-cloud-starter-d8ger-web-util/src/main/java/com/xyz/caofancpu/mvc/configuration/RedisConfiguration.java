@@ -20,9 +20,16 @@ package com.xyz.caofancpu.mvc.configuration;
 
 import com.xyz.caofancpu.annotation.AttentionDoc;
 import com.xyz.caofancpu.constant.D8gerConstants;
+import com.xyz.caofancpu.mvc.standard.D8RedisLock;
+import com.xyz.caofancpu.mvc.standard.InstrumentedJedisPool;
 import com.xyz.caofancpu.mvc.standard.JedisService;
+import com.xyz.caofancpu.mvc.standard.RedisNearCache;
+import com.xyz.caofancpu.mvc.standard.RedisPoolAutoSizer;
+import com.xyz.caofancpu.mvc.standard.RedisPoolMetrics;
 import com.xyz.caofancpu.property.RedisProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -35,6 +42,7 @@ import redis.clients.jedis.JedisPoolConfig;
 
 import javax.annotation.Resource;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Redis统一配置
@@ -76,18 +84,105 @@ public class RedisConfiguration {
         config.setTimeBetweenEvictionRunsMillis(redisProperties.getTimeBetweenEvictionRunsMillis());
         config.setMinEvictableIdleTimeMillis(redisProperties.getMinEvictableIdleTimeMillis());
         config.setSoftMinEvictableIdleTimeMillis(redisProperties.getSoftMinEvictableIdleTimeMillis());
-        JedisPool jedisPool = new JedisPool(config, redisProperties.getIp(), redisProperties.getPort(), redisProperties.getMaxInitStartMillis(), redisProperties.getPwd());
-        log.info("D8GER....[jedisPool]连接池初始化完成!");
+        if (!redisProperties.isPoolMetricsEnable()) {
+            JedisPool jedisPool = new JedisPool(config, redisProperties.getIp(), redisProperties.getPort(), redisProperties.getMaxInitStartMillis(), redisProperties.getPwd());
+            log.info("D8GER....[jedisPool]连接池初始化完成!");
+            return jedisPool;
+        }
+        InstrumentedJedisPool jedisPool = new InstrumentedJedisPool(config, redisProperties.getIp(), redisProperties.getPort(), redisProperties.getMaxInitStartMillis(), redisProperties.getPwd());
+        log.info("D8GER....[jedisPool]连接池初始化完成, 已开启连接池统计!");
         return jedisPool;
     }
 
+    /**
+     * 连接池统计, 按poolMetricsDumpIntervalSeconds定时输出快照
+     *
+     * @return
+     */
+    @Bean(name = "redisPoolMetrics", destroyMethod = "stopDump")
+    @ConditionalOnProperty(name = D8gerConstants.D8_REDIS_POOL_METRICS_ENABLE)
+    @ConditionalOnBean(name = "jedisPool")
+    @ConditionalOnMissingBean(value = RedisPoolMetrics.class)
+    public RedisPoolMetrics redisPoolMetrics() {
+        JedisPool jedisPool = optionalJedisPool.orElse(null);
+        if (!(jedisPool instanceof InstrumentedJedisPool)) {
+            throw new IllegalStateException("连接池统计需使用InstrumentedJedisPool, 当前连接池: " + (jedisPool == null ? null : jedisPool.getClass().getName()));
+        }
+        RedisPoolMetrics metrics = ((InstrumentedJedisPool) jedisPool).getMetrics();
+        if (redisProperties.getPoolMetricsDumpIntervalSeconds() > 0) {
+            metrics.startDump(redisProperties.getPoolMetricsDumpIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        log.info("D8GER....[redisPoolMetrics]连接池统计初始化完成!");
+        return metrics;
+    }
+
+    /**
+     * 连接池自适应调节, 按观测到的借用等待耗时在配置的上下界内调整maxTotal/minIdle
+     *
+     * @return
+     */
+    @Bean(name = "redisPoolAutoSizer", destroyMethod = "close")
+    @ConditionalOnProperty(name = D8gerConstants.D8_REDIS_POOL_AUTO_SIZE_ENABLE)
+    @ConditionalOnBean(name = "jedisPool")
+    @ConditionalOnMissingBean(value = RedisPoolAutoSizer.class)
+    public RedisPoolAutoSizer redisPoolAutoSizer() {
+        JedisPool jedisPool = optionalJedisPool.orElse(null);
+        if (!(jedisPool instanceof InstrumentedJedisPool)) {
+            throw new IllegalStateException("连接池自适应调节需开启连接池统计(poolMetricsEnable)");
+        }
+        RedisPoolAutoSizer.Options options = new RedisPoolAutoSizer.Options()
+                .setMaxTotalLowerBound(redisProperties.getPoolMaxTotalLowerBound())
+                .setMaxTotalUpperBound(redisProperties.getPoolMaxTotalUpperBound())
+                .setMinIdleLowerBound(redisProperties.getPoolMinIdleLowerBound())
+                .setMinIdleUpperBound(redisProperties.getPoolMinIdleUpperBound())
+                .setWaitThresholdMillis(redisProperties.getPoolWaitThresholdMillis())
+                .setPeriodMillis(redisProperties.getPoolAutoSizePeriodMillis());
+        RedisPoolAutoSizer autoSizer = new RedisPoolAutoSizer((InstrumentedJedisPool) jedisPool, options).start();
+        log.info("D8GER....[redisPoolAutoSizer]连接池自适应调节初始化完成!");
+        return autoSizer;
+    }
+
+    /**
+     * 近端缓存, 按前缀规则缓存热点key, 配置广播频道时订阅其他实例的失效通知
+     *
+     * @return
+     */
+    @Bean(name = "redisNearCache", destroyMethod = "close")
+    @ConditionalOnProperty(name = D8gerConstants.D8_REDIS_NEAR_CACHE_ENABLE)
+    @ConditionalOnMissingBean(value = RedisNearCache.class)
+    public RedisNearCache redisNearCache() {
+        RedisNearCache nearCache = new RedisNearCache();
+        redisProperties.getNearCacheRules().forEach(rule -> nearCache.addRegion(rule.getPrefix(), rule.getMaxSize(), rule.getTtlMillis()));
+        String channel = redisProperties.getNearCacheInvalidationChannel();
+        if (StringUtils.isNotBlank(channel) && optionalJedisPool.isPresent()) {
+            nearCache.subscribe(optionalJedisPool.get(), channel);
+        }
+        log.info("D8GER....[redisNearCache]近端缓存初始化完成, 缓存前缀: {}", nearCache.stats().keySet());
+        return nearCache;
+    }
+
     @Bean(name = "redisClient")
     @ConditionalOnProperty(name = D8gerConstants.D8_REDIS_ENABLE, matchIfMissing = true)
     @ConditionalOnMissingBean(value = JedisService.class)
     @ConditionalOnBean(name = "jedisPool")
-    public JedisService jedisService() {
-        JedisService redisClient = new JedisService(optionalJedisPool.orElse(null), redisProperties.getRDbIndex(), redisProperties.getMaxSinglePipelineCmdNum());
+    public JedisService jedisService(ObjectProvider<RedisNearCache> nearCacheProvider) {
+        JedisService redisClient = new JedisService(optionalJedisPool.orElse(null), redisProperties.getRDbIndex(), redisProperties.getMaxSinglePipelineCmdNum(),
+                redisProperties.getPipelineParallelism(), nearCacheProvider.getIfAvailable());
         log.info("D8GER....[redisClient]客户端初始化完成!");
         return redisClient;
     }
+
+    /**
+     * 分布式锁, 首次等待锁时才建立释放通知订阅
+     *
+     * @return
+     */
+    @Bean(name = "d8RedisLock", destroyMethod = "close")
+    @ConditionalOnBean(value = JedisService.class)
+    @ConditionalOnMissingBean(value = D8RedisLock.class)
+    public D8RedisLock d8RedisLock(JedisService jedisService) {
+        D8RedisLock d8RedisLock = new D8RedisLock(jedisService, redisProperties.getLockChannel(), redisProperties.getLockWatchdogLeaseMillis());
+        log.info("D8GER....[d8RedisLock]分布式锁初始化完成!");
+        return d8RedisLock;
+    }
 }
@@ -21,6 +21,7 @@ package com.xyz.caofancpu.mvc.interceptor;
 import com.alibaba.fastjson.JSONObject;
 import com.xyz.caofancpu.core.CollectionFunUtil;
 import com.xyz.caofancpu.core.JSONUtil;
+import com.xyz.caofancpu.extra.AccessorRegistry;
 import com.xyz.caofancpu.extra.ReflectionUtil;
 import com.xyz.caofancpu.mvc.annotation.Check;
 import com.xyz.caofancpu.result.CustomerErrorInfo;
@@ -38,7 +39,9 @@ import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.regex.Pattern;
 
@@ -58,6 +61,11 @@ public class CheckParamAspect {
     private static final Pattern moneyPattern = Pattern.compile("^\\d+(\\.\\d{1,2})?$");
     private static final Pattern mailPattern = Pattern.compile("^[a-zA-Z0-9_.-]+@[a-zA-Z0-9-]+(\\.[a-zA-Z0-9-]+)*\\.[a-zA-Z0-9]{2,6}$");
 
+    /**
+     * 方法 -> 校验计划
+     */
+    private final Map<Method, CheckPlan> checkPlanMap = new ConcurrentHashMap<>();
+
     /**
      * 是否不为空
      *
@@ -66,7 +74,7 @@ public class CheckParamAspect {
      * @return
      */
     @SuppressWarnings("unchecked")
-    private static <E> Boolean isNotNull(Object value, String operatorNum) {
+    private static <E> Boolean isNotNull(Object value, Double operatorNum) {
         if (value instanceof String) {
             return StringUtils.isNotBlank((String) value);
         }
@@ -83,12 +91,12 @@ public class CheckParamAspect {
      * @param operatorNum 操作数，这里不需要，只是为了参数统一
      * @return
      */
-    private static Boolean isNumber(Object value, String operatorNum) {
+    private static Boolean isNumber(Object value, Double operatorNum) {
         return Objects.nonNull(value) && value instanceof Number;
     }
 
     @Deprecated
-    private static Boolean isBoolStr(Object value, String operatorNum) {
+    private static Boolean isBoolStr(Object value, Double operatorNum) {
         return Objects.nonNull(value) && value instanceof Boolean;
     }
 
@@ -99,7 +107,7 @@ public class CheckParamAspect {
      * @param operatorNum 操作数，这里不需要，只是为了参数统一
      * @return
      */
-    private static Boolean isMoney(Object value, String operatorNum) {
+    private static Boolean isMoney(Object value, Double operatorNum) {
         return Objects.nonNull(value) && moneyPattern.matcher(value.toString()).matches();
     }
 
@@ -112,7 +120,7 @@ public class CheckParamAspect {
      * @param operatorNum 操作数，这里不需要，只是为了参数统一
      * @return
      */
-    private static Boolean isMail(Object value, String operatorNum) {
+    private static Boolean isMail(Object value, Double operatorNum) {
         return Objects.nonNull(value) && mailPattern.matcher(value.toString()).matches();
     }
 
@@ -124,7 +132,7 @@ public class CheckParamAspect {
      * @return 是否大于
      */
     @SuppressWarnings("unchecked")
-    private static <E> Boolean isGreaterThan(Object value, String operatorNum) {
+    private static <E> Boolean isGreaterThan(Object value, Double operatorNum) {
         return Objects.nonNull(value) && judge(value, operatorNum, Operator.GREATER_THAN);
     }
 
@@ -135,7 +143,7 @@ public class CheckParamAspect {
      * @param operatorNum 操作数
      * @return 是否大于等于
      */
-    private static Boolean isGreaterThanEqual(Object value, String operatorNum) {
+    private static Boolean isGreaterThanEqual(Object value, Double operatorNum) {
         return Objects.nonNull(value) && judge(value, operatorNum, Operator.GREATER_THAN_EQUAL);
     }
 
@@ -146,7 +154,7 @@ public class CheckParamAspect {
      * @param operatorNum 操作数
      * @return 是否少于
      */
-    private static Boolean isLessThan(Object value, String operatorNum) {
+    private static Boolean isLessThan(Object value, Double operatorNum) {
         return Objects.nonNull(value) && judge(value, operatorNum, Operator.LESS_THAN);
     }
 
@@ -157,22 +165,27 @@ public class CheckParamAspect {
      * @param operatorNum 操作数
      * @return 是否少于等于
      */
-    private static Boolean isLessThanEqual(Object value, String operatorNum) {
+    private static Boolean isLessThanEqual(Object value, Double operatorNum) {
         return Objects.nonNull(value) && judge(value, operatorNum, Operator.LESS_THAN_EQUAL);
     }
 
     @SuppressWarnings("unchecked")
-    private static <E> boolean judge(@NonNull Object value, @NonNull String operatorNum, Operator operator) {
+    private static <E> boolean judge(@NonNull Object value, Double operatorNum, Operator operator) {
         Double a = null;
         Double b = null;
         if (value instanceof String) {
             a = (double) value.toString().length();
-            b = Double.parseDouble(operatorNum);
+            b = requireOperatorNum(operatorNum);
+        }
+
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Double) {
+            a = ((Number) value).doubleValue();
+            b = requireOperatorNum(operatorNum);
         }
 
-        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Float || value instanceof Double) {
+        if (value instanceof Float) {
             a = Double.parseDouble(value.toString());
-            b = Double.parseDouble(operatorNum);
+            b = requireOperatorNum(operatorNum);
         }
 
         if (value instanceof Collection) {
@@ -182,6 +195,13 @@ public class CheckParamAspect {
         return Objects.nonNull(a) && Objects.nonNull(b) && compare(a, b, operator);
     }
 
+    private static Double requireOperatorNum(Double operatorNum) {
+        if (operatorNum == null) {
+            throw new NumberFormatException("操作数不是数字");
+        }
+        return operatorNum;
+    }
+
     private static boolean compare(@NonNull Double a, @NonNull Double b, Operator operator) {
         switch (operator) {
             case GREATER_THAN:
@@ -206,7 +226,7 @@ public class CheckParamAspect {
      * @param operatorNum 操作数
      * @return 是否不等于
      */
-    private static Boolean isNotEqual(Object value, String operatorNum) {
+    private static Boolean isNotEqual(Object value, Double operatorNum) {
         return Objects.nonNull(value) && judge(value, operatorNum, Operator.NOT_EQUAL);
     }
 
@@ -238,36 +258,30 @@ public class CheckParamAspect {
      * @return 错误信息
      */
     private String doCheck(ProceedingJoinPoint point) {
-        // 获取方法参数值
-        Object[] arguments = point.getArgs();
-        // 获取方法
-        Method method = getMethod(point);
+        // 校验计划按方法编译一次, 之后每次请求只做取值和比较
+        CheckPlan plan = checkPlanMap.computeIfAbsent(getMethod(point), this::compilePlan);
+        return plan.check(point.getArgs());
+    }
+
+    /**
+     * 编译方法的校验计划
+     *
+     * @param method 方法
+     * @return 校验计划
+     */
+    CheckPlan compilePlan(Method method) {
         // 默认的错误信息
         String methodInfo = StringUtils.isBlank(method.getName()) ? "" : " 调用方法 " + method.getName();
-        String msg = "";
-        if (isCheck(method, arguments)) {
-            Check annotation = method.getAnnotation(Check.class);
-            String[] fields = annotation.value();
-            // 只支持对第一个参数进行校验
-            Object vo = arguments[0];
-            if (vo == null) {
-                msg = "入参不能为空!";
-            } else {
-                for (String field : fields) {
-                    if (StringUtils.isNotEmpty(msg)) {
-                        break;
-                    }
-                    // 解析字段
-                    FieldInfo info = resolveField(field, methodInfo);
-                    // 获取字段的值
-                    Object value = ReflectionUtil.invokeGetter(vo, info.field);
-                    // 执行校验规则
-                    Boolean isValid = info.optEnum.fun.apply(value, info.operatorNum);
-                    msg = isValid ? msg : info.innerMsg;
-                }
-            }
+        Check annotation = method.getAnnotation(Check.class);
+        if (annotation == null) {
+            return new CheckPlan(null);
         }
-        return msg;
+        String[] fields = annotation.value();
+        FieldInfo[] fieldInfos = new FieldInfo[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fieldInfos[i] = resolveField(fields[i], methodInfo);
+        }
+        return new CheckPlan(fieldInfos);
     }
 
     private Method getMethod(ProceedingJoinPoint joinPoint) {
@@ -346,6 +360,8 @@ public class CheckParamAspect {
             fieldInfo.operatorNum = fieldStr.split(fieldInfo.optEnum.value)[1];
         }
         fieldInfo.operator = fieldInfo.optEnum.value;
+        fieldInfo.operand = parseOperatorNum(fieldInfo.operatorNum);
+        fieldInfo.getterName = "get" + StringUtils.capitalize(fieldInfo.field);
         // 处理错误信息
         String defaultMsg = fieldInfo.field + " must " + fieldInfo.operator + " " + fieldInfo.operatorNum + methodInfo;
         fieldInfo.innerMsg = StringUtils.isBlank(innerMsg) ? defaultMsg : innerMsg;
@@ -353,19 +369,22 @@ public class CheckParamAspect {
     }
 
 
-    // ==================== 对不同类型的值进行校验 =======================
-
     /**
-     * 判断是否符合参数规则
-     *
-     * @param method    方法
-     * @param arguments 方法参数
-     * @return 是否符合
+     * 预解析操作数, 非数字时为null, 在需要比较时才报错
      */
-    private Boolean isCheck(Method method, Object[] arguments) {
-        return method.isAnnotationPresent(Check.class) && CollectionFunUtil.isNotEmpty(arguments);
+    private Double parseOperatorNum(String operatorNum) {
+        if (StringUtils.isBlank(operatorNum)) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(operatorNum);
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
+    // ==================== 对不同类型的值进行校验 =======================
+
     /**
      * 获取方法
      *
@@ -425,20 +444,58 @@ public class CheckParamAspect {
         private final String value;
 
         /**
-         * BiFunction：接收字段值(Object)和操作数(String)，返回是否符合规则(Boolean)
+         * BiFunction：接收字段值(Object)和预解析的操作数(Double)，返回是否符合规则(Boolean)
          */
-        private final BiFunction<Object, String, Boolean> fun;
+        private final BiFunction<Object, Double, Boolean> fun;
 
-        Operator(String value, BiFunction<Object, String, Boolean> fun) {
+        Operator(String value, BiFunction<Object, Double, Boolean> fun) {
             this.value = value;
             this.fun = fun;
         }
     }
 
+    /**
+     * 方法的校验计划, 编译后不可变
+     */
+    static class CheckPlan {
+        /**
+         * 字段规则, 方法未标注@Check时为null
+         */
+        private final FieldInfo[] fieldInfos;
+
+        CheckPlan(FieldInfo[] fieldInfos) {
+            this.fieldInfos = fieldInfos;
+        }
+
+        /**
+         * 执行校验
+         *
+         * @param arguments 方法参数
+         * @return 错误信息, 校验通过时为空串
+         */
+        String check(Object[] arguments) {
+            if (fieldInfos == null || CollectionFunUtil.isEmpty(arguments)) {
+                return "";
+            }
+            // 只支持对第一个参数进行校验
+            Object vo = arguments[0];
+            if (vo == null) {
+                return "入参不能为空!";
+            }
+            for (FieldInfo info : fieldInfos) {
+                // 获取字段的值, 执行校验规则
+                if (!info.optEnum.fun.apply(info.getValue(vo), info.operand)) {
+                    return info.innerMsg;
+                }
+            }
+            return "";
+        }
+    }
+
     /**
      * 字段信息
      */
-    class FieldInfo {
+    static class FieldInfo {
         /**
          * 字段
          */
@@ -455,11 +512,51 @@ public class CheckParamAspect {
          * 操作数
          */
         String operatorNum;
+        /**
+         * 预解析的操作数, 非数字时为null
+         */
+        Double operand;
         /**
          * 操作枚举
          */
         Operator optEnum;
+        /**
+         * getter方法名
+         */
+        String getterName;
+        /**
+         * 最近一次入参类型的getter, 入参类型通常固定
+         */
+        private volatile GetterCache getterCache;
+
+        /**
+         * 调用getter获取字段值, 与ReflectionUtil#invokeGetter一致
+         */
+        Object getValue(Object vo) {
+            GetterCache cache = getterCache;
+            if (cache == null || cache.type != vo.getClass()) {
+                cache = new GetterCache(vo.getClass(), ReflectionUtil.getMethodInvoker(vo, getterName));
+                getterCache = cache;
+            }
+            if (cache.invoker == null) {
+                throw new IllegalArgumentException("Could not find method [" + getterName + "] on target [" + vo + "]");
+            }
+            try {
+                return cache.invoker.invoke(vo);
+            } catch (Exception e) {
+                throw ReflectionUtil.convertReflectionExceptionToUnchecked(e);
+            }
+        }
     }
 
+    private static class GetterCache {
+        private final Class<?> type;
+        private final AccessorRegistry.Invoker invoker;
+
+        GetterCache(Class<?> type, AccessorRegistry.Invoker invoker) {
+            this.type = type;
+            this.invoker = invoker;
+        }
+    }
 
 }
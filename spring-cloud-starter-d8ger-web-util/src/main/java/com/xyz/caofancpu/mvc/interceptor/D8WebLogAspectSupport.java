@@ -18,12 +18,20 @@
 
 package com.xyz.caofancpu.mvc.interceptor;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.xyz.caofancpu.constant.SymbolConstantUtil;
 import com.xyz.caofancpu.core.CollectionFunUtil;
+import com.xyz.caofancpu.core.DateUtil;
 import com.xyz.caofancpu.core.JSONUtil;
+import com.xyz.caofancpu.logger.AsyncLogAppender;
 import com.xyz.caofancpu.logger.D8Track;
 import com.xyz.caofancpu.logger.LogIpConfigUtil;
 import com.xyz.caofancpu.logger.LoggerUtil;
+import com.xyz.caofancpu.logger.metrics.EndpointMetrics;
+import com.xyz.caofancpu.logger.metrics.EndpointMetricsRegistry;
 import com.xyz.caofancpu.logger.trace.ThreadTraceUtil;
 import com.xyz.caofancpu.mvc.common.HttpStaticHandleUtil;
 import org.aspectj.lang.JoinPoint;
@@ -34,24 +42,37 @@ import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Web接口日志拦截切面
+ * 每个方法的日志策略只解析一次(未标注D8Track的方法同样缓存), 不记录日志的接口不做任何序列化
+ * 需要记录时, 在请求线程内完成限长序列化, JSON美化与日志写入交由异步写入器完成
+ * 每次调用的纳秒耗时与是否异常记入接口统计, 可按接口查询百分位耗时
  *
  * @author D8GER
  */
 public class D8WebLogAspectSupport {
 
     /**
-     * 缓存日志配置
+     * 单条请求/响应日志序列化长度上限
      */
-    private final Map<Method, D8Track> D8TRACK_CACHE = new ConcurrentHashMap<>();
+    public static final int DEFAULT_MAX_LOG_LENGTH = 8192;
+    /**
+     * 不记录日志的参数类型
+     */
+    private static final Class<?>[] IGNORED_PARAM_TYPES = new Class[]{MultipartFile.class, File.class};
+    /**
+     * 缓存日志策略
+     */
+    private final Map<Method, TrackPolicy> TRACK_POLICY_CACHE = new ConcurrentHashMap<>();
     /**
      * INFO_LOG
      */
@@ -68,6 +89,18 @@ public class D8WebLogAspectSupport {
      * 超时时间设置
      */
     private int timeoutThreshold = 400;
+    /**
+     * 序列化长度上限, 不大于0时不限制
+     */
+    private int maxLogLength = DEFAULT_MAX_LOG_LENGTH;
+    /**
+     * 异步日志写入器
+     */
+    private AsyncLogAppender appender = AsyncLogAppender.getDefault();
+    /**
+     * 接口统计注册表
+     */
+    private EndpointMetricsRegistry metricsRegistry = EndpointMetricsRegistry.getDefault();
 
     public D8WebLogAspectSupport(Logger log, Logger errorLog, Logger timeOutLog) {
         this.log = log;
@@ -80,176 +113,268 @@ public class D8WebLogAspectSupport {
         this.timeoutThreshold = timeoutThreshold;
     }
 
+    public D8WebLogAspectSupport(Logger log, Logger errorLog, Logger timeOutLog, int timeoutThreshold, int maxLogLength, AsyncLogAppender appender) {
+        this(log, errorLog, timeOutLog, timeoutThreshold);
+        this.maxLogLength = maxLogLength;
+        this.appender = Objects.requireNonNull(appender);
+    }
+
+    public D8WebLogAspectSupport(Logger log, Logger errorLog, Logger timeOutLog, int timeoutThreshold, int maxLogLength, AsyncLogAppender appender,
+                                 EndpointMetricsRegistry metricsRegistry) {
+        this(log, errorLog, timeOutLog, timeoutThreshold, maxLogLength, appender);
+        this.metricsRegistry = Objects.requireNonNull(metricsRegistry);
+    }
+
     public void doBefore(JoinPoint joinPoint) {
-        HttpServletRequest request = HttpStaticHandleUtil.loadRequest();
-        String requestInterface = joinPoint.getSignature().getDeclaringTypeName()
-                + SymbolConstantUtil.ENGLISH_FULL_STOP
-                + joinPoint.getSignature().getName();
-        // 入参为文件时, 不打印log
-        Map<String, Object> originRequestParamMap = HttpStaticHandleUtil.getParameterMap(request);
-        Map<String, Object> filteredFileValueMap = CollectionFunUtil.removeSpecifiedElement(originRequestParamMap, new Class[]{MultipartFile.class, File.class});
-        String requestParam = JSONUtil.formatStandardJSON(JSONUtil.toJSONStringWithDateFormat(filteredFileValueMap));
-        // 入参为文件时, 不打印log
-        Object[] originBodyParamArray = joinPoint.getArgs();
-        Object[] filteredFileValueArray = CollectionFunUtil.removeSpecifiedElement(originBodyParamArray, new Class[]{MultipartFile.class, File.class});
-        String requestBody;
-        try {
-            requestBody = JSONUtil.formatStandardJSON(JSONUtil.toJSONStringWithDateFormat(filteredFileValueArray));
-        } catch (Exception e) {
-            LoggerUtil.info(log, "入参为文件(InputStreamSource)或HttpRequest等类型, 打印对象地址信息");
-            requestBody = Arrays.toString(joinPoint.getArgs());
-        }
-        if (printReqLog(joinPoint)) {
-            String requestSb = "\n[前端页面请求]" +
-                    "\n请求IP=" + LogIpConfigUtil.getRequestSourceIp() +
-                    "\n请求方式=" + request.getMethod() +
-                    "\n请求地址=" + request.getRequestURL().toString() +
-                    "\n请求接口=" + requestInterface +
-                    "\n请求Param参数=" + requestParam +
-                    "\n请求Body对象=" + requestBody +
-                    "\n";
-            LoggerUtil.info(log, "请求数据", "HttpRequest", requestSb);
-        }
+        doBefore(joinPoint, resolvePolicy(joinPoint));
     }
 
     public Object doAround(ProceedingJoinPoint proceedingJoinPoint)
             throws Throwable {
         // 开始线程追踪
         ThreadTraceUtil.beginTrace();
-        doBefore(proceedingJoinPoint);
-        String requestInterface = getInterfaceFullName(proceedingJoinPoint);
-        long startTime = System.currentTimeMillis();
+        TrackPolicy policy = resolvePolicy(proceedingJoinPoint);
+        doBefore(proceedingJoinPoint, policy);
+        long startNanos = System.nanoTime();
+        boolean error = true;
         Object result;
         try {
             result = proceedingJoinPoint.proceed();
+            error = false;
         } finally {
-            logCostTime(startTime, requestInterface, proceedingJoinPoint);
+            logCostTime(System.nanoTime() - startNanos, policy, error);
         }
         return result;
     }
 
     public void doAfterThrowingAdvice(JoinPoint joinPoint, Throwable ex) {
         // 只记录警告级别, 将异常抛出, 由外层捕获处理
-        LoggerUtil.warn(log, "接口处理异常", getInterfaceFullName(joinPoint), ex.getMessage());
+        LoggerUtil.warn(log, "接口处理异常", resolvePolicy(joinPoint).interfaceName, ex.getMessage());
     }
 
     public void doAfterReturning(JoinPoint joinPoint, Object returnValue) {
-        String requestInterface = getInterfaceFullName(joinPoint);
-        if (printRespLog(joinPoint)) {
-            String responseSb = "\n[后台响应结果]:" +
-                    "\n后台接口=" + requestInterface +
-                    "\n响应数据结果:" + JSONUtil.formatStandardJSON(JSONUtil.toJSONStringWithDateFormat(returnValue));
-            LoggerUtil.info(log, "响应数据", "HttpResponse", responseSb);
+        TrackPolicy policy = resolvePolicy(joinPoint);
+        if (policy.recordResp) {
+            SerializedContent response = serialize(returnValue);
+            appender.append(() -> {
+                String responseSb = "\n[后台响应结果]:" +
+                        "\n后台接口=" + policy.interfaceName +
+                        "\n响应数据结果:" + response.format();
+                LoggerUtil.info(log, "响应数据", "HttpResponse", responseSb);
+            });
         }
         // 结束线程追踪
         ThreadTraceUtil.endTrace();
     }
 
     /**
-     * 获取处理接口的全路径名称
+     * 记录请求日志, 请求相关数据在当前线程读取并序列化
      *
      * @param joinPoint
-     * @return
+     * @param policy
      */
-    private String getInterfaceFullName(JoinPoint joinPoint) {
-        return joinPoint.getSignature().getDeclaringTypeName()
-                + SymbolConstantUtil.ENGLISH_FULL_STOP
-                + joinPoint.getSignature().getName();
+    private void doBefore(JoinPoint joinPoint, TrackPolicy policy) {
+        if (!policy.recordReq) {
+            return;
+        }
+        HttpServletRequest request = HttpStaticHandleUtil.loadRequest();
+        // 入参为文件时, 不打印log
+        Map<String, Object> originRequestParamMap = HttpStaticHandleUtil.getParameterMap(request);
+        Map<String, Object> filteredFileValueMap = CollectionFunUtil.removeSpecifiedElement(originRequestParamMap, IGNORED_PARAM_TYPES);
+        SerializedContent requestParam = serialize(filteredFileValueMap);
+        // 入参为文件时, 不打印log
+        Object[] originBodyParamArray = joinPoint.getArgs();
+        Object[] filteredFileValueArray = CollectionFunUtil.removeSpecifiedElement(originBodyParamArray, IGNORED_PARAM_TYPES);
+        SerializedContent requestBody;
+        try {
+            requestBody = serialize(filteredFileValueArray);
+        } catch (Exception e) {
+            LoggerUtil.info(log, "入参为文件(InputStreamSource)或HttpRequest等类型, 打印对象地址信息");
+            requestBody = new SerializedContent(Arrays.toString(joinPoint.getArgs()), false, false);
+        }
+        String requestIp = LogIpConfigUtil.getRequestSourceIp();
+        String requestMethod = request.getMethod();
+        String requestUrl = request.getRequestURL().toString();
+        SerializedContent body = requestBody;
+        appender.append(() -> {
+            String requestSb = "\n[前端页面请求]" +
+                    "\n请求IP=" + requestIp +
+                    "\n请求方式=" + requestMethod +
+                    "\n请求地址=" + requestUrl +
+                    "\n请求接口=" + policy.interfaceName +
+                    "\n请求Param参数=" + requestParam.format() +
+                    "\n请求Body对象=" + body.format() +
+                    "\n";
+            LoggerUtil.info(log, "请求数据", "HttpRequest", requestSb);
+        });
     }
 
     /**
-     * 打印请求处理时间
+     * 记录接口统计(注册表关闭时跳过), 打印请求处理时间
      *
-     * @param startTime
-     * @param methodPath
+     * @param costNanos
+     * @param policy
+     * @param error
      */
-    private void logCostTime(long startTime, String methodPath, JoinPoint joinPoint) {
-        long costTime = System.currentTimeMillis() - startTime;
-        int refer = handleTimeOutThreshold(joinPoint);
-        if (costTime > refer) {
+    private void logCostTime(long costNanos, TrackPolicy policy, boolean error) {
+        if (metricsRegistry.isEnabled()) {
+            policy.metrics.record(costNanos, error);
+        }
+        long costTime = TimeUnit.NANOSECONDS.toMillis(costNanos);
+        if (costTime > policy.timeoutThreshold) {
             // 超时
-            timeOutLog.warn("后台接口[{}]处理【超时】: {}ms", methodPath, costTime);
+            timeOutLog.warn("后台接口[{}]处理【超时】: {}ms", policy.interfaceName, costTime);
         } else {
-            log.info("后台接口[{}]处理耗时: {}ms", methodPath, costTime);
+            log.info("后台接口[{}]处理耗时: {}ms", policy.interfaceName, costTime);
         }
     }
 
     /**
-     * 是否打印响应日志
+     * 限长序列化, 与JSONUtil.toJSONStringWithDateFormat输出一致
+     * 超出上限时立即中止序列化, 保留已输出部分
      *
-     * @param joinPoint
+     * @param value
      * @return
      */
-    private boolean printRespLog(JoinPoint joinPoint) {
-        Optional<D8Track> optionalD8Track = extractD8Track(joinPoint);
-        return optionalD8Track.isPresent() && optionalD8Track.get().recordResp();
+    SerializedContent serialize(Object value) {
+        LimitedWriter writer = new LimitedWriter(maxLogLength);
+        SerializeWriter out = new SerializeWriter(writer, JSON.DEFAULT_GENERATE_FEATURE);
+        try {
+            JSONSerializer serializer = new JSONSerializer(out);
+            serializer.setDateFormat(DateUtil.DATETIME_FORMAT_SIMPLE);
+            serializer.config(SerializerFeature.WriteDateUseDateFormat, true);
+            serializer.write(value);
+            out.flush();
+        } catch (RuntimeException e) {
+            if (!writer.truncated) {
+                throw e;
+            }
+        } finally {
+            try {
+                out.close();
+            } catch (RuntimeException e) {
+                // 截断后关闭时的剩余输出, 忽略
+            }
+        }
+        return new SerializedContent(writer.content.toString(), writer.truncated, true);
     }
 
     /**
-     * 是否打印请求日志
+     * 解析日志策略, 按方法缓存
      *
      * @param joinPoint
      * @return
      */
-    private boolean printReqLog(JoinPoint joinPoint) {
-        Optional<D8Track> optionalD8Track = extractD8Track(joinPoint);
-        return optionalD8Track.isPresent() && optionalD8Track.get().recordReq();
+    TrackPolicy resolvePolicy(JoinPoint joinPoint) {
+        Method method = extractMethod(joinPoint);
+        if (Objects.isNull(method)) {
+            String interfaceName = joinPoint.getSignature().getDeclaringTypeName()
+                    + SymbolConstantUtil.ENGLISH_FULL_STOP
+                    + joinPoint.getSignature().getName();
+            return new TrackPolicy(interfaceName, null, timeoutThreshold, metricsRegistry.forEndpoint(interfaceName));
+        }
+        return TRACK_POLICY_CACHE.computeIfAbsent(method, this::compilePolicy);
     }
 
     /**
-     * 超时阈值
+     * 析取切面方法
      *
      * @param joinPoint
      * @return
      */
-    private int handleTimeOutThreshold(JoinPoint joinPoint) {
-        Optional<D8Track> optionalD8Track = extractD8Track(joinPoint);
-        return optionalD8Track.map(D8Track::timeOutThreshold).orElseGet(() -> this.timeoutThreshold);
+    private Method extractMethod(JoinPoint joinPoint) {
+        try {
+            return ((MethodSignature) joinPoint.getSignature()).getMethod();
+        } catch (Exception e) {
+            // do nothing
+            return null;
+        }
     }
 
     /**
-     * 析取个性化日志注解
+     * 方法日志策略, 未标注D8Track时不记录请求与响应
      *
-     * @param joinPoint
+     * @param method
      * @return
      */
-    private Optional<D8Track> extractD8Track(JoinPoint joinPoint) {
-        Optional<Method> optionalMethod = extractMethod(joinPoint);
-        return optionalMethod.isPresent() ? put(optionalMethod.get()) : Optional.empty();
+    private TrackPolicy compilePolicy(Method method) {
+        String interfaceName = method.getDeclaringClass().getName()
+                + SymbolConstantUtil.ENGLISH_FULL_STOP
+                + method.getName();
+        return new TrackPolicy(interfaceName, method.getAnnotation(D8Track.class), timeoutThreshold, metricsRegistry.forEndpoint(interfaceName));
     }
 
     /**
-     * 析取切面方法
-     *
-     * @param joinPoint
-     * @return
+     * 方法日志策略
      */
-    private Optional<Method> extractMethod(JoinPoint joinPoint) {
-        try {
-            Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
-            return Optional.of(method);
-        } catch (Exception e) {
-            // do nothing
-            return Optional.empty();
+    static class TrackPolicy {
+        final String interfaceName;
+        final boolean recordReq;
+        final boolean recordResp;
+        final int timeoutThreshold;
+        final EndpointMetrics metrics;
+
+        TrackPolicy(String interfaceName, D8Track d8Track, int defaultTimeoutThreshold, EndpointMetrics metrics) {
+            this.interfaceName = interfaceName;
+            this.metrics = metrics;
+            this.recordReq = Objects.nonNull(d8Track) && d8Track.recordReq();
+            this.recordResp = Objects.nonNull(d8Track) && d8Track.recordResp();
+            this.timeoutThreshold = Objects.nonNull(d8Track) ? d8Track.timeOutThreshold() : defaultTimeoutThreshold;
         }
     }
 
     /**
-     * 缓存
-     *
-     * @param method
-     * @return
+     * 序列化结果, 格式化延迟到异步写入时进行
      */
-    private Optional<D8Track> put(Method method) {
-        D8Track annotation = D8TRACK_CACHE.get(method);
-        if (Objects.nonNull(annotation)) {
-            return Optional.of(annotation);
+    static class SerializedContent {
+        final String content;
+        final boolean truncated;
+        final boolean json;
+
+        SerializedContent(String content, boolean truncated, boolean json) {
+            this.content = content;
+            this.truncated = truncated;
+            this.json = json;
         }
-        annotation = method.getAnnotation(D8Track.class);
-        if (Objects.nonNull(annotation)) {
-            D8TRACK_CACHE.put(method, annotation);
+
+        String format() {
+            if (truncated) {
+                return content + SymbolConstantUtil.ELLIPSES;
+            }
+            return json ? JSONUtil.formatStandardJSON(content) : content;
         }
-        return Optional.empty();
     }
 
-}
\ No newline at end of file
+    /**
+     * 限长输出, 超出上限时抛出IOException以中止序列化
+     */
+    private static class LimitedWriter extends Writer {
+        private final int limit;
+        private final StringBuilder content = new StringBuilder();
+        private boolean truncated;
+
+        LimitedWriter(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len)
+                throws IOException {
+            if (limit <= 0 || content.length() + len <= limit) {
+                content.append(cbuf, off, len);
+                return;
+            }
+            content.append(cbuf, off, limit - content.length());
+            truncated = true;
+            throw new IOException("log content exceeds " + limit + " chars");
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于Redis的分布式锁
+ * 加锁以SET NX PX与递增栅栏令牌在同一Lua脚本中原子完成, 释放时校验持有者并发布释放通知
+ * 等待方订阅释放通知而非轮询, 最长等待至锁剩余存活时间, 持有方宕机时锁到期后即可获取
+ * 未指定租期时由看门狗每1/3租期续期, 直到释放或续期失败
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class D8RedisLock implements Closeable {
+
+    /**
+     * 默认释放通知频道
+     */
+    public static final String DEFAULT_CHANNEL = "d8ger:lock:released";
+
+    /**
+     * 看门狗模式默认租期
+     */
+    public static final long DEFAULT_WATCHDOG_LEASE_MILLIS = 30_000L;
+
+    /**
+     * 栅栏令牌计数器key后缀, 不设过期时间以保证令牌单调递增
+     */
+    static final String FENCE_SUFFIX = ":fence";
+
+    static final String ACQUIRE = "d8LockAcquire";
+    static final String ACQUIRE_SCRIPT = ""
+            + "if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then\n"
+            + "    return {1, redis.call('INCR', KEYS[2])}\n"
+            + "end\n"
+            + "return {0, redis.call('PTTL', KEYS[1])}";
+
+    static final String RENEW = "d8LockRenew";
+    static final String RENEW_SCRIPT = ""
+            + "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+            + "    return redis.call('PEXPIRE', KEYS[1], ARGV[2])\n"
+            + "end\n"
+            + "return 0";
+
+    static final String RELEASE = "d8LockRelease";
+    static final String RELEASE_SCRIPT = ""
+            + "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+            + "    redis.call('DEL', KEYS[1])\n"
+            + "    redis.call('PUBLISH', ARGV[2], KEYS[1])\n"
+            + "    return 1\n"
+            + "end\n"
+            + "return 0";
+
+    /**
+     * 未进入订阅状态时的轮询间隔
+     */
+    private static final long UNSUBSCRIBED_POLL_MILLIS = 100L;
+
+    /**
+     * 锁未设置过期时间时单次等待上限
+     */
+    private static final long MAX_WAIT_SLICE_MILLIS = 1000L;
+
+    private static final long RESUBSCRIBE_INTERVAL_MILLIS = 1000L;
+
+    private final JedisService jedisService;
+    private final String channel;
+    private final long watchdogLeaseMillis;
+
+    /**
+     * 实例ID, 与序号组成持有者标识
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    /**
+     * 锁key -> 本实例等待方的唤醒信号
+     */
+    private final ConcurrentMap<String, Signal> signals = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog;
+    private volatile JedisPubSub subscriber;
+    private volatile Thread listener;
+    private volatile boolean closed;
+
+    public D8RedisLock(JedisService jedisService) {
+        this(jedisService, DEFAULT_CHANNEL, DEFAULT_WATCHDOG_LEASE_MILLIS);
+    }
+
+    /**
+     * @param jedisService
+     * @param channel             释放通知频道
+     * @param watchdogLeaseMillis 看门狗模式租期
+     */
+    public D8RedisLock(@NonNull JedisService jedisService, @NonNull String channel, long watchdogLeaseMillis) {
+        if (watchdogLeaseMillis < 3) {
+            throw new IllegalArgumentException("看门狗租期过短: " + watchdogLeaseMillis);
+        }
+        this.jedisService = jedisService;
+        this.channel = channel;
+        this.watchdogLeaseMillis = watchdogLeaseMillis;
+        RedisScriptRegistry registry = jedisService.getScriptRegistry();
+        registry.register(ACQUIRE, ACQUIRE_SCRIPT);
+        registry.register(RENEW, RENEW_SCRIPT);
+        registry.register(RELEASE, RELEASE_SCRIPT);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "d8-redis-lock-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 尝试加锁, 不等待, 由看门狗续期
+     *
+     * @param key
+     * @return 加锁失败返回null
+     */
+    public LockHandle tryLock(String key) {
+        try {
+            return tryLock(key, 0L, 0L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // 不等待时不会阻塞
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 在等待时间内尝试加锁, 由看门狗续期
+     *
+     * @param key
+     * @param waitTime 最长等待时间
+     * @param unit
+     * @return 超时返回null
+     * @throws InterruptedException
+     */
+    public LockHandle tryLock(String key, long waitTime, TimeUnit unit)
+            throws InterruptedException {
+        return tryLock(key, waitTime, 0L, unit);
+    }
+
+    /**
+     * 在等待时间内尝试加锁
+     *
+     * @param key
+     * @param waitTime  最长等待时间
+     * @param leaseTime 租期, 到期自动释放; 小于等于0时由看门狗续期
+     * @param unit
+     * @return 超时返回null
+     * @throws InterruptedException
+     */
+    public LockHandle tryLock(@NonNull String key, long waitTime, long leaseTime, @NonNull TimeUnit unit)
+            throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("分布式锁已关闭");
+        }
+        boolean watchdogMode = leaseTime <= 0;
+        long leaseMillis = watchdogMode ? watchdogLeaseMillis : unit.toMillis(leaseTime);
+        String owner = instanceId + ":" + ownerSequence.incrementAndGet();
+        long deadline = System.currentTimeMillis() + Math.max(unit.toMillis(waitTime), 0L);
+        Signal signal = null;
+        try {
+            while (true) {
+                long observed = signal == null ? 0L : signal.version();
+                List<?> result = (List<?>) jedisService.evalScript(ACQUIRE, Arrays.asList(key, key + FENCE_SUFFIX),
+                        Arrays.asList(owner, String.valueOf(leaseMillis)));
+                if ((Long) result.get(0) == 1L) {
+                    return new LockHandle(key, owner, (Long) result.get(1), watchdogMode ? leaseMillis : 0L);
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                if (signal == null) {
+                    // 先登记等待再重试一次, 避免错过首次尝试与登记之间的释放通知
+                    signal = register(key);
+                    ensureSubscribed();
+                    continue;
+                }
+                long ttl = (Long) result.get(1);
+                long slice = Math.min(remaining, ttl > 0 ? ttl : MAX_WAIT_SLICE_MILLIS);
+                if (!isSubscribed()) {
+                    slice = Math.min(slice, UNSUBSCRIBED_POLL_MILLIS);
+                }
+                signal.await(observed, slice);
+            }
+        } finally {
+            if (signal != null) {
+                unregister(key);
+            }
+        }
+    }
+
+    /**
+     * 是否已订阅释放通知
+     *
+     * @return
+     */
+    public boolean isSubscribed() {
+        JedisPubSub current = subscriber;
+        return current != null && current.isSubscribed();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        watchdog.shutdownNow();
+        JedisPubSub current = subscriber;
+        if (current != null && current.isSubscribed()) {
+            current.unsubscribe();
+        }
+        signals.values().forEach(Signal::signalAll);
+    }
+
+    private Signal register(String key) {
+        return signals.compute(key, (k, signal) -> {
+            Signal registered = signal == null ? new Signal() : signal;
+            registered.waiters++;
+            return registered;
+        });
+    }
+
+    private void unregister(String key) {
+        signals.computeIfPresent(key, (k, signal) -> --signal.waiters == 0 ? null : signal);
+    }
+
+    private void wakeUp(String key) {
+        Signal signal = signals.get(key);
+        if (signal != null) {
+            signal.signalAll();
+        }
+    }
+
+    /**
+     * 首次等待时启动订阅线程, 订阅连接长期占用连接池中的一个连接
+     */
+    private void ensureSubscribed() {
+        if (listener != null || closed) {
+            return;
+        }
+        synchronized (this) {
+            if (listener == null) {
+                Thread thread = new Thread(this::listen, "d8-redis-lock-" + channel);
+                thread.setDaemon(true);
+                thread.start();
+                listener = thread;
+            }
+        }
+    }
+
+    private void listen() {
+        while (!closed) {
+            JedisPubSub pubSub = new JedisPubSub() {
+                @Override
+                public void onMessage(String ch, String key) {
+                    wakeUp(key);
+                }
+
+                @Override
+                public void onSubscribe(String ch, int subscribedChannels) {
+                    // 关闭时订阅尚未建立
+                    if (closed) {
+                        unsubscribe();
+                        return;
+                    }
+                    // 订阅建立前的释放通知可能丢失, 唤醒全部等待方重试
+                    signals.values().forEach(Signal::signalAll);
+                }
+            };
+            subscriber = pubSub;
+            try (Jedis jedis = jedisService.getJedisPool().getResource()) {
+                jedis.subscribe(pubSub, channel);
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                log.warn("分布式锁订阅释放通知中断, channel=[{}], 原因: {}", channel, e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RESUBSCRIBE_INTERVAL_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 已获取的锁, 支持try-with-resources释放
+     */
+    public final class LockHandle implements AutoCloseable {
+        @Getter
+        private final String key;
+        /**
+         * 栅栏令牌, 同一key每次加锁严格递增, 下游写入时携带以拒绝过期持有者的请求
+         */
+        @Getter
+        private final long fencingToken;
+        private final String owner;
+        private final ScheduledFuture<?> renewal;
+        private volatile boolean held = true;
+
+        private LockHandle(String key, String owner, long fencingToken, long watchdogLeaseMillis) {
+            this.key = key;
+            this.owner = owner;
+            this.fencingToken = fencingToken;
+            if (watchdogLeaseMillis > 0) {
+                long interval = watchdogLeaseMillis / 3;
+                this.renewal = watchdog.scheduleWithFixedDelay(() -> renew(watchdogLeaseMillis), interval, interval, TimeUnit.MILLISECONDS);
+            } else {
+                this.renewal = null;
+            }
+        }
+
+        /**
+         * 本地视角是否仍持有锁, 续期失败或已释放后为false
+         *
+         * @return
+         */
+        public boolean isHeld() {
+            return held;
+        }
+
+        /**
+         * 释放锁, 仅持有者可释放
+         *
+         * @return 锁已过期或已被他人持有时返回false
+         */
+        public boolean unlock() {
+            if (renewal != null) {
+                renewal.cancel(false);
+            }
+            if (!held) {
+                return false;
+            }
+            held = false;
+            boolean released = (Long) jedisService.evalScript(RELEASE, Collections.singletonList(key), Arrays.asList(owner, channel)) > 0;
+            // 本实例等待方无需等待通知往返
+            wakeUp(key);
+            return released;
+        }
+
+        @Override
+        public void close() {
+            unlock();
+        }
+
+        private void renew(long leaseMillis) {
+            if (!held) {
+                return;
+            }
+            try {
+                boolean renewed = (Long) jedisService.evalScript(RENEW, Collections.singletonList(key), Arrays.asList(owner, String.valueOf(leaseMillis))) > 0;
+                if (!renewed) {
+                    held = false;
+                    renewal.cancel(false);
+                    log.warn("分布式锁续期失败, 锁已过期或被他人持有, key=[{}], fencingToken=[{}]", key, fencingToken);
+                }
+            } catch (Exception e) {
+                // 租期内仍可重试
+                log.warn("分布式锁续期异常, key=[{}], 原因: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 等待唤醒信号, 以版本号识别等待期间是否发生过释放
+     */
+    private static final class Signal {
+        /**
+         * 仅在ConcurrentMap#compute中修改
+         */
+        private int waiters;
+        private long version;
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized void signalAll() {
+            version++;
+            notifyAll();
+        }
+
+        synchronized void await(long observed, long timeoutMillis)
+                throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (version == observed) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return;
+                }
+                wait(left);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带统计的Jedis连接池
+ * 借用等待耗时、连接池耗尽次数及按操作名统计的连接占用耗时(借出到归还, 含全部往返)记录到{@link RedisPoolMetrics}
+ * 连接须在借出线程归还才计入操作耗时, 跨线程归还的连接只计入借用统计
+ * 支持运行期调整maxTotal/minIdle, 供{@link RedisPoolAutoSizer}按观测到的等待耗时调节
+ *
+ * @author D8GER
+ */
+public class InstrumentedJedisPool extends JedisPool {
+
+    /**
+     * 未指定操作名时的统计名称
+     */
+    public static final String UNNAMED_COMMAND = "other";
+
+    /**
+     * 单线程未归还连接记录上限, 超出时丢弃最早的记录, 防止跨线程归还导致记录堆积
+     */
+    private static final int MAX_LEASES_PER_THREAD = 64;
+
+    private final RedisPoolMetrics metrics = new RedisPoolMetrics(this);
+    private final ThreadLocal<ArrayDeque<Lease>> leases = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * 调节周期内的统计, 由{@link #drainPeriod()}读取并清零
+     */
+    private final LongAdder periodBorrows = new LongAdder();
+    private final LongAdder periodWaitNanos = new LongAdder();
+    private final LongAdder periodExhausted = new LongAdder();
+    private final LongAccumulator periodPeakActive = new LongAccumulator(Math::max, 0L);
+
+    public InstrumentedJedisPool(GenericObjectPoolConfig poolConfig, String host, int port, int timeout, String password) {
+        super(poolConfig, host, port, timeout, password);
+    }
+
+    @Override
+    public Jedis getResource() {
+        return getResource(UNNAMED_COMMAND);
+    }
+
+    /**
+     * 借出连接, 归还时按操作名记录占用耗时
+     *
+     * @param command 操作名
+     * @return
+     */
+    public Jedis getResource(String command) {
+        long start = System.nanoTime();
+        Jedis jedis;
+        try {
+            jedis = super.getResource();
+        } catch (JedisExhaustedPoolException e) {
+            metrics.recordExhausted();
+            periodExhausted.increment();
+            throw e;
+        }
+        long borrowed = System.nanoTime();
+        metrics.recordBorrow(borrowed - start);
+        periodBorrows.increment();
+        periodWaitNanos.add(borrowed - start);
+        periodPeakActive.accumulate(getNumActive());
+        ArrayDeque<Lease> threadLeases = leases.get();
+        if (threadLeases.size() >= MAX_LEASES_PER_THREAD) {
+            threadLeases.pollLast();
+        }
+        threadLeases.push(new Lease(jedis, command, borrowed));
+        return jedis;
+    }
+
+    @Override
+    protected void returnResource(Jedis resource) {
+        endLease(resource, false);
+        super.returnResource(resource);
+    }
+
+    @Override
+    protected void returnBrokenResource(Jedis resource) {
+        endLease(resource, true);
+        super.returnBrokenResource(resource);
+    }
+
+    /**
+     * 运行期调整连接数, minIdle不超过maxTotal
+     *
+     * @param maxTotal 最大连接数
+     * @param minIdle  最小空闲连接数
+     */
+    public void resize(int maxTotal, int minIdle) {
+        internalPool.setMaxTotal(maxTotal);
+        internalPool.setMinIdle(Math.min(minIdle, maxTotal));
+    }
+
+    public int getMaxTotal() {
+        return internalPool.getMaxTotal();
+    }
+
+    public int getMinIdle() {
+        return internalPool.getMinIdle();
+    }
+
+    public RedisPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 读取并清零本调节周期的统计
+     *
+     * @return
+     */
+    Period drainPeriod() {
+        return new Period(periodBorrows.sumThenReset(), periodWaitNanos.sumThenReset(), periodExhausted.sumThenReset(), periodPeakActive.getThenReset());
+    }
+
+    @Override
+    public void close() {
+        metrics.stopDump();
+        super.close();
+    }
+
+    private void endLease(Jedis jedis, boolean broken) {
+        String command = null;
+        Iterator<Lease> iterator = leases.get().iterator();
+        while (iterator.hasNext()) {
+            Lease lease = iterator.next();
+            if (lease.jedis == jedis) {
+                iterator.remove();
+                command = lease.command;
+                metrics.recordCommand(command, System.nanoTime() - lease.borrowedNanos);
+                break;
+            }
+        }
+        if (broken) {
+            metrics.recordBroken(command);
+        }
+    }
+
+    /**
+     * 未归还的连接
+     */
+    private static class Lease {
+        private final Jedis jedis;
+        private final String command;
+        private final long borrowedNanos;
+
+        private Lease(Jedis jedis, String command, long borrowedNanos) {
+            this.jedis = jedis;
+            this.command = command;
+            this.borrowedNanos = borrowedNanos;
+        }
+    }
+
+    /**
+     * 调节周期内的统计
+     */
+    static class Period {
+        final long borrows;
+        final long waitNanos;
+        final long exhausted;
+        final long peakActive;
+
+        Period(long borrows, long waitNanos, long exhausted, long peakActive) {
+            this.borrows = borrows;
+            this.waitNanos = waitNanos;
+            this.exhausted = exhausted;
+            this.peakActive = peakActive;
+        }
+
+        long meanWaitNanos() {
+            return borrows == 0 ? 0L : waitNanos / borrows;
+        }
+    }
+}
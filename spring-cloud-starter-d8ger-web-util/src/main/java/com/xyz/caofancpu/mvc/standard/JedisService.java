@@ -18,32 +18,63 @@
 
 package com.xyz.caofancpu.mvc.standard;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.xyz.caofancpu.annotation.AttentionDoc;
 import com.xyz.caofancpu.annotation.WarnDoc;
 import com.xyz.caofancpu.core.CollectionFunUtil;
+import com.xyz.caofancpu.mvc.standard.codec.RedisValueCodec;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
 import redis.clients.jedis.Response;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
-import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.SafeEncoder;
 
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Jedis服务
+ * 批量命令按maxSinglePipelineCmdNum自动分片, 可开启多连接并行执行各分片
+ * 配置近端缓存后, getValue/hGet/hGetAll优先读取进程内缓存, 本服务的写操作自动失效对应key
+ * 多步组合操作(hash写入并过期、比较删除、限流)通过Lua脚本一次往返原子完成
  *
  * @author D8GER
  */
@@ -52,6 +83,11 @@ public class JedisService {
 
     public final static byte[] CURSOR_FLAG = "0".getBytes();
 
+    /**
+     * SCAN默认每次扫描条数
+     */
+    public final static int DEFAULT_SCAN_COUNT = 1000;
+
     /**
      * Jedis连接池
      */
@@ -68,6 +104,26 @@ public class JedisService {
     @WarnDoc("做限制避免内存溢出")
     private int maxSinglePipelineCmdNum = 100000;
 
+    /**
+     * 分片Pipeline并行度, 默认1即所有分片在同一连接上串行执行
+     */
+    private int pipelineParallelism = 1;
+
+    /**
+     * 分片并行执行线程池, 首次并行时创建
+     */
+    private volatile ExecutorService pipelineExecutor;
+
+    /**
+     * 近端缓存, 为null时不启用
+     */
+    private RedisNearCache nearCache;
+
+    /**
+     * Lua脚本注册表, 已内置常用原子操作
+     */
+    private final RedisScriptRegistry scriptRegistry = new RedisScriptRegistry();
+
     /**
      * 构造函数, 限定需要初始化连接池
      *
@@ -95,6 +151,46 @@ public class JedisService {
         }
     }
 
+    /**
+     * 构造函数, 限定需要初始化连接池
+     *
+     * @param jedisPool
+     * @param rDbIndex
+     * @param maxSinglePipelineCmdNum
+     * @param pipelineParallelism     分片并行度, 每个并行分片占用一个连接
+     */
+    public JedisService(@NonNull JedisPool jedisPool, int rDbIndex, int maxSinglePipelineCmdNum, int pipelineParallelism) {
+        this(jedisPool, rDbIndex, maxSinglePipelineCmdNum);
+        if (pipelineParallelism > 1) {
+            this.pipelineParallelism = pipelineParallelism;
+        }
+    }
+
+    /**
+     * 构造函数, 限定需要初始化连接池
+     *
+     * @param jedisPool
+     * @param rDbIndex
+     * @param maxSinglePipelineCmdNum
+     * @param pipelineParallelism     分片并行度, 每个并行分片占用一个连接
+     * @param nearCache               近端缓存, 可为null
+     */
+    public JedisService(@NonNull JedisPool jedisPool, int rDbIndex, int maxSinglePipelineCmdNum, int pipelineParallelism, RedisNearCache nearCache) {
+        this(jedisPool, rDbIndex, maxSinglePipelineCmdNum, pipelineParallelism);
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * 销毁, 关闭分片并行执行线程池, 连接池由其创建方关闭
+     */
+    @PreDestroy
+    public synchronized void destroy() {
+        if (Objects.nonNull(pipelineExecutor)) {
+            pipelineExecutor.shutdown();
+            pipelineExecutor = null;
+        }
+    }
+
     //============================list操作========================//
 
     /**
@@ -105,7 +201,7 @@ public class JedisService {
      * @return
      */
     public boolean insertQueue(String key, String value) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("insertQueue")) {
             jedis.rpush(key, value);
             return true;
         } catch (Exception e) {
@@ -122,7 +218,7 @@ public class JedisService {
      * @return
      */
     public List<String> getHeaderQueue(String key, int length) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("getHeaderQueue")) {
             List<String> queueValue = new ArrayList<String>();
             for (int i = 0; i < length; i++) {
                 String v = jedis.lpop(key);
@@ -145,7 +241,7 @@ public class JedisService {
      * @return
      */
     public List<String> getFootQueue(String key, int length) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("getFootQueue")) {
             List<String> queueValue = new ArrayList<String>();
             for (int i = 0; i < length; i++) {
                 String v = jedis.rpop(key);
@@ -167,7 +263,7 @@ public class JedisService {
      * @return
      */
     public String getHeadQueue(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("getHeadQueue")) {
             return jedis.lpop(key);
         } catch (Exception e) {
             log.error("获取队列头部元素失败: key=[{}]], 原因: {}", key, e);
@@ -182,7 +278,7 @@ public class JedisService {
      * @return
      */
     public String getTailQueue(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("getTailQueue")) {
             return jedis.rpop(key);
         } catch (Exception e) {
             log.error("获取队列尾部元素失败: key=[{}]], 原因: {}", key, e);
@@ -190,6 +286,83 @@ public class JedisService {
         }
     }
 
+    /**
+     * 从队列头部阻塞式批量获取, 与{@link #insertQueue}配合为先进先出
+     * 队列有积压时一次往返最多取走maxCount个; 队列为空时BLPOP阻塞至多timeoutSeconds秒, 被唤醒后再补取剩余数量, 空闲时不会空转
+     *
+     * @param key
+     * @param maxCount       单次最多获取数量
+     * @param timeoutSeconds 队列为空时的最长阻塞秒数, 须大于0
+     * @return 获取到的元素, 超时返回空列表
+     */
+    public List<String> blockingBatchPop(String key, int maxCount, int timeoutSeconds) {
+        try (Jedis jedis = getAndSelectRDB("blockingBatchPop")) {
+            List<String> keys = Collections.singletonList(key);
+            List<String> items = drainList(jedis, RedisScriptRegistry.LIST_BATCH_POP, keys, maxCount);
+            if (!items.isEmpty()) {
+                return items;
+            }
+            // BLPOP返回[key, value], 超时返回null
+            List<String> popped = jedis.blpop(timeoutSeconds, key);
+            if (Objects.isNull(popped) || popped.size() < 2) {
+                return items;
+            }
+            items.add(popped.get(1));
+            if (maxCount > 1) {
+                items.addAll(drainList(jedis, RedisScriptRegistry.LIST_BATCH_POP, keys, maxCount - 1));
+            }
+            return items;
+        } catch (Exception e) {
+            log.error("阻塞式批量获取队列元素失败: key=[{}], maxCount=[{}], 原因: {}", key, maxCount, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 阻塞式批量将源队列元素移入目标列表, 用于可靠队列: 元素处理完成前保留在目标(处理中)列表, 进程崩溃也不会丢失
+     * 有积压时从源队列头部一次往返最多移动maxCount个(先进先出); 源队列为空时BRPOPLPUSH阻塞至多timeoutSeconds秒,
+     * 唤醒时取走的是源队列尾部元素, 若源队列仍有更早的元素则放回尾部后同样从头部移动, 两条路径都按先进先出取元素
+     *
+     * @param source         源队列
+     * @param destination    目标列表
+     * @param maxCount       单次最多移动数量
+     * @param timeoutSeconds 源队列为空时的最长阻塞秒数, 须大于0
+     * @return 移动的元素, 超时返回空列表
+     */
+    public List<String> blockingBatchMove(String source, String destination, int maxCount, int timeoutSeconds) {
+        try (Jedis jedis = getAndSelectRDB("blockingBatchMove")) {
+            List<String> keys = Arrays.asList(source, destination);
+            List<String> items = drainList(jedis, RedisScriptRegistry.LIST_BATCH_MOVE, keys, maxCount);
+            if (!items.isEmpty()) {
+                return items;
+            }
+            String moved = jedis.brpoplpush(source, destination, timeoutSeconds);
+            if (Objects.isNull(moved)) {
+                return items;
+            }
+            return evalList(jedis, RedisScriptRegistry.LIST_REQUEUE_AND_MOVE, keys, Arrays.asList(String.valueOf(maxCount), moved));
+        } catch (Exception e) {
+            log.error("阻塞式批量移动队列元素失败: source=[{}], destination=[{}], maxCount=[{}], 原因: {}", source, destination, maxCount, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 从列表中删除一个与value相等的元素, 用于可靠队列确认消费
+     *
+     * @param key
+     * @param value
+     * @return 是否删除
+     */
+    public boolean removeQueueValue(String key, String value) {
+        try (Jedis jedis = getAndSelectRDB("removeQueueValue")) {
+            return jedis.lrem(key, 1, value) > 0;
+        } catch (Exception e) {
+            log.error("删除队列元素失败: key=[{}], value=[{}], 原因: {}", key, value, e);
+            throw e;
+        }
+    }
+
     /**
      * 获取key总记录数
      *
@@ -197,7 +370,7 @@ public class JedisService {
      * @return
      */
     public Long getQueueCount(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("getQueueCount")) {
             return jedis.llen(key);
         } catch (Exception e) {
             log.error("获取总记录数失败: key=[{}]], 原因: {}", key, e);
@@ -213,7 +386,7 @@ public class JedisService {
      * @return
      */
     public boolean insertHeadQueue(String key, String value) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("insertHeadQueue")) {
             jedis.lpush(key, value);
             return true;
         } catch (Exception e) {
@@ -230,7 +403,7 @@ public class JedisService {
      * @return
      */
     public Boolean insertFootQueue(String key, String value) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("insertFootQueue")) {
             jedis.rpush(key, value);
             return true;
         } catch (Exception e) {
@@ -248,13 +421,9 @@ public class JedisService {
      * @return
      */
     public Boolean batchHeaderInsertList(String key, List<String> valueList, Integer expireTime) {
-        preCheckPipelineCmdCount(valueList);
-        try (Jedis jedis = getAndSelectRDB()) {
-            Pipeline pipeline = jedis.pipelined();
-            // 收集命令
-            valueList.forEach(s -> pipeline.lpush(key, s));
-            // 执行命令
-            pipeline.sync();
+        try (Jedis jedis = getAndSelectRDB("batchHeaderInsertList")) {
+            // 同一连接上按顺序分片执行, 保证元素顺序
+            syncInChunks(jedis, valueList, 1, (pipeline, s) -> pipeline.lpush(key, s));
             if (validateExpireTime(expireTime)) {
                 jedis.expire(key, expireTime);
             }
@@ -274,13 +443,9 @@ public class JedisService {
      * @return
      */
     public Boolean batchTailInsertList(String key, List<String> valueList, Integer expireTime) {
-        preCheckPipelineCmdCount(valueList);
-        try (Jedis jedis = getAndSelectRDB()) {
-            Pipeline pipeline = jedis.pipelined();
-            // 收集命令
-            valueList.forEach(s -> pipeline.rpush(key, s));
-            // 执行命令
-            pipeline.sync();
+        try (Jedis jedis = getAndSelectRDB("batchTailInsertList")) {
+            // 同一连接上按顺序分片执行, 保证元素顺序
+            syncInChunks(jedis, valueList, 1, (pipeline, s) -> pipeline.rpush(key, s));
             if (validateExpireTime(expireTime)) {
                 jedis.expire(key, expireTime);
             }
@@ -300,7 +465,7 @@ public class JedisService {
      * @return
      */
     public List<String> getList(String key, int start, int end) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("getList")) {
             return jedis.lrange(key, start, end);
         } catch (Exception e) {
             log.error("获取指定范围的列表失败, key=[{}], start=[{}], end=[{}], 原因: {}", key, start, end, e);
@@ -320,13 +485,9 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(kvMap)) {
             return false;
         }
-        preCheckPipelineCmdCount(kvMap.entrySet());
-        try (Jedis jedis = getAndSelectRDB()) {
-            Pipeline pipeline = jedis.pipelined();
-            // 收集命令
-            kvMap.forEach(pipeline::set);
-            // 执行命令
-            pipeline.sync();
+        try {
+            pipelineInChunks(new ArrayList<>(kvMap.entrySet()), 1, (pipeline, entry) -> pipeline.set(entry.getKey(), entry.getValue()));
+            invalidateNearCache(kvMap.keySet());
             return true;
         } catch (Exception e) {
             log.error("批量设置字符串失败: map=[{}], 原因: {}", CollectionFunUtil.showMap(kvMap), e);
@@ -345,13 +506,8 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(keys) || !validateExpireTime(expireTime)) {
             return false;
         }
-        preCheckPipelineCmdCount(keys);
-        try (Jedis jedis = getAndSelectRDB()) {
-            Pipeline pipeline = jedis.pipelined();
-            // 收集命令
-            keys.forEach(key -> pipeline.expire(key, expireTime));
-            // 执行命令
-            pipeline.sync();
+        try {
+            pipelineInChunks(new ArrayList<>(keys), 1, (pipeline, key) -> pipeline.expire(key, expireTime));
             return true;
         } catch (Exception e) {
             log.error("批量设置过期时间失败, keys=[{}], expireTime=[{}], 原因: {}", CollectionFunUtil.show(keys), expireTime, e);
@@ -372,13 +528,8 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(keys)) {
             return false;
         }
-        preCheckPipelineCmdCount(keys);
-        try (Jedis jedis = getAndSelectRDB()) {
-            Pipeline pipeline = jedis.pipelined();
-            // 收集命令
-            keys.forEach(pipeline::persist);
-            // 执行命令
-            pipeline.sync();
+        try {
+            pipelineInChunks(new ArrayList<>(keys), 1, Pipeline::persist);
             return true;
         } catch (Exception e) {
             log.error("批量设置持久化KEY失败, keys=[{}], 原因: {}", CollectionFunUtil.show(keys), e);
@@ -395,12 +546,13 @@ public class JedisService {
      * @return
      */
     public boolean setEx(String key, String value, Integer expireTime) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("setEx")) {
             if (validateExpireTime(expireTime)) {
                 jedis.setex(key, expireTime, value);
             } else {
                 jedis.set(key, value);
             }
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
             log.error("设置字符串及过期时间失败, key=[{}], value=[{}], expireTime=[{}], 原因: {}", key, value, expireTime, e);
@@ -410,19 +562,24 @@ public class JedisService {
 
     /**
      * 设置值及过期时间(可用于简单的分布式锁)
+     * 以SET NX EX单条命令完成, 不存在设置成功但过期时间未生效的窗口
      *
      * @param key
      * @param value
      * @param expireTime 单位秒
-     * @return
+     * @return key不存在且设置成功时返回true
      */
     public boolean setNx(String key, String value, Integer expireTime) {
-        try (Jedis jedis = getAndSelectRDB()) {
-            Long result = jedis.setnx(key, value);
-            if (validateExpireTime(expireTime) && result == 1) {
-                jedis.expire(key, expireTime);
+        try (Jedis jedis = getAndSelectRDB("setNx")) {
+            SetParams params = SetParams.setParams().nx();
+            if (validateExpireTime(expireTime)) {
+                params.ex(expireTime);
             }
-            return true;
+            boolean absent = "OK".equals(jedis.set(key, value, params));
+            if (absent) {
+                invalidateNearCache(key);
+            }
+            return absent;
         } catch (Exception e) {
             log.error("设置值及过期时间失败, key=[{}], value=[{}], expireTime=[{}], 原因: {}", key, value, expireTime, e);
             throw e;
@@ -436,7 +593,14 @@ public class JedisService {
      * @return
      */
     public String getValue(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        if (nearCache != null) {
+            return nearCache.get(key, this::loadValue);
+        }
+        return loadValue(key);
+    }
+
+    private String loadValue(String key) {
+        try (Jedis jedis = getAndSelectRDB("get")) {
             return jedis.get(key);
         } catch (Exception e) {
             log.error("获取字符串值失败, key=[{}], 原因: {}", key, e);
@@ -454,8 +618,10 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(keys)) {
             return 0L;
         }
-        try (Jedis jedis = getAndSelectRDB()) {
-            return jedis.del(keys.toArray(new String[0]));
+        try (Jedis jedis = getAndSelectRDB("batchDeleteKey")) {
+            Long count = jedis.del(keys.toArray(new String[0]));
+            invalidateNearCache(keys);
+            return count;
         } catch (Exception e) {
             log.error("删除字符串失败, key=[{}], 原因: {}", CollectionFunUtil.show(keys), e);
             throw e;
@@ -479,7 +645,7 @@ public class JedisService {
      * @return
      */
     public Boolean isExist(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("isExist")) {
             return jedis.exists(key);
         } catch (Exception e) {
             log.error("判断是否存在失败, key=[{}], 原因: {}", key, e);
@@ -489,17 +655,292 @@ public class JedisService {
 
     /**
      * 根据Key正则搜索
+     * 基于SCAN分批遍历, 不会像KEYS一样阻塞Redis, 但结果仍全部加载到内存, 海量key请使用{@link #scanKeys}
      *
      * @param keyRegex
      * @return
      */
     public Set<String> searchByKeyRegex(String keyRegex) {
-        try (Jedis jedis = getAndSelectRDB()) {
-            return jedis.keys(keyRegex);
-        } catch (Exception e) {
-            log.error("根据Key正则搜索失败, keyRegex=[{}], 原因: {}", keyRegex, e);
-            throw e;
+        Set<String> keys = Sets.newHashSet();
+        scanKeys(keyRegex, DEFAULT_SCAN_COUNT, keys::addAll);
+        return keys;
+    }
+
+    //============================key扫描============================//
+
+    /**
+     * 基于SCAN游标惰性遍历匹配的key, 每取完一页才向Redis请求下一页, 每页单独借还连接
+     * SCAN语义下, 遍历期间被修改的key可能重复返回
+     *
+     * @param keyRegex key正则
+     * @param count    每次扫描条数
+     * @return
+     */
+    public Iterator<String> scanKeyIterator(String keyRegex, Integer count) {
+        return newKeyScanIterator(keyRegex, count);
+    }
+
+    private ScanIterator<String> newKeyScanIterator(String keyRegex, Integer count) {
+        ScanParams scanParams = scanParams(keyRegex, count);
+        return new ScanIterator<>(cursor -> {
+            try (Jedis jedis = getAndSelectRDB("scan")) {
+                return jedis.scan(cursor, scanParams);
+            } catch (Exception e) {
+                log.error("扫描Key失败, keyRegex=[{}], cursor=[{}], 原因: {}", keyRegex, cursor, e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * 基于SCAN游标惰性遍历匹配的key
+     *
+     * @param keyRegex key正则
+     * @param count    每次扫描条数
+     * @return
+     */
+    public Stream<String> scanKeyStream(String keyRegex, Integer count) {
+        return lazyStream(scanKeyIterator(keyRegex, count));
+    }
+
+    /**
+     * 基于SCAN游标遍历匹配的key, 每页非空结果回调一次, 客户端内存占用与count相关
+     *
+     * @param keyRegex      key正则
+     * @param count         每次扫描条数
+     * @param batchConsumer 每页key
+     * @return 回调的key总数
+     */
+    public long scanKeys(String keyRegex, Integer count, Consumer<List<String>> batchConsumer) {
+        return consumePages(newKeyScanIterator(keyRegex, count), page -> {
+            batchConsumer.accept(page);
+            return true;
+        });
+    }
+
+    //============================集合扫描============================//
+
+    /**
+     * 基于HSCAN游标惰性遍历hash, 每取完一页才向Redis请求下一页, 每页单独借还连接
+     * 与{@link #hGetAll}不同, 不会一次性返回百万级field阻塞Redis, 遍历期间被修改的field可能重复返回
+     *
+     * @param key
+     * @param fieldPattern field匹配模式, 为空时不过滤
+     * @param count        每次扫描条数
+     * @return
+     */
+    public Iterator<Map.Entry<String, String>> hScanIterator(String key, String fieldPattern, Integer count) {
+        return newHScanIterator(key, fieldPattern, count);
+    }
+
+    /**
+     * 基于HSCAN游标惰性遍历hash, 可通过limit/findFirst等提前终止
+     *
+     * @param key
+     * @param fieldPattern field匹配模式, 为空时不过滤
+     * @param count        每次扫描条数
+     * @return
+     */
+    public Stream<Map.Entry<String, String>> hScanStream(String key, String fieldPattern, Integer count) {
+        return lazyStream(hScanIterator(key, fieldPattern, count));
+    }
+
+    /**
+     * 基于HSCAN游标分批遍历hash, 每页非空结果回调一次
+     *
+     * @param key
+     * @param fieldPattern  field匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @param batchConsumer 每页field及value, 返回false时提前终止
+     * @return 回调的field总数
+     */
+    public long hScan(String key, String fieldPattern, Integer count, Predicate<List<Map.Entry<String, String>>> batchConsumer) {
+        return consumePages(newHScanIterator(key, fieldPattern, count), batchConsumer);
+    }
+
+    /**
+     * 多个hash并行HSCAN, 并行度同{@link #pipelineParallelism}, 每个key由一个线程完整遍历
+     *
+     * @param keys
+     * @param fieldPattern  field匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @param batchConsumer 入参为key及其每页数据, 会被多个线程同时调用; 返回false时终止全部遍历
+     * @return key -> 回调的field数
+     */
+    public Map<String, Long> hScanParallel(Collection<String> keys, String fieldPattern, Integer count, BiPredicate<String, List<Map.Entry<String, String>>> batchConsumer) {
+        return scanInParallel(keys, key -> newHScanIterator(key, fieldPattern, count), batchConsumer);
+    }
+
+    /**
+     * 基于SSCAN游标惰性遍历set, 每取完一页才向Redis请求下一页, 每页单独借还连接
+     *
+     * @param key
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @return
+     */
+    public Iterator<String> sScanIterator(String key, String memberPattern, Integer count) {
+        return newSScanIterator(key, memberPattern, count);
+    }
+
+    /**
+     * 基于SSCAN游标惰性遍历set, 可通过limit/findFirst等提前终止
+     *
+     * @param key
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @return
+     */
+    public Stream<String> sScanStream(String key, String memberPattern, Integer count) {
+        return lazyStream(sScanIterator(key, memberPattern, count));
+    }
+
+    /**
+     * 基于SSCAN游标分批遍历set, 每页非空结果回调一次
+     *
+     * @param key
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @param batchConsumer 每页member, 返回false时提前终止
+     * @return 回调的member总数
+     */
+    public long sScan(String key, String memberPattern, Integer count, Predicate<List<String>> batchConsumer) {
+        return consumePages(newSScanIterator(key, memberPattern, count), batchConsumer);
+    }
+
+    /**
+     * 多个set并行SSCAN, 并行度同{@link #pipelineParallelism}, 每个key由一个线程完整遍历
+     *
+     * @param keys
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @param batchConsumer 入参为key及其每页数据, 会被多个线程同时调用; 返回false时终止全部遍历
+     * @return key -> 回调的member数
+     */
+    public Map<String, Long> sScanParallel(Collection<String> keys, String memberPattern, Integer count, BiPredicate<String, List<String>> batchConsumer) {
+        return scanInParallel(keys, key -> newSScanIterator(key, memberPattern, count), batchConsumer);
+    }
+
+    /**
+     * 基于ZSCAN游标惰性遍历zset, 结果不保证按分数排序
+     *
+     * @param key
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @return
+     */
+    public Iterator<Tuple> zScanIterator(String key, String memberPattern, Integer count) {
+        return newZScanIterator(key, memberPattern, count);
+    }
+
+    /**
+     * 基于ZSCAN游标惰性遍历zset, 可通过limit/findFirst等提前终止
+     *
+     * @param key
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @return
+     */
+    public Stream<Tuple> zScanStream(String key, String memberPattern, Integer count) {
+        return lazyStream(zScanIterator(key, memberPattern, count));
+    }
+
+    /**
+     * 基于ZSCAN游标分批遍历zset, 每页非空结果回调一次
+     *
+     * @param key
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @param batchConsumer 每页member及分数, 返回false时提前终止
+     * @return 回调的member总数
+     */
+    public long zScan(String key, String memberPattern, Integer count, Predicate<List<Tuple>> batchConsumer) {
+        return consumePages(newZScanIterator(key, memberPattern, count), batchConsumer);
+    }
+
+    /**
+     * 多个zset并行ZSCAN, 并行度同{@link #pipelineParallelism}, 每个key由一个线程完整遍历
+     *
+     * @param keys
+     * @param memberPattern member匹配模式, 为空时不过滤
+     * @param count         每次扫描条数
+     * @param batchConsumer 入参为key及其每页数据, 会被多个线程同时调用; 返回false时终止全部遍历
+     * @return key -> 回调的member数
+     */
+    public Map<String, Long> zScanParallel(Collection<String> keys, String memberPattern, Integer count, BiPredicate<String, List<Tuple>> batchConsumer) {
+        return scanInParallel(keys, key -> newZScanIterator(key, memberPattern, count), batchConsumer);
+    }
+
+    private ScanIterator<Map.Entry<String, String>> newHScanIterator(String key, String fieldPattern, Integer count) {
+        return collectionScanIterator("HSCAN", key, fieldPattern, count, (jedis, cursor, params) -> jedis.hscan(key, cursor, params));
+    }
+
+    private ScanIterator<String> newSScanIterator(String key, String memberPattern, Integer count) {
+        return collectionScanIterator("SSCAN", key, memberPattern, count, (jedis, cursor, params) -> jedis.sscan(key, cursor, params));
+    }
+
+    private ScanIterator<Tuple> newZScanIterator(String key, String memberPattern, Integer count) {
+        return collectionScanIterator("ZSCAN", key, memberPattern, count, (jedis, cursor, params) -> jedis.zscan(key, cursor, params));
+    }
+
+    private <T> ScanIterator<T> collectionScanIterator(String command, String key, String pattern, Integer count, ScanCommand<T> scanCommand) {
+        ScanParams scanParams = scanParams(pattern, count);
+        return new ScanIterator<>(cursor -> {
+            try (Jedis jedis = getAndSelectRDB(command)) {
+                return scanCommand.scan(jedis, cursor, scanParams);
+            } catch (Exception e) {
+                log.error("{}扫描失败, key=[{}], cursor=[{}], 原因: {}", command, key, cursor, e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * 逐页回调, 回调返回false时不再请求后续页
+     *
+     * @return 回调的元素总数
+     */
+    private static <T> long consumePages(ScanIterator<T> iterator, Predicate<List<T>> batchConsumer) {
+        long total = 0;
+        List<T> page;
+        while (!(page = iterator.nextPage()).isEmpty()) {
+            total += page.size();
+            if (!batchConsumer.test(page)) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private <T> Map<String, Long> scanInParallel(Collection<String> keys, Function<String, ScanIterator<T>> iteratorFactory, BiPredicate<String, List<T>> batchConsumer) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (CollectionFunUtil.isEmpty(keys)) {
+            return counts;
         }
+        AtomicBoolean stopped = new AtomicBoolean();
+        Function<String, Long> task = key -> stopped.get() ? 0L : consumePages(iteratorFactory.apply(key), page -> {
+            if (!batchConsumer.test(key, page)) {
+                stopped.set(true);
+            }
+            return !stopped.get();
+        });
+        if (keys.size() <= 1 || pipelineParallelism <= 1) {
+            keys.forEach(key -> counts.put(key, task.apply(key)));
+            return counts;
+        }
+        ExecutorService executor = getPipelineExecutor();
+        Map<String, CompletableFuture<Long>> futures = new LinkedHashMap<>();
+        keys.forEach(key -> futures.put(key, CompletableFuture.supplyAsync(() -> task.apply(key), executor)));
+        try {
+            futures.forEach((key, future) -> counts.put(key, future.join()));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return counts;
+    }
+
+    private static <T> Stream<T> lazyStream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false);
     }
 
     //============================百宝箱============================//
@@ -515,15 +956,9 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(keys)) {
             return Maps.newHashMap();
         }
-        preCheckPipelineCmdCount(keys);
-        try (Jedis jedis = getAndSelectRDB()) {
-            Pipeline pipeline = jedis.pipelined();
-            // 收集命令
-            Map<String, Response<Long>> cmdMap = CollectionFunUtil.transToMap(keys, Function.identity(), pipeline::ttl);
-            // 执行命令
-            pipeline.sync();
-            // 获取及解析结果
-            return CollectionFunUtil.transToMap(cmdMap.entrySet(), Map.Entry::getKey, entry -> entry.getValue().get());
+        try {
+            List<String> keyList = new ArrayList<>(keys);
+            return zipToMap(keyList, pipelineInChunks(keyList, 1, Pipeline::ttl));
         } catch (Exception e) {
             log.error("批量获取KEY的大致过期时间, keys=[{}] 原因: ", CollectionFunUtil.show(keys), e);
             throw e;
@@ -532,11 +967,12 @@ public class JedisService {
 
     /**
      * 批量执行事务命令
+     * 事务内的写操作不会失效近端缓存, 需自行调用{@link RedisNearCache#invalidate(String)}
      *
      * @param transaction
      */
     public void batchExecute(RedisTransactionFunction transaction) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("batchExecute")) {
             transaction.doAction(jedis.multi());
         } catch (Exception e) {
             log.error("批量执行事务命令失败, 原因: ", e);
@@ -546,32 +982,38 @@ public class JedisService {
 
     /**
      * 根据正则批量清理Key
+     * SCAN逐页遍历, 上一页key的UNLINK(后台线程释放内存)与下一页SCAN在同一连接的管道中发送, 每页一次往返, 不额外借用连接
      *
      * @param keyRegex key正则
      * @param count    每次扫描条数
-     * @return
+     * @return 实际删除的key数量
      */
     @WarnDoc("生产环境慎用, 应反复检查确认keyRegex")
     public Long clearByKeyRegex(final String keyRegex, final Integer count) {
-        long keyTotalDel = 0;
-        try (Jedis jedis = getAndSelectRDB()) {
-            ScanParams scanParams = new ScanParams();
-            scanParams.match(keyRegex);
-            scanParams.count(count);
-            byte[] cursor = CURSOR_FLAG;
-            ScanResult<byte[]> scanResult;
-            List<byte[]> keys;
+        try (Jedis jedis = getAndSelectRDB("clearByKeyRegex")) {
+            Pipeline pipeline = jedis.pipelined();
+            byte[][] scanArgs = scanArgs(scanParams(keyRegex, count));
+            List<String> pageKeys = Collections.emptyList();
+            long keyTotalDel = 0L;
+            String cursor = ScanParams.SCAN_POINTER_START;
             do {
-                scanResult = jedis.scan(cursor, scanParams);
-                keys = scanResult.getResult();
-                if (CollectionFunUtil.isNotEmpty(keys)) {
-                    jedis.del(CollectionFunUtil.filterAndTransArray(keys, CollectionFunUtil::isNotEmpty, String::new, String[]::new));
-                    keyTotalDel += keys.size();
-                    log.debug("成功清除[{}]个key", keys.size());
+                Response<Long> unlinked = pageKeys.isEmpty() ? null : pipeline.unlink(pageKeys.toArray(new String[0]));
+                scanArgs[0] = SafeEncoder.encode(cursor);
+                Response<Object> scanned = pipeline.sendCommand(Protocol.Command.SCAN, scanArgs);
+                pipeline.sync();
+                keyTotalDel += unlinkedCount(unlinked, pageKeys);
+                List<?> reply = (List<?>) scanned.get();
+                cursor = SafeEncoder.encode((byte[]) reply.get(0));
+                pageKeys = new ArrayList<>();
+                for (Object key : (List<?>) reply.get(1)) {
+                    pageKeys.add(SafeEncoder.encode((byte[]) key));
                 }
-                cursor = scanResult.getCursorAsBytes();
-            } while (CollectionFunUtil.nonEqualsArray(CURSOR_FLAG, cursor));
-
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            if (!pageKeys.isEmpty()) {
+                Response<Long> unlinked = pipeline.unlink(pageKeys.toArray(new String[0]));
+                pipeline.sync();
+                keyTotalDel += unlinkedCount(unlinked, pageKeys);
+            }
             return keyTotalDel;
         } catch (Exception e) {
             log.error("根据正则批量清理Key失败, 原因: ", e);
@@ -579,13 +1021,35 @@ public class JedisService {
         }
     }
 
+    /**
+     * SCAN命令参数, 首位留给游标
+     */
+    private static byte[][] scanArgs(ScanParams scanParams) {
+        List<byte[]> params = new ArrayList<>(scanParams.getParams());
+        byte[][] args = new byte[params.size() + 1][];
+        for (int i = 0; i < params.size(); i++) {
+            args[i + 1] = params.get(i);
+        }
+        return args;
+    }
+
+    private long unlinkedCount(Response<Long> unlinked, List<String> keys) {
+        if (Objects.isNull(unlinked)) {
+            return 0L;
+        }
+        invalidateNearCache(keys);
+        Long deleted = unlinked.get();
+        log.debug("成功清除[{}]个key", deleted);
+        return Objects.isNull(deleted) ? 0L : deleted;
+    }
+
     /**
      * 获取Redis服务信息
      *
      * @return
      */
     public String info() {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("info")) {
             return jedis.info();
         } catch (Exception e) {
             log.error("获取Redis服务信息失败, 原因: ", e);
@@ -599,7 +1063,7 @@ public class JedisService {
      * @return
      */
     public String info(String section) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("info")) {
             return jedis.info(section);
         } catch (Exception e) {
             log.error("获取Redis服务指定信息失败, section=[{}], 原因: {}", section, e);
@@ -610,7 +1074,7 @@ public class JedisService {
     //============================hash操作============================//
 
     /**
-     * 向hash中插入单条数据并设置过期时间
+     * 向hash中插入单条数据并设置过期时间, Lua脚本一次往返原子完成
      *
      * @param key
      * @param field
@@ -619,13 +1083,10 @@ public class JedisService {
      * @return
      */
     public boolean hSetAndExpire(String key, String field, String value, Integer expireTime) {
-        try (Jedis jedis = getAndSelectRDB()) {
-            Transaction transaction = jedis.multi();
-            transaction.hset(key, field, value);
-            if (validateExpireTime(expireTime)) {
-                transaction.expire(key, expireTime);
-            }
-            transaction.exec();
+        try (Jedis jedis = getAndSelectRDB("hSetAndExpire")) {
+            scriptRegistry.eval(jedis, RedisScriptRegistry.HSET_AND_EXPIRE, Collections.singletonList(key),
+                    Arrays.asList(expireArg(expireTime), field, value));
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
             log.error("向hash中插入单条数据并设置过期时间失败, key=[{}], field=[{}], value=[{}], expireTime=[{}], 原因: {}", key, field, value, expireTime, e);
@@ -634,7 +1095,7 @@ public class JedisService {
     }
 
     /**
-     * 向hash中批量插入多条数据并设置过期时间
+     * 向hash中批量插入多条数据并设置过期时间, Lua脚本一次往返原子完成
      *
      * @param key
      * @param fvMap
@@ -642,11 +1103,15 @@ public class JedisService {
      * @return
      */
     public boolean hMultiSetAndExpire(String key, Map<String, String> fvMap, Integer expireTime) {
-        try (Jedis jedis = getAndSelectRDB()) {
-            jedis.hmset(key, fvMap);
-            if (validateExpireTime(expireTime)) {
-                jedis.expire(key, expireTime);
-            }
+        try (Jedis jedis = getAndSelectRDB("hMultiSetAndExpire")) {
+            List<String> args = new ArrayList<>(fvMap.size() * 2 + 1);
+            args.add(expireArg(expireTime));
+            fvMap.forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+            scriptRegistry.eval(jedis, RedisScriptRegistry.HSET_AND_EXPIRE, Collections.singletonList(key), args);
+            invalidateNearCache(key);
             return true;
         } catch (Exception e) {
             log.error("向hash中批量插入多条数据并设置过期时间失败, key=[{}], value=[{}], expireTime=[{}], 原因: {}", key, CollectionFunUtil.showMap(fvMap), expireTime, e);
@@ -663,8 +1128,12 @@ public class JedisService {
      * @return
      */
     public boolean hSetIfAbsent(String key, String field, String value) {
-        try (Jedis jedis = getAndSelectRDB()) {
-            return jedis.hsetnx(key, field, value) > 0;
+        try (Jedis jedis = getAndSelectRDB("hSetIfAbsent")) {
+            boolean absent = jedis.hsetnx(key, field, value) > 0;
+            if (absent) {
+                invalidateNearCache(key);
+            }
+            return absent;
         } catch (Exception e) {
             log.error("当hash中指定field不存在时插入数据失败, key=[{}], field=[{}], value=[{}], 原因: {}", key, field, value, e);
             throw e;
@@ -679,7 +1148,14 @@ public class JedisService {
      * @return
      */
     public String hGet(String key, String field) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        if (nearCache != null) {
+            return nearCache.hget(key, field, this::loadHashField);
+        }
+        return loadHashField(key, field);
+    }
+
+    private String loadHashField(String key, String field) {
+        try (Jedis jedis = getAndSelectRDB("hGet")) {
             return jedis.hget(key, field);
         } catch (Exception e) {
             log.error("获取hash中单条数据失败, key=[{}], field=[{}], 原因: {}", key, field, e);
@@ -695,7 +1171,7 @@ public class JedisService {
      * @return
      */
     public List<String> hMultiGet(String key, Set<String> fields) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("hMultiGet")) {
             return jedis.hmget(key, fields.toArray(new String[0]));
         } catch (Exception e) {
             log.error("获取hash中多个fields数据失败, key=[{}], fields=[{}], 原因: {}", key, CollectionFunUtil.show(fields), e);
@@ -705,12 +1181,20 @@ public class JedisService {
 
     /**
      * 获取hash中的全部数据(field, value)
+     * 一次性返回全部field, 大hash请使用{@link #hScan}分批读取
      *
      * @param key
      * @return
      */
     public Map<String, String> hGetAll(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        if (nearCache != null) {
+            return nearCache.hgetAll(key, this::loadHash);
+        }
+        return loadHash(key);
+    }
+
+    private Map<String, String> loadHash(String key) {
+        try (Jedis jedis = getAndSelectRDB("hGetAll")) {
             return jedis.hgetAll(key);
         } catch (Exception e) {
             log.error("获取hash中的全部数据失败, key=[{}], 原因: {}", key, e);
@@ -729,8 +1213,10 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(fields)) {
             return 0L;
         }
-        try (Jedis jedis = getAndSelectRDB()) {
-            return jedis.hdel(key, fields.toArray(new String[0]));
+        try (Jedis jedis = getAndSelectRDB("hDel")) {
+            Long count = jedis.hdel(key, fields.toArray(new String[0]));
+            invalidateNearCache(key);
+            return count;
         } catch (Exception e) {
             log.error("删除hash中的字段数据失败, key=[{}], fields=[{}], 原因: {}", key, CollectionFunUtil.show(fields), e);
             throw e;
@@ -739,12 +1225,13 @@ public class JedisService {
 
     /**
      * 获取hash中的field列表
+     * 一次性返回全部field, 大hash请使用{@link #hScan}分批读取
      *
      * @param key
      * @return
      */
     public Set<String> hKeys(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("hKeys")) {
             return jedis.hkeys(key);
         } catch (Exception e) {
             log.error("获取hash中的fields列表失败, key=[{}], 原因: {}", key, e);
@@ -759,7 +1246,7 @@ public class JedisService {
      * @return
      */
     public Long hLen(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("hLen")) {
             return jedis.hlen(key);
         } catch (Exception e) {
             log.error("获取hash数据条数失败, key=[{}], 原因: {}", key, e);
@@ -779,7 +1266,7 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(members)) {
             return 0L;
         }
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("sBatchAdd")) {
             return jedis.sadd(key, members.toArray(new String[0]));
         } catch (Exception e) {
             log.error("无序集合批量添加数据失败, key=[{}], members=[{}], 原因: {}", key, CollectionFunUtil.show(members), e);
@@ -800,12 +1287,13 @@ public class JedisService {
 
     /**
      * 获取所有成员(无序集合)
+     * 一次性返回全部成员, 大集合请使用{@link #sScan}分批读取
      *
      * @param key
      * @return
      */
     public Set<String> sGetAllMembers(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("sGetAllMembers")) {
             return jedis.smembers(key);
         } catch (Exception e) {
             log.error("无序集合获取所有成员失败, key=[{}], 原因: {}", key, e);
@@ -821,7 +1309,7 @@ public class JedisService {
      * @return
      */
     public boolean sExist(String key, String member) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("sExist")) {
             return jedis.sismember(key, member);
         } catch (Exception e) {
             log.error("无序集合判断是否存在指定成员失败, key=[{}], member=[{}], 原因: {}", key, member, e);
@@ -840,7 +1328,7 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(members)) {
             return 0L;
         }
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("sBatchDelete")) {
             return jedis.srem(key, members.toArray(new String[0]));
         } catch (Exception e) {
             log.error("无序集合批量移除成员失败, key=[{}], members=[{}], 原因: {}", key, CollectionFunUtil.show(members), e);
@@ -870,7 +1358,7 @@ public class JedisService {
      * @return
      */
     public Long zAdd(String key, String member, Double score) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zAdd")) {
             return jedis.zadd(key, score, member);
         } catch (Exception e) {
             log.error("添加成员及分值失败, key=[{}], member=[{}], score=[{}], 原因: {}", key, member, score, e);
@@ -889,7 +1377,7 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(memberScoreMap)) {
             return 0L;
         }
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zBatchAdd")) {
             return jedis.zadd(key, memberScoreMap);
         } catch (Exception e) {
             log.error("批量添加成员及分值失败, key=[{}], memberScoreMap=[{}], 原因: {}", key, CollectionFunUtil.showMap(memberScoreMap), e);
@@ -904,7 +1392,7 @@ public class JedisService {
      * @return
      */
     public Long zCard(String key) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zCard")) {
             return jedis.zcard(key);
         } catch (Exception e) {
             log.error("获取有序集合成员总数失败, key=[{}], 原因: {}", key, e);
@@ -920,7 +1408,7 @@ public class JedisService {
      * @return
      */
     public Long zRank(String key, String member) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zRank")) {
             return jedis.zrank(key, member);
         } catch (Exception e) {
             log.error("获取有序集合中指定成员的增序排名失败, key=[{}], member=[{}], 原因: {}", key, member, e);
@@ -936,7 +1424,7 @@ public class JedisService {
      * @return
      */
     public Long zReverseRank(String key, String member) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zReverseRank")) {
             return jedis.zrevrank(key, member);
         } catch (Exception e) {
             log.error("获取有序集合中指定成员的降序排名失败, key=[{}], member=[{}], 原因: {}", key, member, e);
@@ -946,13 +1434,14 @@ public class JedisService {
 
     /**
      * 获取有序集合指定增序区间内的成员
+     * 区间为(0, -1)时返回全部成员, 大集合不要求有序时请使用{@link #zScan}分批读取
      *
      * @param key
      * @param start
      * @param end
      */
     public Set<String> zRange(String key, long start, long end) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zRange")) {
             return jedis.zrange(key, start, end);
         } catch (Exception e) {
             log.error("获取有序集合指定增序区间内的成员失败, key=[{}], start=[{}], end=[{}], 原因: {}", key, start, end, e);
@@ -969,7 +1458,7 @@ public class JedisService {
      * @param end
      */
     public Set<String> zReverseRange(String key, long start, long end) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zReverseRange")) {
             return jedis.zrevrange(key, Math.min(start, end), Math.max(start, end));
         } catch (Exception e) {
             log.error("获取有序集合指定降序区间内的成员失败, key=[{}], start=[{}], end=[{}], 原因: {}", key, start, end, e);
@@ -987,7 +1476,7 @@ public class JedisService {
      * @return
      */
     public Set<String> zRangeByScore(String key, Double min, Double max) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zRangeByScore")) {
             return jedis.zrangeByScore(key, Math.min(min, max), Math.max(min, max));
         } catch (Exception e) {
             log.error("获取有序集合指定分数降序区间内的成员, key=[{}], max=[{}], min=[{}], 原因: {}", key, max, min, e);
@@ -1005,7 +1494,7 @@ public class JedisService {
      * @return
      */
     public Set<String> zReverseRangeByScore(String key, Double max, Double min) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zReverseRangeByScore")) {
             return jedis.zrevrangeByScore(key, Math.max(min, max), Math.min(min, max));
         } catch (Exception e) {
             log.error("获取有序集合指定分数降序区间内的成员, key=[{}], max=[{}], min=[{}], 原因: {}", key, max, min, e);
@@ -1021,7 +1510,7 @@ public class JedisService {
      * @return
      */
     public Double zScore(String key, String member) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zScore")) {
             return jedis.zscore(key, member);
         } catch (Exception e) {
             log.error("获取有序集合成员分数值失败, key=[{}], member=[{}], 原因: {}", key, member, e);
@@ -1040,7 +1529,7 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(members)) {
             return 0L;
         }
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zBatchDelete")) {
             return jedis.zrem(key, members.toArray(new String[0]));
         } catch (Exception e) {
             log.error("批量删除移除有序集合成员失败, key=[{}], members=[{}], 原因: {}", key, CollectionFunUtil.show(members), e);
@@ -1059,7 +1548,7 @@ public class JedisService {
         if (CollectionFunUtil.isEmpty(members)) {
             return 0L;
         }
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zDelete")) {
             return jedis.zrem(key, members.toArray(new String[0]));
         } catch (Exception e) {
             log.error("批量删除移除有序集合成员失败, key=[{}], members=[{}], 原因: {}", key, CollectionFunUtil.show(members), e);
@@ -1076,7 +1565,7 @@ public class JedisService {
      * @return
      */
     public Long zDeleteRangeByScore(String key, Double min, Double max) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zDeleteRangeByScore")) {
             return jedis.zremrangeByScore(key, Math.min(min, max), Math.max(min, max));
         } catch (Exception e) {
             log.error("根据增序分数范围批量删除移除有序集合成员失败, key=[{}], min=[{}], max=[{}], 原因: {}", key, min, max, e);
@@ -1093,7 +1582,7 @@ public class JedisService {
      * @return
      */
     public Long zDeleteRangeByRank(String key, int min, int max) {
-        try (Jedis jedis = getAndSelectRDB()) {
+        try (Jedis jedis = getAndSelectRDB("zDeleteRangeByRank")) {
             return jedis.zremrangeByScore(key, Math.min(min, max), Math.max(min, max));
         } catch (Exception e) {
             log.error("根据增序排名范围批量删除移除有序集合成员失败, key=[{}], min=[{}], max=[{}], 原因: {}", key, min, max, e);
@@ -1101,36 +1590,619 @@ public class JedisService {
         }
     }
 
+    //============================批量操作============================//
+
     /**
-     * 检查过期时间, 为null代表永久, 然后是正整数
+     * 批量获取字符串, 不存在的key对应null
      *
-     * @param expireTime
-     * @return
+     * @param keys
+     * @return key -> value, 顺序与入参一致
      */
-    private boolean validateExpireTime(Integer expireTime) {
-        return Objects.nonNull(expireTime) && expireTime > 0;
+    public Map<String, String> multiGet(Collection<String> keys) {
+        if (CollectionFunUtil.isEmpty(keys)) {
+            return Maps.newHashMap();
+        }
+        try {
+            List<String> keyList = new ArrayList<>(keys);
+            return zipToMap(keyList, pipelineInChunks(keyList, 1, Pipeline::get));
+        } catch (Exception e) {
+            log.error("批量获取字符串失败, keys=[{}], 原因: {}", CollectionFunUtil.show(keys), e);
+            throw e;
+        }
     }
 
     /**
-     * 获取数据库连接
+     * 批量设置字符串及过期时间
      *
+     * @param kvMap
+     * @param expireTime 单位秒, 为空时不过期
      * @return
      */
-    private Jedis getAndSelectRDB() {
-        Jedis jedis = jedisPool.getResource();
-        jedis.select(rDbIndex);
-        return jedis;
-    }
-
+    public boolean multiSet(Map<String, String> kvMap, Integer expireTime) {
+        if (CollectionFunUtil.isEmpty(kvMap)) {
+            return false;
+        }
+        try {
+            pipelineInChunks(new ArrayList<>(kvMap.entrySet()), 1, (pipeline, entry) -> validateExpireTime(expireTime)
+                    ? pipeline.setex(entry.getKey(), expireTime, entry.getValue())
+                    : pipeline.set(entry.getKey(), entry.getValue()));
+            invalidateNearCache(kvMap.keySet());
+            return true;
+        } catch (Exception e) {
+            log.error("批量设置字符串及过期时间失败, map=[{}], expireTime=[{}], 原因: {}", CollectionFunUtil.showMap(kvMap), expireTime, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量获取多个hash中同一field的值, 不存在时对应null
+     *
+     * @param keys
+     * @param field
+     * @return key -> value, 顺序与入参一致
+     */
+    public Map<String, String> multiHGet(Collection<String> keys, String field) {
+        if (CollectionFunUtil.isEmpty(keys)) {
+            return Maps.newHashMap();
+        }
+        try {
+            List<String> keyList = new ArrayList<>(keys);
+            return zipToMap(keyList, pipelineInChunks(keyList, 1, (pipeline, key) -> pipeline.hget(key, field)));
+        } catch (Exception e) {
+            log.error("批量获取hash数据失败, keys=[{}], field=[{}], 原因: {}", CollectionFunUtil.show(keys), field, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量向多个hash写入数据并设置过期时间
+     *
+     * @param keyFvMap   key -> (field -> value)
+     * @param expireTime 单位秒, 为空时不过期
+     * @return
+     */
+    public boolean multiHSet(Map<String, Map<String, String>> keyFvMap, Integer expireTime) {
+        if (CollectionFunUtil.isEmpty(keyFvMap)) {
+            return false;
+        }
+        boolean withExpire = validateExpireTime(expireTime);
+        try {
+            pipelineInChunks(new ArrayList<>(keyFvMap.entrySet()), withExpire ? 2 : 1, (pipeline, entry) -> {
+                Response<Long> response = pipeline.hset(entry.getKey(), entry.getValue());
+                if (withExpire) {
+                    pipeline.expire(entry.getKey(), expireTime);
+                }
+                return response;
+            });
+            invalidateNearCache(keyFvMap.keySet());
+            return true;
+        } catch (Exception e) {
+            log.error("批量写入hash数据失败, keys=[{}], expireTime=[{}], 原因: {}", CollectionFunUtil.show(keyFvMap.keySet()), expireTime, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量设置过期时间
+     *
+     * @param keys
+     * @param expireTime 单位秒
+     * @return key -> 是否设置成功, 顺序与入参一致
+     */
+    public Map<String, Boolean> multiExpire(Collection<String> keys, int expireTime) {
+        if (CollectionFunUtil.isEmpty(keys)) {
+            return Maps.newHashMap();
+        }
+        try {
+            List<String> keyList = new ArrayList<>(keys);
+            List<Long> results = pipelineInChunks(keyList, 1, (pipeline, key) -> pipeline.expire(key, expireTime));
+            return zipToMap(keyList, results.stream().map(result -> Objects.nonNull(result) && result > 0).collect(Collectors.toList()));
+        } catch (Exception e) {
+            log.error("批量设置过期时间失败, keys=[{}], expireTime=[{}], 原因: {}", CollectionFunUtil.show(keys), expireTime, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量获取剩余过期时间, -1为永久, -2为不存在
+     *
+     * @param keys
+     * @return key -> 剩余秒数, 顺序与入参一致
+     */
+    public Map<String, Long> multiTtl(Collection<String> keys) {
+        if (CollectionFunUtil.isEmpty(keys)) {
+            return Maps.newHashMap();
+        }
+        try {
+            List<String> keyList = new ArrayList<>(keys);
+            return zipToMap(keyList, pipelineInChunks(keyList, 1, Pipeline::ttl));
+        } catch (Exception e) {
+            log.error("批量获取剩余过期时间失败, keys=[{}], 原因: {}", CollectionFunUtil.show(keys), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量删除key
+     *
+     * @param keys
+     * @return 实际删除个数
+     */
+    public Long multiDelete(Collection<String> keys) {
+        if (CollectionFunUtil.isEmpty(keys)) {
+            return 0L;
+        }
+        try {
+            long count = pipelineInChunks(new ArrayList<>(keys), 1, Pipeline::del).stream().filter(Objects::nonNull).mapToLong(Long::longValue).sum();
+            invalidateNearCache(keys);
+            return count;
+        } catch (Exception e) {
+            log.error("批量删除key失败, keys=[{}], 原因: {}", CollectionFunUtil.show(keys), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 批量获取有序集合成员分数值, 不存在时对应null
+     *
+     * @param key
+     * @param members
+     * @return member -> score, 顺序与入参一致
+     */
+    public Map<String, Double> multiZScore(String key, Collection<String> members) {
+        if (CollectionFunUtil.isEmpty(members)) {
+            return Maps.newHashMap();
+        }
+        try {
+            List<String> memberList = new ArrayList<>(members);
+            return zipToMap(memberList, pipelineInChunks(memberList, 1, (pipeline, member) -> pipeline.zscore(key, member)));
+        } catch (Exception e) {
+            log.error("批量获取有序集合成员分数值失败, key=[{}], members=[{}], 原因: {}", key, CollectionFunUtil.show(members), e);
+            throw e;
+        }
+    }
+
+    //============================Lua脚本============================//
+
+    /**
+     * Lua脚本注册表, 可注册自定义脚本后通过{@link #evalScript}执行
+     *
+     * @return
+     */
+    public RedisScriptRegistry getScriptRegistry() {
+        return scriptRegistry;
+    }
+
+    /**
+     * 连接池, 供需要独占连接(如订阅)的组件使用
+     *
+     * @return
+     */
+    JedisPool getJedisPool() {
+        return jedisPool;
+    }
+
+    /**
+     * 执行已注册的Lua脚本, 优先EVALSHA, 服务端未缓存时回退EVAL
+     * 脚本内的写操作不会失效近端缓存, 需自行调用{@link RedisNearCache#invalidate(String)}
+     *
+     * @param name 脚本名称
+     * @param keys
+     * @param args
+     * @return
+     */
+    public Object evalScript(String name, List<String> keys, List<String> args) {
+        try (Jedis jedis = getAndSelectRDB("evalScript")) {
+            return scriptRegistry.eval(jedis, name, keys, args);
+        } catch (Exception e) {
+            log.error("执行Lua脚本失败, name=[{}], keys=[{}], 原因: {}", name, CollectionFunUtil.show(keys), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 值等于期望值时删除(释放锁), 比较与删除原子完成
+     *
+     * @param key
+     * @param expectedValue
+     * @return 是否删除
+     */
+    public boolean compareAndDelete(String key, String expectedValue) {
+        boolean deleted = toLong(evalScript(RedisScriptRegistry.COMPARE_AND_DELETE, Collections.singletonList(key), Collections.singletonList(expectedValue))) > 0;
+        if (deleted) {
+            invalidateNearCache(key);
+        }
+        return deleted;
+    }
+
+    /**
+     * 滑动窗口限流, 任意windowMillis时长内最多放行limit次
+     * 时间取自本机时钟, 多实例共用同一key时需保证时钟同步
+     *
+     * @param key
+     * @param windowMillis 窗口毫秒数
+     * @param limit        窗口内放行上限
+     * @return 是否放行
+     */
+    public boolean tryAcquireSlidingWindow(String key, long windowMillis, int limit) {
+        long now = System.currentTimeMillis();
+        String requestId = now + "-" + ThreadLocalRandom.current().nextLong();
+        return toLong(evalScript(RedisScriptRegistry.SLIDING_WINDOW, Collections.singletonList(key),
+                Arrays.asList(String.valueOf(now), String.valueOf(windowMillis), String.valueOf(limit), requestId))) > 0;
+    }
+
+    /**
+     * 令牌桶限流, 桶满时允许capacity次突发, 之后按refillPerSecond匀速放行
+     * 时间取自本机时钟, 多实例共用同一key时需保证时钟同步
+     *
+     * @param key
+     * @param capacity        桶容量
+     * @param refillPerSecond 每秒补充令牌数
+     * @param permits         本次申请令牌数
+     * @return 是否放行
+     */
+    public boolean tryAcquireTokenBucket(String key, int capacity, double refillPerSecond, int permits) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("令牌桶容量及补充速率必须大于0, key=" + key);
+        }
+        return toLong(evalScript(RedisScriptRegistry.TOKEN_BUCKET, Collections.singletonList(key), Arrays.asList(
+                String.valueOf(capacity), String.valueOf(refillPerSecond), String.valueOf(System.currentTimeMillis()), String.valueOf(permits)))) > 0;
+    }
+
+    //============================编解码对象操作============================//
+
+    /**
+     * 按编解码器读取对象, 以byte[]命令存取, 不经过近端缓存
+     *
+     * @param key
+     * @param type  目标类型, 支持泛型
+     * @param codec 编解码器
+     * @return key不存在时返回null
+     */
+    public <T> T getObject(String key, Type type, @NonNull RedisValueCodec codec) {
+        try (Jedis jedis = getAndSelectRDB("getObject")) {
+            byte[] bytes = jedis.get(SafeEncoder.encode(key));
+            return Objects.isNull(bytes) ? null : codec.decode(bytes, type);
+        } catch (Exception e) {
+            log.error("按编解码器读取对象失败, key=[{}], 原因: {}", key, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 按编解码器写入对象及过期时间
+     *
+     * @param key
+     * @param value
+     * @param expireTime 单位秒, 为空时不过期
+     * @param codec      编解码器
+     * @return
+     */
+    public boolean setObject(String key, Object value, Integer expireTime, @NonNull RedisValueCodec codec) {
+        byte[] bytes = codec.encode(value);
+        try (Jedis jedis = getAndSelectRDB("setObject")) {
+            if (validateExpireTime(expireTime)) {
+                jedis.setex(SafeEncoder.encode(key), expireTime, bytes);
+            } else {
+                jedis.set(SafeEncoder.encode(key), bytes);
+            }
+            invalidateNearCache(key);
+            return true;
+        } catch (Exception e) {
+            log.error("按编解码器写入对象失败, key=[{}], expireTime=[{}], 原因: {}", key, expireTime, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 按编解码器读取hash中单个对象
+     *
+     * @param key
+     * @param field
+     * @param type  目标类型, 支持泛型
+     * @param codec 编解码器
+     * @return
+     */
+    public <T> T hGetObject(String key, String field, Type type, @NonNull RedisValueCodec codec) {
+        try (Jedis jedis = getAndSelectRDB("hGetObject")) {
+            byte[] bytes = jedis.hget(SafeEncoder.encode(key), SafeEncoder.encode(field));
+            return Objects.isNull(bytes) ? null : codec.decode(bytes, type);
+        } catch (Exception e) {
+            log.error("按编解码器读取hash对象失败, key=[{}], field=[{}], 原因: {}", key, field, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 按编解码器向hash写入单个对象
+     *
+     * @param key
+     * @param field
+     * @param value
+     * @param codec 编解码器
+     * @return
+     */
+    public boolean hSetObject(String key, String field, Object value, @NonNull RedisValueCodec codec) {
+        byte[] bytes = codec.encode(value);
+        try (Jedis jedis = getAndSelectRDB("hSetObject")) {
+            jedis.hset(SafeEncoder.encode(key), SafeEncoder.encode(field), bytes);
+            invalidateNearCache(key);
+            return true;
+        } catch (Exception e) {
+            log.error("按编解码器写入hash对象失败, key=[{}], field=[{}], 原因: {}", key, field, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 按编解码器批量读取对象, 不存在时对应null
+     *
+     * @param keys
+     * @param type  目标类型, 支持泛型
+     * @param codec 编解码器
+     * @return key -> value, 顺序与入参一致
+     */
+    public <T> Map<String, T> multiGetObject(Collection<String> keys, Type type, @NonNull RedisValueCodec codec) {
+        if (CollectionFunUtil.isEmpty(keys)) {
+            return Maps.newHashMap();
+        }
+        try {
+            List<String> keyList = new ArrayList<>(keys);
+            List<byte[]> values = pipelineInChunks(keyList, 1, (pipeline, key) -> pipeline.get(SafeEncoder.encode(key)));
+            List<T> decoded = new ArrayList<>(values.size());
+            for (byte[] bytes : values) {
+                decoded.add(Objects.isNull(bytes) ? null : codec.decode(bytes, type));
+            }
+            return zipToMap(keyList, decoded);
+        } catch (Exception e) {
+            log.error("按编解码器批量读取对象失败, keys=[{}], 原因: {}", CollectionFunUtil.show(keys), e);
+            throw e;
+        }
+    }
+
+    private ScanParams scanParams(String pattern, Integer count) {
+        ScanParams scanParams = new ScanParams();
+        if (StringUtils.isNotEmpty(pattern)) {
+            scanParams.match(pattern);
+        }
+        scanParams.count(Objects.nonNull(count) && count > 0 ? count : DEFAULT_SCAN_COUNT);
+        return scanParams;
+    }
+
     /**
-     * Pipeline命令数阈值检测
+     * 写操作后失效近端缓存
      *
-     * @param cmds
+     * @param key
      */
-    private void preCheckPipelineCmdCount(Collection<?> cmds) {
-        if (CollectionFunUtil.isNotEmpty(cmds) && cmds.size() > maxSinglePipelineCmdNum) {
-            throw new RuntimeException("超过单次Pipeline命令阈值!");
+    private void invalidateNearCache(String key) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    private void invalidateNearCache(Collection<String> keys) {
+        if (nearCache != null) {
+            nearCache.invalidate(keys);
         }
     }
 
+    /**
+     * 执行批量弹出/移动脚本, 返回可追加的列表
+     *
+     * @param jedis
+     * @param scriptName
+     * @param keys
+     * @param maxCount
+     * @return
+     */
+    private List<String> drainList(Jedis jedis, String scriptName, List<String> keys, int maxCount) {
+        return evalList(jedis, scriptName, keys, Collections.singletonList(String.valueOf(maxCount)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> evalList(Jedis jedis, String scriptName, List<String> keys, List<String> args) {
+        Object result = scriptRegistry.eval(jedis, scriptName, keys, args);
+        return result instanceof List ? new ArrayList<>((List<String>) result) : new ArrayList<>();
+    }
+
+    /**
+     * 过期时间脚本参数, 不设置过期时间时为0
+     *
+     * @param expireTime
+     * @return
+     */
+    private String expireArg(Integer expireTime) {
+        return validateExpireTime(expireTime) ? String.valueOf(expireTime) : "0";
+    }
+
+    private static long toLong(Object scriptResult) {
+        return scriptResult instanceof Long ? (Long) scriptResult : 0L;
+    }
+
+    /**
+     * 检查过期时间, 为null代表永久, 然后是正整数
+     *
+     * @param expireTime
+     * @return
+     */
+    private boolean validateExpireTime(Integer expireTime) {
+        return Objects.nonNull(expireTime) && expireTime > 0;
+    }
+
+    /**
+     * 获取数据库连接, 连接已在目标库时不再发送SELECT
+     * 连接池为{@link InstrumentedJedisPool}时按操作名统计连接占用耗时
+     *
+     * @param command 操作名
+     * @return
+     */
+    private Jedis getAndSelectRDB(String command) {
+        Jedis jedis = jedisPool instanceof InstrumentedJedisPool ? ((InstrumentedJedisPool) jedisPool).getResource(command) : jedisPool.getResource();
+        if (jedis.getDB() != rDbIndex) {
+            jedis.select(rDbIndex);
+        }
+        return jedis;
+    }
+
+    /**
+     * 按单次Pipeline命令数上限分片执行, 结果按入参顺序合并
+     * 分片多于1个且并行度大于1时, 各分片占用独立连接并行执行
+     *
+     * @param items          命令参数
+     * @param cmdsPerItem    每个参数对应的命令数
+     * @param command        向Pipeline添加命令, 返回需要合并的结果
+     * @return
+     */
+    private <T, R> List<R> pipelineInChunks(List<T> items, int cmdsPerItem, BiFunction<Pipeline, T, Response<R>> command) {
+        List<List<T>> chunks = Lists.partition(items, chunkSize(cmdsPerItem));
+        if (chunks.size() <= 1 || pipelineParallelism <= 1) {
+            try (Jedis jedis = getAndSelectRDB("pipeline")) {
+                return syncInChunks(jedis, items, cmdsPerItem, command);
+            }
+        }
+        ExecutorService executor = getPipelineExecutor();
+        List<CompletableFuture<List<R>>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> {
+                    try (Jedis jedis = getAndSelectRDB("pipeline")) {
+                        return syncChunk(jedis, chunk, command);
+                    }
+                }, executor))
+                .collect(Collectors.toList());
+        List<R> results = new ArrayList<>(items.size());
+        try {
+            for (CompletableFuture<List<R>> future : futures) {
+                results.addAll(future.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return results;
+    }
+
+    /**
+     * 在同一连接上按顺序分片执行
+     *
+     * @param jedis
+     * @param items
+     * @param cmdsPerItem
+     * @param command
+     * @return
+     */
+    private <T, R> List<R> syncInChunks(Jedis jedis, List<T> items, int cmdsPerItem, BiFunction<Pipeline, T, Response<R>> command) {
+        List<R> results = new ArrayList<>(items.size());
+        for (List<T> chunk : Lists.partition(items, chunkSize(cmdsPerItem))) {
+            results.addAll(syncChunk(jedis, chunk, command));
+        }
+        return results;
+    }
+
+    private <T, R> List<R> syncChunk(Jedis jedis, List<T> chunk, BiFunction<Pipeline, T, Response<R>> command) {
+        Pipeline pipeline = jedis.pipelined();
+        // 收集命令
+        List<Response<R>> responses = new ArrayList<>(chunk.size());
+        for (T item : chunk) {
+            responses.add(command.apply(pipeline, item));
+        }
+        // 执行命令
+        pipeline.sync();
+        // 获取及解析结果
+        List<R> results = new ArrayList<>(responses.size());
+        for (Response<R> response : responses) {
+            results.add(response.get());
+        }
+        return results;
+    }
+
+    private int chunkSize(int cmdsPerItem) {
+        return Math.max(1, maxSinglePipelineCmdNum / Math.max(1, cmdsPerItem));
+    }
+
+    /**
+     * 按顺序组装结果, 允许null值
+     *
+     * @param keys
+     * @param values
+     * @return
+     */
+    private static <V> Map<String, V> zipToMap(List<String> keys, List<V> values) {
+        Map<String, V> resultMap = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        Iterator<V> valueIterator = values.iterator();
+        for (String key : keys) {
+            resultMap.put(key, valueIterator.next());
+        }
+        return resultMap;
+    }
+
+    private ExecutorService getPipelineExecutor() {
+        if (Objects.isNull(pipelineExecutor)) {
+            synchronized (this) {
+                if (Objects.isNull(pipelineExecutor)) {
+                    AtomicInteger threadIndex = new AtomicInteger();
+                    pipelineExecutor = Executors.newFixedThreadPool(pipelineParallelism, runnable -> {
+                        Thread thread = new Thread(runnable, "d8-jedis-pipeline-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return pipelineExecutor;
+    }
+
+    /**
+     * 集合扫描命令
+     */
+    @FunctionalInterface
+    private interface ScanCommand<T> {
+        ScanResult<T> scan(Jedis jedis, String cursor, ScanParams scanParams);
+    }
+
+    /**
+     * SCAN系列命令的惰性迭代器, 当前页取完后才加载下一页, 游标回到0时结束
+     *
+     * @param <T>
+     */
+    static final class ScanIterator<T> implements Iterator<T> {
+        private final Function<String, ScanResult<T>> pageLoader;
+        private String cursor = ScanParams.SCAN_POINTER_START;
+        private boolean finished;
+        private Iterator<T> current = Collections.emptyIterator();
+
+        ScanIterator(Function<String, ScanResult<T>> pageLoader) {
+            this.pageLoader = pageLoader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && !finished) {
+                current = nextPage().iterator();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        /**
+         * 跳过空页, 返回下一页非空结果, 遍历结束时返回空列表
+         *
+         * @return
+         */
+        List<T> nextPage() {
+            while (!finished) {
+                ScanResult<T> scanResult = pageLoader.apply(cursor);
+                cursor = scanResult.getCursor();
+                finished = ScanParams.SCAN_POINTER_START.equals(cursor);
+                if (CollectionFunUtil.isNotEmpty(scanResult.getResult())) {
+                    return scanResult.getResult();
+                }
+            }
+            return Collections.emptyList();
+        }
+    }
 }
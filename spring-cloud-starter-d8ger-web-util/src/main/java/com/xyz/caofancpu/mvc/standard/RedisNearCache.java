@@ -0,0 +1,442 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Redis近端缓存(进程内一级缓存)
+ * 按key前缀划分区域, 每个区域独立限制容量(LRU淘汰)及写入后存活时间, 未匹配任何前缀的key直接透传
+ * 本实例写操作后失效对应key, 配置广播频道后经Redis发布订阅通知其他实例失效
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class RedisNearCache implements Closeable {
+
+    /**
+     * 广播消息中实例ID与key的分隔符
+     */
+    private static final char MESSAGE_SEPARATOR = '|';
+
+    /**
+     * 订阅断开后的重连间隔
+     */
+    private static final long RESUBSCRIBE_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * 实例ID, 用于忽略本实例发出的失效广播
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * 缓存区域, 按前缀长度倒序, 保证最长前缀优先匹配
+     */
+    private volatile Region[] regions = new Region[0];
+
+    private volatile JedisPool broadcastPool;
+    private volatile String broadcastChannel;
+    private volatile JedisPubSub subscriber;
+    private volatile boolean closed;
+
+    /**
+     * 添加缓存区域
+     *
+     * @param prefix    key前缀
+     * @param maxSize   最大缓存key数量
+     * @param ttlMillis 写入后存活时间
+     * @return
+     */
+    public synchronized RedisNearCache addRegion(@NonNull String prefix, long maxSize, long ttlMillis) {
+        if (maxSize <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("近端缓存容量及存活时间必须大于0, prefix=" + prefix);
+        }
+        List<Region> regionList = new ArrayList<>(Arrays.asList(regions));
+        regionList.removeIf(region -> region.prefix.equals(prefix));
+        regionList.add(new Region(prefix, maxSize, ttlMillis));
+        regionList.sort(Comparator.comparingInt((Region region) -> region.prefix.length()).reversed());
+        regions = regionList.toArray(new Region[0]);
+        return this;
+    }
+
+    /**
+     * key是否由近端缓存管理
+     *
+     * @param key
+     * @return
+     */
+    public boolean isCacheable(String key) {
+        return regionOf(key) != null;
+    }
+
+    /**
+     * 读取字符串, 未命中时通过loader加载, 加载结果为null时同样缓存
+     *
+     * @param key
+     * @param loader
+     * @return
+     */
+    public String get(String key, Function<String, String> loader) {
+        Region region = regionOf(key);
+        if (region == null) {
+            return loader.apply(key);
+        }
+        Entry entry = region.entry(key);
+        Optional<String> value = entry.value;
+        if (value != null) {
+            region.hits.increment();
+            return value.orElse(null);
+        }
+        region.misses.increment();
+        String loaded = loader.apply(key);
+        entry.value = Optional.ofNullable(loaded);
+        return loaded;
+    }
+
+    /**
+     * 读取hash中单个field, 未命中时通过loader加载
+     *
+     * @param key
+     * @param field
+     * @param loader
+     * @return
+     */
+    public String hget(String key, String field, BiFunction<String, String, String> loader) {
+        Region region = regionOf(key);
+        if (region == null || field == null) {
+            return loader.apply(key, field);
+        }
+        Entry entry = region.entry(key);
+        Map<String, String> hash = entry.hash;
+        if (hash != null) {
+            region.hits.increment();
+            return hash.get(field);
+        }
+        Optional<String> value = entry.fields.get(field);
+        if (value != null) {
+            region.hits.increment();
+            return value.orElse(null);
+        }
+        region.misses.increment();
+        String loaded = loader.apply(key, field);
+        entry.fields.put(field, Optional.ofNullable(loaded));
+        return loaded;
+    }
+
+    /**
+     * 读取hash全部数据, 未命中时通过loader加载
+     * 返回副本, 调用方修改不影响缓存
+     *
+     * @param key
+     * @param loader
+     * @return
+     */
+    public Map<String, String> hgetAll(String key, Function<String, Map<String, String>> loader) {
+        Region region = regionOf(key);
+        if (region == null) {
+            return loader.apply(key);
+        }
+        Entry entry = region.entry(key);
+        Map<String, String> hash = entry.hash;
+        if (hash != null) {
+            region.hits.increment();
+            return new LinkedHashMap<>(hash);
+        }
+        region.misses.increment();
+        Map<String, String> loaded = loader.apply(key);
+        if (loaded == null) {
+            return null;
+        }
+        entry.hash = Collections.unmodifiableMap(new LinkedHashMap<>(loaded));
+        return loaded;
+    }
+
+    /**
+     * 失效本实例缓存, 并广播通知其他实例
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        if (invalidateLocal(key)) {
+            broadcast(Collections.singletonList(key));
+        }
+    }
+
+    /**
+     * 批量失效本实例缓存, 并广播通知其他实例
+     *
+     * @param keys
+     */
+    public void invalidate(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        List<String> cacheableKeys = new ArrayList<>();
+        for (String key : keys) {
+            if (invalidateLocal(key)) {
+                cacheableKeys.add(key);
+            }
+        }
+        broadcast(cacheableKeys);
+    }
+
+    /**
+     * 仅失效本实例缓存
+     *
+     * @param key
+     * @return key是否由近端缓存管理
+     */
+    public boolean invalidateLocal(String key) {
+        Region region = regionOf(key);
+        if (region == null) {
+            return false;
+        }
+        region.cache.invalidate(key);
+        return true;
+    }
+
+    /**
+     * 清空本实例全部缓存
+     */
+    public void invalidateAllLocal() {
+        for (Region region : regions) {
+            region.cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 各区域命中统计, key为前缀
+     *
+     * @return
+     */
+    public Map<String, NearCacheStats> stats() {
+        Map<String, NearCacheStats> stats = new LinkedHashMap<>();
+        for (Region region : regions) {
+            stats.put(region.prefix, region.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 订阅失效广播频道, 本实例的失效操作同时发布到该频道
+     * 订阅占用一个独立连接, 断开后自动重连
+     *
+     * @param jedisPool
+     * @param channel
+     */
+    public synchronized void subscribe(@NonNull JedisPool jedisPool, @NonNull String channel) {
+        if (broadcastChannel != null) {
+            throw new IllegalStateException("近端缓存已订阅失效广播频道: " + broadcastChannel);
+        }
+        this.broadcastPool = jedisPool;
+        this.broadcastChannel = channel;
+        Thread thread = new Thread(() -> listen(jedisPool, channel), "d8ger-near-cache-" + channel);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 是否已进入订阅状态
+     *
+     * @return
+     */
+    public boolean isSubscribed() {
+        JedisPubSub current = subscriber;
+        return current != null && current.isSubscribed();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        JedisPubSub current = subscriber;
+        if (current != null && current.isSubscribed()) {
+            current.unsubscribe();
+        }
+    }
+
+    private void listen(JedisPool jedisPool, String channel) {
+        while (!closed) {
+            JedisPubSub pubSub = new JedisPubSub() {
+                @Override
+                public void onMessage(String ch, String message) {
+                    onBroadcast(message);
+                }
+
+                @Override
+                public void onSubscribe(String ch, int subscribedChannels) {
+                    // 订阅期间的广播可能丢失, 重新订阅后清空本地缓存
+                    invalidateAllLocal();
+                }
+            };
+            subscriber = pubSub;
+            try (Jedis jedis = jedisPool.getResource()) {
+                jedis.subscribe(pubSub, channel);
+            } catch (Exception e) {
+                if (closed) {
+                    return;
+                }
+                log.warn("近端缓存订阅失效广播中断, channel=[{}], 原因: {}", channel, e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RESUBSCRIBE_INTERVAL_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    void onBroadcast(String message) {
+        int index = message.indexOf(MESSAGE_SEPARATOR);
+        if (index < 0 || instanceId.equals(message.substring(0, index))) {
+            return;
+        }
+        invalidateLocal(message.substring(index + 1));
+    }
+
+    private void broadcast(List<String> keys) {
+        JedisPool jedisPool = broadcastPool;
+        if (jedisPool == null || keys.isEmpty()) {
+            return;
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            if (keys.size() == 1) {
+                jedis.publish(broadcastChannel, instanceId + MESSAGE_SEPARATOR + keys.get(0));
+                return;
+            }
+            Pipeline pipeline = jedis.pipelined();
+            for (String key : keys) {
+                pipeline.publish(broadcastChannel, instanceId + MESSAGE_SEPARATOR + key);
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            // 广播失败时其他实例依赖TTL过期
+            log.warn("近端缓存失效广播失败, keys=[{}], 原因: {}", StringUtils.join(keys, ","), e.getMessage());
+        }
+    }
+
+    private Region regionOf(String key) {
+        if (key == null) {
+            return null;
+        }
+        for (Region region : regions) {
+            if (key.startsWith(region.prefix)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 单个key的缓存视图, 字符串值/hash全量/hash单字段分别加载
+     * 失效时整体移出区域, 并发加载写入已移出的Entry不会污染缓存
+     */
+    private static final class Entry {
+        final ConcurrentMap<String, Optional<String>> fields = new ConcurrentHashMap<>(4);
+        volatile Optional<String> value;
+        volatile Map<String, String> hash;
+    }
+
+    private static final class Region {
+        final String prefix;
+        final Cache<String, Entry> cache;
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+
+        Region(String prefix, long maxSize, long ttlMillis) {
+            this.prefix = prefix;
+            this.cache = CacheBuilder.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                    .recordStats()
+                    .build();
+        }
+
+        Entry entry(String key) {
+            try {
+                return cache.get(key, Entry::new);
+            } catch (ExecutionException e) {
+                // Entry构造不会抛出受检异常
+                throw new IllegalStateException(e);
+            }
+        }
+
+        NearCacheStats stats() {
+            return new NearCacheStats(prefix, cache.size(), hits.sum(), misses.sum(), cache.stats().evictionCount());
+        }
+    }
+
+    /**
+     * 近端缓存区域统计
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class NearCacheStats {
+        /**
+         * key前缀
+         */
+        private final String prefix;
+        /**
+         * 当前缓存key数量
+         */
+        private final long size;
+        private final long hitCount;
+        private final long missCount;
+        /**
+         * 容量淘汰及过期淘汰次数
+         */
+        private final long evictionCount;
+
+        public double getHitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0D : hitCount / (double) total;
+        }
+    }
+}
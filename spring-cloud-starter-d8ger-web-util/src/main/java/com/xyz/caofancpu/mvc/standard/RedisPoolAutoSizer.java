@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis连接池自适应调节, 按周期内平均借用等待耗时在上下界内调整maxTotal/minIdle
+ * 出现耗尽或平均等待不低于阈值时扩容25%, minIdle提升至周期峰值活跃数的一半;
+ * 连续多个周期平均等待低于阈值1/4且峰值活跃不足maxTotal一半时缩容12.5%, 不低于峰值活跃数的2倍
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class RedisPoolAutoSizer implements Closeable {
+
+    private final InstrumentedJedisPool pool;
+    private final Options options;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 连续空闲周期数
+     */
+    private int quietPeriods;
+
+    public RedisPoolAutoSizer(@NonNull InstrumentedJedisPool pool, @NonNull Options options) {
+        if (options.getMaxTotalLowerBound() <= 0 || options.getMaxTotalLowerBound() > options.getMaxTotalUpperBound()
+                || options.getMinIdleLowerBound() < 0 || options.getMinIdleLowerBound() > options.getMinIdleUpperBound()) {
+            throw new IllegalArgumentException("连接池调节上下界配置错误: " + options);
+        }
+        this.pool = pool;
+        this.options = options;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "d8-redis-pool-sizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 开始按周期调节
+     *
+     * @return
+     */
+    public RedisPoolAutoSizer start() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                adjust();
+            } catch (Exception e) {
+                log.error("Redis连接池调节异常", e);
+            }
+        }, options.getPeriodMillis(), options.getPeriodMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 按上一周期的统计调节一次
+     *
+     * @return 是否调整了连接池
+     */
+    synchronized boolean adjust() {
+        InstrumentedJedisPool.Period period = pool.drainPeriod();
+        int maxTotal = pool.getMaxTotal();
+        int minIdle = pool.getMinIdle();
+        long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(options.getWaitThresholdMillis());
+        int newMaxTotal = maxTotal;
+        int newMinIdle = minIdle;
+        if (period.exhausted > 0 || (period.borrows > 0 && period.meanWaitNanos() >= thresholdNanos)) {
+            quietPeriods = 0;
+            newMaxTotal = maxTotal + Math.max(1, maxTotal / 4);
+            newMinIdle = Math.max(minIdle, (int) (period.peakActive / 2));
+        } else if (period.meanWaitNanos() < thresholdNanos / 4 && period.peakActive < maxTotal / 2) {
+            if (++quietPeriods >= options.getShrinkAfterPeriods()) {
+                quietPeriods = 0;
+                newMaxTotal = Math.max(maxTotal - Math.max(1, maxTotal / 8), (int) period.peakActive * 2);
+                newMinIdle = Math.min(minIdle, (int) period.peakActive);
+            }
+        } else {
+            quietPeriods = 0;
+        }
+        newMaxTotal = clamp(newMaxTotal, options.getMaxTotalLowerBound(), options.getMaxTotalUpperBound());
+        newMinIdle = Math.min(clamp(newMinIdle, options.getMinIdleLowerBound(), options.getMinIdleUpperBound()), newMaxTotal);
+        if (newMaxTotal == maxTotal && newMinIdle == minIdle) {
+            return false;
+        }
+        pool.resize(newMaxTotal, newMinIdle);
+        log.info("D8GER....Redis连接池调整: maxTotal {}->{}, minIdle {}->{}, 周期借用={}, 平均等待={}ms, 耗尽={}, 峰值活跃={}",
+                maxTotal, newMaxTotal, minIdle, newMinIdle, period.borrows, String.format("%.2f", period.meanWaitNanos() / 1e6), period.exhausted, period.peakActive);
+        return true;
+    }
+
+    private static int clamp(int value, int lower, int upper) {
+        return Math.max(lower, Math.min(upper, value));
+    }
+
+    /**
+     * 调节参数
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class Options {
+        /**
+         * maxTotal下界
+         */
+        private int maxTotalLowerBound = 8;
+
+        /**
+         * maxTotal上界
+         */
+        private int maxTotalUpperBound = 512;
+
+        /**
+         * minIdle下界
+         */
+        private int minIdleLowerBound = 0;
+
+        /**
+         * minIdle上界
+         */
+        private int minIdleUpperBound = 64;
+
+        /**
+         * 平均借用等待阈值, 不低于该值时扩容
+         */
+        private long waitThresholdMillis = 5;
+
+        /**
+         * 调节周期
+         */
+        private long periodMillis = 10000;
+
+        /**
+         * 连续空闲多少个周期后缩容
+         */
+        private int shrinkAfterPeriods = 3;
+    }
+}
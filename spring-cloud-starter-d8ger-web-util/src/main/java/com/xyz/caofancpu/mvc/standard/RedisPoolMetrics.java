@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import com.xyz.caofancpu.logger.metrics.EndpointMetricsRegistry;
+import com.xyz.caofancpu.logger.metrics.EndpointMetricsSnapshot;
+import com.xyz.caofancpu.logger.metrics.LatencyHistogram;
+import com.xyz.caofancpu.logger.metrics.MetricsDumper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis连接池统计, 由{@link InstrumentedJedisPool}记录
+ * 借用等待耗时直方图、耗尽次数、按操作名统计的连接占用耗时, 以及归还时已损坏的连接数
+ * 可开启定时快照输出
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class RedisPoolMetrics {
+
+    private final InstrumentedJedisPool pool;
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+    private final LongAdder exhaustedCount = new LongAdder();
+    private final LongAdder brokenCount = new LongAdder();
+    private final EndpointMetricsRegistry commandMetrics = new EndpointMetricsRegistry();
+    private final Map<String, LongAdder> commandBrokenCounts = new ConcurrentHashMap<>();
+    private final MetricsDumper dumper = new MetricsDumper("d8-redis-pool-metrics-dump");
+
+    RedisPoolMetrics(InstrumentedJedisPool pool) {
+        this.pool = pool;
+    }
+
+    void recordBorrow(long waitNanos) {
+        borrowWait.record(waitNanos);
+    }
+
+    void recordExhausted() {
+        exhaustedCount.increment();
+    }
+
+    /**
+     * 记录一次连接占用
+     *
+     * @param command   操作名
+     * @param holdNanos 借出到归还的耗时
+     */
+    void recordCommand(String command, long holdNanos) {
+        commandMetrics.forEndpoint(command).record(holdNanos, false);
+    }
+
+    /**
+     * 记录一次归还时连接已损坏, 单独计数, 不计入操作的异常数
+     *
+     * @param command 操作名, 跨线程归还时为null, 只计入连接池累计次数
+     */
+    void recordBroken(String command) {
+        brokenCount.increment();
+        if (command != null) {
+            commandBrokenCounts.computeIfAbsent(command, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * 连接池累计统计快照
+     *
+     * @return
+     */
+    public RedisPoolSnapshot snapshot() {
+        LatencyHistogram.Counts counts = borrowWait.counts();
+        return new RedisPoolSnapshot(pool.getMaxTotal(), pool.getMinIdle(), pool.getNumActive(), pool.getNumIdle(), pool.getNumWaiters(),
+                counts.getTotalCount(), exhaustedCount.sum(), brokenCount.sum(), counts.getMean(), counts.getValueAtPercentile(50),
+                counts.getValueAtPercentile(99), counts.getMaxValue());
+    }
+
+    /**
+     * 各操作的连接占用耗时统计
+     *
+     * @return
+     */
+    public List<EndpointMetricsSnapshot> commandSnapshots() {
+        return commandMetrics.snapshots();
+    }
+
+    /**
+     * 各操作归还时连接已损坏的次数, 按操作名排序
+     *
+     * @return
+     */
+    public Map<String, Long> commandBrokenCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        commandBrokenCounts.forEach((command, count) -> counts.put(command, count.sum()));
+        return counts;
+    }
+
+    /**
+     * 开启定时快照输出
+     *
+     * @param period 周期
+     * @param unit   时间单位
+     */
+    public void startDump(long period, TimeUnit unit) {
+        dumper.start(period, unit, this::dump);
+    }
+
+    /**
+     * 关闭定时快照输出
+     */
+    public void stopDump() {
+        dumper.stop();
+    }
+
+    private void dump() {
+        RedisPoolSnapshot snapshot = snapshot();
+        log.info("Redis连接池统计: maxTotal={}, minIdle={}, 活跃={}, 空闲={}, 等待={}, 借用={}, 耗尽={}, 连接损坏={}, 等待p50={}ms, p99={}ms, max={}ms",
+                snapshot.getMaxTotal(), snapshot.getMinIdle(), snapshot.getActive(), snapshot.getIdle(), snapshot.getWaiters(),
+                snapshot.getBorrowCount(), snapshot.getExhaustedCount(), snapshot.getBrokenCount(), EndpointMetricsSnapshot.toMillis(snapshot.getBorrowWaitP50Nanos()),
+                EndpointMetricsSnapshot.toMillis(snapshot.getBorrowWaitP99Nanos()), EndpointMetricsSnapshot.toMillis(snapshot.getBorrowWaitMaxNanos()));
+        Map<String, Long> brokenCounts = commandBrokenCounts();
+        for (EndpointMetricsSnapshot command : commandSnapshots()) {
+            log.info("Redis操作统计[{}]: 调用={}, 连接损坏={}, p50={}ms, p95={}ms, p99={}ms, max={}ms",
+                    command.getEndpoint(), command.getCount(), brokenCounts.getOrDefault(command.getEndpoint(), 0L), EndpointMetricsSnapshot.toMillis(command.getP50Nanos()),
+                    EndpointMetricsSnapshot.toMillis(command.getP95Nanos()), EndpointMetricsSnapshot.toMillis(command.getP99Nanos()),
+                    EndpointMetricsSnapshot.toMillis(command.getMaxNanos()));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Redis连接池统计快照, 耗时单位均为纳秒
+ *
+ * @author D8GER
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class RedisPoolSnapshot {
+    private final int maxTotal;
+    private final int minIdle;
+    /**
+     * 借出中的连接数
+     */
+    private final int active;
+    private final int idle;
+    /**
+     * 等待借用的线程数
+     */
+    private final int waiters;
+    /**
+     * 累计借用次数
+     */
+    private final long borrowCount;
+    /**
+     * 累计因连接池耗尽借用失败的次数
+     */
+    private final long exhaustedCount;
+    /**
+     * 累计归还时连接已损坏的次数
+     */
+    private final long brokenCount;
+    private final long borrowWaitMeanNanos;
+    private final long borrowWaitP50Nanos;
+    private final long borrowWaitP99Nanos;
+    private final long borrowWaitMaxNanos;
+}
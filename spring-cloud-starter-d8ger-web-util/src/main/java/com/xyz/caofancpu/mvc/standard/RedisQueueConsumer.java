@@ -0,0 +1,365 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于Redis列表的批量队列消费者, 生产方使用{@link JedisService#insertQueue}或{@link JedisService#batchTailInsertList}
+ * 单个拉取线程每次往返最多取走batchSize条消息交给处理线程池, 队列为空时阻塞等待而非轮询
+ * 已拉取未处理完的消息数不超过maxInFlight, 达到上限时暂停拉取, 避免消息堆积在本地内存
+ * 可靠模式下消息被原子移入处理中列表, 处理成功后确认删除, 失败时重新入队或转入死信队列, 启动时将上次遗留的处理中消息放回队列
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class RedisQueueConsumer implements Closeable {
+
+    /**
+     * 将处理中列表的消息全部放回队列头部, 优先重新消费
+     * KEYS[1]: 处理中列表; KEYS[2]: 队列; 返回移动数量
+     */
+    static final String RECOVER = "d8QueueRecover";
+    static final String RECOVER_SCRIPT = ""
+            + "local moved = 0\n"
+            + "while redis.call('RPOPLPUSH', KEYS[1], KEYS[2]) do\n"
+            + "    moved = moved + 1\n"
+            + "end\n"
+            + "return moved";
+
+    /**
+     * 从处理中列表删除消息并追加到目标队列尾部
+     * KEYS[1]: 处理中列表; KEYS[2]: 目标队列; ARGV[1]: 消息; 返回1成功, 0消息不在处理中列表
+     */
+    static final String TRANSFER = "d8QueueTransfer";
+    static final String TRANSFER_SCRIPT = ""
+            + "if redis.call('LREM', KEYS[1], 1, ARGV[1]) > 0 then\n"
+            + "    redis.call('RPUSH', KEYS[2], ARGV[1])\n"
+            + "    return 1\n"
+            + "end\n"
+            + "return 0";
+
+    private final JedisService jedisService;
+    private final String queueKey;
+    private final String processingKey;
+    private final Options options;
+    private final RedisQueueHandler handler;
+
+    /**
+     * 已拉取未处理完的消息许可
+     */
+    private final Semaphore inFlight;
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    private final ExecutorService workers;
+
+    private final LongAdder fetchCount = new LongAdder();
+    private final LongAdder consumedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    private volatile Thread fetcher;
+    private volatile boolean running;
+
+    /**
+     * @param jedisService
+     * @param queueKey     队列key
+     * @param options      消费参数
+     * @param handler      消息处理
+     */
+    public RedisQueueConsumer(@NonNull JedisService jedisService, @NonNull String queueKey, @NonNull Options options, @NonNull RedisQueueHandler handler) {
+        if (options.getBatchSize() <= 0 || options.getWorkerThreads() <= 0 || options.getMaxInFlight() <= 0) {
+            throw new IllegalArgumentException("batchSize, workerThreads, maxInFlight须大于0");
+        }
+        if (options.getBlockTimeoutSeconds() <= 0) {
+            throw new IllegalArgumentException("blockTimeoutSeconds须大于0, 否则无法及时停止: " + options.getBlockTimeoutSeconds());
+        }
+        this.jedisService = jedisService;
+        this.queueKey = queueKey;
+        this.processingKey = Objects.isNull(options.getProcessingKey()) ? queueKey + ":processing" : options.getProcessingKey();
+        if (options.isReliable() && queueKey.equals(processingKey)) {
+            throw new IllegalArgumentException("处理中列表不能与队列相同: " + queueKey);
+        }
+        this.options = options;
+        this.handler = handler;
+        this.inFlight = new Semaphore(options.getMaxInFlight());
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(options.getWorkerThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "d8-queue-" + queueKey + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        RedisScriptRegistry registry = jedisService.getScriptRegistry();
+        registry.register(RECOVER, RECOVER_SCRIPT);
+        registry.register(TRANSFER, TRANSFER_SCRIPT);
+    }
+
+    /**
+     * 启动拉取线程, 可靠模式下先将处理中列表遗留的消息放回队列
+     * 多个实例消费同一队列时, 可靠模式须为每个实例配置不同的processingKey, 否则启动恢复会抢走其他实例正在处理的消息
+     *
+     * @return
+     */
+    public synchronized RedisQueueConsumer start() {
+        if (Objects.nonNull(fetcher)) {
+            return this;
+        }
+        if (options.isReliable()) {
+            Object recovered = jedisService.evalScript(RECOVER, Arrays.asList(processingKey, queueKey), Collections.emptyList());
+            log.info("D8GER....队列[{}]恢复处理中消息[{}]条", queueKey, recovered);
+        }
+        running = true;
+        Thread thread = new Thread(this::fetchLoop, "d8-queue-fetcher-" + queueKey);
+        thread.setDaemon(true);
+        thread.start();
+        fetcher = thread;
+        return this;
+    }
+
+    /**
+     * 停止拉取并等待已拉取的消息处理完成
+     * 先等待拉取线程退出(阻塞中的拉取命令至多blockTimeoutSeconds后返回), 确保其取到的消息全部提交后再关闭处理线程池, 之后至多等待shutdownTimeoutMillis
+     * 超时未处理完的消息: 可靠模式下保留在处理中列表, 下次启动时恢复; 普通模式下丢弃
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        Thread thread = fetcher;
+        if (Objects.nonNull(thread)) {
+            // 中断许可等待及错误退避
+            thread.interrupt();
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    // 拉取线程仍可能提交消息, 必须等其退出, 结束后恢复中断标记
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(options.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                int abandoned = workers.shutdownNow().size();
+                log.warn("D8GER....队列[{}]停止超时, 放弃未处理消息[{}]条", queueKey, abandoned);
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getQueueKey() {
+        return queueKey;
+    }
+
+    public String getProcessingKey() {
+        return processingKey;
+    }
+
+    /**
+     * 拉取往返次数, 含超时未取到消息的往返
+     *
+     * @return
+     */
+    public long getFetchCount() {
+        return fetchCount.sum();
+    }
+
+    public long getConsumedCount() {
+        return consumedCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * 已拉取未处理完的消息数
+     *
+     * @return
+     */
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    private void fetchLoop() {
+        while (running) {
+            int permits;
+            try {
+                permits = acquirePermits();
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<String> messages;
+            try {
+                messages = options.isReliable()
+                        ? jedisService.blockingBatchMove(queueKey, processingKey, permits, options.getBlockTimeoutSeconds())
+                        : jedisService.blockingBatchPop(queueKey, permits, options.getBlockTimeoutSeconds());
+            } catch (Exception e) {
+                // JedisService已记录错误日志
+                inFlight.release(permits);
+                if (!backoff()) {
+                    return;
+                }
+                continue;
+            }
+            fetchCount.increment();
+            inFlight.release(permits - messages.size());
+            inFlightCount.addAndGet(messages.size());
+            for (String message : messages) {
+                workers.execute(() -> process(message));
+            }
+        }
+    }
+
+    /**
+     * 阻塞获取1个许可, 再尽量多取至batchSize, 本次最多拉取的消息数即许可数
+     *
+     * @return
+     * @throws InterruptedException
+     */
+    private int acquirePermits()
+            throws InterruptedException {
+        inFlight.acquire();
+        int extra = Math.min(options.getBatchSize() - 1, inFlight.availablePermits());
+        // 许可只由本线程获取, 其他线程只会释放, 因此不会失败
+        return extra > 0 && inFlight.tryAcquire(extra) ? extra + 1 : 1;
+    }
+
+    private boolean backoff() {
+        try {
+            Thread.sleep(options.getErrorBackoffMillis());
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void process(String message) {
+        boolean handled;
+        try {
+            handler.handle(message);
+            handled = true;
+        } catch (Exception e) {
+            handled = false;
+            log.error("队列消息处理失败, queue=[{}], message=[{}], 原因: {}", queueKey, message, e);
+        }
+        try {
+            if (handled) {
+                consumedCount.increment();
+                if (options.isReliable()) {
+                    jedisService.removeQueueValue(processingKey, message);
+                }
+            } else {
+                failedCount.increment();
+                settleFailure(message);
+            }
+        } catch (Exception e) {
+            // JedisService已记录错误日志, 可靠模式下消息仍在处理中列表, 下次启动时恢复
+        } finally {
+            inFlightCount.decrementAndGet();
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 处理失败: 配置了死信队列时转入死信队列, 否则可靠模式下重新追加到队列尾部, 普通模式下丢弃
+     *
+     * @param message
+     */
+    private void settleFailure(String message) {
+        String deadLetterKey = options.getDeadLetterKey();
+        if (options.isReliable()) {
+            String target = Objects.isNull(deadLetterKey) ? queueKey : deadLetterKey;
+            jedisService.evalScript(TRANSFER, Arrays.asList(processingKey, target), Collections.singletonList(message));
+        } else if (Objects.nonNull(deadLetterKey)) {
+            jedisService.insertQueue(deadLetterKey, message);
+        }
+    }
+
+    /**
+     * 消费参数
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class Options {
+        /**
+         * 单次往返最多拉取的消息数
+         */
+        private int batchSize = 100;
+
+        /**
+         * 处理线程数
+         */
+        private int workerThreads = 4;
+
+        /**
+         * 已拉取未处理完的消息上限
+         */
+        private int maxInFlight = 1000;
+
+        /**
+         * 队列为空时单次阻塞等待秒数, 也是停止时拉取线程的最长响应时间
+         */
+        private int blockTimeoutSeconds = 1;
+
+        /**
+         * 是否可靠模式, 消息处理完成前保留在处理中列表
+         */
+        private boolean reliable = false;
+
+        /**
+         * 处理中列表key, 默认为队列key加":processing"后缀
+         */
+        private String processingKey;
+
+        /**
+         * 死信队列key, 为空时可靠模式下失败消息重新入队(处理方需自行识别无法处理的消息), 普通模式下丢弃
+         */
+        private String deadLetterKey;
+
+        /**
+         * 拉取出错后的退避毫秒数
+         */
+        private long errorBackoffMillis = 1000L;
+
+        /**
+         * 停止时等待处理线程完成的毫秒数
+         */
+        private long shutdownTimeoutMillis = 5000L;
+    }
+}
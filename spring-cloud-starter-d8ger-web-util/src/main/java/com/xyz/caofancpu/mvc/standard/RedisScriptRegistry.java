@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lua脚本注册表
+ * 注册时在本地计算SHA1, 执行时优先EVALSHA, 服务端未缓存(NOSCRIPT)时回退EVAL, EVAL同时将脚本载入服务端缓存
+ * 内置常用原子操作脚本, 多步操作一次往返完成
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class RedisScriptRegistry {
+
+    /**
+     * 写入hash并设置过期时间
+     * KEYS[1]: key; ARGV[1]: 过期秒数, 小于等于0不设置; ARGV[2..]: field, value交替
+     */
+    public static final String HSET_AND_EXPIRE = "hsetAndExpire";
+    public static final String HSET_AND_EXPIRE_SCRIPT = ""
+            + "for i = 2, #ARGV, 2 do\n"
+            + "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n"
+            + "end\n"
+            + "if tonumber(ARGV[1]) > 0 then\n"
+            + "    redis.call('EXPIRE', KEYS[1], ARGV[1])\n"
+            + "end\n"
+            + "return 1";
+
+    /**
+     * 值等于期望值时删除, 用于释放锁
+     * KEYS[1]: key; ARGV[1]: 期望值; 返回删除数量
+     */
+    public static final String COMPARE_AND_DELETE = "compareAndDelete";
+    public static final String COMPARE_AND_DELETE_SCRIPT = ""
+            + "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+            + "    return redis.call('DEL', KEYS[1])\n"
+            + "end\n"
+            + "return 0";
+
+    /**
+     * 滑动窗口限流, zset记录窗口内每次通过的时间戳
+     * KEYS[1]: key; ARGV[1]: 当前毫秒; ARGV[2]: 窗口毫秒; ARGV[3]: 窗口内上限; ARGV[4]: 本次请求唯一标识; 返回1通过, 0拒绝
+     */
+    public static final String SLIDING_WINDOW = "slidingWindow";
+    public static final String SLIDING_WINDOW_SCRIPT = ""
+            + "local now = tonumber(ARGV[1])\n"
+            + "local window = tonumber(ARGV[2])\n"
+            + "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)\n"
+            + "if redis.call('ZCARD', KEYS[1]) < tonumber(ARGV[3]) then\n"
+            + "    redis.call('ZADD', KEYS[1], now, ARGV[4])\n"
+            + "    redis.call('PEXPIRE', KEYS[1], window)\n"
+            + "    return 1\n"
+            + "end\n"
+            + "return 0";
+
+    /**
+     * 令牌桶限流, hash记录剩余令牌数及上次补充时间
+     * KEYS[1]: key; ARGV[1]: 桶容量; ARGV[2]: 每秒补充令牌数; ARGV[3]: 当前毫秒; ARGV[4]: 本次申请令牌数; 返回1通过, 0拒绝
+     */
+    public static final String TOKEN_BUCKET = "tokenBucket";
+    public static final String TOKEN_BUCKET_SCRIPT = ""
+            + "local capacity = tonumber(ARGV[1])\n"
+            + "local rate = tonumber(ARGV[2])\n"
+            + "local now = tonumber(ARGV[3])\n"
+            + "local permits = tonumber(ARGV[4])\n"
+            + "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n"
+            + "local tokens = tonumber(bucket[1])\n"
+            + "local ts = tonumber(bucket[2])\n"
+            + "if tokens == nil or ts == nil then\n"
+            + "    tokens = capacity\n"
+            + "    ts = now\n"
+            + "end\n"
+            + "if now > ts then\n"
+            + "    tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)\n"
+            + "    ts = now\n"
+            + "end\n"
+            + "local allowed = 0\n"
+            + "if tokens >= permits then\n"
+            + "    tokens = tokens - permits\n"
+            + "    allowed = 1\n"
+            + "end\n"
+            + "redis.call('HMSET', KEYS[1], 'tokens', tokens, 'ts', ts)\n"
+            + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate))\n"
+            + "return allowed";
+
+    /**
+     * 从列表头部批量弹出, 替代Redis 6.2+才支持的LPOP count
+     * KEYS[1]: key; ARGV[1]: 最多弹出数量; 返回弹出的元素
+     */
+    public static final String LIST_BATCH_POP = "listBatchPop";
+    public static final String LIST_BATCH_POP_SCRIPT = ""
+            + "local items = {}\n"
+            + "for i = 1, tonumber(ARGV[1]) do\n"
+            + "    local item = redis.call('LPOP', KEYS[1])\n"
+            + "    if not item then\n"
+            + "        break\n"
+            + "    end\n"
+            + "    items[i] = item\n"
+            + "end\n"
+            + "return items";
+
+    /**
+     * 从源列表头部批量弹出并追加到目标列表尾部, 替代Redis 6.2+才支持的LMOVE
+     * KEYS[1]: 源列表; KEYS[2]: 目标列表; ARGV[1]: 最多移动数量; 返回移动的元素
+     */
+    public static final String LIST_BATCH_MOVE = "listBatchMove";
+    public static final String LIST_BATCH_MOVE_SCRIPT = ""
+            + "local items = {}\n"
+            + "for i = 1, tonumber(ARGV[1]) do\n"
+            + "    local item = redis.call('LPOP', KEYS[1])\n"
+            + "    if not item then\n"
+            + "        break\n"
+            + "    end\n"
+            + "    redis.call('RPUSH', KEYS[2], item)\n"
+            + "    items[i] = item\n"
+            + "end\n"
+            + "return items";
+
+    /**
+     * 阻塞唤醒后批量移动: BRPOPLPUSH取走的是源列表尾部元素, 源列表仍有更早的元素时将其从目标列表放回源列表尾部,
+     * 再与{@link #LIST_BATCH_MOVE}一样从源列表头部移动, 保证两条路径都按先进先出取元素
+     * KEYS[1]: 源列表; KEYS[2]: 目标列表; ARGV[1]: 最多移动数量; ARGV[2]: 阻塞唤醒时移动的元素; 返回移动的元素
+     */
+    public static final String LIST_REQUEUE_AND_MOVE = "listRequeueAndMove";
+    public static final String LIST_REQUEUE_AND_MOVE_SCRIPT = ""
+            + "if redis.call('LLEN', KEYS[1]) == 0 then\n"
+            + "    return {ARGV[2]}\n"
+            + "end\n"
+            + "redis.call('LREM', KEYS[2], 1, ARGV[2])\n"
+            + "redis.call('RPUSH', KEYS[1], ARGV[2])\n"
+            + "local items = {}\n"
+            + "for i = 1, tonumber(ARGV[1]) do\n"
+            + "    local item = redis.call('LPOP', KEYS[1])\n"
+            + "    if not item then\n"
+            + "        break\n"
+            + "    end\n"
+            + "    redis.call('RPUSH', KEYS[2], item)\n"
+            + "    items[i] = item\n"
+            + "end\n"
+            + "return items";
+
+    /**
+     * 脚本名称 -> 脚本
+     */
+    private final ConcurrentMap<String, RedisLuaScript> scripts = new ConcurrentHashMap<>();
+
+    public RedisScriptRegistry() {
+        register(HSET_AND_EXPIRE, HSET_AND_EXPIRE_SCRIPT);
+        register(COMPARE_AND_DELETE, COMPARE_AND_DELETE_SCRIPT);
+        register(SLIDING_WINDOW, SLIDING_WINDOW_SCRIPT);
+        register(TOKEN_BUCKET, TOKEN_BUCKET_SCRIPT);
+        register(LIST_BATCH_POP, LIST_BATCH_POP_SCRIPT);
+        register(LIST_BATCH_MOVE, LIST_BATCH_MOVE_SCRIPT);
+        register(LIST_REQUEUE_AND_MOVE, LIST_REQUEUE_AND_MOVE_SCRIPT);
+    }
+
+    /**
+     * 注册或覆盖脚本
+     *
+     * @param name   脚本名称
+     * @param source Lua源码
+     * @return
+     */
+    public RedisLuaScript register(@NonNull String name, @NonNull String source) {
+        RedisLuaScript script = new RedisLuaScript(name, source);
+        scripts.put(name, script);
+        return script;
+    }
+
+    /**
+     * 获取已注册脚本
+     *
+     * @param name
+     * @return
+     */
+    public RedisLuaScript get(String name) {
+        RedisLuaScript script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("Lua脚本未注册: " + name);
+        }
+        return script;
+    }
+
+    /**
+     * 执行脚本, 优先EVALSHA, 服务端未缓存时回退EVAL
+     *
+     * @param jedis 已选库的连接, 由调用方负责关闭
+     * @param name  脚本名称
+     * @param keys
+     * @param args
+     * @return 脚本返回值, 整数为Long, 字符串为String, 表为List
+     */
+    public Object eval(Jedis jedis, String name, List<String> keys, List<String> args) {
+        RedisLuaScript script = get(name);
+        try {
+            return jedis.evalsha(script.getSha1(), keys, args);
+        } catch (JedisNoScriptException e) {
+            log.info("D8GER....Lua脚本[{}]未缓存, 回退EVAL载入, sha1=[{}]", name, script.getSha1());
+            return jedis.eval(script.getSource(), keys, args);
+        }
+    }
+
+    /**
+     * Lua脚本及其SHA1
+     */
+    @Getter
+    public static final class RedisLuaScript {
+        private final String name;
+        private final String source;
+        private final String sha1;
+
+        RedisLuaScript(String name, String source) {
+            this.name = name;
+            this.source = source;
+            this.sha1 = sha1Hex(source);
+        }
+    }
+
+    /**
+     * 与Redis SCRIPT LOAD返回值一致的小写十六进制SHA1
+     *
+     * @param source
+     * @return
+     */
+    public static String sha1Hex(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JDK缺少SHA-1算法", e);
+        }
+    }
+}
@@ -19,26 +19,49 @@
 package com.xyz.caofancpu.mvc.standard;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
 import com.xyz.caofancpu.core.CollectionFunUtil;
 import com.xyz.caofancpu.logger.LoggerUtil;
+import com.xyz.caofancpu.mvc.standard.codec.RedisValueCodec;
+import lombok.Data;
+import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ConvertingCursor;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.SetOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- *
+ * 配置近端缓存后, get/hget/hgetAll优先读取进程内缓存, 本工具类的写操作自动失效对应key
  */
 @Slf4j
 public class SpringRedisUtil {
@@ -49,18 +72,81 @@ public class SpringRedisUtil {
     public final static int DEFAULT_ONE_WEAK_EXPIRE = 7 * DEFAULT_ONE_DAY_EXPIRE;
     public final static int DEFAULT_ONE_MONTH_EXPIRE = 30 * DEFAULT_ONE_DAY_EXPIRE;
     public final static int NOT_EXPIRE = -1;
+    public final static int DEFAULT_SCAN_COUNT = 1000;
+    /**
+     * getOrLoad跨节点加载锁后缀
+     */
+    private final static String LOAD_LOCK_SUFFIX = ":load-lock";
+    private final static long LOCK_POLL_INTERVAL_MILLIS = 20L;
+    /**
+     * 与JedisService共用的内置脚本, RedisTemplate执行时优先EVALSHA, 未缓存时回退EVAL
+     */
+    private final static RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(RedisScriptRegistry.COMPARE_AND_DELETE_SCRIPT, Long.class);
+    private final static RedisScript<Long> HSET_AND_EXPIRE_SCRIPT = new DefaultRedisScript<>(RedisScriptRegistry.HSET_AND_EXPIRE_SCRIPT, Long.class);
+    /**
+     * 进行中的加载, 同一key的并发未命中共享
+     */
+    private final static ConcurrentMap<String, CompletableFuture<Object>> IN_FLIGHT_LOADS = new ConcurrentHashMap<>();
     private static StringRedisTemplate redisTemplate;
+    private static RedisNearCache nearCache;
 
     public SpringRedisUtil(StringRedisTemplate redisTemplate) {
         SpringRedisUtil.redisTemplate = redisTemplate;
     }
 
+    public SpringRedisUtil(StringRedisTemplate redisTemplate, RedisNearCache nearCache) {
+        SpringRedisUtil.redisTemplate = redisTemplate;
+        SpringRedisUtil.nearCache = nearCache;
+    }
+
     public static StringRedisTemplate getRedisTemplate() {
         return SpringRedisUtil.redisTemplate;
     }
 
+    /**
+     * 基于SCAN遍历, 不阻塞Redis, 但结果全部加载到内存, 海量key请使用{@link #scan(String, int, Consumer)}
+     */
     public static Set<String> keys(String key) {
-        return getRedisTemplate().keys(key);
+        Set<String> keys = new HashSet<>();
+        scan(key, DEFAULT_SCAN_COUNT, keys::addAll);
+        return keys;
+    }
+
+    /**
+     * 基于SCAN游标惰性遍历匹配的key, 游标独占一个连接, 使用完毕必须关闭
+     */
+    public static Cursor<String> scanCursor(String pattern, int count) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(count).build();
+        RedisSerializer<String> serializer = getRedisTemplate().getStringSerializer();
+        return getRedisTemplate().executeWithStickyConnection(
+                connection -> new ConvertingCursor<>(connection.scan(options), serializer::deserialize));
+    }
+
+    /**
+     * 基于SCAN游标遍历匹配的key, 每凑满count个回调一次, 客户端内存占用与count相关
+     *
+     * @return 回调的key总数
+     */
+    public static long scan(String pattern, int count, Consumer<List<String>> batchConsumer) {
+        long total = 0;
+        try (Cursor<String> cursor = scanCursor(pattern, count)) {
+            List<String> batch = new ArrayList<>(count);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= count) {
+                    batchConsumer.accept(batch);
+                    total += batch.size();
+                    batch = new ArrayList<>(count);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+                total += batch.size();
+            }
+        } catch (IOException e) {
+            LoggerUtil.error(log, "scan cursor close error", e, "pattern", pattern);
+        }
+        return total;
     }
 
     public static Boolean del(String format, Object... item) {
@@ -68,24 +154,32 @@ public class SpringRedisUtil {
     }
 
     public static Boolean del(String key) {
-        return getRedisTemplate().delete(key);
+        Boolean result = getRedisTemplate().delete(key);
+        invalidateNearCache(key);
+        return result;
     }
 
     public static Long deleteKeys(Collection<String> keys) {
         if (CollectionFunUtil.isEmpty(keys)) {
             return 0L;
         }
-        return getRedisTemplate().delete(keys);
+        Long count = getRedisTemplate().delete(keys);
+        if (nearCache != null) {
+            nearCache.invalidate(keys);
+        }
+        return count;
     }
 
     public static void set(String key, String val) {
         opsForValue().set(key, val);
+        invalidateNearCache(key);
         String logVal = Objects.nonNull(val) && val.length() > 500 ? val.substring(0, 500) : val;
         LoggerUtil.info(log, "设置RedisKey", "key", key, "value", logVal);
     }
 
     public static void set(String key, String val, Integer expire) {
         opsForValue().set(key, val, expire, TimeUnit.SECONDS);
+        invalidateNearCache(key);
         String logVal = Objects.nonNull(val) && val.length() > 500 ? val.substring(0, 500) : val;
         LoggerUtil.info(log, "设置RedisKey", "key", key, "value", logVal, "expireSeconds", expire);
     }
@@ -96,6 +190,9 @@ public class SpringRedisUtil {
 
     public static String get(String key) {
         try {
+            if (nearCache != null) {
+                return nearCache.get(key, k -> opsForValue().get(k));
+            }
             return opsForValue().get(key);
         } catch (Exception e) {
             LoggerUtil.error(log, "get error", e, "key", key);
@@ -119,6 +216,210 @@ public class SpringRedisUtil {
         return JSON.parseObject(value, typeReference);
     }
 
+    /**
+     * 按编解码器读取对象, 以byte[]命令存取, 不经过近端缓存
+     */
+    public static <T> T get(String key, TypeReference<T> typeReference, RedisValueCodec codec) {
+        byte[] rawKey = rawKey(key);
+        byte[] bytes = getRedisTemplate().execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        return bytes == null ? null : codec.decode(bytes, typeReference.getType());
+    }
+
+    /**
+     * 按编解码器写入对象, expire为空或不大于0时不过期
+     */
+    public static void set(String key, Object value, Integer expire, RedisValueCodec codec) {
+        byte[] rawKey = rawKey(key);
+        byte[] bytes = codec.encode(value);
+        getRedisTemplate().execute((RedisCallback<Boolean>) connection -> validateExpireTime(expire)
+                ? connection.setEx(rawKey, expire, bytes)
+                : connection.set(rawKey, bytes));
+        invalidateNearCache(key);
+        LoggerUtil.info(log, "设置RedisKey", "key", key, "bytes", bytes.length, "expireSeconds", expire);
+    }
+
+    /**
+     * 缓存旁路读取, 未命中时由loader加载并写入缓存, 默认开启概率提前刷新, 不缓存null
+     * 注意: 缓存值带有加载元数据, 只能通过getOrLoad读取
+     *
+     * @see #getOrLoad(String, TypeReference, Supplier, LoadPolicy)
+     */
+    public static <T> T getOrLoad(String key, int expire, TypeReference<T> typeReference, Supplier<T> loader) {
+        return getOrLoad(key, typeReference, loader, new LoadPolicy().setExpire(expire));
+    }
+
+    /**
+     * 缓存旁路读取, 防击穿
+     * 1. 同一JVM内同一key的并发未命中共享一次加载, 其余线程等待加载结果
+     * 2. 开启分布式锁时, 跨节点仅持锁节点加载, 其余节点轮询缓存直到超时后自行加载
+     * 3. 命中时按XFetch算法(加载耗时越长、越接近过期, 概率越大)提前刷新, 刷新期间其余线程直接返回旧值;
+     * 开启分布式锁时只有抢到锁的节点刷新, 刷新结果为null且不缓存空值时返回旧值
+     * 4. 开启空值缓存时, loader返回null同样写入缓存, 避免穿透
+     *
+     * @param key           缓存key
+     * @param typeReference 值类型
+     * @param loader        数据源加载
+     * @param policy        加载策略
+     * @return
+     */
+    public static <T> T getOrLoad(String key, TypeReference<T> typeReference, Supplier<T> loader, LoadPolicy policy) {
+        CachedValue cached = readCachedValue(key);
+        if (cached != null) {
+            if (cached.shouldRefreshEarly(policy.getEarlyRefreshBeta()) && !IN_FLIGHT_LOADS.containsKey(key)) {
+                CompletableFuture<Object> refresh = new CompletableFuture<>();
+                if (IN_FLIGHT_LOADS.putIfAbsent(key, refresh) == null) {
+                    return refreshEarly(key, cached.getValue(typeReference), loader, policy, refresh);
+                }
+            }
+            return cached.getValue(typeReference);
+        }
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> existing = IN_FLIGHT_LOADS.putIfAbsent(key, loading);
+        if (existing != null) {
+            return castLoaded(awaitLoad(key, existing));
+        }
+        if (!policy.isDistributedLock()) {
+            return castLoaded(load(key, loader, policy, loading));
+        }
+        try {
+            return castLoaded(loadWithLock(key, typeReference, loader, policy, loading));
+        } catch (Throwable e) {
+            // 轮询锁或缓存阶段出错时同样需要通知等待线程, 已完成时无影响
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT_LOADS.remove(key, loading);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T castLoaded(Object value) {
+        return (T) value;
+    }
+
+    private static CachedValue readCachedValue(String key) {
+        String raw = get(key);
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return new CachedValue(JSON.parseObject(raw));
+        } catch (Exception e) {
+            LoggerUtil.warn(log, "cached value format error, reload", "key", key);
+            return null;
+        }
+    }
+
+    /**
+     * 调用loader加载并写入缓存, 结果同步给等待同一key的线程
+     */
+    private static Object load(String key, Supplier<?> loader, LoadPolicy policy, CompletableFuture<Object> loading) {
+        try {
+            long start = System.currentTimeMillis();
+            Object value = loader.get();
+            long loadMillis = System.currentTimeMillis() - start;
+            if (value != null || policy.getNullExpire() > 0) {
+                int expire = value != null ? policy.getExpire() : policy.getNullExpire();
+                String encoded = CachedValue.encode(value, loadMillis, expire);
+                if (expire > 0) {
+                    set(key, encoded, expire);
+                } else {
+                    set(key, encoded);
+                }
+            }
+            loading.complete(value);
+            return value;
+        } catch (Throwable e) {
+            LoggerUtil.error(log, "getOrLoad load error", e, "key", key);
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT_LOADS.remove(key, loading);
+        }
+    }
+
+    private static Object awaitLoad(String key, CompletableFuture<Object> loading) {
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("getOrLoad load error, key=" + key, e.getCause());
+        }
+    }
+
+    /**
+     * 提前刷新, 开启分布式锁时不等待锁, 未抢到锁或刷新失败时返回旧值
+     */
+    private static <T> T refreshEarly(String key, T stale, Supplier<T> loader, LoadPolicy policy, CompletableFuture<Object> refresh) {
+        String lockKey = key + LOAD_LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        boolean locked = false;
+        try {
+            if (policy.isDistributedLock() && !(locked = tryLoadLock(lockKey, token, policy))) {
+                // 其他节点正在刷新
+                refresh.complete(stale);
+                return stale;
+            }
+            Object value = load(key, loader, policy, refresh);
+            // 未缓存的null不能替代旧值
+            return value == null && policy.getNullExpire() <= 0 ? stale : castLoaded(value);
+        } catch (RuntimeException e) {
+            // 提前刷新失败不影响返回旧值, 已完成时无影响
+            LoggerUtil.warn(log, "early refresh error", "key", key, "error", e.getMessage());
+            refresh.complete(stale);
+            return stale;
+        } finally {
+            IN_FLIGHT_LOADS.remove(key, refresh);
+            if (locked) {
+                releaseLoadLock(lockKey, token);
+            }
+        }
+    }
+
+    private static boolean tryLoadLock(String lockKey, String token, LoadPolicy policy) {
+        return Boolean.TRUE.equals(opsForValue().setIfAbsent(lockKey, token, policy.getLockExpireMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    private static void releaseLoadLock(String lockKey, String token) {
+        getRedisTemplate().execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey), token);
+    }
+
+    /**
+     * 跨节点防击穿: 抢到锁的节点加载, 其余节点轮询缓存, 等待超时后自行加载
+     */
+    private static <T> Object loadWithLock(String key, TypeReference<T> typeReference, Supplier<T> loader, LoadPolicy policy, CompletableFuture<Object> loading) {
+        String lockKey = key + LOAD_LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + policy.getLockWaitMillis();
+        boolean locked;
+        while (!(locked = tryLoadLock(lockKey, token, policy)) && System.currentTimeMillis() < deadline) {
+            CachedValue cached = readCachedValue(key);
+            if (cached != null) {
+                T value = cached.getValue(typeReference);
+                loading.complete(value);
+                return value;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(LOCK_POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        try {
+            return load(key, loader, policy, loading);
+        } finally {
+            if (locked) {
+                releaseLoadLock(lockKey, token);
+            }
+        }
+    }
+
     public static void expire(String key, int expire) {
         getRedisTemplate().expire(key, expire, TimeUnit.SECONDS);
     }
@@ -128,20 +429,30 @@ public class SpringRedisUtil {
     }
 
     public static void hmset(String key, Map<String, String> hash, Integer expire) {
-        opsForHash().putAll(key, hash);
-        if (expire != NOT_EXPIRE) {
-            expire(key, expire);
+        if (expire == NOT_EXPIRE) {
+            opsForHash().putAll(key, hash);
+        } else {
+            List<String> args = new ArrayList<>(hash.size() * 2 + 1);
+            args.add(String.valueOf(expire));
+            hash.forEach((field, value) -> {
+                args.add(field);
+                args.add(value);
+            });
+            getRedisTemplate().execute(HSET_AND_EXPIRE_SCRIPT, Collections.singletonList(key), args.toArray());
         }
+        invalidateNearCache(key);
     }
 
     public static String hget(String key, String field) {
+        if (nearCache != null) {
+            return nearCache.hget(key, field, (k, f) -> opsForHash().get(k, f));
+        }
         return opsForHash().get(key, field);
     }
 
     public static <T> T hget(String key, String field, Function<String, T> mapper) {
         try {
-            String value = opsForHash().get(key, field);
-            //noinspection ConstantConditions
+            String value = hget(key, field);
             if (value == null) {
                 return null;
             }
@@ -152,6 +463,27 @@ public class SpringRedisUtil {
         return null;
     }
 
+    /**
+     * 按编解码器读取hash中单个对象, 不经过近端缓存
+     */
+    public static <T> T hget(String key, String field, TypeReference<T> typeReference, RedisValueCodec codec) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawField = rawKey(field);
+        byte[] bytes = getRedisTemplate().execute((RedisCallback<byte[]>) connection -> connection.hGet(rawKey, rawField));
+        return bytes == null ? null : codec.decode(bytes, typeReference.getType());
+    }
+
+    /**
+     * 按编解码器向hash写入单个对象
+     */
+    public static void hset(String key, String field, Object value, RedisValueCodec codec) {
+        byte[] rawKey = rawKey(key);
+        byte[] rawField = rawKey(field);
+        byte[] bytes = codec.encode(value);
+        getRedisTemplate().execute((RedisCallback<Boolean>) connection -> connection.hSet(rawKey, rawField, bytes));
+        invalidateNearCache(key);
+    }
+
     public static List<String> hmget(String key, Collection<String> field) {
         return opsForHash().multiGet(key, field);
     }
@@ -163,30 +495,44 @@ public class SpringRedisUtil {
 
     public static void hset(String key, String field, String value) {
         opsForHash().put(key, field, value);
+        invalidateNearCache(key);
     }
 
     public static void hset(String key, String field, String value, Integer expire) {
-        opsForHash().put(key, field, value);
-        if (expire != NOT_EXPIRE) {
-            expire(key, expire);
+        if (expire == NOT_EXPIRE) {
+            opsForHash().put(key, field, value);
+        } else {
+            getRedisTemplate().execute(HSET_AND_EXPIRE_SCRIPT, Collections.singletonList(key), String.valueOf(expire), field, value);
         }
+        invalidateNearCache(key);
     }
 
     public static Boolean hsetnx(String key, String field, String value) {
-        return opsForHash().putIfAbsent(key, field, value);
+        Boolean absent = opsForHash().putIfAbsent(key, field, value);
+        if (Boolean.TRUE.equals(absent)) {
+            invalidateNearCache(key);
+        }
+        return absent;
     }
 
 
     public static Long hdel(String key, String field) {
-        return opsForHash().delete(key, field);
+        Long count = opsForHash().delete(key, field);
+        invalidateNearCache(key);
+        return count;
     }
 
 
     public static Long hdel(String key, String... field) {
-        return opsForHash().delete(key, (Object[]) field);
+        Long count = opsForHash().delete(key, (Object[]) field);
+        invalidateNearCache(key);
+        return count;
     }
 
     public static Map<String, String> hgetAll(String key) {
+        if (nearCache != null) {
+            return nearCache.hgetAll(key, k -> opsForHash().entries(k));
+        }
         return opsForHash().entries(key);
     }
 
@@ -199,11 +545,17 @@ public class SpringRedisUtil {
     }
 
     public static Long hincrBy(String key, String field, Integer value) {
-        return opsForHash().increment(key, field, value);
+        Long result = opsForHash().increment(key, field, value);
+        invalidateNearCache(key);
+        return result;
     }
 
     public static boolean setnx(String key, String value, int second) {
-        return opsForValue().setIfAbsent(key, value, second, TimeUnit.SECONDS);
+        boolean absent = Boolean.TRUE.equals(opsForValue().setIfAbsent(key, value, second, TimeUnit.SECONDS));
+        if (absent) {
+            invalidateNearCache(key);
+        }
+        return absent;
     }
 
 
@@ -231,6 +583,19 @@ public class SpringRedisUtil {
         return opsForSet().members(key);
     }
 
+    private static boolean validateExpireTime(Integer expireTime) {
+        return Objects.nonNull(expireTime) && expireTime > 0;
+    }
+
+    private static byte[] rawKey(String key) {
+        return getRedisTemplate().getStringSerializer().serialize(key);
+    }
+
+    private static void invalidateNearCache(String key) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
 
     private static HashOperations<String, String, String> opsForHash() {
         return getRedisTemplate().opsForHash();
@@ -255,5 +620,78 @@ public class SpringRedisUtil {
     public interface RedisHandle<T> {
         T handle(StringRedisTemplate redisTemplate);
     }
+
+    /**
+     * getOrLoad加载策略
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class LoadPolicy {
+        /**
+         * 缓存过期时间, 单位秒, {@link #NOT_EXPIRE}表示不过期
+         */
+        private int expire = DEFAULT_ONE_HOUR_EXPIRE;
+
+        /**
+         * 空值缓存过期时间, 单位秒, 小于等于0时不缓存null
+         */
+        private int nullExpire = 0;
+
+        /**
+         * 提前刷新系数, 越大越早刷新, 小于等于0时关闭提前刷新
+         */
+        private double earlyRefreshBeta = 1.0D;
+
+        /**
+         * 是否使用Redis锁保证跨节点只有一个节点加载
+         */
+        private boolean distributedLock = false;
+
+        /**
+         * 未抢到锁时等待其他节点加载的最长时间
+         */
+        private long lockWaitMillis = 3000L;
+
+        /**
+         * 锁自动过期时间, 应大于加载耗时
+         */
+        private long lockExpireMillis = 10000L;
+    }
+
+    /**
+     * 带加载元数据的缓存值, v: 值(null时缺省), d: 加载耗时毫秒, e: 过期时间戳(-1不过期)
+     */
+    private static final class CachedValue {
+        private final JSONObject envelope;
+
+        CachedValue(JSONObject envelope) {
+            this.envelope = envelope;
+        }
+
+        static String encode(Object value, long loadMillis, int expire) {
+            JSONObject envelope = new JSONObject(4);
+            envelope.put("v", value);
+            envelope.put("d", loadMillis);
+            envelope.put("e", expire > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expire) : -1L);
+            return envelope.toJSONString();
+        }
+
+        /**
+         * XFetch: now - d * beta * ln(random) >= e 时提前刷新
+         */
+        boolean shouldRefreshEarly(double beta) {
+            long expireAt = envelope.getLongValue("e");
+            if (beta <= 0 || expireAt <= 0) {
+                return false;
+            }
+            long loadMillis = Math.max(envelope.getLongValue("d"), 1L);
+            double gap = -loadMillis * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+            return System.currentTimeMillis() + gap >= expireAt;
+        }
+
+        <T> T getValue(TypeReference<T> typeReference) {
+            return envelope.getObject("v", typeReference.getType());
+        }
+    }
 }
 
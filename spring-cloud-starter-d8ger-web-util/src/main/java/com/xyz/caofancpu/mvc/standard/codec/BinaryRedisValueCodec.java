@@ -0,0 +1,404 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑二进制编解码
+ * 对象按fastjson的字段规则(与JSON编码一致)直接读取Bean字段, 不构建中间JSON树, 以类型标记+变长整数写出:
+ * 数字不再以十进制文本存储, 对象字段名及短字符串首次出现后以序号引用, 列表中重复结构的对象体积显著减小
+ * 该编码只用于节省Redis内存与网络带宽, 编解码耗时并不低于JSON编码, 对延迟敏感且体积较小的值应使用{@link JsonRedisValueCodec}
+ *
+ * @author D8GER
+ */
+public class BinaryRedisValueCodec implements RedisValueCodec {
+
+    public static final BinaryRedisValueCodec INSTANCE = new BinaryRedisValueCodec();
+
+    /**
+     * 格式版本, 写在首字节
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * 进入字符串表的值最大长度, 字段名不受限制
+     */
+    private static final int MAX_SHARED_STRING_LENGTH = 32;
+
+    /**
+     * 字符串表最大容量
+     */
+    private static final int MAX_STRING_TABLE_SIZE = 4096;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte STRING = 7;
+    private static final byte STRING_DEF = 8;
+    private static final byte STRING_REF = 9;
+    private static final byte ARRAY = 10;
+    private static final byte OBJECT = 11;
+    private static final byte BYTES = 12;
+    private static final byte DECIMAL = 13;
+    private static final byte BIG_INTEGER = 14;
+    private static final byte DATE = 15;
+    private static final byte JSON_TEXT = 16;
+
+    @Override
+    public byte[] encode(Object value) {
+        Writer writer = new Writer();
+        writer.writeByte(VERSION);
+        writer.writeValue(value);
+        return writer.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes, Type type) {
+        Reader reader = new Reader(bytes);
+        byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("不支持的二进制编码版本: " + version);
+        }
+        Object tree = reader.readValue();
+        if (type == null || type == Object.class) {
+            return (T) tree;
+        }
+        return TypeUtils.cast(tree, type, ParserConfig.getGlobalInstance());
+    }
+
+    private static final class Writer {
+        private final Map<String, Integer> stringTable = new HashMap<>();
+        private byte[] buf = new byte[256];
+        private int pos;
+
+        void writeValue(Object value) {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeString((String) value, ((String) value).length() <= MAX_SHARED_STRING_LENGTH);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeByte(INT);
+                writeVarLong(zigZag(((Number) value).intValue()));
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeVarLong(zigZag((Long) value));
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(OBJECT);
+                writeVarLong(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeString(String.valueOf(entry.getKey()), true);
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof Collection) {
+                Collection<?> collection = (Collection<?>) value;
+                writeByte(ARRAY);
+                writeVarLong(collection.size());
+                for (Object element : collection) {
+                    writeValue(element);
+                }
+            } else if (value instanceof Double) {
+                writeByte(DOUBLE);
+                writeLong(Double.doubleToLongBits((Double) value));
+            } else if (value instanceof Float) {
+                writeByte(FLOAT);
+                writeInt(Float.floatToIntBits((Float) value));
+            } else if (value instanceof BigDecimal) {
+                writeByte(DECIMAL);
+                writeUtf8(((BigDecimal) value).toString());
+            } else if (value instanceof BigInteger) {
+                writeByte(BIG_INTEGER);
+                writeUtf8(value.toString());
+            } else if (value instanceof Date) {
+                writeByte(DATE);
+                writeVarLong(zigZag(((Date) value).getTime()));
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                writeByte(BYTES);
+                writeVarLong(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            } else if (value instanceof Enum) {
+                writeString(((Enum<?>) value).name(), true);
+            } else if (value instanceof Character) {
+                writeString(value.toString(), true);
+            } else {
+                writeOther(value);
+            }
+        }
+
+        /**
+         * Bean直接按字段写出, 其余类型(数组、时间等)沿用JSON.toJSON的转换结果
+         */
+        void writeOther(Object value) {
+            ObjectSerializer serializer = SerializeConfig.getGlobalInstance().getObjectWriter(value.getClass());
+            if (serializer instanceof JavaBeanSerializer) {
+                Map<String, Object> fields;
+                try {
+                    fields = ((JavaBeanSerializer) serializer).getFieldValuesMap(value);
+                } catch (Exception e) {
+                    throw new JSONException("读取对象字段失败: " + value.getClass().getName(), e);
+                }
+                writeValue(fields);
+                return;
+            }
+            Object converted = JSON.toJSON(value);
+            if (converted != value) {
+                writeValue(converted);
+                return;
+            }
+            // 无法转换的类型保持fastjson文本格式
+            writeByte(JSON_TEXT);
+            writeUtf8(JSON.toJSONString(value));
+        }
+
+        void writeString(String value, boolean shared) {
+            if (shared) {
+                Integer index = stringTable.get(value);
+                if (index != null) {
+                    writeByte(STRING_REF);
+                    writeVarLong(index);
+                    return;
+                }
+                if (stringTable.size() < MAX_STRING_TABLE_SIZE) {
+                    stringTable.put(value, stringTable.size());
+                    writeByte(STRING_DEF);
+                    writeUtf8(value);
+                    return;
+                }
+            }
+            writeByte(STRING);
+            writeUtf8(value);
+        }
+
+        void writeUtf8(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeByte(byte value) {
+            ensure(1);
+            buf[pos++] = value;
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, pos, length);
+            pos += length;
+        }
+
+        void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    private static final class Reader {
+        private final List<String> stringTable = new ArrayList<>();
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        Object readValue() {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case INT:
+                    return (int) unZigZag(readVarLong());
+                case LONG:
+                    return unZigZag(readVarLong());
+                case DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case FLOAT:
+                    return Float.intBitsToFloat((int) readFixed(4));
+                case STRING:
+                case STRING_DEF:
+                case STRING_REF:
+                    return readString(tag);
+                case ARRAY: {
+                    int size = (int) readVarLong();
+                    JSONArray array = new JSONArray(size);
+                    for (int i = 0; i < size; i++) {
+                        array.add(readValue());
+                    }
+                    return array;
+                }
+                case OBJECT: {
+                    int size = (int) readVarLong();
+                    JSONObject object = new JSONObject(Math.max(16, size * 4 / 3 + 1));
+                    for (int i = 0; i < size; i++) {
+                        String key = readString(readByte());
+                        object.put(key, readValue());
+                    }
+                    return object;
+                }
+                case BYTES: {
+                    int length = readLength();
+                    byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+                    pos += length;
+                    return bytes;
+                }
+                case DECIMAL:
+                    return new BigDecimal(readUtf8());
+                case BIG_INTEGER:
+                    return new BigInteger(readUtf8());
+                case DATE:
+                    return new Date(unZigZag(readVarLong()));
+                case JSON_TEXT:
+                    return JSON.parse(readUtf8());
+                default:
+                    throw new IllegalArgumentException("二进制编码数据损坏, 未知类型标记: " + tag + ", 位置: " + (pos - 1));
+            }
+        }
+
+        String readString(byte tag) {
+            switch (tag) {
+                case STRING:
+                    return readUtf8();
+                case STRING_DEF: {
+                    String value = readUtf8();
+                    stringTable.add(value);
+                    return value;
+                }
+                case STRING_REF:
+                    return stringTable.get((int) readVarLong());
+                default:
+                    throw new IllegalArgumentException("二进制编码数据损坏, 期望字符串, 类型标记: " + tag + ", 位置: " + (pos - 1));
+            }
+        }
+
+        String readUtf8() {
+            int length = readLength();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        int readLength() {
+            long length = readVarLong();
+            if (length < 0 || length > buf.length - pos) {
+                throw new IllegalArgumentException("二进制编码数据损坏, 长度不足");
+            }
+            return (int) length;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("二进制编码数据损坏, 变长整数过长");
+        }
+
+        long readLong() {
+            return readFixed(8);
+        }
+
+        long readFixed(int length) {
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        byte readByte() {
+            if (pos >= buf.length) {
+                throw new IllegalArgumentException("二进制编码数据损坏, 长度不足");
+            }
+            return buf[pos++];
+        }
+
+        static long unZigZag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
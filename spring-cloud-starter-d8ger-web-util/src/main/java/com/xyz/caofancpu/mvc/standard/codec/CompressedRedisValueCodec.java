@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.codec;
+
+import lombok.NonNull;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 透明压缩, 委托编码结果超过阈值时压缩
+ * 格式: 首字节为压缩算法标记, 压缩时其后为变长整数表示的原始长度及压缩数据, 未压缩时其后为原始数据
+ *
+ * @author D8GER
+ */
+public class CompressedRedisValueCodec implements RedisValueCodec {
+
+    /**
+     * 默认压缩阈值, 小值压缩收益低于耗时
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    private final RedisValueCodec delegate;
+    private final Compression compression;
+    private final int threshold;
+
+    public CompressedRedisValueCodec(@NonNull RedisValueCodec delegate, @NonNull Compression compression) {
+        this(delegate, compression, DEFAULT_THRESHOLD);
+    }
+
+    public CompressedRedisValueCodec(@NonNull RedisValueCodec delegate, @NonNull Compression compression, int threshold) {
+        this.delegate = delegate;
+        this.compression = compression;
+        this.threshold = Math.max(threshold, 0);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        byte[] raw = delegate.encode(value);
+        if (raw.length < threshold) {
+            return withHeader(Compression.NONE, raw, raw.length);
+        }
+        byte[] compressed = compression.compress(raw);
+        // 压缩无收益时保留原始数据
+        if (compressed.length >= raw.length) {
+            return withHeader(Compression.NONE, raw, raw.length);
+        }
+        return withHeader(compression, compressed, raw.length);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Type type) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("压缩编码数据为空");
+        }
+        Compression used = Compression.of(bytes[0]);
+        if (used == Compression.NONE) {
+            return delegate.decode(Arrays.copyOfRange(bytes, 1, bytes.length), type);
+        }
+        int pos = 1;
+        int rawLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[pos++];
+            rawLength |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return delegate.decode(used.decompress(bytes, pos, rawLength), type);
+    }
+
+    private static byte[] withHeader(Compression compression, byte[] data, int rawLength) {
+        byte[] header = new byte[6];
+        int length = 0;
+        header[length++] = compression.flag;
+        if (compression != Compression.NONE) {
+            int value = rawLength;
+            while ((value & ~0x7F) != 0) {
+                header[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            header[length++] = (byte) value;
+        }
+        byte[] result = new byte[length + data.length];
+        System.arraycopy(header, 0, result, 0, length);
+        System.arraycopy(data, 0, result, length, data.length);
+        return result;
+    }
+
+    /**
+     * 压缩算法
+     */
+    public enum Compression {
+        /**
+         * 不压缩
+         */
+        NONE((byte) 0) {
+            @Override
+            byte[] compress(byte[] raw) {
+                return raw;
+            }
+
+            @Override
+            byte[] decompress(byte[] bytes, int offset, int rawLength) {
+                return Arrays.copyOfRange(bytes, offset, bytes.length);
+            }
+        },
+        /**
+         * JDK Deflate(最快级别), 压缩率较高
+         */
+        DEFLATE((byte) 1) {
+            @Override
+            byte[] compress(byte[] raw) {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+                try {
+                    deflater.setInput(raw);
+                    deflater.finish();
+                    byte[] buf = new byte[raw.length + 64];
+                    int length = 0;
+                    while (!deflater.finished()) {
+                        if (length == buf.length) {
+                            buf = Arrays.copyOf(buf, buf.length << 1);
+                        }
+                        length += deflater.deflate(buf, length, buf.length - length);
+                    }
+                    return Arrays.copyOf(buf, length);
+                } finally {
+                    deflater.end();
+                }
+            }
+
+            @Override
+            byte[] decompress(byte[] bytes, int offset, int rawLength) {
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(bytes, offset, bytes.length - offset);
+                    byte[] raw = new byte[rawLength];
+                    int length = 0;
+                    while (length < rawLength && !inflater.finished()) {
+                        int n = inflater.inflate(raw, length, rawLength - length);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        length += n;
+                    }
+                    if (length != rawLength) {
+                        throw new IllegalArgumentException("Deflate数据损坏, 期望长度: " + rawLength + ", 实际长度: " + length);
+                    }
+                    return raw;
+                } catch (DataFormatException e) {
+                    throw new IllegalArgumentException("Deflate数据损坏", e);
+                } finally {
+                    inflater.end();
+                }
+            }
+        },
+        /**
+         * LZ4块格式, 压缩率低于Deflate, 但压缩与解压均明显更快
+         */
+        LZ4((byte) 2) {
+            @Override
+            byte[] compress(byte[] raw) {
+                return Lz4Block.compress(raw);
+            }
+
+            @Override
+            byte[] decompress(byte[] bytes, int offset, int rawLength) {
+                return Lz4Block.decompress(bytes, offset, rawLength);
+            }
+        };
+
+        private final byte flag;
+
+        Compression(byte flag) {
+            this.flag = flag;
+        }
+
+        static Compression of(byte flag) {
+            for (Compression compression : values()) {
+                if (compression.flag == flag) {
+                    return compression;
+                }
+            }
+            throw new IllegalArgumentException("未知压缩算法标记: " + flag);
+        }
+
+        abstract byte[] compress(byte[] raw);
+
+        abstract byte[] decompress(byte[] bytes, int offset, int rawLength);
+    }
+}
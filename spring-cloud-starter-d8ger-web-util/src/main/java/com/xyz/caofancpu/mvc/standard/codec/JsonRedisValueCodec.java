@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.codec;
+
+import com.alibaba.fastjson.JSON;
+
+import java.lang.reflect.Type;
+
+/**
+ * fastjson编解码, 与SpringRedisUtil字符串存储格式一致
+ *
+ * @author D8GER
+ */
+public class JsonRedisValueCodec implements RedisValueCodec {
+
+    public static final JsonRedisValueCodec INSTANCE = new JsonRedisValueCodec();
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSON.toJSONBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Type type) {
+        return JSON.parseObject(bytes, type);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.codec;
+
+import java.util.Arrays;
+
+/**
+ * LZ4块格式(不含帧头)的纯Java实现, 输出与标准LZ4块格式兼容
+ * 压缩为单遍贪心匹配, 以4字节哈希查找最近一次出现位置, 不可压缩数据按距离逐步加大步长
+ *
+ * @author D8GER
+ */
+final class Lz4Block {
+
+    private static final int HASH_LOG = 12;
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    /**
+     * 最后一个匹配须在结尾12字节前开始, 结尾5字节须为字面量
+     */
+    private static final int MF_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+    private static final int RUN_MASK = 15;
+
+    private Lz4Block() {
+        throw new AssertionError("Must not instantiate utility class");
+    }
+
+    static byte[] compress(byte[] src) {
+        int length = src.length;
+        byte[] dst = new byte[length + length / 255 + 16];
+        int op = 0;
+        int anchor = 0;
+        if (length >= MF_LIMIT + 1) {
+            // 哈希表存储位置+1, 0表示空
+            int[] table = new int[1 << HASH_LOG];
+            int mfLimit = length - MF_LIMIT;
+            int matchLimit = length - LAST_LITERALS;
+            int ip = 0;
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int hash = (sequence * -1640531535) >>> (32 - HASH_LOG);
+                int ref = table[hash] - 1;
+                table[hash] = ip + 1;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        int literalLength = length - anchor;
+        op = writeLength(dst, op, Math.min(literalLength, RUN_MASK) << 4, literalLength);
+        System.arraycopy(src, anchor, dst, op, literalLength);
+        op += literalLength;
+        return Arrays.copyOf(dst, op);
+    }
+
+    static byte[] decompress(byte[] src, int offset, int rawLength) {
+        byte[] dst = new byte[rawLength];
+        int ip = offset;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip >= src.length) {
+                    break;
+                }
+                int matchOffset = (src[ip++] & 0xFF) | ((src[ip++] & 0xFF) << 8);
+                int matchLength = token & 0x0F;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - matchOffset;
+                if (matchOffset == 0 || ref < 0 || op + matchLength > rawLength) {
+                    throw new IllegalArgumentException("LZ4数据损坏, 位置: " + ip);
+                }
+                if (matchOffset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    // 重叠复制须逐字节进行
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op++] = dst[ref + i];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("LZ4数据损坏, 位置: " + ip, e);
+        }
+        if (op != rawLength) {
+            throw new IllegalArgumentException("LZ4数据损坏, 期望长度: " + rawLength + ", 实际长度: " + op);
+        }
+        return dst;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int matchOffset, int matchLength, byte[] dst, int op) {
+        int matchCode = matchLength - MIN_MATCH;
+        op = writeLength(dst, op, (Math.min(literalLength, RUN_MASK) << 4) | Math.min(matchCode, RUN_MASK), literalLength);
+        System.arraycopy(src, literalStart, dst, op, literalLength);
+        op += literalLength;
+        dst[op++] = (byte) matchOffset;
+        dst[op++] = (byte) (matchOffset >>> 8);
+        if (matchCode >= RUN_MASK) {
+            op = writeExtraLength(dst, op, matchCode - RUN_MASK);
+        }
+        return op;
+    }
+
+    /**
+     * 写出token及字面量超长部分
+     */
+    private static int writeLength(byte[] dst, int op, int token, int literalLength) {
+        dst[op++] = (byte) token;
+        if (literalLength >= RUN_MASK) {
+            op = writeExtraLength(dst, op, literalLength - RUN_MASK);
+        }
+        return op;
+    }
+
+    private static int writeExtraLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int pos) {
+        return (src[pos] & 0xFF) | ((src[pos + 1] & 0xFF) << 8) | ((src[pos + 2] & 0xFF) << 16) | ((src[pos + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.codec;
+
+import java.lang.reflect.Type;
+
+/**
+ * Redis值编解码SPI, JedisService/SpringRedisUtil的对象读写方法以byte[]命令存取编码结果
+ * 实现须线程安全
+ *
+ * @author D8GER
+ */
+public interface RedisValueCodec {
+
+    /**
+     * 编码
+     *
+     * @param value 值, 可为null
+     * @return
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     *
+     * @param bytes 编码结果, 不为null
+     * @param type  目标类型, 支持泛型
+     * @return
+     */
+    <T> T decode(byte[] bytes, Type type);
+}
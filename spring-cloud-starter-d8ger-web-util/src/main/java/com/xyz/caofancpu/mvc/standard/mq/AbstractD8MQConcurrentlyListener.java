@@ -18,7 +18,6 @@
 
 package com.xyz.caofancpu.mvc.standard.mq;
 
-import com.google.common.collect.Maps;
 import com.xyz.caofancpu.logger.trace.ThreadTraceUtil;
 import com.xyz.caofancpu.property.MQProperties;
 import lombok.NoArgsConstructor;
@@ -27,10 +26,12 @@ import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
 import org.apache.rocketmq.common.message.MessageExt;
-import org.slf4j.Logger;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * MQ消息监听协调处理器父类
@@ -39,49 +40,45 @@ import java.util.Map;
  */
 @NoArgsConstructor
 @Slf4j
-public abstract class AbstractD8MQConcurrentlyListener implements MessageListenerConcurrently {
-    protected MQProperties mqProperties;
+public abstract class AbstractD8MQConcurrentlyListener extends AbstractD8MQListener implements MessageListenerConcurrently {
 
     /**
-     * 消息处理器
+     * 按逻辑主题分组后交由对应监听器批量处理, 单次投递条数由{@link MQProperties#getConsumerMessageBatchMaxSize()}控制
+     * 部分失败时通过ackIndex只重新投递第一条失败消息及其后的消息, 其中已被其他分组处理成功的消息会重复投递, 需由监听器保证幂等
+     * 广播模式下RocketMQ不重新投递ackIndex之后的消息
      */
-    protected Map<String, D8MQConsumerListener> mqConsumerListenerMap = Maps.newHashMap();
-
-    /**
-     * MQ消费记录日志
-     */
-    protected Logger MQ_LOG;
-
-    /**
-     * 交由子类实现参数初始化
-     */
-    public abstract void init();
-
     @Override
     public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgList, ConsumeConcurrentlyContext context) {
         ThreadTraceUtil.beginTrace();
-        MessageExt msg = msgList.get(0);
-        MQ_LOG.info("model:[{}].result:[{}].topic:[{}].tag:[{}].key:[{}].hashId:[{}].recTraceId:[{}]",
-                "REC", "SUCCESS", msg.getTopic(), msg.getTags(), msg.getKeys(), "", ThreadTraceUtil.getTraceId());
-        log.info("开始消费消息, msg=[{}]", msg);
-        D8MQConsumerListener d8MqConsumerListener = mqConsumerListenerMap.get(MQProperties.extractLogicTopic(msg.getTopic()));
         try {
-            d8MqConsumerListener.consumeMessage(msg);
-            log.info("消费消息完成, msg=[{}]", msg);
-            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
-        } catch (Exception e) {
-            int retryTimesWhenFailed = msg.getReconsumeTimes();
-            if (retryTimesWhenFailed > mqProperties.getConsumerRetryTimesWhenHandleFailed()) {
-                log.info("消费消息异常, msg=[{}]", msg);
-                try {
-                    d8MqConsumerListener.consumeFailed(msg);
-                } catch (Exception ex) {
-                    log.error("消费消息失败回调处理异常, msg=[{}], 原因: {}", msg, ex);
+            for (MessageExt msg : msgList) {
+                MQ_LOG.info("model:[{}].result:[{}].topic:[{}].tag:[{}].key:[{}].hashId:[{}].recTraceId:[{}]",
+                        "REC", "SUCCESS", msg.getTopic(), msg.getTags(), msg.getKeys(), "", ThreadTraceUtil.getTraceId());
+            }
+            log.info("开始消费消息, 条数=[{}], 首条msgId=[{}]", msgList.size(), msgList.get(0).getMsgId());
+            Map<String, List<Integer>> topicIndexMap = new LinkedHashMap<>();
+            for (int i = 0; i < msgList.size(); i++) {
+                topicIndexMap.computeIfAbsent(MQProperties.extractLogicTopic(msgList.get(i).getTopic()), k -> new ArrayList<>()).add(i);
+            }
+            // 各分组都处理到自身第一条失败为止, 重新投递从全局最靠前的失败消息开始
+            int firstFailedIndex = msgList.size();
+            for (Map.Entry<String, List<Integer>> entry : topicIndexMap.entrySet()) {
+                List<Integer> indexes = entry.getValue();
+                int consumed = consumeGroup(entry.getKey(), indexes.stream().map(msgList::get).collect(Collectors.toList()));
+                if (consumed < indexes.size()) {
+                    firstFailedIndex = Math.min(firstFailedIndex, indexes.get(consumed));
                 }
+            }
+            if (firstFailedIndex == msgList.size()) {
+                log.info("消费消息完成, 条数=[{}]", msgList.size());
                 return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
             }
-            log.error("消费消息处理异常, 尝试重新消费, msg=[{}], 重新消费次数retryTimesWhenFailed[{}], 异常原因: {}", msg, msg.getReconsumeTimes(), e);
-            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            if (firstFailedIndex == 0) {
+                return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+            }
+            log.info("消费消息部分完成, 条数=[{}], 重新投递起始位置=[{}]", msgList.size(), firstFailedIndex);
+            context.setAckIndex(firstFailedIndex - 1);
+            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
         } finally {
             ThreadTraceUtil.endTrace();
         }
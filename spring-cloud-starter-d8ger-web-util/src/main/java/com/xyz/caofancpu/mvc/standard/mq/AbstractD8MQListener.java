@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.google.common.collect.Maps;
+import com.xyz.caofancpu.logger.metrics.MQMetricsRegistry;
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * MQ消息监听处理器公共父类, 维护逻辑主题到监听器的映射并按逻辑主题分组处理消息
+ *
+ * @author D8GER
+ */
+@NoArgsConstructor
+@Slf4j
+public abstract class AbstractD8MQListener {
+    protected MQProperties mqProperties;
+
+    /**
+     * 消息处理器
+     */
+    protected Map<String, D8MQConsumerListener> mqConsumerListenerMap = Maps.newHashMap();
+
+    /**
+     * 消息去重, 为null时不去重; 配置了{@link MQProperties#getConsumerDedupTopicMap()}且未设置时由{@link D8BaseConsumer}创建仅本地去重的实例
+     */
+    protected D8MessageDeduplicator messageDeduplicator;
+
+    /**
+     * MQ消费记录日志
+     */
+    protected Logger MQ_LOG;
+
+    /**
+     * 交由子类实现参数初始化
+     */
+    public abstract void init();
+
+    /**
+     * 处理同一逻辑主题的一组消息, 重试次数超限的失败消息交由失败回调后视为已处理
+     *
+     * @param logicTopic 逻辑主题
+     * @param group      消息
+     * @return 从头开始连续处理完成的条数, 其后的消息需重新投递
+     */
+    protected int consumeGroup(String logicTopic, List<MessageExt> group) {
+        D8MQConsumerListener d8MqConsumerListener = resolveListener(logicTopic);
+        if (Objects.isNull(d8MqConsumerListener)) {
+            log.error("消费消息处理异常, 主题[{}]缺少消息监听器, 条数=[{}]", logicTopic, group.size());
+            return 0;
+        }
+        int offset = 0;
+        while (offset < group.size()) {
+            List<MessageExt> remaining = group.subList(offset, group.size());
+            Exception cause = null;
+            int consumed;
+            try {
+                consumed = Math.max(0, Math.min(d8MqConsumerListener.consumeMessages(remaining), remaining.size()));
+            } catch (Exception e) {
+                consumed = 0;
+                cause = e;
+            }
+            offset += consumed;
+            if (offset == group.size()) {
+                break;
+            }
+            MessageExt msg = group.get(offset);
+            if (msg.getReconsumeTimes() <= mqProperties.getConsumerRetryTimesWhenHandleFailed()) {
+                log.error("消费消息处理异常, 等待重新消费, topic=[{}], msgId=[{}], key=[{}], 重新消费次数retryTimesWhenFailed[{}], 异常原因: {}",
+                        msg.getTopic(), msg.getMsgId(), msg.getKeys(), msg.getReconsumeTimes(), cause);
+                return offset;
+            }
+            log.info("消费消息异常, 超过重试次数, msg=[{}]", msg);
+            try {
+                d8MqConsumerListener.consumeFailed(msg);
+            } catch (Exception ex) {
+                log.error("消费消息失败回调处理异常, msg=[{}], 原因: {}", msg, ex);
+            }
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * 逻辑主题对应的监听器, 按需包装统计及去重, 去重在外层, 重复消息不计入消费统计
+     *
+     * @param logicTopic
+     * @return
+     */
+    protected D8MQConsumerListener resolveListener(String logicTopic) {
+        D8MQConsumerListener d8MqConsumerListener = mqConsumerListenerMap.get(logicTopic);
+        if (Objects.isNull(d8MqConsumerListener)) {
+            return null;
+        }
+        if (mqProperties.isMetricsEnable()) {
+            d8MqConsumerListener = new MQMetricsConsumerListener(logicTopic, MQMetricsRegistry.getDefault(), d8MqConsumerListener);
+        }
+        return Objects.isNull(messageDeduplicator) ? d8MqConsumerListener : messageDeduplicator.wrap(logicTopic, d8MqConsumerListener);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.logger.trace.ThreadTraceUtil;
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.List;
+
+/**
+ * MQ有序消息监听处理器父类, 与{@link KeyHashQueueSelector}配合, 同一队列内的消息严格按序交给监听器
+ * 处理失败时暂停当前队列{@link MQProperties#getConsumerOrderlySuspendMillis()}毫秒后整批重新投递, 不会越过失败消息
+ * 重新投递的整批中包含已处理成功的消息, 需由监听器保证幂等
+ *
+ * @author D8GER
+ */
+@NoArgsConstructor
+@Slf4j
+public abstract class AbstractD8MQOrderlyListener extends AbstractD8MQListener implements MessageListenerOrderly {
+
+    /**
+     * 同一次投递的消息来自同一队列, 即同一逻辑主题
+     */
+    @Override
+    public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgList, ConsumeOrderlyContext context) {
+        ThreadTraceUtil.beginTrace();
+        try {
+            for (MessageExt msg : msgList) {
+                MQ_LOG.info("model:[{}].result:[{}].topic:[{}].tag:[{}].key:[{}].hashId:[{}].recTraceId:[{}]",
+                        "REC_ORDERLY", "SUCCESS", msg.getTopic(), msg.getTags(), msg.getKeys(), context.getMessageQueue().getQueueId(), ThreadTraceUtil.getTraceId());
+            }
+            String logicTopic = MQProperties.extractLogicTopic(msgList.get(0).getTopic());
+            log.info("开始有序消费消息, topic=[{}], queueId=[{}], 条数=[{}]", logicTopic, context.getMessageQueue().getQueueId(), msgList.size());
+            if (consumeGroup(logicTopic, msgList) < msgList.size()) {
+                return suspend(context);
+            }
+            log.info("有序消费消息完成, 条数=[{}]", msgList.size());
+            return ConsumeOrderlyStatus.SUCCESS;
+        } finally {
+            ThreadTraceUtil.endTrace();
+        }
+    }
+
+    private ConsumeOrderlyStatus suspend(ConsumeOrderlyContext context) {
+        context.setSuspendCurrentQueueTimeMillis(mqProperties.getConsumerOrderlySuspendMillis());
+        return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+    }
+}
@@ -19,13 +19,10 @@
 package com.xyz.caofancpu.mvc.standard.mq;
 
 import com.xyz.caofancpu.property.MQProperties;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.listener.MessageListener;
-import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
-import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
 import org.apache.rocketmq.client.exception.MQClientException;
-import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -44,9 +41,50 @@ public class D8BaseConsumer {
 
     private final MessageListener messageListener;
 
-    private DefaultMQPushConsumer defaultMQPushConsumer;
+    /**
+     * 传输层, 默认为RocketMQ
+     */
+    private final D8MQConsumerTransport transport;
 
     public D8BaseConsumer(MQProperties mqProperties, AbstractD8MQConcurrentlyListener messageListener) {
+        this(mqProperties, messageListener, new RocketMQConsumerTransport(mqProperties));
+    }
+
+    /**
+     * 指定传输层, 如单机压测使用{@link InMemoryMQBroker#consumerTransport(MQProperties)}
+     *
+     * @param mqProperties
+     * @param messageListener
+     * @param transport
+     */
+    public D8BaseConsumer(MQProperties mqProperties, AbstractD8MQConcurrentlyListener messageListener, D8MQConsumerTransport transport) {
+        this(mqProperties, (MessageListener) messageListener, transport);
+        installDeduplicator(messageListener);
+    }
+
+    /**
+     * 有序消费, 生产者需以{@link D8BaseMessage#getConsumeOrdered()}发送
+     *
+     * @param mqProperties
+     * @param messageListener
+     */
+    public D8BaseConsumer(MQProperties mqProperties, AbstractD8MQOrderlyListener messageListener) {
+        this(mqProperties, messageListener, new RocketMQConsumerTransport(mqProperties));
+    }
+
+    /**
+     * 有序消费并指定传输层
+     *
+     * @param mqProperties
+     * @param messageListener
+     * @param transport
+     */
+    public D8BaseConsumer(MQProperties mqProperties, AbstractD8MQOrderlyListener messageListener, D8MQConsumerTransport transport) {
+        this(mqProperties, (MessageListener) messageListener, transport);
+        installDeduplicator(messageListener);
+    }
+
+    private D8BaseConsumer(MQProperties mqProperties, MessageListener messageListener, @NonNull D8MQConsumerTransport transport) {
         if (mqProperties.isLegalMqEnvName()) {
             throw new RuntimeException("初始化consumer失败, mqEnv不得为空也不得包含'_'");
         }
@@ -55,6 +93,18 @@ public class D8BaseConsumer {
         }
         this.mqProperties = mqProperties;
         this.messageListener = messageListener;
+        this.transport = transport;
+    }
+
+    /**
+     * 配置了去重主题且监听器未设置去重时, 创建仅本地去重的实例
+     *
+     * @param messageListener
+     */
+    private void installDeduplicator(AbstractD8MQListener messageListener) {
+        if (Objects.isNull(messageListener.messageDeduplicator) && !mqProperties.getConsumerDedupTopicMap().isEmpty()) {
+            messageListener.messageDeduplicator = new D8MessageDeduplicator(mqProperties, null);
+        }
     }
 
     @PostConstruct
@@ -62,26 +112,11 @@ public class D8BaseConsumer {
             throws MQClientException {
         log.info("D8GER....执行consumer初始化, consumerGroup=[{}], nameSrvAddr=[{}]", mqProperties.getConsumerGroup(), mqProperties.getNameSrvAddr());
         try {
-            defaultMQPushConsumer = new DefaultMQPushConsumer(mqProperties.getMqEnv() + mqProperties.getConsumerGroup());
-            defaultMQPushConsumer.setNamesrvAddr(mqProperties.getNameSrvAddr());
             for (Map.Entry<String, String> entry : mqProperties.getConsumerTopicTagMap().entrySet()) {
-                defaultMQPushConsumer.subscribe(mqProperties.wrapperTopic(entry.getKey()), entry.getValue());
-            }
-
-            // 第一次启动从开始位置消费, 其他从上次消费位置继续消费
-            defaultMQPushConsumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
-            defaultMQPushConsumer.setConsumeThreadMax(mqProperties.getConsumerMaxThreads());
-            defaultMQPushConsumer.setConsumeThreadMin(mqProperties.getConsumerMinThreads());
-            defaultMQPushConsumer.setConsumeTimeout(mqProperties.getConsumerMaxTimeOutInMinutes());
-            defaultMQPushConsumer.setMessageModel(mqProperties.getConsumerMessageModel());
-            if (messageListener instanceof MessageListenerConcurrently) {
-                defaultMQPushConsumer.registerMessageListener((MessageListenerConcurrently) messageListener);
-            } else if (messageListener instanceof MessageListenerOrderly) {
-                defaultMQPushConsumer.registerMessageListener((MessageListenerOrderly) messageListener);
-            } else {
-                throw new RuntimeException("缺少消息监听处理器");
+                transport.subscribe(mqProperties.wrapperTopic(entry.getKey()), entry.getValue());
             }
-            defaultMQPushConsumer.start();
+            transport.registerMessageListener(messageListener);
+            transport.start();
         } catch (Exception e) {
             log.error("D8GER....初始化consumer失败, 原因: ", e);
             throw e;
@@ -91,7 +126,7 @@ public class D8BaseConsumer {
 
     @PreDestroy
     public void destroy() {
-        defaultMQPushConsumer.shutdown();
+        transport.shutdown();
     }
 
 }
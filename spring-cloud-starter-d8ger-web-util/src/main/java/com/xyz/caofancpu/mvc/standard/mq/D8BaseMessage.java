@@ -46,7 +46,7 @@ public class D8BaseMessage<T extends Serializable> implements Serializable {
     private String tag;
 
     /**
-     * 消息唯一标识码
+     * 消息唯一标识码, 有序消息按key选择队列, 同一key的消息保持有序
      */
     private String key;
 
@@ -20,12 +20,13 @@ package com.xyz.caofancpu.mvc.standard.mq;
 
 import com.xyz.caofancpu.annotation.WarnDoc;
 import com.xyz.caofancpu.core.JSONUtil;
+import com.xyz.caofancpu.logger.metrics.MQMetrics;
+import com.xyz.caofancpu.logger.metrics.MQMetricsRegistry;
 import com.xyz.caofancpu.logger.trace.ThreadTraceUtil;
 import com.xyz.caofancpu.property.MQProperties;
 import lombok.NonNull;
 import lombok.experimental.Accessors;
 import org.apache.rocketmq.client.exception.MQClientException;
-import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.client.producer.MessageQueueSelector;
 import org.apache.rocketmq.client.producer.SendCallback;
 import org.apache.rocketmq.client.producer.SendResult;
@@ -36,6 +37,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -70,15 +74,42 @@ public class D8BaseProducer {
     public MessageQueueSelector defaultQueueSelector;
     /**
      * 所有消息放在一个队列中, 保持顺序
+     *
+     * @deprecated 单队列即为有序消息的吞吐上限, 改用{@link #keyHashQueueSelector}
      */
+    @Deprecated
     @WarnDoc("慎用, 尽量把业务解耦, 不依赖顺序")
     public MessageQueueSelector orderedQueueSelectorZero;
     /**
-     * 默认生产者, 源自RocketMQ
+     * 有序消息按key哈希选择队列, 同一key内有序
+     */
+    @WarnDoc("慎用, 尽量把业务解耦, 不依赖顺序")
+    public final MessageQueueSelector keyHashQueueSelector = new KeyHashQueueSelector();
+    /**
+     * 传输层, 默认为RocketMQ
+     */
+    private final D8MQProducerTransport transport;
+    /**
+     * 异步消息累积器, 未启用批量发送时为null
      */
-    private DefaultMQProducer defaultMQProducer;
+    private D8MessageAccumulator<PendingSend> accumulator;
+    /**
+     * 本地重投队列, 未启用时为null
+     */
+    private D8MessageOutbox outbox;
 
     public D8BaseProducer(MQProperties mqProperties, D8BaseSendCallback sendCallback) {
+        this(mqProperties, sendCallback, new RocketMQProducerTransport(mqProperties));
+    }
+
+    /**
+     * 指定传输层, 如单机压测使用{@link InMemoryMQBroker#producerTransport()}
+     *
+     * @param mqProperties
+     * @param sendCallback
+     * @param transport
+     */
+    public D8BaseProducer(MQProperties mqProperties, D8BaseSendCallback sendCallback, @NonNull D8MQProducerTransport transport) {
         if (mqProperties.isLegalMqEnvName()) {
             throw new RuntimeException("初始化producer失败, mqEnv不得为空也不得包含'_'");
         }
@@ -86,6 +117,7 @@ public class D8BaseProducer {
         this.log = LoggerFactory.getLogger(D8BaseProducer.class);
 //        this.log = LoggerFactory.getLogger(this.mqProperties.getProducerMqLogAppenderName());
         this.sendCallback = sendCallback;
+        this.transport = transport;
     }
 
     /**
@@ -99,11 +131,7 @@ public class D8BaseProducer {
             throws MQClientException {
         log.info("D8GER....执行初始化producer, producerGroup=[{}], nameSrvAddr=[{}]", mqProperties.getProducerGroup(), mqProperties.getNameSrvAddr());
         try {
-            defaultMQProducer = new DefaultMQProducer(mqProperties.getMqEnv() + mqProperties.getProducerGroup());
-            defaultMQProducer.setNamesrvAddr(mqProperties.getNameSrvAddr());
-            defaultMQProducer.setRetryTimesWhenSendFailed(mqProperties.getProducerRetryTimesWhenSendFailed());
-            defaultMQProducer.setDefaultTopicQueueNums(mqProperties.getProducerTopicQueueNums());
-            defaultMQProducer.start();
+            transport.start();
         } catch (MQClientException e) {
             log.error("D8GER....初始化producer失败, 原因: ", e);
             throw e;
@@ -120,6 +148,42 @@ public class D8BaseProducer {
             log.info("选择发送消息队列, index=[{}], arg=[{}], key=[{}]", 0, arg, msg.getKeys());
             return mqs.get(0);
         };
+        if (mqProperties.isProducerOutboxEnable()) {
+            initOutbox();
+        }
+        if (mqProperties.isProducerBatchEnable()) {
+            accumulator = new D8MessageAccumulator<>(new D8MessageAccumulator.BatchSender() {
+                @Override
+                public SendResult send(Message message)
+                        throws Exception {
+                    return transport.send(message, mqProperties.getProducerAsynTimeOutMillis());
+                }
+
+                @Override
+                public SendResult send(List<Message> messages)
+                        throws Exception {
+                    return transport.send(messages, mqProperties.getProducerAsynTimeOutMillis());
+                }
+            }, this::handleBatchResult, mqProperties.getProducerBatchLingerMillis(), mqProperties.getProducerBatchMaxMessages(),
+                    Math.min(mqProperties.getProducerBatchMaxBytes(), transport.getMaxMessageSize()),
+                    mqProperties.getProducerBatchSenderThreads(), mqProperties.getProducerBatchMaxPendingBatches());
+            if (Objects.nonNull(outbox)) {
+                accumulator.setOverflowHandler((messages, pendingSends) -> {
+                    pendingSends.forEach(pendingSend -> recordSend(pendingSend.metrics, pendingSend.startNanos, false));
+                    for (int i = 0; i < messages.size(); i++) {
+                        if (!outbox.append(messages.get(i), false)) {
+                            // 已写入的部分由重投队列发送, 其余逐条按失败处理
+                            pendingSends.subList(i, pendingSends.size()).forEach(pendingSend -> handleFailed(pendingSend.d8Message));
+                            return true;
+                        }
+                    }
+                    log.info("批量发送队列已满, 消息转入本地重投队列, topic=[{}], 条数=[{}]", messages.get(0).getTopic(), messages.size());
+                    return true;
+                });
+            }
+            log.info("D8GER....producer批量发送已启用, lingerMillis=[{}], maxMessages=[{}], maxBytes=[{}]",
+                    mqProperties.getProducerBatchLingerMillis(), mqProperties.getProducerBatchMaxMessages(), mqProperties.getProducerBatchMaxBytes());
+        }
     }
 
     /**
@@ -127,15 +191,27 @@ public class D8BaseProducer {
      */
     @PreDestroy
     public void destroy() {
-        defaultMQProducer.shutdown();
+        if (Objects.nonNull(accumulator)) {
+            accumulator.close();
+        }
+        if (Objects.nonNull(outbox)) {
+            outbox.close();
+        }
+        transport.shutdown();
     }
 
     /**
-     * 异步立即发送消息
+     * 异步立即发送消息, 启用批量发送时无序消息先进入累积器
      *
      * @param d8Message
      */
     public void sendMsgAsyn(D8BaseMessage d8Message) {
+        if (Objects.nonNull(accumulator) && !d8Message.getConsumeOrdered()) {
+            Message message = buildMessage(d8Message);
+            log.info("消息进入批量发送, topic=[{}], tag=[{}], key=[{}]", message.getTopic(), message.getTags(), message.getKeys());
+            accumulator.append(message, new PendingSend(d8Message, beginSend(d8Message), System.nanoTime()));
+            return;
+        }
         sendMsgAsyn(d8Message, select(d8Message), null);
     }
 
@@ -166,26 +242,29 @@ public class D8BaseProducer {
      */
     @WarnDoc("出现失败时会存在重复发送消息, 交由客户端处理重复消息保证幂等")
     private void sendMsgAsyn(D8BaseMessage d8Message, MessageQueueSelector selector, Integer delayLevel) {
-        String topic = mqProperties.wrapperTopic(d8Message.getTopic());
+        Message message = buildMessage(d8Message);
+        String topic = message.getTopic();
         String tag = d8Message.getTag();
         String key = d8Message.getKey();
-        Message message = new Message(topic, tag, key, JSONUtil.toJSONStringWithDateFormat(d8Message.getData()).getBytes());
         if (Objects.nonNull(delayLevel)) {
             message.setDelayTimeLevel(delayLevel);
         }
         log.info("开始发送消息, topic=[{}], tag=[{}], key=[{}]", topic, tag, key);
+        MQMetrics metrics = beginSend(d8Message);
+        long startNanos = System.nanoTime();
         try {
-            defaultMQProducer.send(message, selector, d8Message.getData(),
+            transport.send(message, selector, d8Message.getData(),
                     new SendCallback() {
                         @Override
                         public void onSuccess(SendResult sendResult) {
                             ThreadTraceUtil.beginTrace();
+                            recordSend(metrics, startNanos, sendResult.getSendStatus().equals(SendStatus.SEND_OK));
                             if (sendResult.getSendStatus().equals(SendStatus.SEND_OK)) {
                                 log.info("发送消息成功, topic=[{}], tag=[{}], key=[{}]", topic, tag, key);
                                 handleSuccess(d8Message);
                             } else {
                                 log.info("发送消息失败, topic=[{}], tag=[{}], key=[{}]", topic, tag, key);
-                                handleFailed(d8Message);
+                                handleFailed(d8Message, message);
                             }
                             ThreadTraceUtil.endTrace();
                         }
@@ -193,16 +272,18 @@ public class D8BaseProducer {
                         @Override
                         public void onException(Throwable e) {
                             ThreadTraceUtil.beginTrace();
+                            recordSend(metrics, startNanos, false);
                             log.info("发送消息异常, topic=[{}], tag=[{}], key=[{}]", topic, tag, key);
-                            handleFailed(d8Message);
+                            handleFailed(d8Message, message);
                             ThreadTraceUtil.endTrace();
                         }
                     },
                     mqProperties.getProducerAsynTimeOutMillis()
             );
         } catch (Exception e) {
+            recordSend(metrics, startNanos, false);
             log.info("发送消息异常, topic=[{}], tag=[{}], key=[{}], 异常原因: {}", topic, tag, key, e);
-            handleFailed(d8Message);
+            handleFailed(d8Message, message);
         }
     }
 
@@ -215,34 +296,146 @@ public class D8BaseProducer {
      */
     @WarnDoc("出现失败时会存在重复发送消息, 交由客户端处理重复消息保证幂等")
     private void sendMsgSyn(D8BaseMessage d8Message, MessageQueueSelector selector) {
-        String topic = mqProperties.wrapperTopic(d8Message.getTopic());
+        Message message = buildMessage(d8Message);
+        String topic = message.getTopic();
         String tag = d8Message.getTag();
         String key = d8Message.getKey();
         log.info("开始发送消息, topic=[{}], tag=[{}], key=[{}]", topic, tag, key);
-        Message message = new Message(topic, tag, key, JSONUtil.toJSONStringWithDateFormat(d8Message.getData()).getBytes());
+        MQMetrics metrics = beginSend(d8Message);
+        long startNanos = System.nanoTime();
         try {
-            SendResult sendResult = defaultMQProducer.send(message, selector, d8Message.getData(), mqProperties.getProducerSynTimeOutMillis());
+            SendResult sendResult = transport.send(message, selector, d8Message.getData(), mqProperties.getProducerSynTimeOutMillis());
+            recordSend(metrics, startNanos, sendResult.getSendStatus().equals(SendStatus.SEND_OK));
             if (sendResult.getSendStatus().equals(SendStatus.SEND_OK)) {
                 log.info("发送消息成功, topic=[{}], tag=[{}], key=[{}]", topic, tag, key);
                 handleSuccess(d8Message);
             } else {
                 log.info("发送消息失败, topic=[{}], tag=[{}], key=[{}], sendResult=[{}]", topic, tag, key, sendResult);
-                handleFailed(d8Message);
+                handleFailed(d8Message, message);
             }
         } catch (Exception e) {
+            recordSend(metrics, startNanos, false);
             log.info("发送消息异常, topic=[{}], tag=[{}], key=[{}], 异常原因: {}", topic, tag, key, e);
-            handleFailed(d8Message);
+            handleFailed(d8Message, message);
         }
     }
 
     /**
-     * 同步发送消息
+     * 初始化本地重投队列, 重投时同步发送, 有序消息按key选择队列
+     *
+     * @throws MQClientException
+     */
+    private void initOutbox()
+            throws MQClientException {
+        D8MessageOutbox.Options options = new D8MessageOutbox.Options()
+                .setSegmentBytes(mqProperties.getProducerOutboxSegmentBytes())
+                .setBatchSize(mqProperties.getProducerOutboxBatchSize())
+                .setInitialBackoffMillis(mqProperties.getProducerOutboxInitialBackoffMillis())
+                .setMaxBackoffMillis(mqProperties.getProducerOutboxMaxBackoffMillis())
+                .setMaxAttempts(mqProperties.getProducerOutboxMaxAttempts());
+        try {
+            outbox = new D8MessageOutbox(new File(mqProperties.getProducerOutboxDir()), options, new D8MessageOutbox.Sender() {
+                @Override
+                public void send(List<Message> messages)
+                        throws Exception {
+                    checkSendOk(transport.send(messages, mqProperties.getProducerSynTimeOutMillis()));
+                }
+
+                @Override
+                public void send(Message message)
+                        throws Exception {
+                    checkSendOk(transport.send(message, mqProperties.getProducerSynTimeOutMillis()));
+                }
+
+                @Override
+                public void sendOrdered(Message message)
+                        throws Exception {
+                    checkSendOk(transport.send(message, keyHashQueueSelector, null, mqProperties.getProducerSynTimeOutMillis()));
+                }
+            }).start();
+        } catch (Exception e) {
+            log.error("D8GER....初始化本地重投队列失败, 目录=[{}], 原因: ", mqProperties.getProducerOutboxDir(), e);
+            throw new MQClientException("初始化本地重投队列失败", e);
+        }
+        log.info("D8GER....本地重投队列已启用, 目录=[{}]", mqProperties.getProducerOutboxDir());
+    }
+
+    private static void checkSendOk(SendResult sendResult) {
+        if (!SendStatus.SEND_OK.equals(sendResult.getSendStatus())) {
+            throw new IllegalStateException("发送状态异常: " + sendResult.getSendStatus());
+        }
+    }
+
+    /**
+     * 构建RocketMQ消息, 消息体统一按UTF-8编码
+     *
+     * @param d8Message
+     * @return
+     */
+    private Message buildMessage(D8BaseMessage d8Message) {
+        String topic = mqProperties.wrapperTopic(d8Message.getTopic());
+        return new Message(topic, d8Message.getTag(), d8Message.getKey(),
+                JSONUtil.toJSONStringWithDateFormat(d8Message.getData()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 批量发送结果, 逐条回调
+     *
+     * @param pendingSends
+     * @param sendResult
+     * @param error
+     */
+    private void handleBatchResult(List<PendingSend> pendingSends, SendResult sendResult, Throwable error) {
+        ThreadTraceUtil.beginTrace();
+        try {
+            boolean success = Objects.isNull(error) && Objects.nonNull(sendResult) && SendStatus.SEND_OK.equals(sendResult.getSendStatus());
+            if (success) {
+                log.info("批量发送消息成功, 条数=[{}], msgId=[{}]", pendingSends.size(), sendResult.getMsgId());
+            } else {
+                log.info("批量发送消息失败, 条数=[{}], sendResult=[{}], 异常原因: {}", pendingSends.size(), sendResult, error);
+            }
+            for (PendingSend pendingSend : pendingSends) {
+                recordSend(pendingSend.metrics, pendingSend.startNanos, success);
+                if (success) {
+                    handleSuccess(pendingSend.d8Message);
+                } else {
+                    handleFailed(pendingSend.d8Message, buildMessage(pendingSend.d8Message));
+                }
+            }
+        } finally {
+            ThreadTraceUtil.endTrace();
+        }
+    }
+
+    /**
+     * 开始发送, 未开启统计时返回null
+     *
+     * @param d8Message
+     * @return
+     */
+    private MQMetrics beginSend(D8BaseMessage d8Message) {
+        if (!mqProperties.isMetricsEnable()) {
+            return null;
+        }
+        MQMetrics metrics = MQMetricsRegistry.getDefault().forTopic(d8Message.getTopic(), d8Message.getTag());
+        metrics.beginSend();
+        return metrics;
+    }
+
+    private static void recordSend(MQMetrics metrics, long startNanos, boolean success) {
+        if (Objects.nonNull(metrics)) {
+            metrics.recordSend(System.nanoTime() - startNanos, success);
+        }
+    }
+
+    /**
+     * 选择队列选择器
      *
      * @param d8Message
      * @return
      */
     private MessageQueueSelector select(@NonNull D8BaseMessage d8Message) {
-        return d8Message.getConsumeOrdered() ? orderedQueueSelectorZero : defaultQueueSelector;
+        return d8Message.getConsumeOrdered() ? keyHashQueueSelector : defaultQueueSelector;
     }
 
     /**
@@ -261,6 +454,20 @@ public class D8BaseProducer {
         }
     }
 
+    /**
+     * 发送失败, 启用本地重投队列时写入重投队列, 写入失败或未启用时失败回调
+     *
+     * @param d8Message
+     * @param message   已构建的消息, 保留延时级别等属性
+     */
+    private void handleFailed(D8BaseMessage d8Message, Message message) {
+        if (Objects.nonNull(outbox) && outbox.append(message, d8Message.getConsumeOrdered())) {
+            log.info("发送失败的消息已转入本地重投队列, topic=[{}], tag=[{}], key=[{}]", message.getTopic(), message.getTags(), message.getKeys());
+            return;
+        }
+        handleFailed(d8Message);
+    }
+
     /**
      * 失败回调
      *
@@ -277,4 +484,18 @@ public class D8BaseProducer {
         }
     }
 
+    /**
+     * 批量发送中的消息, 耗时从进入累积器开始计算
+     */
+    private static class PendingSend {
+        private final D8BaseMessage d8Message;
+        private final MQMetrics metrics;
+        private final long startNanos;
+
+        private PendingSend(D8BaseMessage d8Message, MQMetrics metrics, long startNanos) {
+            this.d8Message = d8Message;
+            this.metrics = metrics;
+            this.startNanos = startNanos;
+        }
+    }
 }
@@ -19,6 +19,9 @@
 package com.xyz.caofancpu.mvc.standard.mq;
 
 import org.apache.rocketmq.common.message.MessageExt;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
 
 /**
  * MQ消费者监听器基类
@@ -32,6 +35,33 @@ public interface D8MQConsumerListener {
     void consumeMessage(MessageExt messageExt)
             throws Exception;
 
+    /**
+     * 批量处理同一逻辑主题的消息, 消息顺序与投递顺序一致
+     * 返回从头开始连续处理成功的条数, 其后的消息将重新投递; 抛出异常视为全部未处理, 覆盖时返回部分成功条数前应自行记录失败原因
+     * 默认逐条调用{@link #consumeMessage}, 遇到第一条失败即停止; 需要批量写库等场景可覆盖本方法
+     *
+     * @param messageExtList
+     * @return 连续处理成功的条数
+     */
+    default int consumeMessages(List<MessageExt> messageExtList)
+            throws Exception {
+        for (int i = 0; i < messageExtList.size(); i++) {
+            try {
+                consumeMessage(messageExtList.get(i));
+            } catch (Exception e) {
+                if (i == 0) {
+                    throw e;
+                }
+                // 返回部分成功的条数后异常不再向上抛出, 在此记录原因
+                MessageExt messageExt = messageExtList.get(i);
+                LoggerFactory.getLogger(getClass()).error("批量消费消息处理异常, 已处理条数=[{}], topic=[{}], msgId=[{}], key=[{}], 原因: ",
+                        i, messageExt.getTopic(), messageExt.getMsgId(), messageExt.getKeys(), e);
+                return i;
+            }
+        }
+        return messageExtList.size();
+    }
+
     /**
      * 处理消息3次都失败, 根据实际情况可将消息丢弃或存盘
      *
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import org.apache.rocketmq.client.consumer.listener.MessageListener;
+import org.apache.rocketmq.client.exception.MQClientException;
+
+/**
+ * 消费者传输层, {@link D8BaseConsumer}经由本接口订阅并注册监听器
+ * 默认实现{@link RocketMQConsumerTransport}, 压测及单元测试可使用{@link InMemoryMQBroker#consumerTransport}
+ *
+ * @author D8GER
+ */
+public interface D8MQConsumerTransport {
+
+    /**
+     * 订阅主题
+     *
+     * @param topic         实际主题
+     * @param subExpression tag表达式, 如 "*" 或 "TagA || TagB"
+     * @throws MQClientException
+     */
+    void subscribe(String topic, String subExpression)
+            throws MQClientException;
+
+    /**
+     * 注册监听器, 支持{@link org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently}及
+     * {@link org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly}
+     *
+     * @param messageListener
+     */
+    void registerMessageListener(MessageListener messageListener);
+
+    /**
+     * 启动
+     *
+     * @throws MQClientException
+     */
+    void start()
+            throws MQClientException;
+
+    /**
+     * 关闭
+     */
+    void shutdown();
+}
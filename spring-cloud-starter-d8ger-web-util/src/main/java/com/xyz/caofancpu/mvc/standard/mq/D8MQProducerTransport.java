@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+
+import java.util.Collection;
+
+/**
+ * 生产者传输层, {@link D8BaseProducer}经由本接口发送消息
+ * 默认实现{@link RocketMQProducerTransport}, 压测及单元测试可使用{@link InMemoryMQBroker#producerTransport()}
+ *
+ * @author D8GER
+ */
+public interface D8MQProducerTransport {
+
+    /**
+     * 启动
+     *
+     * @throws MQClientException
+     */
+    void start()
+            throws MQClientException;
+
+    /**
+     * 关闭
+     */
+    void shutdown();
+
+    /**
+     * 单条消息(含批量消息整体)的最大字节数
+     *
+     * @return
+     */
+    int getMaxMessageSize();
+
+    /**
+     * 同步发送, 由传输层选择队列
+     *
+     * @param message
+     * @param timeout 超时毫秒数
+     * @return
+     * @throws Exception
+     */
+    SendResult send(Message message, long timeout)
+            throws Exception;
+
+    /**
+     * 同步发送同一主题的批量消息
+     *
+     * @param messages
+     * @param timeout  超时毫秒数
+     * @return
+     * @throws Exception
+     */
+    SendResult send(Collection<Message> messages, long timeout)
+            throws Exception;
+
+    /**
+     * 同步发送到选择器选中的队列
+     *
+     * @param message
+     * @param selector
+     * @param arg      选择器参数
+     * @param timeout  超时毫秒数
+     * @return
+     * @throws Exception
+     */
+    SendResult send(Message message, MessageQueueSelector selector, Object arg, long timeout)
+            throws Exception;
+
+    /**
+     * 异步发送到选择器选中的队列
+     *
+     * @param message
+     * @param selector
+     * @param arg          选择器参数
+     * @param sendCallback 结果回调
+     * @param timeout      超时毫秒数
+     * @throws Exception
+     */
+    void send(Message message, MessageQueueSelector selector, Object arg, SendCallback sendCallback, long timeout)
+            throws Exception;
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 生产者消息累积器, 按主题缓冲消息, 达到条数或字节上限、或首条消息等待超过linger时间后作为批量消息发送
+ * RocketMQ批量消息要求同一主题且不支持延时, 延时及有序消息应直接发送
+ * 发送线程池队列满时优先交给溢出处理(如本地重投队列), 未设置或处理失败时由追加消息的线程直接发送, 以此对调用方形成背压
+ * linger定时发送由所有主题共用的单个线程提交, 队列满时不在该线程发送, 直接按失败回调, 避免阻塞其他主题的linger发送
+ *
+ * @param <T> 随消息传递给结果回调的附件
+ * @author D8GER
+ */
+@Slf4j
+public class D8MessageAccumulator<T> implements Closeable {
+
+    /**
+     * 单条消息在批量编码中的固定开销估算, 与RocketMQ批量拆分示例一致
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 20;
+
+    private final BatchSender sender;
+    private final ResultHandler<T> resultHandler;
+    private final long lingerMillis;
+    private final int maxBatchMessages;
+    private final int maxBatchBytes;
+
+    /**
+     * 主题 -> 缓冲区
+     */
+    private final Map<String, TopicBuffer> buffers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService lingerScheduler;
+    private final ThreadPoolExecutor senders;
+    private volatile boolean closed;
+    private volatile OverflowHandler<T> overflowHandler;
+
+    /**
+     * @param sender           批量发送, 同步返回结果
+     * @param resultHandler    批量发送结果回调
+     * @param lingerMillis     首条消息最长等待毫秒数
+     * @param maxBatchMessages 单批最大条数
+     * @param maxBatchBytes    单批最大字节数, 应小于Broker的maxMessageSize
+     * @param senderThreads    发送线程数
+     * @param maxPendingBatches 等待发送的批次上限
+     */
+    public D8MessageAccumulator(@NonNull BatchSender sender, @NonNull ResultHandler<T> resultHandler, long lingerMillis,
+                                int maxBatchMessages, int maxBatchBytes, int senderThreads, int maxPendingBatches) {
+        if (lingerMillis < 0 || maxBatchMessages <= 0 || maxBatchBytes <= 0 || senderThreads <= 0 || maxPendingBatches <= 0) {
+            throw new IllegalArgumentException("批量发送参数配置错误");
+        }
+        this.sender = sender;
+        this.resultHandler = resultHandler;
+        this.lingerMillis = lingerMillis;
+        this.maxBatchMessages = maxBatchMessages;
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "d8-mq-batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxPendingBatches), runnable -> {
+            Thread thread = new Thread(runnable, "d8-mq-batch-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> ((BatchTask<?>) runnable).rejected(executor));
+    }
+
+    /**
+     * 设置发送队列溢出处理
+     *
+     * @param overflowHandler
+     * @return
+     */
+    public D8MessageAccumulator<T> setOverflowHandler(OverflowHandler<T> overflowHandler) {
+        this.overflowHandler = overflowHandler;
+        return this;
+    }
+
+    /**
+     * RocketMQ批量拆分时单条消息的字节数估算
+     *
+     * @param message
+     * @return
+     */
+    public static int estimateSize(Message message) {
+        int size = message.getTopic().length() + (Objects.isNull(message.getBody()) ? 0 : message.getBody().length);
+        for (Map.Entry<String, String> property : message.getProperties().entrySet()) {
+            size += property.getKey().length() + property.getValue().length();
+        }
+        return size + MESSAGE_OVERHEAD_BYTES;
+    }
+
+    /**
+     * 追加消息, 关闭后追加的消息直接按失败回调
+     *
+     * @param message    待发送消息
+     * @param attachment 结果回调时原样返回
+     */
+    public void append(@NonNull Message message, T attachment) {
+        int size = estimateSize(message);
+        TopicBuffer buffer = buffers.computeIfAbsent(message.getTopic(), topic -> new TopicBuffer());
+        List<Entry<T>> full = null;
+        List<Entry<T>> ready = null;
+        List<Entry<T>> rejected = null;
+        synchronized (buffer) {
+            // 在缓冲区锁内检查, close()在置位后加锁取出剩余消息, 此后追加的消息不会滞留在缓冲区
+            if (closed) {
+                rejected = Collections.singletonList(new Entry<>(message, attachment));
+            } else if (!buffer.entries.isEmpty() && buffer.bytes + size > maxBatchBytes) {
+                full = buffer.drain();
+            }
+            if (Objects.isNull(rejected)) {
+                buffer.entries.add(new Entry<>(message, attachment));
+                buffer.bytes += size;
+                if (buffer.entries.size() >= maxBatchMessages || buffer.bytes >= maxBatchBytes || lingerMillis == 0) {
+                    ready = buffer.drain();
+                } else if (buffer.entries.size() == 1) {
+                    long generation = buffer.generation;
+                    try {
+                        buffer.lingerFuture = lingerScheduler.schedule(() -> flush(buffer, generation), lingerMillis, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        rejected = buffer.drain();
+                    }
+                }
+            }
+        }
+        if (Objects.nonNull(rejected)) {
+            fail(rejected, new IllegalStateException("消息累积器已关闭"));
+            return;
+        }
+        submit(full, true);
+        submit(ready, true);
+    }
+
+    /**
+     * 立即发送所有缓冲中的消息
+     */
+    public void flush() {
+        for (TopicBuffer buffer : buffers.values()) {
+            List<Entry<T>> batch;
+            synchronized (buffer) {
+                batch = buffer.drain();
+            }
+            submit(batch, true);
+        }
+    }
+
+    /**
+     * 发送剩余消息并等待发送完成
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        lingerScheduler.shutdownNow();
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("D8GER....批量发送线程停止超时, 未发送批次[{}]个", senders.shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(TopicBuffer buffer, long generation) {
+        List<Entry<T>> batch = null;
+        synchronized (buffer) {
+            if (buffer.generation == generation) {
+                batch = buffer.drain();
+            }
+        }
+        submit(batch, false);
+    }
+
+    /**
+     * @param batch
+     * @param callerRuns 发送队列满时是否可由提交线程直接发送
+     */
+    private void submit(List<Entry<T>> batch, boolean callerRuns) {
+        if (Objects.isNull(batch) || batch.isEmpty()) {
+            return;
+        }
+        senders.execute(new BatchTask<>(this, batch, callerRuns));
+    }
+
+    /**
+     * 发送队列已满或已关闭
+     */
+    private void onRejected(BatchTask<T> task, ThreadPoolExecutor executor) {
+        OverflowHandler<T> handler = overflowHandler;
+        if (Objects.nonNull(handler) && !executor.isShutdown() && overflow(handler, task.batch)) {
+            return;
+        }
+        if (task.callerRuns) {
+            task.run();
+            return;
+        }
+        fail(task.batch, new RejectedExecutionException("批量发送队列已满"));
+    }
+
+    private boolean overflow(OverflowHandler<T> handler, List<Entry<T>> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        List<T> attachments = new ArrayList<>(batch.size());
+        for (Entry<T> entry : batch) {
+            messages.add(entry.message);
+            attachments.add(entry.attachment);
+        }
+        try {
+            return handler.onOverflow(messages, attachments);
+        } catch (Exception e) {
+            log.error("批量发送溢出处理异常, 改为直接发送, topic=[{}], 条数=[{}], 原因: {}", messages.get(0).getTopic(), messages.size(), e);
+            return false;
+        }
+    }
+
+    private void send(List<Entry<T>> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        List<T> attachments = new ArrayList<>(batch.size());
+        for (Entry<T> entry : batch) {
+            messages.add(entry.message);
+            attachments.add(entry.attachment);
+        }
+        SendResult sendResult = null;
+        Throwable error = null;
+        try {
+            sendResult = messages.size() == 1 ? sender.send(messages.get(0)) : sender.send(messages);
+        } catch (Throwable e) {
+            error = e;
+        }
+        complete(messages.get(0).getTopic(), attachments, sendResult, error);
+    }
+
+    /**
+     * 未发送的消息按失败回调
+     */
+    private void fail(List<Entry<T>> batch, Throwable error) {
+        List<T> attachments = new ArrayList<>(batch.size());
+        for (Entry<T> entry : batch) {
+            attachments.add(entry.attachment);
+        }
+        complete(batch.get(0).message.getTopic(), attachments, null, error);
+    }
+
+    private void complete(String topic, List<T> attachments, SendResult sendResult, Throwable error) {
+        try {
+            resultHandler.onComplete(attachments, sendResult, error);
+        } catch (Exception e) {
+            log.error("批量发送结果回调异常, topic=[{}], 条数=[{}], 原因: {}", topic, attachments.size(), e);
+        }
+    }
+
+    /**
+     * 批量发送
+     */
+    public interface BatchSender {
+        /**
+         * 发送单条消息
+         *
+         * @param message
+         * @return
+         * @throws Exception
+         */
+        SendResult send(Message message)
+                throws Exception;
+
+        /**
+         * 发送同一主题的批量消息
+         *
+         * @param messages
+         * @return
+         * @throws Exception
+         */
+        SendResult send(List<Message> messages)
+                throws Exception;
+    }
+
+    /**
+     * 批量发送结果回调
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public interface ResultHandler<T> {
+        /**
+         * 一批消息发送完成
+         *
+         * @param attachments 批内各消息的附件, 顺序与追加顺序一致
+         * @param sendResult  发送结果, 异常时为null
+         * @param error       发送异常, 成功时为null
+         */
+        void onComplete(List<T> attachments, SendResult sendResult, Throwable error);
+    }
+
+    /**
+     * 发送队列溢出处理
+     *
+     * @param <T>
+     */
+    @FunctionalInterface
+    public interface OverflowHandler<T> {
+        /**
+         * 接管溢出的一批消息
+         *
+         * @param messages    同一主题的消息
+         * @param attachments 各消息的附件
+         * @return 已接管返回true, 返回false时由提交线程直接发送
+         */
+        boolean onOverflow(List<Message> messages, List<T> attachments);
+    }
+
+    private static class BatchTask<T> implements Runnable {
+        private final D8MessageAccumulator<T> accumulator;
+        private final List<Entry<T>> batch;
+        private final boolean callerRuns;
+
+        private BatchTask(D8MessageAccumulator<T> accumulator, List<Entry<T>> batch, boolean callerRuns) {
+            this.accumulator = accumulator;
+            this.batch = batch;
+            this.callerRuns = callerRuns;
+        }
+
+        @Override
+        public void run() {
+            accumulator.send(batch);
+        }
+
+        private void rejected(ThreadPoolExecutor executor) {
+            accumulator.onRejected(this, executor);
+        }
+    }
+
+    private static class Entry<T> {
+        private final Message message;
+        private final T attachment;
+
+        private Entry(Message message, T attachment) {
+            this.message = message;
+            this.attachment = attachment;
+        }
+    }
+
+    /**
+     * 单个主题的缓冲区, 由自身加锁保护
+     */
+    private class TopicBuffer {
+        private final List<Entry<T>> entries = new ArrayList<>();
+        private int bytes;
+        /**
+         * 每次取出后递增, 过期的linger任务不再发送
+         */
+        private long generation;
+        private ScheduledFuture<?> lingerFuture;
+
+        private List<Entry<T>> drain() {
+            List<Entry<T>> batch = new ArrayList<>(entries);
+            entries.clear();
+            bytes = 0;
+            generation++;
+            if (Objects.nonNull(lingerFuture)) {
+                lingerFuture.cancel(false);
+                lingerFuture = null;
+            }
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.xyz.caofancpu.mvc.standard.JedisService;
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 消费端消息去重, 按逻辑主题配置{@link MQProperties#getConsumerDedupTopicMap()}
+ * 去重标识取生产端生成的唯一ID(UNIQ_KEY), 发送重试及本地重投时保持不变, 缺失时取msgId; 消息key为有序业务键, 多条消息可共用, 不参与去重
+ * 消费前占位: 先查进程内LRU缓存, 开启Redis时再以SET NX占位; 占位已被确认消费的视为重复消息直接确认, 不再交给监听器
+ * 占位仍处于处理中(本实例其他线程或其他实例正在消费, 也可能是消费中途宕机)的消息不确认, 当作未消费交由RocketMQ稍后重新投递, 避免宕机时消息丢失
+ * 消费成功后确认, Redis占位时间由处理中时长延长为去重窗口; 消费失败则释放占位, 保证重新投递的消息可再次消费
+ * Redis异常时放行, 由监听器自身幂等兜底
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class D8MessageDeduplicator {
+
+    private static final String PROCESSING = "0";
+    private static final String CONSUMED = "1";
+
+    private final MQProperties mqProperties;
+
+    /**
+     * 未开启Redis去重时可为null
+     */
+    private final JedisService jedisService;
+
+    /**
+     * 逻辑主题 -> 进程内去重缓存, value表示是否已消费成功
+     */
+    private final Map<String, Cache<String, Boolean>> localCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 逻辑主题 -> 统计
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public D8MessageDeduplicator(@NonNull MQProperties mqProperties, JedisService jedisService) {
+        this.mqProperties = mqProperties;
+        this.jedisService = jedisService;
+        mqProperties.getConsumerDedupTopicMap().forEach((logicTopic, dedup) -> {
+            if (dedup.isRedisEnable() && Objects.isNull(jedisService)) {
+                throw new IllegalStateException("主题[" + logicTopic + "]开启了Redis去重, 但缺少JedisService");
+            }
+        });
+    }
+
+    /**
+     * 去重标识, 优先取生产端唯一ID
+     *
+     * @param messageExt
+     * @return
+     */
+    public static String dedupId(MessageExt messageExt) {
+        String uniqId = MessageClientIDSetter.getUniqID(messageExt);
+        return StringUtils.isNotBlank(uniqId) ? uniqId : messageExt.getMsgId();
+    }
+
+    /**
+     * 为逻辑主题的监听器包装去重, 主题未配置去重时原样返回
+     *
+     * @param logicTopic
+     * @param listener
+     * @return
+     */
+    public D8MQConsumerListener wrap(String logicTopic, D8MQConsumerListener listener) {
+        MQProperties.ConsumerDedup dedup = mqProperties.getConsumerDedupTopicMap().get(logicTopic);
+        if (Objects.isNull(dedup) || Objects.isNull(listener)) {
+            return listener;
+        }
+        return new DedupConsumerListener(logicTopic, dedup, listener);
+    }
+
+    /**
+     * 各逻辑主题的去重统计
+     *
+     * @return
+     */
+    public List<DedupStats> stats() {
+        List<DedupStats> stats = new ArrayList<>(counters.size());
+        counters.forEach((logicTopic, counter) -> stats.add(new DedupStats(logicTopic, counter.checked.sum(), counter.localHits.sum(),
+                counter.redisHits.sum(), counter.inProgress.sum(), counter.released.sum())));
+        return stats;
+    }
+
+    /**
+     * 消费前占位
+     *
+     * @return 占位结果
+     */
+    Claim tryAcquire(String logicTopic, MQProperties.ConsumerDedup dedup, MessageExt messageExt) {
+        String id = dedupId(messageExt);
+        Counter counter = counters.computeIfAbsent(logicTopic, key -> new Counter());
+        counter.checked.increment();
+        Cache<String, Boolean> cache = localCache(logicTopic, dedup);
+        Boolean consumed = cache.asMap().putIfAbsent(id, Boolean.FALSE);
+        if (Boolean.TRUE.equals(consumed)) {
+            counter.localHits.increment();
+            log.info("重复消息已忽略, 命中本地缓存, topic=[{}], msgId=[{}], dedupId=[{}]", logicTopic, messageExt.getMsgId(), id);
+            return Claim.DUPLICATE;
+        }
+        if (Objects.nonNull(consumed)) {
+            counter.inProgress.increment();
+            log.info("消息正在本实例处理中, 稍后重新消费, topic=[{}], msgId=[{}], dedupId=[{}]", logicTopic, messageExt.getMsgId(), id);
+            return Claim.IN_PROGRESS;
+        }
+        if (!dedup.isRedisEnable()) {
+            return Claim.ACQUIRED;
+        }
+        String redisKey = redisKey(logicTopic, dedup, id);
+        String state;
+        try {
+            if (jedisService.setNx(redisKey, PROCESSING, dedup.getProcessingTtlSeconds())) {
+                return Claim.ACQUIRED;
+            }
+            state = jedisService.getValue(redisKey);
+        } catch (Exception e) {
+            log.error("消息去重占位失败, 放行消费, topic=[{}], dedupId=[{}], 原因: {}", logicTopic, id, e);
+            return Claim.ACQUIRED;
+        }
+        if (CONSUMED.equals(state)) {
+            // 其他实例已消费, 本地缓存记为已消费
+            cache.put(id, Boolean.TRUE);
+            counter.redisHits.increment();
+            log.info("重复消息已忽略, 命中Redis, topic=[{}], msgId=[{}], dedupId=[{}]", logicTopic, messageExt.getMsgId(), id);
+            return Claim.DUPLICATE;
+        }
+        // 其他实例处理中或占位刚过期, 撤销本地占位, 重新投递时再判断
+        cache.invalidate(id);
+        counter.inProgress.increment();
+        log.info("消息正在其他实例处理中, 稍后重新消费, topic=[{}], msgId=[{}], dedupId=[{}]", logicTopic, messageExt.getMsgId(), id);
+        return Claim.IN_PROGRESS;
+    }
+
+    /**
+     * 与正在消费的同一段消息重复
+     */
+    private Claim duplicateInRun(String logicTopic, MessageExt messageExt) {
+        Counter counter = counters.computeIfAbsent(logicTopic, key -> new Counter());
+        counter.checked.increment();
+        counter.localHits.increment();
+        log.info("重复消息已忽略, 同批次重复, topic=[{}], msgId=[{}], dedupId=[{}]", logicTopic, messageExt.getMsgId(), dedupId(messageExt));
+        return Claim.DUPLICATE;
+    }
+
+    /**
+     * 消费成功后确认
+     */
+    void confirm(String logicTopic, MQProperties.ConsumerDedup dedup, MessageExt messageExt) {
+        String id = dedupId(messageExt);
+        localCache(logicTopic, dedup).put(id, Boolean.TRUE);
+        if (!dedup.isRedisEnable()) {
+            return;
+        }
+        try {
+            jedisService.setEx(redisKey(logicTopic, dedup, id), CONSUMED, dedup.getTtlSeconds());
+        } catch (Exception e) {
+            log.error("消息去重确认失败, topic=[{}], dedupId=[{}], 原因: {}", logicTopic, id, e);
+        }
+    }
+
+    /**
+     * 消费失败后释放占位
+     */
+    void release(String logicTopic, MQProperties.ConsumerDedup dedup, MessageExt messageExt) {
+        String id = dedupId(messageExt);
+        counters.computeIfAbsent(logicTopic, key -> new Counter()).released.increment();
+        localCache(logicTopic, dedup).invalidate(id);
+        if (!dedup.isRedisEnable()) {
+            return;
+        }
+        try {
+            jedisService.deleteKey(redisKey(logicTopic, dedup, id));
+        } catch (Exception e) {
+            log.error("消息去重释放失败, 重新投递的消息将在占位过期后才能消费, topic=[{}], dedupId=[{}], 原因: {}", logicTopic, id, e);
+        }
+    }
+
+    private Cache<String, Boolean> localCache(String logicTopic, MQProperties.ConsumerDedup dedup) {
+        return localCaches.computeIfAbsent(logicTopic, key -> CacheBuilder.newBuilder()
+                .maximumSize(dedup.getLocalMaxSize())
+                .expireAfterWrite(dedup.getTtlSeconds(), TimeUnit.SECONDS)
+                .build());
+    }
+
+    private String redisKey(String logicTopic, MQProperties.ConsumerDedup dedup, String id) {
+        return dedup.getRedisKeyPrefix() + mqProperties.wrapperTopic(logicTopic) + ":" + id;
+    }
+
+    private static class Counter {
+        private final LongAdder checked = new LongAdder();
+        private final LongAdder localHits = new LongAdder();
+        private final LongAdder redisHits = new LongAdder();
+        private final LongAdder inProgress = new LongAdder();
+        private final LongAdder released = new LongAdder();
+    }
+
+    /**
+     * 消费前占位结果
+     */
+    enum Claim {
+        /**
+         * 占位成功, 交给监听器消费
+         */
+        ACQUIRED,
+        /**
+         * 已消费成功的重复消息, 直接确认
+         */
+        DUPLICATE,
+        /**
+         * 正在处理中, 当作未消费等待重新投递
+         */
+        IN_PROGRESS
+    }
+
+    /**
+     * 去重统计
+     */
+    @Getter
+    @ToString
+    @AllArgsConstructor
+    public static class DedupStats {
+        private final String logicTopic;
+        /**
+         * 检查条数
+         */
+        private final long checked;
+        /**
+         * 本地缓存命中的重复条数
+         */
+        private final long localHits;
+        /**
+         * Redis命中的重复条数
+         */
+        private final long redisHits;
+        /**
+         * 处理中未确认, 等待重新投递的条数
+         */
+        private final long inProgress;
+        /**
+         * 消费失败释放占位条数
+         */
+        private final long released;
+    }
+
+    /**
+     * 去重包装, 跳过重复消息, 连续的非重复消息整段交给原监听器
+     */
+    private class DedupConsumerListener implements D8MQConsumerListener {
+        private final String logicTopic;
+        private final MQProperties.ConsumerDedup dedup;
+        private final D8MQConsumerListener delegate;
+
+        private DedupConsumerListener(String logicTopic, MQProperties.ConsumerDedup dedup, D8MQConsumerListener delegate) {
+            this.logicTopic = logicTopic;
+            this.dedup = dedup;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void consumeMessage(MessageExt messageExt)
+                throws Exception {
+            if (consumeMessages(Collections.singletonList(messageExt)) == 0) {
+                throw new IllegalStateException("消费消息失败, msgId=" + messageExt.getMsgId());
+            }
+        }
+
+        /**
+         * 重复消息跳过, 遇到处理中的消息即停止, 该消息及其后的消息视为未消费
+         */
+        @Override
+        public int consumeMessages(List<MessageExt> messageExtList)
+                throws Exception {
+            int offset = 0;
+            while (offset < messageExtList.size()) {
+                Claim claim = tryAcquire(logicTopic, dedup, messageExtList.get(offset));
+                if (claim == Claim.DUPLICATE) {
+                    offset++;
+                    continue;
+                }
+                if (claim == Claim.IN_PROGRESS) {
+                    return offset;
+                }
+                int end = offset + 1;
+                Claim stopClaim = null;
+                Set<String> runIds = new HashSet<>();
+                runIds.add(dedupId(messageExtList.get(offset)));
+                while (end < messageExtList.size()) {
+                    MessageExt next = messageExtList.get(end);
+                    // 同一段内的重复消息本地占位为处理中, 整段消费成功后才会越过, 此时即为重复消息
+                    stopClaim = runIds.add(dedupId(next)) ? tryAcquire(logicTopic, dedup, next) : duplicateInRun(logicTopic, next);
+                    if (stopClaim != Claim.ACQUIRED) {
+                        break;
+                    }
+                    end++;
+                }
+                List<MessageExt> run = messageExtList.subList(offset, end);
+                int consumed;
+                try {
+                    consumed = Math.max(0, Math.min(delegate.consumeMessages(run), run.size()));
+                } catch (Exception e) {
+                    run.forEach(messageExt -> release(logicTopic, dedup, messageExt));
+                    if (offset == 0) {
+                        throw e;
+                    }
+                    return offset;
+                }
+                for (int i = 0; i < run.size(); i++) {
+                    if (i < consumed) {
+                        confirm(logicTopic, dedup, run.get(i));
+                    } else {
+                        release(logicTopic, dedup, run.get(i));
+                    }
+                }
+                if (consumed < run.size() || stopClaim == Claim.IN_PROGRESS) {
+                    return offset + consumed;
+                }
+                offset = stopClaim == Claim.DUPLICATE ? end + 1 : end;
+            }
+            return messageExtList.size();
+        }
+
+        @Override
+        public void consumeFailed(MessageExt messageExt)
+                throws Exception {
+            delegate.consumeFailed(messageExt);
+        }
+    }
+}
@@ -0,0 +1,588 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageDecoder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * MQ本地重投队列(发件箱), 发送失败或发送队列溢出的消息追加写入本地日志, 由后台线程按序重投
+ * 日志按固定大小分段, 每段以内存映射方式顺序追加, 记录格式: 长度(4) + CRC32(4) + 内容, 长度为0表示本段结束
+ * 重投进度写入checkpoint文件, 重启后从checkpoint继续, 已全部重投的分段自动删除; 重投为至少一次语义, 由消费端去重
+ * 追加数据先写入页缓存, 进程崩溃不丢失, 按{@link Options#getForceIntervalMillis()}周期刷盘防止宕机丢失
+ * 连续的同主题无序消息批量重投, 有序消息及延时消息逐条重投; 失败后按指数退避重试, 超过最大次数的消息记录日志后丢弃
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class D8MessageOutbox implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+    private static final byte FLAG_ORDERED = 1;
+
+    private final File directory;
+    private final Options options;
+    private final Sender sender;
+
+    /**
+     * 分段起始偏移量 -> 分段, 写线程追加, 重投线程读取及删除, 均在lock内修改
+     */
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Object lock = new Object();
+    private final FileChannel checkpointChannel;
+    private final MappedByteBuffer checkpointBuffer;
+
+    private final LongAdder appendedCount = new LongAdder();
+    private final LongAdder redeliveredCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+
+    private Segment writeSegment;
+    private volatile long writeOffset;
+    private volatile long readOffset;
+    private volatile boolean dirty;
+    private volatile boolean running;
+    private volatile boolean closed;
+    private volatile Thread redeliverer;
+
+    public D8MessageOutbox(@NonNull File directory, @NonNull Options options, @NonNull Sender sender)
+            throws IOException {
+        if (options.getSegmentBytes() <= HEADER_BYTES || options.getBatchSize() <= 0 || options.getInitialBackoffMillis() <= 0) {
+            throw new IllegalArgumentException("segmentBytes, batchSize, initialBackoffMillis配置错误");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("创建重投队列目录失败: " + directory.getAbsolutePath());
+        }
+        this.directory = directory;
+        this.options = options;
+        this.sender = sender;
+        this.checkpointChannel = new RandomAccessFile(new File(directory, CHECKPOINT_FILE), "rw").getChannel();
+        this.checkpointBuffer = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+        recover();
+    }
+
+    /**
+     * 启动后台重投
+     *
+     * @return
+     */
+    public synchronized D8MessageOutbox start() {
+        if (running) {
+            return this;
+        }
+        running = true;
+        redeliverer = new Thread(this::redeliverLoop, "d8-mq-outbox-redeliver");
+        redeliverer.setDaemon(true);
+        redeliverer.start();
+        return this;
+    }
+
+    /**
+     * 追加消息
+     *
+     * @param message 已构建的RocketMQ消息, 属性(tag, key, 延时级别等)一并保存
+     * @param ordered 是否有序, 有序消息重投时按key选择队列
+     * @return 写入成功返回true, 消息超过分段大小或写入异常返回false
+     */
+    public boolean append(@NonNull Message message, boolean ordered) {
+        byte[] record = encode(message, ordered);
+        if (record.length + HEADER_BYTES > options.getSegmentBytes()) {
+            log.error("消息超过重投队列分段大小, 无法写入, topic=[{}], key=[{}], 字节数=[{}]", message.getTopic(), message.getKeys(), record.length);
+            return false;
+        }
+        synchronized (lock) {
+            if (closed) {
+                log.error("重投队列已关闭, 无法写入, topic=[{}], key=[{}]", message.getTopic(), message.getKeys());
+                return false;
+            }
+            try {
+                MappedByteBuffer buffer = writeSegment.buffer;
+                if (buffer.position() + HEADER_BYTES + record.length > options.getSegmentBytes()) {
+                    if (buffer.remaining() >= 4) {
+                        buffer.putInt(0);
+                    }
+                    // 定时刷盘只覆盖当前写入分段, 切换前先将旧分段刷盘
+                    buffer.force();
+                    writeSegment = openSegment(writeSegment.baseOffset + options.getSegmentBytes());
+                    segments.put(writeSegment.baseOffset, writeSegment);
+                    buffer = writeSegment.buffer;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                buffer.putInt(record.length);
+                buffer.putInt((int) crc.getValue());
+                buffer.put(record);
+                writeOffset = writeSegment.baseOffset + buffer.position();
+                dirty = true;
+                appendedCount.increment();
+                lock.notifyAll();
+                return true;
+            } catch (Exception e) {
+                log.error("写入重投队列失败, topic=[{}], key=[{}], 原因: {}", message.getTopic(), message.getKeys(), e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 待重投的字节数
+     *
+     * @return
+     */
+    public long getPendingBytes() {
+        return writeOffset - readOffset;
+    }
+
+    public long getAppendedCount() {
+        return appendedCount.sum();
+    }
+
+    public long getRedeliveredCount() {
+        return redeliveredCount.sum();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 停止重投并刷盘, 未重投的消息保留在日志中, 下次启动继续
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        Thread thread = redeliverer;
+        if (Objects.nonNull(thread)) {
+            // 不中断重投线程, 避免中断正在进行的发送
+            try {
+                thread.join(options.getShutdownTimeoutMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            try {
+                checkpointBuffer.force();
+                checkpointChannel.close();
+            } catch (IOException e) {
+                log.error("关闭重投队列checkpoint失败, 原因: {}", e);
+            }
+        }
+    }
+
+    private void redeliverLoop() {
+        int failures = 0;
+        while (running) {
+            try {
+                List<Record> batch = readBatch();
+                if (batch.isEmpty()) {
+                    forceIfDirty();
+                    synchronized (lock) {
+                        if (readOffset >= writeOffset) {
+                            lock.wait(options.getForceIntervalMillis());
+                        }
+                    }
+                    continue;
+                }
+                int index = 0;
+                while (index < batch.size() && running) {
+                    int end = runEnd(batch, index);
+                    List<Record> run = batch.subList(index, end);
+                    try {
+                        send(run);
+                        redeliveredCount.add(run.size());
+                        failures = 0;
+                    } catch (Exception e) {
+                        failures++;
+                        if (options.getMaxAttempts() > 0 && failures >= options.getMaxAttempts()) {
+                            for (Record record : run) {
+                                log.error("重投消息超过最大次数, 丢弃, topic=[{}], key=[{}], body=[{}]",
+                                        record.message.getTopic(), record.message.getKeys(), new String(record.message.getBody(), StandardCharsets.UTF_8));
+                            }
+                            droppedCount.add(run.size());
+                            failures = 0;
+                        } else {
+                            long backoff = Math.min(options.getMaxBackoffMillis(), options.getInitialBackoffMillis() << Math.min(failures - 1, 20));
+                            log.error("重投消息失败, {}毫秒后重试, topic=[{}], 条数=[{}], 失败次数=[{}], 原因: {}", backoff, run.get(0).message.getTopic(), run.size(), failures, e);
+                            pause(backoff);
+                            break;
+                        }
+                    }
+                    checkpoint(run.get(run.size() - 1).nextOffset);
+                    index = end;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("重投队列处理异常, 原因: {}", e);
+                try {
+                    pause(options.getMaxBackoffMillis());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 退避等待, 关闭时提前唤醒
+     */
+    private void pause(long millis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (lock) {
+            long remaining;
+            while (running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                lock.wait(remaining);
+            }
+        }
+    }
+
+    /**
+     * 连续的同主题无序消息合并为一批, 有序消息及延时消息单独一批, RocketMQ批量发送不支持延时
+     */
+    private int runEnd(List<Record> batch, int index) {
+        Record first = batch.get(index);
+        int end = index + 1;
+        if (!first.batchable()) {
+            return end;
+        }
+        while (end < batch.size() && batch.get(end).batchable() && batch.get(end).message.getTopic().equals(first.message.getTopic())) {
+            end++;
+        }
+        return end;
+    }
+
+    private void send(List<Record> run)
+            throws Exception {
+        if (run.get(0).ordered) {
+            sender.sendOrdered(run.get(0).message);
+            return;
+        }
+        if (run.size() == 1) {
+            sender.send(run.get(0).message);
+            return;
+        }
+        List<Message> messages = new ArrayList<>(run.size());
+        run.forEach(record -> messages.add(record.message));
+        sender.send(messages);
+    }
+
+    private List<Record> readBatch() {
+        List<Record> batch = new ArrayList<>();
+        synchronized (lock) {
+            long offset = readOffset;
+            while (batch.size() < options.getBatchSize() && offset < writeOffset) {
+                Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+                if (Objects.isNull(entry)) {
+                    break;
+                }
+                Segment segment = entry.getValue();
+                int position = (int) (offset - segment.baseOffset);
+                ByteBuffer buffer = segment.buffer.duplicate();
+                int length = position + 4 <= options.getSegmentBytes() ? buffer.getInt(position) : 0;
+                if (length <= 0) {
+                    // 本段结束, 跳到下一段
+                    Long next = segments.higherKey(segment.baseOffset);
+                    if (Objects.isNull(next)) {
+                        break;
+                    }
+                    offset = next;
+                    continue;
+                }
+                byte[] record = new byte[length];
+                buffer.position(position + HEADER_BYTES);
+                buffer.get(record);
+                offset += HEADER_BYTES + length;
+                batch.add(decode(record, offset));
+            }
+        }
+        return batch;
+    }
+
+    private void checkpoint(long offset) {
+        synchronized (lock) {
+            checkpointBuffer.putLong(0, offset);
+            readOffset = offset;
+            dirty = true;
+            // 删除已全部重投的分段, 当前写入段保留
+            while (segments.size() > 1) {
+                Segment head = segments.firstEntry().getValue();
+                if (head == writeSegment || offset < head.baseOffset + options.getSegmentBytes()) {
+                    break;
+                }
+                segments.pollFirstEntry();
+                head.close();
+                if (!head.file.delete()) {
+                    log.warn("删除重投队列分段失败, file=[{}]", head.file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    private void forceIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        synchronized (lock) {
+            writeSegment.buffer.force();
+            checkpointBuffer.force();
+        }
+    }
+
+    /**
+     * 加载分段, 校验最后一段确定写入位置, 截断不完整的尾部记录
+     */
+    private void recover()
+            throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (Objects.nonNull(files)) {
+            for (File file : files) {
+                long baseOffset = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+                segments.put(baseOffset, openSegment(baseOffset));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, openSegment(0L));
+        }
+        writeSegment = segments.lastEntry().getValue();
+        MappedByteBuffer buffer = writeSegment.buffer;
+        int position = 0;
+        while (position + HEADER_BYTES <= options.getSegmentBytes()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_BYTES + length > options.getSegmentBytes()) {
+                break;
+            }
+            byte[] record = new byte[length];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(position + HEADER_BYTES);
+            duplicate.get(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("重投队列尾部记录不完整, 已截断, segment=[{}], position=[{}]", writeSegment.file.getName(), position);
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        // 清零截断位置之后的数据, 避免残留的旧记录被误读
+        for (int i = position; i < Math.min(position + HEADER_BYTES, options.getSegmentBytes()); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.position(position);
+        writeOffset = writeSegment.baseOffset + position;
+
+        long checkpoint = checkpointBuffer.getLong(0);
+        readOffset = Math.min(Math.max(checkpoint, segments.firstKey()), writeOffset);
+        if (writeOffset > readOffset) {
+            log.info("D8GER....重投队列恢复完成, 待重投字节数=[{}], 目录=[{}]", writeOffset - readOffset, directory.getAbsolutePath());
+        }
+    }
+
+    private Segment openSegment(long baseOffset)
+            throws IOException {
+        File file = new File(directory, String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, options.getSegmentBytes());
+        return new Segment(baseOffset, file, channel, buffer);
+    }
+
+    /**
+     * 标记(1) + 主题 + 属性 + 消息体, 变长字段以4字节长度开头
+     */
+    private static byte[] encode(Message message, boolean ordered) {
+        byte[] topic = message.getTopic().getBytes(StandardCharsets.UTF_8);
+        byte[] properties = MessageDecoder.messageProperties2String(message.getProperties()).getBytes(StandardCharsets.UTF_8);
+        byte[] body = Objects.isNull(message.getBody()) ? new byte[0] : message.getBody();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 12 + topic.length + properties.length + body.length);
+        buffer.put(ordered ? FLAG_ORDERED : 0);
+        buffer.putInt(topic.length).put(topic);
+        buffer.putInt(properties.length).put(properties);
+        buffer.putInt(body.length).put(body);
+        return buffer.array();
+    }
+
+    private static Record decode(byte[] record, long nextOffset) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        boolean ordered = buffer.get() == FLAG_ORDERED;
+        byte[] topic = new byte[buffer.getInt()];
+        buffer.get(topic);
+        byte[] properties = new byte[buffer.getInt()];
+        buffer.get(properties);
+        byte[] body = new byte[buffer.getInt()];
+        buffer.get(body);
+        Message message = new Message();
+        message.setTopic(new String(topic, StandardCharsets.UTF_8));
+        message.setBody(body);
+        MessageAccessor.setProperties(message, MessageDecoder.string2messageProperties(new String(properties, StandardCharsets.UTF_8)));
+        return new Record(message, ordered, nextOffset);
+    }
+
+    /**
+     * 重投发送, 返回即视为成功, 抛出异常视为失败
+     */
+    public interface Sender {
+        /**
+         * 批量发送同一主题的无序消息, 不含延时消息
+         *
+         * @param messages
+         * @throws Exception
+         */
+        void send(List<Message> messages)
+                throws Exception;
+
+        /**
+         * 发送单条无序消息, 含延时消息
+         *
+         * @param message
+         * @throws Exception
+         */
+        void send(Message message)
+                throws Exception;
+
+        /**
+         * 发送有序消息
+         *
+         * @param message
+         * @throws Exception
+         */
+        void sendOrdered(Message message)
+                throws Exception;
+    }
+
+    private static class Record {
+        private final Message message;
+        private final boolean ordered;
+        /**
+         * 下一条记录的偏移量, 本条重投成功后作为checkpoint
+         */
+        private final long nextOffset;
+
+        private Record(Message message, boolean ordered, long nextOffset) {
+            this.message = message;
+            this.ordered = ordered;
+            this.nextOffset = nextOffset;
+        }
+
+        /**
+         * 可与相邻同主题消息合并批量发送
+         */
+        private boolean batchable() {
+            return !ordered && message.getDelayTimeLevel() <= 0;
+        }
+    }
+
+    private static class Segment {
+        private final long baseOffset;
+        private final File file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long baseOffset, File file, FileChannel channel, MappedByteBuffer buffer) {
+            this.baseOffset = baseOffset;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void close() {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                log.error("关闭重投队列分段失败, file=[{}], 原因: {}", file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class Options {
+        /**
+         * 分段大小, 默认64MB, 单条消息不得超过分段大小
+         */
+        private int segmentBytes = 64 * 1024 * 1024;
+
+        /**
+         * 单次读取的最大条数, 默认64
+         */
+        private int batchSize = 64;
+
+        /**
+         * 首次重投失败后的退避毫秒数, 之后逐次翻倍, 默认500
+         */
+        private long initialBackoffMillis = 500;
+
+        /**
+         * 最大退避毫秒数, 默认30秒
+         */
+        private long maxBackoffMillis = 30_000;
+
+        /**
+         * 同一批消息最大重投次数, 超过后丢弃, 0表示不限, 默认16
+         */
+        private int maxAttempts = 16;
+
+        /**
+         * 空闲时刷盘及检查新消息的间隔, 默认1秒
+         */
+        private long forceIntervalMillis = 1000;
+
+        /**
+         * 关闭时等待重投线程退出的毫秒数
+         */
+        private long shutdownTimeoutMillis = 5000;
+    }
+}
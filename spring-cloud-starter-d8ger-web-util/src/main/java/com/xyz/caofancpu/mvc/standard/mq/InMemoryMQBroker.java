@@ -0,0 +1,732 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListener;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 进程内MQ Broker, 实现{@link D8MQProducerTransport}及{@link D8MQConsumerTransport}, 用于单机压测及单元测试
+ * 主题按需创建, 每个主题{@link Options#getQueueNums()}个队列; 消费组订阅前的消息暂存于主题, 首个消费组订阅时转交
+ * 延时消息按延时级别调度, 并发消费失败后按RocketMQ规则以 3 + 重新消费次数 的延时级别重新投递到原队列, 超过最大次数进入死信
+ * 有序消费每个队列单线程处理, 失败时暂停当前队列后重新投递同一批消息
+ * 消息仅保存在内存, 不持久化; 同一消费组内多个消费者竞争消费同一组队列
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class InMemoryMQBroker implements Closeable {
+
+    private static final String BROKER_NAME = "d8-in-memory-broker";
+    private static final InetSocketAddress BROKER_ADDRESS = new InetSocketAddress(InetAddress.getLoopbackAddress(), 10911);
+
+    private final Options options;
+    private final long[] delayLevelMillis;
+    private final Map<String, TopicStore> topicMap = new ConcurrentHashMap<>();
+    private final Map<String, List<MessageExt>> deadLetterMap = new ConcurrentHashMap<>();
+    private final Set<InMemoryConsumerTransport> consumers = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService asyncSender;
+    private final LongAdder storedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile boolean running = true;
+
+    public InMemoryMQBroker() {
+        this(new Options());
+    }
+
+    public InMemoryMQBroker(@NonNull Options options) {
+        this.options = options;
+        this.delayLevelMillis = parseDelayLevels(options.getMessageDelayLevel(), options.getDelayTimeScale());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("d8-mq-broker-schedule"));
+        this.asyncSender = Executors.newFixedThreadPool(options.getAsyncSenderThreads(), daemonThreadFactory("d8-mq-broker-async"));
+    }
+
+    /**
+     * 生产者传输层, 可被多个生产者共用
+     *
+     * @return
+     */
+    public D8MQProducerTransport producerTransport() {
+        return new InMemoryProducerTransport();
+    }
+
+    /**
+     * 消费者传输层, 消费组、线程数及单次投递条数取自MQ配置
+     *
+     * @param mqProperties
+     * @return
+     */
+    public D8MQConsumerTransport consumerTransport(@NonNull MQProperties mqProperties) {
+        return consumerTransport(mqProperties.getMqEnv() + mqProperties.getConsumerGroup(), mqProperties.getConsumerMaxThreads(), mqProperties.getConsumerMessageBatchMaxSize());
+    }
+
+    /**
+     * 消费者传输层
+     *
+     * @param consumerGroup              消费组
+     * @param consumeThreads             并发消费线程数, 有序消费时每个队列一个线程
+     * @param consumeMessageBatchMaxSize 单次投递最大条数
+     * @return
+     */
+    public D8MQConsumerTransport consumerTransport(@NonNull String consumerGroup, int consumeThreads, int consumeMessageBatchMaxSize) {
+        return new InMemoryConsumerTransport(consumerGroup, Math.max(1, consumeThreads), Math.max(1, consumeMessageBatchMaxSize));
+    }
+
+    /**
+     * 消费组的死信消息
+     *
+     * @param consumerGroup
+     * @return
+     */
+    public List<MessageExt> getDeadLetters(String consumerGroup) {
+        List<MessageExt> deadLetters = deadLetterMap.get(consumerGroup);
+        return Objects.isNull(deadLetters) ? Collections.emptyList() : new ArrayList<>(deadLetters);
+    }
+
+    /**
+     * 累计写入的消息条数
+     *
+     * @return
+     */
+    public long getStoredCount() {
+        return storedCount.sum();
+    }
+
+    /**
+     * 队列积压超过{@link Options#getMaxQueueMessages()}被丢弃的消息条数
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (InMemoryConsumerTransport consumer : new ArrayList<>(consumers)) {
+            consumer.shutdown();
+        }
+        scheduler.shutdownNow();
+        asyncSender.shutdown();
+        try {
+            asyncSender.awaitTermination(options.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private TopicStore topicStore(String topic) {
+        return topicMap.computeIfAbsent(topic, TopicStore::new);
+    }
+
+    private void checkMessage(Message message)
+            throws MQClientException {
+        if (!running) {
+            throw new MQClientException(ResponseCode.SERVICE_NOT_AVAILABLE, "内存Broker已关闭");
+        }
+        if (Objects.isNull(message) || StringUtils.isBlank(message.getTopic())) {
+            throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "消息主题不得为空");
+        }
+        if (Objects.isNull(message.getBody()) || message.getBody().length == 0) {
+            throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "消息体不得为空");
+        }
+        if (message.getBody().length > options.getMaxMessageSize()) {
+            throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "消息体超过最大字节数" + options.getMaxMessageSize());
+        }
+    }
+
+    /**
+     * 写入队列, 延时消息到期后才对消费组可见
+     */
+    private SendResult put(TopicStore store, Message message, int queueId) {
+        MessageClientIDSetter.setUniqID(message);
+        String msgId = MessageClientIDSetter.getUniqID(message);
+        long offset = store.offsets[queueId].getAndIncrement();
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(message.getTopic());
+        messageExt.setFlag(message.getFlag());
+        messageExt.setBody(message.getBody());
+        MessageAccessor.setProperties(messageExt, new HashMap<>(message.getProperties()));
+        MessageAccessor.clearProperty(messageExt, MessageConst.PROPERTY_DELAY_TIME_LEVEL);
+        messageExt.setMsgId(msgId);
+        messageExt.setQueueId(queueId);
+        messageExt.setQueueOffset(offset);
+        long now = System.currentTimeMillis();
+        messageExt.setBornTimestamp(now);
+        messageExt.setStoreTimestamp(now);
+        messageExt.setBornHost(BROKER_ADDRESS);
+        messageExt.setStoreHost(BROKER_ADDRESS);
+        storedCount.increment();
+        int delayLevel = message.getDelayTimeLevel();
+        if (delayLevel > 0) {
+            schedule(() -> store.dispatch(messageExt), delayMillis(delayLevel));
+        } else {
+            store.dispatch(messageExt);
+        }
+        return new SendResult(SendStatus.SEND_OK, msgId, msgId, store.messageQueues.get(queueId), offset);
+    }
+
+    private void schedule(Runnable task, long delayMillis) {
+        try {
+            scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Broker已关闭
+            droppedCount.increment();
+        }
+    }
+
+    private long delayMillis(int delayLevel) {
+        return delayLevelMillis[Math.min(delayLevel, delayLevelMillis.length) - 1];
+    }
+
+    private void offer(LinkedBlockingDeque<MessageExt> queue, MessageExt messageExt) {
+        queue.offerLast(messageExt);
+        while (queue.size() > options.getMaxQueueMessages() && Objects.nonNull(queue.pollFirst())) {
+            droppedCount.increment();
+        }
+    }
+
+    private void deadLetter(String consumerGroup, MessageExt messageExt) {
+        log.info("消息超过最大重新消费次数, 转入死信, consumerGroup=[{}], topic=[{}], msgId=[{}]", consumerGroup, messageExt.getTopic(), messageExt.getMsgId());
+        deadLetterMap.computeIfAbsent(consumerGroup, k -> new CopyOnWriteArrayList<>()).add(messageExt);
+    }
+
+    private static long[] parseDelayLevels(String messageDelayLevel, double delayTimeScale) {
+        String[] levels = StringUtils.split(messageDelayLevel, ' ');
+        if (Objects.isNull(levels) || levels.length == 0) {
+            throw new IllegalArgumentException("延时级别不得为空");
+        }
+        long[] delayLevelMillis = new long[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            long unitMillis;
+            switch (level.charAt(level.length() - 1)) {
+                case 's':
+                    unitMillis = 1000L;
+                    break;
+                case 'm':
+                    unitMillis = 60_000L;
+                    break;
+                case 'h':
+                    unitMillis = 3_600_000L;
+                    break;
+                case 'd':
+                    unitMillis = 86_400_000L;
+                    break;
+                default:
+                    throw new IllegalArgumentException("非法的延时级别: " + level);
+            }
+            delayLevelMillis[i] = (long) (Long.parseLong(level.substring(0, level.length() - 1)) * unitMillis * delayTimeScale);
+        }
+        return delayLevelMillis;
+    }
+
+    private static Predicate<String> parseTagFilter(String subExpression) {
+        if (StringUtils.isBlank(subExpression) || "*".equals(subExpression.trim())) {
+            return tag -> true;
+        }
+        Set<String> tags = new HashSet<>();
+        for (String tag : StringUtils.split(subExpression, "||")) {
+            if (StringUtils.isNotBlank(tag)) {
+                tags.add(tag.trim());
+            }
+        }
+        return tags::contains;
+    }
+
+    private static MessageExt copy(MessageExt source) {
+        MessageExt target = new MessageExt();
+        target.setTopic(source.getTopic());
+        target.setFlag(source.getFlag());
+        target.setBody(source.getBody());
+        MessageAccessor.setProperties(target, new HashMap<>(source.getProperties()));
+        target.setMsgId(source.getMsgId());
+        target.setQueueId(source.getQueueId());
+        target.setQueueOffset(source.getQueueOffset());
+        target.setBornTimestamp(source.getBornTimestamp());
+        target.setStoreTimestamp(source.getStoreTimestamp());
+        target.setBornHost(source.getBornHost());
+        target.setStoreHost(source.getStoreHost());
+        return target;
+    }
+
+    private static void requeueFirst(LinkedBlockingDeque<MessageExt> queue, List<MessageExt> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            queue.offerFirst(batch.get(i));
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 主题存储, 各消费组拥有独立的队列副本
+     */
+    private final class TopicStore {
+        private final List<MessageQueue> messageQueues;
+        private final AtomicLong[] offsets;
+        private final AtomicInteger sendIndex = new AtomicInteger();
+        private final Map<String, GroupQueues> groupMap = new LinkedHashMap<>();
+        private final List<LinkedBlockingDeque<MessageExt>> backlog;
+
+        private TopicStore(String topic) {
+            int queueNums = options.getQueueNums();
+            List<MessageQueue> messageQueues = new ArrayList<>(queueNums);
+            this.offsets = new AtomicLong[queueNums];
+            this.backlog = new ArrayList<>(queueNums);
+            for (int i = 0; i < queueNums; i++) {
+                messageQueues.add(new MessageQueue(topic, BROKER_NAME, i));
+                offsets[i] = new AtomicLong();
+                backlog.add(new LinkedBlockingDeque<>());
+            }
+            this.messageQueues = Collections.unmodifiableList(messageQueues);
+        }
+
+        private int nextQueueId() {
+            return Math.floorMod(sendIndex.getAndIncrement(), messageQueues.size());
+        }
+
+        private synchronized void dispatch(MessageExt messageExt) {
+            if (groupMap.isEmpty()) {
+                offer(backlog.get(messageExt.getQueueId()), messageExt);
+                return;
+            }
+            boolean shared = false;
+            for (GroupQueues groupQueues : groupMap.values()) {
+                if (groupQueues.tagFilter.test(messageExt.getTags())) {
+                    // 重新消费次数按消费组独立计数, 多个消费组时各自持有副本
+                    offer(groupQueues.queues.get(messageExt.getQueueId()), shared ? copy(messageExt) : messageExt);
+                    shared = true;
+                }
+            }
+        }
+
+        private synchronized GroupQueues subscribe(String consumerGroup, String subExpression) {
+            GroupQueues groupQueues = groupMap.computeIfAbsent(consumerGroup, k -> new GroupQueues(messageQueues.size()));
+            groupQueues.tagFilter = parseTagFilter(subExpression);
+            for (int i = 0; i < backlog.size(); i++) {
+                LinkedBlockingDeque<MessageExt> queue = backlog.get(i);
+                for (MessageExt messageExt = queue.pollFirst(); Objects.nonNull(messageExt); messageExt = queue.pollFirst()) {
+                    if (groupQueues.tagFilter.test(messageExt.getTags())) {
+                        offer(groupQueues.queues.get(i), messageExt);
+                    }
+                }
+            }
+            return groupQueues;
+        }
+    }
+
+    private static final class GroupQueues {
+        private final List<LinkedBlockingDeque<MessageExt>> queues;
+        private volatile Predicate<String> tagFilter;
+
+        private GroupQueues(int queueNums) {
+            List<LinkedBlockingDeque<MessageExt>> queues = new ArrayList<>(queueNums);
+            for (int i = 0; i < queueNums; i++) {
+                queues.add(new LinkedBlockingDeque<>());
+            }
+            this.queues = Collections.unmodifiableList(queues);
+        }
+    }
+
+    private final class InMemoryProducerTransport implements D8MQProducerTransport {
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public int getMaxMessageSize() {
+            return options.getMaxMessageSize();
+        }
+
+        @Override
+        public SendResult send(Message message, long timeout)
+                throws MQClientException {
+            checkMessage(message);
+            TopicStore store = topicStore(message.getTopic());
+            return put(store, message, store.nextQueueId());
+        }
+
+        /**
+         * 同一批消息写入同一队列, 与RocketMQ一致不支持延时
+         */
+        @Override
+        public SendResult send(Collection<Message> messages, long timeout)
+                throws MQClientException {
+            if (Objects.isNull(messages) || messages.isEmpty()) {
+                throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "批量消息不得为空");
+            }
+            String topic = messages.iterator().next().getTopic();
+            long totalBytes = 0;
+            for (Message message : messages) {
+                checkMessage(message);
+                if (!Objects.equals(topic, message.getTopic())) {
+                    throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "批量消息必须属于同一主题");
+                }
+                if (message.getDelayTimeLevel() > 0) {
+                    throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "批量消息不支持延时");
+                }
+                totalBytes += message.getBody().length;
+            }
+            if (totalBytes > options.getMaxMessageSize()) {
+                throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "批量消息体超过最大字节数" + options.getMaxMessageSize());
+            }
+            TopicStore store = topicStore(topic);
+            int queueId = store.nextQueueId();
+            List<String> msgIds = new ArrayList<>(messages.size());
+            SendResult first = null;
+            for (Message message : messages) {
+                SendResult sendResult = put(store, message, queueId);
+                msgIds.add(sendResult.getMsgId());
+                first = Objects.isNull(first) ? sendResult : first;
+            }
+            String msgId = String.join(",", msgIds);
+            return new SendResult(SendStatus.SEND_OK, msgId, msgId, first.getMessageQueue(), first.getQueueOffset());
+        }
+
+        @Override
+        public SendResult send(Message message, MessageQueueSelector selector, Object arg, long timeout)
+                throws MQClientException {
+            checkMessage(message);
+            TopicStore store = topicStore(message.getTopic());
+            MessageQueue messageQueue = selector.select(store.messageQueues, message, arg);
+            if (Objects.isNull(messageQueue)) {
+                throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "队列选择器未选中队列");
+            }
+            return put(store, message, messageQueue.getQueueId());
+        }
+
+        @Override
+        public void send(Message message, MessageQueueSelector selector, Object arg, SendCallback sendCallback, long timeout)
+                throws MQClientException {
+            checkMessage(message);
+            try {
+                asyncSender.execute(() -> {
+                    SendResult sendResult;
+                    try {
+                        sendResult = send(message, selector, arg, timeout);
+                    } catch (Throwable e) {
+                        sendCallback.onException(e);
+                        return;
+                    }
+                    sendCallback.onSuccess(sendResult);
+                });
+            } catch (RejectedExecutionException e) {
+                throw new MQClientException("内存Broker已关闭", e);
+            }
+        }
+    }
+
+    private final class InMemoryConsumerTransport implements D8MQConsumerTransport {
+        private final String consumerGroup;
+        private final int consumeThreads;
+        private final int consumeMessageBatchMaxSize;
+        private final Map<String, String> subscriptionMap = new LinkedHashMap<>();
+        private final List<Thread> dispatchers = new ArrayList<>();
+        private MessageListener messageListener;
+        private ExecutorService consumeExecutor;
+        private Semaphore consumePermits;
+        private volatile boolean started;
+
+        private InMemoryConsumerTransport(String consumerGroup, int consumeThreads, int consumeMessageBatchMaxSize) {
+            this.consumerGroup = consumerGroup;
+            this.consumeThreads = consumeThreads;
+            this.consumeMessageBatchMaxSize = consumeMessageBatchMaxSize;
+        }
+
+        @Override
+        public void subscribe(String topic, String subExpression)
+                throws MQClientException {
+            if (StringUtils.isBlank(topic)) {
+                throw new MQClientException(ResponseCode.MESSAGE_ILLEGAL, "订阅主题不得为空");
+            }
+            subscriptionMap.put(topic, subExpression);
+        }
+
+        @Override
+        public void registerMessageListener(MessageListener messageListener) {
+            if (!(messageListener instanceof MessageListenerConcurrently) && !(messageListener instanceof MessageListenerOrderly)) {
+                throw new IllegalArgumentException("缺少消息监听处理器");
+            }
+            this.messageListener = messageListener;
+        }
+
+        @Override
+        public synchronized void start()
+                throws MQClientException {
+            if (started) {
+                return;
+            }
+            if (Objects.isNull(messageListener)) {
+                throw new MQClientException("缺少消息监听处理器", null);
+            }
+            if (!running) {
+                throw new MQClientException(ResponseCode.SERVICE_NOT_AVAILABLE, "内存Broker已关闭");
+            }
+            started = true;
+            consumers.add(this);
+            boolean orderly = messageListener instanceof MessageListenerOrderly;
+            if (!orderly) {
+                consumeExecutor = Executors.newFixedThreadPool(consumeThreads, daemonThreadFactory("d8-mq-broker-consume"));
+                // 在途批次不超过消费线程数, 未消费的消息留在队列中
+                consumePermits = new Semaphore(consumeThreads);
+            }
+            for (Map.Entry<String, String> entry : subscriptionMap.entrySet()) {
+                TopicStore store = topicStore(entry.getKey());
+                GroupQueues groupQueues = store.subscribe(consumerGroup, entry.getValue());
+                for (MessageQueue messageQueue : store.messageQueues) {
+                    Thread dispatcher = new Thread(() -> dispatchLoop(groupQueues, messageQueue, orderly),
+                            "d8-mq-broker-dispatch-" + messageQueue.getTopic() + "-" + messageQueue.getQueueId());
+                    dispatcher.setDaemon(true);
+                    dispatchers.add(dispatcher);
+                    dispatcher.start();
+                }
+            }
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            if (!started) {
+                return;
+            }
+            started = false;
+            consumers.remove(this);
+            dispatchers.forEach(Thread::interrupt);
+            try {
+                for (Thread dispatcher : dispatchers) {
+                    dispatcher.join(options.getShutdownTimeoutMillis());
+                }
+                if (Objects.nonNull(consumeExecutor)) {
+                    consumeExecutor.shutdown();
+                    consumeExecutor.awaitTermination(options.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dispatchers.clear();
+        }
+
+        private void dispatchLoop(GroupQueues groupQueues, MessageQueue messageQueue, boolean orderly) {
+            LinkedBlockingDeque<MessageExt> queue = groupQueues.queues.get(messageQueue.getQueueId());
+            while (started) {
+                List<MessageExt> batch = new ArrayList<>(consumeMessageBatchMaxSize);
+                try {
+                    MessageExt first = queue.poll(options.getPollTimeoutMillis(), TimeUnit.MILLISECONDS);
+                    if (Objects.isNull(first)) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, consumeMessageBatchMaxSize - 1);
+                    if (orderly) {
+                        consumeOrderly(groupQueues, messageQueue, batch);
+                    } else {
+                        consumePermits.acquire();
+                        try {
+                            consumeExecutor.execute(() -> {
+                                try {
+                                    consumeConcurrently(groupQueues, messageQueue, batch);
+                                } finally {
+                                    consumePermits.release();
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            consumePermits.release();
+                            throw new InterruptedException("消费线程池已关闭");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    requeueFirst(queue, batch);
+                    return;
+                }
+            }
+        }
+
+        private void consumeConcurrently(GroupQueues groupQueues, MessageQueue messageQueue, List<MessageExt> batch) {
+            ConsumeConcurrentlyContext context = new ConsumeConcurrentlyContext(messageQueue);
+            ConsumeConcurrentlyStatus status = null;
+            try {
+                status = ((MessageListenerConcurrently) messageListener).consumeMessage(Collections.unmodifiableList(batch), context);
+            } catch (Throwable e) {
+                log.error("内存Broker并发消费异常, consumerGroup=[{}], topic=[{}], 原因: {}", consumerGroup, messageQueue.getTopic(), e);
+            }
+            int ackIndex = ConsumeConcurrentlyStatus.CONSUME_SUCCESS == status ? Math.min(context.getAckIndex(), batch.size() - 1) : -1;
+            for (int i = ackIndex + 1; i < batch.size(); i++) {
+                reconsumeLater(groupQueues, batch.get(i), context.getDelayLevelWhenNextConsume());
+            }
+        }
+
+        /**
+         * 按RocketMQ规则: 指定级别-1直接进入死信, 0表示使用 3 + 重新消费次数
+         */
+        private void reconsumeLater(GroupQueues groupQueues, MessageExt messageExt, int delayLevel) {
+            int reconsumeTimes = messageExt.getReconsumeTimes();
+            if (delayLevel < 0 || reconsumeTimes >= options.getMaxReconsumeTimes()) {
+                deadLetter(consumerGroup, messageExt);
+                return;
+            }
+            messageExt.setReconsumeTimes(reconsumeTimes + 1);
+            LinkedBlockingDeque<MessageExt> queue = groupQueues.queues.get(messageExt.getQueueId());
+            schedule(() -> offer(queue, messageExt), delayMillis(delayLevel > 0 ? delayLevel : 3 + reconsumeTimes));
+        }
+
+        private void consumeOrderly(GroupQueues groupQueues, MessageQueue messageQueue, List<MessageExt> batch)
+                throws InterruptedException {
+            while (true) {
+                ConsumeOrderlyContext context = new ConsumeOrderlyContext(messageQueue);
+                ConsumeOrderlyStatus status = null;
+                try {
+                    status = ((MessageListenerOrderly) messageListener).consumeMessage(Collections.unmodifiableList(batch), context);
+                } catch (Throwable e) {
+                    log.error("内存Broker有序消费异常, consumerGroup=[{}], topic=[{}], 原因: {}", consumerGroup, messageQueue.getTopic(), e);
+                }
+                if (ConsumeOrderlyStatus.SUCCESS == status || ConsumeOrderlyStatus.COMMIT == status) {
+                    return;
+                }
+                if (batch.stream().anyMatch(messageExt -> messageExt.getReconsumeTimes() >= options.getMaxReconsumeTimes())) {
+                    batch.forEach(messageExt -> deadLetter(consumerGroup, messageExt));
+                    return;
+                }
+                batch.forEach(messageExt -> messageExt.setReconsumeTimes(messageExt.getReconsumeTimes() + 1));
+                long suspendMillis = context.getSuspendCurrentQueueTimeMillis();
+                TimeUnit.MILLISECONDS.sleep(suspendMillis >= 0 ? suspendMillis : options.getOrderlySuspendMillis());
+                if (!started) {
+                    throw new InterruptedException("消费者已关闭");
+                }
+            }
+        }
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class Options {
+        /**
+         * 每个主题的队列数, 默认4
+         */
+        private int queueNums = 4;
+
+        /**
+         * 延时级别, 格式同Broker配置messageDelayLevel
+         */
+        private String messageDelayLevel = "1s 5s 10s 30s 1m 2m 3m 4m 5m 6m 7m 8m 9m 10m 20m 30m 1h 2h";
+
+        /**
+         * 延时缩放比例, 压测及单元测试可设置为0.001等将秒级延时缩短为毫秒级, 默认1
+         */
+        private double delayTimeScale = 1.0;
+
+        /**
+         * 最大重新消费次数, 超过后进入死信, 默认16
+         */
+        private int maxReconsumeTimes = 16;
+
+        /**
+         * 有序消费失败且未指定暂停时间时的暂停毫秒数, 默认1秒
+         */
+        private long orderlySuspendMillis = 1000;
+
+        /**
+         * 单个队列最大积压条数, 超过后丢弃最早的消息, 默认100万
+         */
+        private int maxQueueMessages = 1_000_000;
+
+        /**
+         * 单条消息(含批量消息整体)最大字节数, 默认4MB
+         */
+        private int maxMessageSize = 4 * 1024 * 1024;
+
+        /**
+         * 异步发送线程数, 默认4
+         */
+        private int asyncSenderThreads = 4;
+
+        /**
+         * 分发线程等待新消息的毫秒数, 决定关闭时的响应速度
+         */
+        private long pollTimeoutMillis = 100;
+
+        /**
+         * 关闭时等待各线程退出的毫秒数
+         */
+        private long shutdownTimeoutMillis = 5000;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.List;
+
+/**
+ * 按消息key哈希选择队列, 同一key的消息总落在同一队列上, 从而保证同一业务key内有序, 不同key可分散到各队列并行消费
+ * 主题队列数变化时key与队列的映射随之变化, 扩缩容期间同一key可能短暂跨队列
+ * 未设置key的消息统一落在0号队列
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class KeyHashQueueSelector implements MessageQueueSelector {
+
+    /**
+     * 队列下标
+     *
+     * @param key        消息key
+     * @param queueCount 队列数
+     * @return
+     */
+    public static int indexFor(String key, int queueCount) {
+        if (StringUtils.isEmpty(key)) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        // 与HashMap一致, 高位参与运算, 避免队列数为2的幂时只取到低位
+        return Math.floorMod(hash ^ (hash >>> 16), queueCount);
+    }
+
+    @Override
+    public MessageQueue select(List<MessageQueue> mqs, Message msg, Object arg) {
+        int index = indexFor(msg.getKeys(), mqs.size());
+        log.info("选择发送消息队列, index=[{}], arg=[{}], key=[{}]", index, arg, msg.getKeys());
+        return mqs.get(index);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.logger.metrics.MQMetrics;
+import com.xyz.caofancpu.logger.metrics.MQMetricsRegistry;
+import org.apache.rocketmq.common.message.MessageExt;
+
+import java.util.List;
+
+/**
+ * 消费统计包装, 记录消费耗时、端到端延迟、重新消费数及在途数
+ * 批量消费时一次调用的耗时按条均摊, 首条失败之后未处理的消息不计入
+ *
+ * @author D8GER
+ */
+class MQMetricsConsumerListener implements D8MQConsumerListener {
+
+    private final String logicTopic;
+    private final MQMetricsRegistry registry;
+    private final D8MQConsumerListener delegate;
+
+    MQMetricsConsumerListener(String logicTopic, MQMetricsRegistry registry, D8MQConsumerListener delegate) {
+        this.logicTopic = logicTopic;
+        this.registry = registry;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void consumeMessage(MessageExt messageExt)
+            throws Exception {
+        MQMetrics metrics = registry.forTopic(logicTopic, messageExt.getTags());
+        metrics.beginConsume();
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            delegate.consumeMessage(messageExt);
+            success = true;
+        } finally {
+            metrics.recordConsume(System.nanoTime() - startNanos, success, messageExt.getBornTimestamp(), messageExt.getReconsumeTimes());
+        }
+    }
+
+    @Override
+    public int consumeMessages(List<MessageExt> messageExtList)
+            throws Exception {
+        MQMetrics[] metrics = new MQMetrics[messageExtList.size()];
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] = registry.forTopic(logicTopic, messageExtList.get(i).getTags());
+            metrics[i].beginConsume();
+        }
+        long startNanos = System.nanoTime();
+        int consumed = 0;
+        try {
+            consumed = Math.max(0, Math.min(delegate.consumeMessages(messageExtList), metrics.length));
+            return consumed;
+        } finally {
+            long costNanos = (System.nanoTime() - startNanos) / metrics.length;
+            for (int i = 0; i < metrics.length; i++) {
+                MessageExt messageExt = messageExtList.get(i);
+                if (i <= consumed) {
+                    metrics[i].recordConsume(costNanos, i < consumed, messageExt.getBornTimestamp(), messageExt.getReconsumeTimes());
+                } else {
+                    metrics[i].cancelConsume();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void consumeFailed(MessageExt messageExt)
+            throws Exception {
+        delegate.consumeFailed(messageExt);
+    }
+}
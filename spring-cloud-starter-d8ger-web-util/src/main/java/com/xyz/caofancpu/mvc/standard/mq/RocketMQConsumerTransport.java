@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.MessageListener;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+
+/**
+ * 基于RocketMQ {@link DefaultMQPushConsumer}的消费者传输层
+ *
+ * @author D8GER
+ */
+public class RocketMQConsumerTransport implements D8MQConsumerTransport {
+
+    @Getter
+    private final DefaultMQPushConsumer defaultMQPushConsumer;
+
+    public RocketMQConsumerTransport(@NonNull MQProperties mqProperties) {
+        defaultMQPushConsumer = new DefaultMQPushConsumer(mqProperties.getMqEnv() + mqProperties.getConsumerGroup());
+        defaultMQPushConsumer.setNamesrvAddr(mqProperties.getNameSrvAddr());
+        // 第一次启动从开始位置消费, 其他从上次消费位置继续消费
+        defaultMQPushConsumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
+        defaultMQPushConsumer.setConsumeThreadMax(mqProperties.getConsumerMaxThreads());
+        defaultMQPushConsumer.setConsumeThreadMin(mqProperties.getConsumerMinThreads());
+        defaultMQPushConsumer.setConsumeTimeout(mqProperties.getConsumerMaxTimeOutInMinutes());
+        defaultMQPushConsumer.setMessageModel(mqProperties.getConsumerMessageModel());
+        defaultMQPushConsumer.setConsumeMessageBatchMaxSize(mqProperties.getConsumerMessageBatchMaxSize());
+        defaultMQPushConsumer.setPullBatchSize(Math.max(mqProperties.getConsumerPullBatchSize(), mqProperties.getConsumerMessageBatchMaxSize()));
+    }
+
+    @Override
+    public void subscribe(String topic, String subExpression)
+            throws MQClientException {
+        defaultMQPushConsumer.subscribe(topic, subExpression);
+    }
+
+    @Override
+    public void registerMessageListener(MessageListener messageListener) {
+        if (messageListener instanceof MessageListenerConcurrently) {
+            defaultMQPushConsumer.registerMessageListener((MessageListenerConcurrently) messageListener);
+        } else if (messageListener instanceof MessageListenerOrderly) {
+            defaultMQPushConsumer.registerMessageListener((MessageListenerOrderly) messageListener);
+        } else {
+            throw new IllegalArgumentException("缺少消息监听处理器");
+        }
+    }
+
+    @Override
+    public void start()
+            throws MQClientException {
+        defaultMQPushConsumer.start();
+    }
+
+    @Override
+    public void shutdown() {
+        defaultMQPushConsumer.shutdown();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+
+import java.util.Collection;
+
+/**
+ * 基于RocketMQ {@link DefaultMQProducer}的生产者传输层
+ *
+ * @author D8GER
+ */
+public class RocketMQProducerTransport implements D8MQProducerTransport {
+
+    /**
+     * 默认生产者, 源自RocketMQ
+     */
+    @Getter
+    private final DefaultMQProducer defaultMQProducer;
+
+    public RocketMQProducerTransport(@NonNull MQProperties mqProperties) {
+        defaultMQProducer = new DefaultMQProducer(mqProperties.getMqEnv() + mqProperties.getProducerGroup());
+        defaultMQProducer.setNamesrvAddr(mqProperties.getNameSrvAddr());
+        defaultMQProducer.setRetryTimesWhenSendFailed(mqProperties.getProducerRetryTimesWhenSendFailed());
+        defaultMQProducer.setDefaultTopicQueueNums(mqProperties.getProducerTopicQueueNums());
+    }
+
+    @Override
+    public void start()
+            throws MQClientException {
+        defaultMQProducer.start();
+    }
+
+    @Override
+    public void shutdown() {
+        defaultMQProducer.shutdown();
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return defaultMQProducer.getMaxMessageSize();
+    }
+
+    @Override
+    public SendResult send(Message message, long timeout)
+            throws Exception {
+        return defaultMQProducer.send(message, timeout);
+    }
+
+    @Override
+    public SendResult send(Collection<Message> messages, long timeout)
+            throws Exception {
+        return defaultMQProducer.send(messages, timeout);
+    }
+
+    @Override
+    public SendResult send(Message message, MessageQueueSelector selector, Object arg, long timeout)
+            throws Exception {
+        return defaultMQProducer.send(message, selector, arg, timeout);
+    }
+
+    @Override
+    public void send(Message message, MessageQueueSelector selector, Object arg, SendCallback sendCallback, long timeout)
+            throws Exception {
+        defaultMQProducer.send(message, selector, arg, sendCallback, timeout);
+    }
+}
@@ -32,6 +32,7 @@ import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.io.File;
 import java.util.Map;
 
 /**
@@ -55,6 +56,11 @@ public class MQProperties {
      */
     private String mqEnv = "D8MqEnv";
 
+    /**
+     * 按逻辑主题+tag记录收发统计, 见MQMetricsRegistry, 默认开启
+     */
+    private boolean metricsEnable = true;
+
     //========================生产者========================//
     /**
      * 生产者所属组名，根据应用区分
@@ -96,6 +102,71 @@ public class MQProperties {
      */
     private String producerMqLogAppenderName = "MQ_LOG";
 
+    /**
+     * 异步发送时按主题累积为批量消息, 默认关闭; 有序及延时消息不参与批量
+     */
+    private boolean producerBatchEnable = false;
+
+    /**
+     * 批量消息首条等待时间, 默认5毫秒
+     */
+    private long producerBatchLingerMillis = 5;
+
+    /**
+     * 单批最大消息条数, 默认256
+     */
+    private int producerBatchMaxMessages = 256;
+
+    /**
+     * 单批最大字节数, 默认1MB, 超过Broker的maxMessageSize时以后者为准
+     */
+    private int producerBatchMaxBytes = 1024 * 1024;
+
+    /**
+     * 批量发送线程数, 默认2
+     */
+    private int producerBatchSenderThreads = 2;
+
+    /**
+     * 等待发送的批次上限, 超出时由调用线程直接发送, 默认64
+     */
+    private int producerBatchMaxPendingBatches = 64;
+
+    /**
+     * 发送失败或批量发送队列溢出的消息写入本地重投队列, 由后台线程重投, 默认关闭
+     */
+    private boolean producerOutboxEnable = false;
+
+    /**
+     * 本地重投队列目录, 默认用户目录下d8ger/mq-outbox, 多实例部署时各实例须独立
+     */
+    private String producerOutboxDir = System.getProperty("user.home") + File.separator + "d8ger" + File.separator + "mq-outbox";
+
+    /**
+     * 本地重投队列分段大小, 默认64MB
+     */
+    private int producerOutboxSegmentBytes = 64 * 1024 * 1024;
+
+    /**
+     * 单次重投读取的最大条数, 默认64
+     */
+    private int producerOutboxBatchSize = 64;
+
+    /**
+     * 重投失败首次退避毫秒数, 之后逐次翻倍, 默认500
+     */
+    private long producerOutboxInitialBackoffMillis = 500;
+
+    /**
+     * 重投失败最大退避毫秒数, 默认30秒
+     */
+    private long producerOutboxMaxBackoffMillis = 30_000;
+
+    /**
+     * 同一批消息最大重投次数, 超过后记录日志并丢弃, 0表示不限, 默认16
+     */
+    private int producerOutboxMaxAttempts = 16;
+
     /**
      * 消费者订阅主题合集
      */
@@ -139,6 +210,26 @@ public class MQProperties {
      */
     private Integer consumerRetryTimesWhenHandleFailed = 10;
 
+    /**
+     * 单次交给监听器的最大消息条数, 默认1即逐条消费, 调大后监听器可批量处理
+     */
+    private int consumerMessageBatchMaxSize = 1;
+
+    /**
+     * 单次从Broker拉取的最大消息条数, 默认32, 应不小于{@link #consumerMessageBatchMaxSize}
+     */
+    private int consumerPullBatchSize = 32;
+
+    /**
+     * 有序消费失败时暂停当前队列的毫秒数, 默认1秒
+     */
+    private long consumerOrderlySuspendMillis = 1000;
+
+    /**
+     * 消费端去重, 逻辑主题 -> 去重配置, 未配置的主题不去重
+     */
+    private Map<String, ConsumerDedup> consumerDedupTopicMap = Maps.newHashMap();
+
     /**
      * 析取主题, 移除 mqEnv + '_'
      *
@@ -167,6 +258,40 @@ public class MQProperties {
         return StringUtils.isBlank(this.mqEnv) || this.mqEnv.contains(SymbolConstantUtil.ENGLISH_UNDER_JOINER);
     }
 
+    /**
+     * 消费端去重配置
+     *
+     * @author D8GER
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class ConsumerDedup {
+        /**
+         * 进程内去重缓存容量, 超出后LRU淘汰, 默认10万
+         */
+        private long localMaxSize = 100_000L;
+
+        /**
+         * 去重窗口秒数, 进程内缓存及Redis确认后的存活时间, 默认1小时
+         */
+        private int ttlSeconds = 3600;
+
+        /**
+         * 是否开启Redis去重, 多实例消费同一主题时开启, 默认关闭
+         */
+        private boolean redisEnable = false;
+
+        /**
+         * Redis处理中占位的存活秒数, 实例宕机后占位过期, 重新投递的消息方可消费, 默认60秒
+         */
+        private int processingTtlSeconds = 60;
+
+        /**
+         * Redis去重key前缀
+         */
+        private String redisKeyPrefix = "d8:mq:dedup:";
+    }
+
     /**
      * 延时级别
      *
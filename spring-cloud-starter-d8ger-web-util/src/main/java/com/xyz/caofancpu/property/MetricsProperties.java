@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.property;
+
+import com.xyz.caofancpu.constant.D8gerConstants;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * {@link ConfigurationProperties} for D8ger Web Util.
+ *
+ * @author D8GER
+ */
+@ConfigurationProperties(prefix = D8gerConstants.METRICS_PROPERTY_PREFIX)
+@Validated
+@Data
+@Accessors(chain = true)
+public class MetricsProperties {
+    /**
+     * 接口统计开关, 默认true打开, 关闭时切面不再记录接口统计
+     */
+    private boolean enable = true;
+
+    /**
+     * 接口统计快照输出周期(秒), 不大于0时不输出, 默认60
+     */
+    private long dumpIntervalSeconds = 60;
+
+}
@@ -18,6 +18,7 @@
 
 package com.xyz.caofancpu.property;
 
+import com.google.common.collect.Lists;
 import com.xyz.caofancpu.annotation.WarnDoc;
 import com.xyz.caofancpu.constant.D8gerConstants;
 import com.xyz.caofancpu.constant.SymbolConstantUtil;
@@ -26,6 +27,8 @@ import lombok.experimental.Accessors;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.List;
+
 /**
  * {@link ConfigurationProperties} for D8ger Web Util.
  *
@@ -62,6 +65,11 @@ public class RedisProperties {
     @WarnDoc("生产环境, 请确认合理值")
     private int maxSinglePipelineCmdNum = 100000;
 
+    /**
+     * 批量命令分片并行度, 默认1即串行, 每个并行分片占用一个连接
+     */
+    private int pipelineParallelism = 1;
+
     /**
      * 最大初始化启动时间
      */
@@ -117,4 +125,92 @@ public class RedisProperties {
      */
     private long softMinEvictableIdleTimeMillis = 1000;
 
+    /**
+     * 近端缓存开关, 默认false关闭, 开启后仅缓存匹配{@link #nearCacheRules}前缀的key
+     */
+    private boolean nearCacheEnable = false;
+
+    /**
+     * 近端缓存规则, 按key前缀配置, 多条规则匹配时取最长前缀
+     */
+    private List<D8NearCacheRule> nearCacheRules = Lists.newArrayList();
+
+    /**
+     * 近端缓存失效广播频道, 为空时仅本实例的写操作失效缓存
+     */
+    private String nearCacheInvalidationChannel = SymbolConstantUtil.EMPTY;
+
+    /**
+     * 分布式锁释放通知频道
+     */
+    private String lockChannel = "d8ger:lock:released";
+
+    /**
+     * 分布式锁看门狗模式租期, 默认30秒, 每1/3租期续期一次
+     */
+    private long lockWatchdogLeaseMillis = 30000;
+
+    /**
+     * 连接池统计开关, 默认false关闭, 开启后记录借用等待、耗尽次数、连接损坏次数及各操作的连接占用耗时
+     */
+    private boolean poolMetricsEnable = false;
+
+    /**
+     * 连接池统计定时输出间隔, 单位秒, 默认0不输出
+     */
+    private long poolMetricsDumpIntervalSeconds = 0;
+
+    /**
+     * 连接池自适应调节开关, 默认false关闭
+     */
+    private boolean poolAutoSizeEnable = false;
+
+    /**
+     * 自适应调节时maxTotal下界
+     */
+    private int poolMaxTotalLowerBound = 8;
+
+    /**
+     * 自适应调节时maxTotal上界
+     */
+    private int poolMaxTotalUpperBound = 512;
+
+    /**
+     * 自适应调节时minIdle下界
+     */
+    private int poolMinIdleLowerBound = 0;
+
+    /**
+     * 自适应调节时minIdle上界
+     */
+    private int poolMinIdleUpperBound = 64;
+
+    /**
+     * 平均借用等待阈值, 默认5毫秒, 不低于该值时扩容
+     */
+    private long poolWaitThresholdMillis = 5;
+
+    /**
+     * 自适应调节周期, 默认10秒
+     */
+    private long poolAutoSizePeriodMillis = 10000;
+
+    @Data
+    public static class D8NearCacheRule {
+        /**
+         * key前缀
+         */
+        private String prefix;
+
+        /**
+         * 最大缓存key数量, 超出时淘汰最近最少使用的key
+         */
+        private long maxSize = 10000;
+
+        /**
+         * 写入后存活时间, 默认5秒
+         */
+        private long ttlMillis = 5000;
+    }
+
 }
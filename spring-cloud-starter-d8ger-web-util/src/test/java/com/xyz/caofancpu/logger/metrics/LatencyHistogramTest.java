@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延迟直方图
+ *
+ * @author D8GER
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBounds() {
+        long previousUpper = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            // 桶连续且不重叠
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(previousUpper + 1));
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(upper));
+            previousUpper = upper;
+        }
+        Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        Assert.assertEquals(0, LatencyHistogram.bucketIndex(-1));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1ms ~ 100ms 均匀分布
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i * 10L));
+        }
+        LatencyHistogram.Counts counts = histogram.counts();
+        Assert.assertEquals(10000, counts.getTotalCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), counts.getMaxValue());
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(50), counts.getValueAtPercentile(50));
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(95), counts.getValueAtPercentile(95));
+        assertWithin(TimeUnit.MILLISECONDS.toNanos(99), counts.getValueAtPercentile(99));
+        Assert.assertEquals(counts.getMaxValue(), counts.getValueAtPercentile(100));
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(50005), counts.getMean());
+        Assert.assertEquals(0L, new LatencyHistogram().counts().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void concurrentRecord()
+            throws Exception {
+        EndpointMetricsRegistry registry = new EndpointMetricsRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                EndpointMetrics metrics = registry.forEndpoint("api.hero");
+                for (int i = 0; i < 10000; i++) {
+                    metrics.record(1000L, i % 100 == 0);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        EndpointMetricsSnapshot snapshot = registry.snapshot("api.hero");
+        Assert.assertEquals(80000, snapshot.getCount());
+        Assert.assertEquals(800, snapshot.getErrorCount());
+        Assert.assertEquals(1000L, snapshot.getMaxNanos());
+        Assert.assertTrue(snapshot.getThroughput() > 0);
+        Assert.assertNull(registry.snapshot("api.missing"));
+        Assert.assertEquals(1, registry.snapshots().size());
+    }
+
+    /**
+     * 相对误差不超过分桶精度
+     */
+    private static void assertWithin(long expected, long actual) {
+        Assert.assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected / 32);
+    }
+}
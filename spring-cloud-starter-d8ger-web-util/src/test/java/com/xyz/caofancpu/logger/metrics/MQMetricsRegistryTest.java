@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.logger.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQ收发统计
+ *
+ * @author D8GER
+ */
+public class MQMetricsRegistryTest {
+
+    @Test
+    public void countersPerTopicAndTag() {
+        MQMetricsRegistry registry = new MQMetricsRegistry();
+        MQMetrics payA = registry.forTopic("PAY", "A");
+        Assert.assertSame(payA, registry.forTopic("PAY", "A"));
+        // 未设置tag时归入 "*"
+        Assert.assertSame(registry.forTopic("PAY", null), registry.forTopic("PAY", ""));
+
+        for (int i = 0; i < 3; i++) {
+            payA.beginSend();
+            payA.recordSend(TimeUnit.MILLISECONDS.toNanos(2), i != 0);
+        }
+        MQMetrics payB = registry.forTopic("PAY", "B");
+        payB.beginConsume();
+        payB.recordConsume(TimeUnit.MILLISECONDS.toNanos(5), false, System.currentTimeMillis() - 100, 0);
+        payB.beginConsume();
+        payB.recordConsume(TimeUnit.MILLISECONDS.toNanos(5), true, System.currentTimeMillis() - 100, 2);
+
+        List<MQMetricsSnapshot> snapshots = registry.snapshots();
+        Assert.assertEquals(3, snapshots.size());
+        // 按主题、tag排序
+        Assert.assertEquals("*", snapshots.get(0).getTag());
+        MQMetricsSnapshot a = snapshots.get(1);
+        Assert.assertEquals("A", a.getTag());
+        Assert.assertEquals(3, a.getSendCount());
+        Assert.assertEquals(1, a.getSendFailedCount());
+        Assert.assertEquals(0, a.getConsumeCount());
+        MQMetricsSnapshot b = snapshots.get(2);
+        Assert.assertEquals("B", b.getTag());
+        Assert.assertEquals(0, b.getSendCount());
+        Assert.assertEquals(2, b.getConsumeCount());
+        Assert.assertEquals(1, b.getConsumeFailedCount());
+        Assert.assertEquals(1, b.getReconsumeCount());
+        Assert.assertTrue(b.getEndToEndP50Nanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void snapshotAndInFlight() {
+        MQMetrics metrics = new MQMetricsRegistry().forTopic("ORDER", "A");
+        metrics.beginSend();
+        metrics.beginConsume();
+        metrics.beginConsume();
+        MQMetricsSnapshot before = metrics.snapshot();
+        Assert.assertEquals(1, before.getSendInFlight());
+        Assert.assertEquals(2, before.getConsumeInFlight());
+
+        metrics.recordSend(1000L, true);
+        metrics.recordConsume(1000L, true, 0L, 0);
+        // 未处理的消息只归还在途数, 不计入消费
+        metrics.cancelConsume();
+        MQMetricsSnapshot after = metrics.snapshot();
+        Assert.assertEquals(0, after.getSendInFlight());
+        Assert.assertEquals(0, after.getConsumeInFlight());
+        Assert.assertEquals(1, after.getSendCount());
+        Assert.assertEquals(1, after.getConsumeCount());
+        // 未提供产生时间时不记录端到端延迟
+        Assert.assertEquals(0, after.getEndToEndMaxNanos());
+
+        // 快照为时点值, 不随后续记录变化
+        Assert.assertEquals(0, before.getSendCount());
+        Assert.assertEquals(2, before.getConsumeInFlight());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.interceptor;
+
+import com.xyz.caofancpu.mvc.annotation.Check;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 参数校验吞吐量基准: 每次请求重新解析规则并查找getter(原实现) vs 预编译的校验计划
+ * 非单元测试, 直接运行main方法
+ *
+ * @author D8GER
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CheckParamAspectBenchmark {
+
+    private final CheckParamAspect aspect = new CheckParamAspect();
+    private Method method;
+    private CheckParamAspect.CheckPlan plan;
+    private Object[] args;
+
+    public static void main(String[] args)
+            throws Exception {
+        new Runner(new OptionsBuilder().include(CheckParamAspectBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup()
+            throws NoSuchMethodException {
+        method = CheckParamAspectBenchmark.class.getDeclaredMethod("save", CheckParamAspectTest.CheckReq.class);
+        plan = aspect.compilePlan(method);
+        args = new Object[]{new CheckParamAspectTest.CheckReq(5, "D8GER", "12.5", "d8ger@xyz.com", Arrays.asList("a", "b"))};
+    }
+
+    @Benchmark
+    public String parsePerRequest() {
+        return aspect.compilePlan(method).check(args);
+    }
+
+    @Benchmark
+    public String compiledPlan() {
+        return plan.check(args);
+    }
+
+    @Check({"id<10:ID必须少于10", "name not empty", "name<=8", "money is money:金额格式错误", "mail is mail:邮箱格式错误", "tags not empty"})
+    void save(CheckParamAspectTest.CheckReq req) {
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.interceptor;
+
+import com.xyz.caofancpu.mvc.annotation.Check;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 参数校验计划
+ *
+ * @author D8GER
+ */
+public class CheckParamAspectTest {
+
+    private final CheckParamAspect aspect = new CheckParamAspect();
+
+    @Test
+    public void checkPlan()
+            throws NoSuchMethodException {
+        CheckParamAspect.CheckPlan plan = aspect.compilePlan(CheckParamAspectTest.class.getDeclaredMethod("save", CheckReq.class));
+        Assert.assertEquals("", plan.check(new Object[]{new CheckReq(5, "D8GER", "12.5", "d8ger@xyz.com", Arrays.asList("a", "b"))}));
+        Assert.assertEquals("入参不能为空!", plan.check(new Object[]{null}));
+        Assert.assertEquals("", plan.check(new Object[0]));
+        Assert.assertEquals("ID必须少于10", plan.check(new Object[]{new CheckReq(10, "D8GER", "12.5", "d8ger@xyz.com", null)}));
+        Assert.assertEquals("name must not empty " + " 调用方法 save", plan.check(new Object[]{new CheckReq(5, " ", "12.5", "d8ger@xyz.com", null)}));
+        Assert.assertEquals("name must <= 8 调用方法 save", plan.check(new Object[]{new CheckReq(5, "D8GER-D8GER", "12.5", "d8ger@xyz.com", null)}));
+        Assert.assertEquals("金额格式错误", plan.check(new Object[]{new CheckReq(5, "D8GER", "12.505", "d8ger@xyz.com", null)}));
+        Assert.assertEquals("邮箱格式错误", plan.check(new Object[]{new CheckReq(5, "D8GER", "12.5", "d8ger", null)}));
+    }
+
+    @Test
+    public void uncheckedMethod()
+            throws NoSuchMethodException {
+        CheckParamAspect.CheckPlan plan = aspect.compilePlan(CheckParamAspectTest.class.getDeclaredMethod("uncheckedMethod"));
+        Assert.assertEquals("", plan.check(new Object[]{null}));
+    }
+
+    @Check({"id<10:ID必须少于10", "name not empty", "name<=8", "money is money:金额格式错误", "mail is mail:邮箱格式错误", "tags not empty"})
+    void save(CheckReq req) {
+    }
+
+    public static class CheckReq {
+        private final Integer id;
+        private final String name;
+        private final String money;
+        private final String mail;
+        private final List<String> tags;
+
+        CheckReq(Integer id, String name, String money, String mail, List<String> tags) {
+            this.id = id;
+            this.name = name;
+            this.money = money;
+            this.mail = mail;
+            this.tags = tags == null ? Collections.singletonList("default") : tags;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMoney() {
+            return money;
+        }
+
+        public String getMail() {
+            return mail;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+    }
+}
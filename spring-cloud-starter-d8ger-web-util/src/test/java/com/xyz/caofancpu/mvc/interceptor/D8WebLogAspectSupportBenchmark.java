@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志切面开销基准: 未标注D8Track的接口经切面调用 vs 直接调用
+ * 非单元测试, 直接运行main方法
+ *
+ * @author D8GER
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class D8WebLogAspectSupportBenchmark {
+
+    private final D8WebLogAspectSupportTest.TrackedApi target = new D8WebLogAspectSupportTest.TrackedApi();
+    private D8WebLogAspectSupportTest.TrackedApi proxy;
+
+    public static void main(String[] args)
+            throws Exception {
+        new Runner(new OptionsBuilder().include(D8WebLogAspectSupportBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        D8WebLogAspectSupport support = new D8WebLogAspectSupport(NOPLogger.NOP_LOGGER, NOPLogger.NOP_LOGGER, NOPLogger.NOP_LOGGER);
+        proxy = D8WebLogAspectSupportTest.proxy(new D8WebLogAspectSupportTest.LogAspect(support));
+    }
+
+    @Benchmark
+    public String direct() {
+        return target.untracked("D8GER");
+    }
+
+    @Benchmark
+    public String untrackedThroughAspect() {
+        return proxy.untracked("D8GER");
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.interceptor;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.xyz.caofancpu.core.JSONUtil;
+import com.xyz.caofancpu.logger.AsyncLogAppender;
+import com.xyz.caofancpu.logger.D8Track;
+import com.xyz.caofancpu.logger.metrics.EndpointMetricsRegistry;
+import com.xyz.caofancpu.logger.metrics.EndpointMetricsSnapshot;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Web接口日志切面
+ *
+ * @author D8GER
+ */
+public class D8WebLogAspectSupportTest {
+
+    private final AsyncLogAppender appender = new AsyncLogAppender("d8-async-log-test", 16);
+    private final EndpointMetricsRegistry metricsRegistry = new EndpointMetricsRegistry();
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+    private Logger logger;
+    private D8WebLogAspectSupport support;
+
+    /**
+     * 通过Spring AOP代理织入日志切面
+     */
+    static TrackedApi proxy(LogAspect aspect) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new TrackedApi());
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    @Before
+    public void setUp() {
+        logger = (Logger) LoggerFactory.getLogger(D8WebLogAspectSupportTest.class);
+        events.start();
+        logger.addAppender(events);
+        support = new D8WebLogAspectSupport(logger, logger, logger, 400, 64, appender, metricsRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        logger.detachAppender(events);
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void untrackedMethodSkipsSerialization()
+            throws InterruptedException {
+        // 未标注D8Track, 不加载请求上下文, 也不序列化入参
+        Assert.assertEquals("D8GER", proxy(new LogAspect(support)).untracked("D8GER"));
+        Assert.assertTrue(appender.flush(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, events.list.size());
+        Assert.assertEquals("后台接口[{}]处理耗时: {}ms", events.list.get(0).getMessage());
+        Assert.assertEquals(TrackedApi.class.getName() + ".untracked", events.list.get(0).getArgumentArray()[0]);
+    }
+
+    @Test
+    public void trackedMethodLogsAsync()
+            throws InterruptedException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/hero");
+        request.setParameter("id", "7");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        Assert.assertEquals("NEO", proxy(new LogAspect(support)).tracked("NEO"));
+        Assert.assertTrue(appender.flush(1, TimeUnit.SECONDS));
+        List<String> messages = events.list.stream().map(ILoggingEvent::getFormattedMessage).collect(Collectors.toList());
+        Assert.assertTrue(messages.stream().anyMatch(message -> message.contains("请求地址=http://localhost/hero") && message.contains("\"id\": \"7\"")));
+        Assert.assertTrue(messages.stream().anyMatch(message -> message.contains("响应数据结果:\"NEO\"")));
+    }
+
+    @Test
+    public void serializeTruncated() {
+        Date now = new Date();
+        List<Object> value = Arrays.asList("D8GER", now, 1.5);
+        D8WebLogAspectSupport.SerializedContent content = support.serialize(value);
+        Assert.assertFalse(content.truncated);
+        Assert.assertEquals(JSONUtil.toJSONStringWithDateFormat(value), content.content);
+
+        char[] chars = new char[10000];
+        Arrays.fill(chars, 'x');
+        List<String> large = Collections.nCopies(10, new String(chars));
+        content = support.serialize(large);
+        Assert.assertTrue(content.truncated);
+        Assert.assertEquals(64, content.content.length());
+        Assert.assertTrue(JSONUtil.toJSONStringWithDateFormat(large).startsWith(content.content));
+    }
+
+    @Test
+    public void policyCached() {
+        LogAspect aspect = new LogAspect(support);
+        TrackedApi api = proxy(aspect);
+        api.untracked("D8GER");
+        api.untracked("D8GER");
+        Assert.assertEquals(2, aspect.policies.size());
+        Assert.assertSame(aspect.policies.get(0), aspect.policies.get(1));
+        Assert.assertFalse(aspect.policies.get(0).recordReq);
+    }
+
+    @Test
+    public void endpointMetrics() {
+        TrackedApi api = proxy(new LogAspect(support));
+        api.untracked("D8GER");
+        api.untracked("NEO");
+        try {
+            api.failing();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 异常照常抛出
+        }
+        EndpointMetricsSnapshot untracked = metricsRegistry.snapshot(TrackedApi.class.getName() + ".untracked");
+        Assert.assertEquals(2, untracked.getCount());
+        Assert.assertEquals(0, untracked.getErrorCount());
+        Assert.assertTrue(untracked.getP99Nanos() <= untracked.getMaxNanos());
+        EndpointMetricsSnapshot failing = metricsRegistry.snapshot(TrackedApi.class.getName() + ".failing");
+        Assert.assertEquals(1, failing.getCount());
+        Assert.assertEquals(1, failing.getErrorCount());
+
+        // 关闭后不再记录
+        metricsRegistry.setEnabled(false);
+        api.untracked("D8GER");
+        Assert.assertEquals(2, metricsRegistry.snapshot(TrackedApi.class.getName() + ".untracked").getCount());
+    }
+
+    public static class TrackedApi {
+        public String untracked(String name) {
+            return name;
+        }
+
+        public String failing() {
+            throw new IllegalStateException("failing");
+        }
+
+        @D8Track(recordResp = true)
+        public String tracked(String name) {
+            return name;
+        }
+    }
+
+    @Aspect
+    static class LogAspect {
+        private final D8WebLogAspectSupport support;
+        private final List<D8WebLogAspectSupport.TrackPolicy> policies = new ArrayList<>();
+
+        LogAspect(D8WebLogAspectSupport support) {
+            this.support = support;
+        }
+
+        @Around("execution(* com.xyz.caofancpu.mvc.interceptor.D8WebLogAspectSupportTest.TrackedApi.*(..))")
+        public Object around(ProceedingJoinPoint point)
+                throws Throwable {
+            policies.add(support.resolvePolicy(point));
+            Object result = support.doAround(point);
+            support.doAfterReturning(point, result);
+            return result;
+        }
+    }
+}
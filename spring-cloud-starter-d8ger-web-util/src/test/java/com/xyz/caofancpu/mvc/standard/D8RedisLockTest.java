@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁
+ *
+ * @author D8GER
+ */
+public class D8RedisLockTest {
+
+    private static FakeRedisServer server;
+    private static JedisPool jedisPool;
+    private static JedisService jedisService;
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+        jedisService = new JedisService(jedisPool, 0);
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+    }
+
+    @Test
+    public void fencingAndOwnerCheckedRelease()
+            throws Exception {
+        try (D8RedisLock lock = new D8RedisLock(jedisService)) {
+            D8RedisLock.LockHandle first = lock.tryLock("lock:order");
+            Assert.assertNotNull(first);
+            Assert.assertEquals(1L, first.getFencingToken());
+            Assert.assertNull(lock.tryLock("lock:order"));
+            Assert.assertTrue(first.unlock());
+            Assert.assertFalse(first.unlock());
+
+            try (D8RedisLock.LockHandle second = lock.tryLock("lock:order")) {
+                Assert.assertEquals(2L, second.getFencingToken());
+            }
+            Assert.assertFalse(jedisService.isExist("lock:order"));
+
+            // 租期到期后被他人获取, 原持有者释放不影响新持有者
+            D8RedisLock.LockHandle expired = lock.tryLock("lock:order", 0, 50, TimeUnit.MILLISECONDS);
+            TimeUnit.MILLISECONDS.sleep(100);
+            D8RedisLock.LockHandle current = lock.tryLock("lock:order");
+            Assert.assertEquals(4L, current.getFencingToken());
+            Assert.assertFalse(expired.unlock());
+            Assert.assertTrue(jedisService.isExist("lock:order"));
+            Assert.assertTrue(current.unlock());
+        }
+    }
+
+    @Test
+    public void watchdogRenewal()
+            throws Exception {
+        try (D8RedisLock lock = new D8RedisLock(jedisService, D8RedisLock.DEFAULT_CHANNEL, 300)) {
+            D8RedisLock.LockHandle handle = lock.tryLock("lock:job");
+            TimeUnit.MILLISECONDS.sleep(700);
+            Assert.assertTrue(handle.isHeld());
+            Assert.assertTrue((Long) server.execute("PTTL", "lock:job") > 0);
+            // 锁被他人覆盖后续期失败
+            server.execute("SET", "lock:job", "intruder");
+            TimeUnit.MILLISECONDS.sleep(300);
+            Assert.assertFalse(handle.isHeld());
+            Assert.assertFalse(handle.unlock());
+            Assert.assertEquals("intruder", server.execute("GET", "lock:job"));
+        }
+    }
+
+    @Test
+    public void waitForReleaseNotification()
+            throws Exception {
+        try (D8RedisLock holderLock = new D8RedisLock(jedisService);
+             D8RedisLock waiterLock = new D8RedisLock(jedisService)) {
+            D8RedisLock.LockHandle holder = holderLock.tryLock("lock:hot");
+            CompletableFuture<D8RedisLock.LockHandle> waiter = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return waiterLock.tryLock("lock:hot", 5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            TimeUnit.MILLISECONDS.sleep(200);
+            long before = server.getCommandCount();
+            TimeUnit.MILLISECONDS.sleep(500);
+            // 等待期间不轮询Redis
+            Assert.assertTrue(waiterLock.isSubscribed());
+            Assert.assertEquals(before, server.getCommandCount());
+            Assert.assertFalse(waiter.isDone());
+
+            long releasedAt = System.currentTimeMillis();
+            holder.unlock();
+            D8RedisLock.LockHandle acquired = waiter.get(1, TimeUnit.SECONDS);
+            Assert.assertTrue(System.currentTimeMillis() - releasedAt < 500);
+            Assert.assertEquals(2L, acquired.getFencingToken());
+
+            // 等待超时
+            long start = System.currentTimeMillis();
+            Assert.assertNull(holderLock.tryLock("lock:hot", 200, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+            acquired.unlock();
+        }
+    }
+}
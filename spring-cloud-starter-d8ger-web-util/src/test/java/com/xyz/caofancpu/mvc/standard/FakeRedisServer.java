@@ -0,0 +1,1056 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 内嵌的Redis替身, 实现RESP协议及常用命令的单库内存版本, 仅用于单元测试与基准测试
+ * 每个连接一个线程, 命令在全局锁内串行执行, 与Redis单线程模型一致
+ * 参数与值按ISO-8859-1与字节一一对应, 二进制安全; 通过execute直接准备的数据应只含ASCII字符
+ * 不执行Lua, EVAL/EVALSHA按脚本SHA1分派到注册的Java等价实现, 已内置{@link RedisScriptRegistry}及{@link D8RedisLock}的脚本
+ *
+ * @author D8GER
+ */
+public class FakeRedisServer implements Closeable {
+
+    /**
+     * 简单字符串回复
+     */
+    static final class Status {
+        final String value;
+
+        Status(String value) {
+            this.value = value;
+        }
+    }
+
+    static final Status OK = new Status("OK");
+
+    /**
+     * 多条回复依次写出, 用于SUBSCRIBE等一条命令对应多个回复的场景
+     */
+    static final class Replies {
+        final List<Object> values;
+
+        Replies(List<Object> values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * 错误回复
+     */
+    static final class RedisError extends RuntimeException {
+        RedisError(String message) {
+            super(message);
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Function<List<String>, Object>> commands = new HashMap<>();
+    private final Map<String, Object> data = new HashMap<>();
+    private final Map<String, Long> expireAt = new HashMap<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    /**
+     * 频道 -> 订阅连接的输出流
+     */
+    private final Map<String, Set<OutputStream>> subscriptions = new HashMap<>();
+    /**
+     * 当前执行命令的连接输出流
+     */
+    private final ThreadLocal<OutputStream> currentOut = new ThreadLocal<>();
+    /**
+     * 当前连接MULTI后排队的命令, 为null时不在事务中
+     */
+    private final ThreadLocal<List<List<String>>> transaction = new ThreadLocal<>();
+    /**
+     * PUBLISH待投递的消息, 释放全局锁后再写入订阅连接, 避免与订阅连接的锁顺序相反
+     */
+    private final ThreadLocal<List<Map.Entry<OutputStream, Object>>> pendingDeliveries = ThreadLocal.withInitial(ArrayList::new);
+    /**
+     * 已执行命令数, 用于断言往返次数
+     */
+    private final AtomicLong commandCount = new AtomicLong();
+    /**
+     * SCAN系列命令游标 -> 上一页最后检查的元素
+     */
+    private final Map<Long, String> scanCursors = new HashMap<>();
+    private final AtomicLong scanCursorSequence = new AtomicLong();
+    /**
+     * 脚本SHA1 -> 等价实现, 入参为KEYS及ARGV
+     */
+    private final Map<String, BiFunction<List<String>, List<String>, Object>> scripts = new HashMap<>();
+    /**
+     * 已通过EVAL或SCRIPT LOAD载入的脚本SHA1, 未载入时EVALSHA返回NOSCRIPT
+     */
+    private final Set<String> loadedScripts = new HashSet<>();
+    private volatile boolean closed;
+
+    public FakeRedisServer()
+            throws IOException {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        registerCommands();
+        Thread acceptor = new Thread(this::accept, "fake-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * 注册或覆盖命令
+     *
+     * @param name    命令名, 不区分大小写
+     * @param handler 参数不含命令名, 返回值按RESP编码
+     */
+    public void register(String name, Function<List<String>, Object> handler) {
+        commands.put(name.toUpperCase(Locale.ROOT), handler);
+    }
+
+    /**
+     * 注册或覆盖脚本的等价实现
+     *
+     * @param source  Lua源码, 用于计算SHA1
+     * @param handler 入参为KEYS及ARGV, 返回值按RESP编码
+     */
+    public void registerScript(String source, BiFunction<List<String>, List<String>, Object> handler) {
+        synchronized (this) {
+            scripts.put(RedisScriptRegistry.sha1Hex(source), handler);
+        }
+    }
+
+    /**
+     * 在全局锁内直接执行命令, 用于测试中准备数据
+     *
+     * @param args 命令及参数
+     * @return
+     */
+    public Object execute(String... args) {
+        Object reply;
+        synchronized (this) {
+            reply = dispatch(Arrays.asList(args));
+        }
+        deliverPending();
+        return reply;
+    }
+
+    @Override
+    public void close()
+            throws IOException {
+        closed = true;
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                Thread handler = new Thread(() -> serve(socket), "fake-redis-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                // 服务关闭
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            currentOut.set(out);
+            while (!closed) {
+                List<String> request = readRequest(in);
+                if (Objects.isNull(request)) {
+                    return;
+                }
+                // 订阅连接的输出流同时被PUBLISH写入, 回复写出需与其互斥
+                synchronized (out) {
+                    Object reply;
+                    synchronized (this) {
+                        try {
+                            reply = dispatch(request);
+                        } catch (RedisError e) {
+                            reply = e;
+                        }
+                    }
+                    writeReply(out, reply);
+                    // 管道中仍有待处理命令时合并写出
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                }
+                deliverPending();
+                if ("QUIT".equalsIgnoreCase(request.get(0))) {
+                    out.flush();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // 连接关闭
+        } finally {
+            OutputStream out = currentOut.get();
+            currentOut.remove();
+            synchronized (this) {
+                subscriptions.values().forEach(subscribers -> subscribers.remove(out));
+            }
+        }
+    }
+
+    private Object dispatch(List<String> request) {
+        commandCount.incrementAndGet();
+        String name = request.get(0).toUpperCase(Locale.ROOT);
+        List<List<String>> queued = transaction.get();
+        if ("MULTI".equals(name)) {
+            transaction.set(new ArrayList<>());
+            return OK;
+        }
+        if ("DISCARD".equals(name)) {
+            transaction.remove();
+            return OK;
+        }
+        if ("EXEC".equals(name)) {
+            transaction.remove();
+            if (Objects.isNull(queued)) {
+                throw new RedisError("ERR EXEC without MULTI");
+            }
+            List<Object> replies = new ArrayList<>(queued.size());
+            for (List<String> queuedRequest : queued) {
+                try {
+                    replies.add(dispatch(queuedRequest));
+                } catch (RedisError e) {
+                    replies.add(e);
+                }
+            }
+            return replies;
+        }
+        if (Objects.nonNull(queued)) {
+            queued.add(request);
+            return new Status("QUEUED");
+        }
+        Function<List<String>, Object> handler = commands.get(name);
+        if (Objects.isNull(handler)) {
+            throw new RedisError("ERR unknown command '" + request.get(0) + "'");
+        }
+        Object reply = handler.apply(request.subList(1, request.size()));
+        // 唤醒阻塞在BLPOP等命令上的连接重新检查
+        notifyAll();
+        return reply;
+    }
+
+    private static List<String> readRequest(InputStream in)
+            throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        if (first != '*') {
+            throw new IOException("unsupported inline command");
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("bulk string expected");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            in.read();
+            in.read();
+            args.add(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in)
+            throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c < 0) {
+                throw new IOException("unexpected end of stream");
+            }
+            sb.append((char) c);
+        }
+        in.read();
+        return sb.toString();
+    }
+
+    private static void writeReply(OutputStream out, Object reply)
+            throws IOException {
+        if (Objects.isNull(reply)) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Status) {
+            out.write(("+" + ((Status) reply).value + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof RedisError) {
+            out.write(("-" + ((RedisError) reply).getMessage() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Long || reply instanceof Integer || reply instanceof Boolean) {
+            long value = reply instanceof Boolean ? ((Boolean) reply ? 1L : 0L) : ((Number) reply).longValue();
+            out.write((":" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Replies) {
+            for (Object element : ((Replies) reply).values) {
+                writeReply(out, element);
+            }
+        } else if (reply instanceof List) {
+            List<?> list = (List<?>) reply;
+            out.write(("*" + list.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+            for (Object element : list) {
+                writeReply(out, element);
+            }
+        } else {
+            byte[] bytes = String.valueOf(reply).getBytes(StandardCharsets.ISO_8859_1);
+            out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.write(bytes);
+            out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    //============================数据访问============================//
+
+    /**
+     * 读取未过期的值, 类型不符时抛出WRONGTYPE
+     */
+    @SuppressWarnings("unchecked")
+    <T> T lookup(String key, Class<? super T> type) {
+        Long deadline = expireAt.get(key);
+        if (Objects.nonNull(deadline) && deadline <= System.currentTimeMillis()) {
+            data.remove(key);
+            expireAt.remove(key);
+        }
+        Object value = data.get(key);
+        if (Objects.nonNull(value) && !type.isInstance(value)) {
+            throw new RedisError("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return (T) value;
+    }
+
+    <T> T lookupOrCreate(String key, Class<? super T> type, Supplier<T> creator) {
+        T value = lookup(key, type);
+        if (Objects.isNull(value)) {
+            value = creator.get();
+            data.put(key, value);
+        }
+        return value;
+    }
+
+    boolean remove(String key) {
+        boolean existed = Objects.nonNull(lookup(key, Object.class));
+        data.remove(key);
+        expireAt.remove(key);
+        return existed;
+    }
+
+    /**
+     * 当前全部未过期的key
+     */
+    List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        for (String key : new ArrayList<>(data.keySet())) {
+            if (Objects.nonNull(lookup(key, Object.class))) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private void registerCommands() {
+        registerPubSubCommands();
+        registerScriptCommands();
+        register("PING", args -> args.isEmpty() ? new Status("PONG") : args.get(0));
+        register("SELECT", args -> OK);
+        register("AUTH", args -> OK);
+        register("QUIT", args -> OK);
+        register("FLUSHDB", args -> {
+            data.clear();
+            expireAt.clear();
+            return OK;
+        });
+        register("INFO", args -> "# Server\r\nredis_version:fake\r\n");
+        // string
+        register("GET", args -> lookup(args.get(0), String.class));
+        register("SET", args -> {
+            String key = args.get(0);
+            boolean nx = false;
+            boolean xx = false;
+            Long ttlMillis = null;
+            for (int i = 2; i < args.size(); i++) {
+                String option = args.get(i).toUpperCase(Locale.ROOT);
+                if ("NX".equals(option)) {
+                    nx = true;
+                } else if ("XX".equals(option)) {
+                    xx = true;
+                } else if ("EX".equals(option)) {
+                    ttlMillis = Long.parseLong(args.get(++i)) * 1000;
+                } else if ("PX".equals(option)) {
+                    ttlMillis = Long.parseLong(args.get(++i));
+                }
+            }
+            boolean exists = Objects.nonNull(lookup(key, Object.class));
+            if ((nx && exists) || (xx && !exists)) {
+                return null;
+            }
+            data.put(key, args.get(1));
+            expireAt.remove(key);
+            if (Objects.nonNull(ttlMillis)) {
+                expireAt.put(key, System.currentTimeMillis() + ttlMillis);
+            }
+            return OK;
+        });
+        register("SETEX", args -> {
+            data.put(args.get(0), args.get(2));
+            expireAt.put(args.get(0), System.currentTimeMillis() + Long.parseLong(args.get(1)) * 1000);
+            return OK;
+        });
+        register("SETNX", args -> {
+            if (Objects.nonNull(lookup(args.get(0), Object.class))) {
+                return 0L;
+            }
+            data.put(args.get(0), args.get(1));
+            return 1L;
+        });
+        register("DEL", args -> args.stream().filter(this::remove).count());
+        register("EXISTS", args -> args.stream().filter(key -> Objects.nonNull(lookup(key, Object.class))).count());
+        register("EXPIRE", args -> expire(args.get(0), Long.parseLong(args.get(1)) * 1000));
+        register("PEXPIRE", args -> expire(args.get(0), Long.parseLong(args.get(1))));
+        register("PERSIST", args -> Objects.nonNull(lookup(args.get(0), Object.class)) && Objects.nonNull(expireAt.remove(args.get(0))) ? 1L : 0L);
+        register("TTL", args -> {
+            long pttl = pttl(args.get(0));
+            return pttl < 0 ? pttl : (pttl + 999) / 1000;
+        });
+        register("PTTL", args -> pttl(args.get(0)));
+        register("UNLINK", args -> args.stream().filter(this::remove).count());
+        register("KEYS", args -> {
+            Pattern pattern = globToPattern(args.get(0));
+            return keys().stream().filter(key -> pattern.matcher(key).matches()).collect(Collectors.toList());
+        });
+        register("SCAN", args -> scanPage(keys(), args, Collections::singletonList));
+        // hash
+        register("HSET", args -> {
+            Map<String, String> hash = lookupOrCreate(args.get(0), Map.class, LinkedHashMap::new);
+            long added = 0;
+            for (int i = 1; i + 1 < args.size(); i += 2) {
+                if (Objects.isNull(hash.put(args.get(i), args.get(i + 1)))) {
+                    added++;
+                }
+            }
+            return added;
+        });
+        register("HMSET", args -> {
+            commands.get("HSET").apply(args);
+            return OK;
+        });
+        register("HSETNX", args -> {
+            Map<String, String> hash = lookupOrCreate(args.get(0), Map.class, LinkedHashMap::new);
+            return Objects.isNull(hash.putIfAbsent(args.get(1), args.get(2))) ? 1L : 0L;
+        });
+        register("HGET", args -> {
+            Map<String, String> hash = lookup(args.get(0), Map.class);
+            return Objects.isNull(hash) ? null : hash.get(args.get(1));
+        });
+        register("HMGET", args -> {
+            Map<String, String> hash = lookup(args.get(0), Map.class);
+            List<String> values = new ArrayList<>();
+            for (String field : args.subList(1, args.size())) {
+                values.add(Objects.isNull(hash) ? null : hash.get(field));
+            }
+            return values;
+        });
+        register("HGETALL", args -> {
+            Map<String, String> hash = lookup(args.get(0), Map.class);
+            List<String> values = new ArrayList<>();
+            if (Objects.nonNull(hash)) {
+                hash.forEach((field, value) -> {
+                    values.add(field);
+                    values.add(value);
+                });
+            }
+            return values;
+        });
+        register("HDEL", args -> {
+            Map<String, String> hash = lookup(args.get(0), Map.class);
+            long removed = Objects.isNull(hash) ? 0L : args.subList(1, args.size()).stream().filter(field -> Objects.nonNull(hash.remove(field))).count();
+            removeIfEmpty(args.get(0), hash);
+            return removed;
+        });
+        register("HLEN", args -> {
+            Map<String, String> hash = lookup(args.get(0), Map.class);
+            return Objects.isNull(hash) ? 0L : (long) hash.size();
+        });
+        register("HSCAN", args -> {
+            Map<String, String> hash = lookup(args.get(0), Map.class);
+            return scanPage(Objects.isNull(hash) ? new ArrayList<>() : hash.keySet(), args.subList(1, args.size()), field -> Arrays.asList(field, hash.get(field)));
+        });
+        register("HKEYS", args -> {
+            Map<String, String> hash = lookup(args.get(0), Map.class);
+            return Objects.isNull(hash) ? new ArrayList<>() : new ArrayList<>(hash.keySet());
+        });
+        // set
+        register("SADD", args -> {
+            Set<String> set = lookupOrCreate(args.get(0), Set.class, LinkedHashSet::new);
+            return args.subList(1, args.size()).stream().filter(set::add).count();
+        });
+        register("SREM", args -> {
+            Set<String> set = lookup(args.get(0), Set.class);
+            long removed = Objects.isNull(set) ? 0L : args.subList(1, args.size()).stream().filter(set::remove).count();
+            removeIfEmpty(args.get(0), set);
+            return removed;
+        });
+        register("SISMEMBER", args -> {
+            Set<String> set = lookup(args.get(0), Set.class);
+            return Objects.nonNull(set) && set.contains(args.get(1));
+        });
+        register("SSCAN", args -> {
+            Set<String> set = lookup(args.get(0), Set.class);
+            return scanPage(Objects.isNull(set) ? new ArrayList<>() : set, args.subList(1, args.size()), Collections::singletonList);
+        });
+        register("SMEMBERS", args -> {
+            Set<String> set = lookup(args.get(0), Set.class);
+            return Objects.isNull(set) ? new ArrayList<>() : new ArrayList<>(set);
+        });
+        // zset, 以HashMap存储成员分数
+        register("ZADD", args -> {
+            ZSet zset = lookupOrCreate(args.get(0), ZSet.class, ZSet::new);
+            long added = 0;
+            for (int i = 1; i + 1 < args.size(); i += 2) {
+                if (Objects.isNull(zset.scores.put(args.get(i + 1), Double.parseDouble(args.get(i))))) {
+                    added++;
+                }
+            }
+            return added;
+        });
+        register("ZSCORE", args -> {
+            ZSet zset = lookup(args.get(0), ZSet.class);
+            Double score = Objects.isNull(zset) ? null : zset.scores.get(args.get(1));
+            return Objects.isNull(score) ? null : String.valueOf(score);
+        });
+        register("ZREM", args -> {
+            ZSet zset = lookup(args.get(0), ZSet.class);
+            long removed = Objects.isNull(zset) ? 0L : args.subList(1, args.size()).stream().filter(member -> Objects.nonNull(zset.scores.remove(member))).count();
+            removeIfEmpty(args.get(0), Objects.isNull(zset) ? null : zset.scores);
+            return removed;
+        });
+        register("ZSCAN", args -> {
+            ZSet zset = lookup(args.get(0), ZSet.class);
+            return scanPage(Objects.isNull(zset) ? new ArrayList<>() : zset.scores.keySet(), args.subList(1, args.size()),
+                    member -> Arrays.asList(member, String.valueOf(zset.scores.get(member))));
+        });
+        register("ZCARD", args -> {
+            ZSet zset = lookup(args.get(0), ZSet.class);
+            return Objects.isNull(zset) ? 0L : (long) zset.scores.size();
+        });
+        // list
+        register("LPUSH", args -> {
+            LinkedList<String> list = lookupOrCreate(args.get(0), LinkedList.class, LinkedList::new);
+            args.subList(1, args.size()).forEach(list::addFirst);
+            return (long) list.size();
+        });
+        register("RPUSH", args -> {
+            LinkedList<String> list = lookupOrCreate(args.get(0), LinkedList.class, LinkedList::new);
+            list.addAll(args.subList(1, args.size()));
+            return (long) list.size();
+        });
+        register("LPOP", args -> pop(args.get(0), true));
+        register("RPOP", args -> pop(args.get(0), false));
+        register("BLPOP", args -> blockingPop(args.subList(0, args.size() - 1), args.get(args.size() - 1), key -> {
+            String value = pop(key, true);
+            return Objects.isNull(value) ? null : Arrays.asList(key, value);
+        }));
+        register("RPOPLPUSH", args -> popPush(args.get(0), args.get(1)));
+        register("BRPOPLPUSH", args -> blockingPop(args.subList(0, 1), args.get(2), key -> popPush(key, args.get(1))));
+        register("LREM", args -> {
+            LinkedList<String> list = lookup(args.get(0), LinkedList.class);
+            if (Objects.isNull(list)) {
+                return 0L;
+            }
+            long count = Long.parseLong(args.get(1));
+            Iterator<String> iterator = count < 0 ? list.descendingIterator() : list.iterator();
+            long removed = 0;
+            while (iterator.hasNext() && (count == 0 || removed < Math.abs(count))) {
+                if (iterator.next().equals(args.get(2))) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+            removeIfEmpty(args.get(0), list);
+            return removed;
+        });
+        register("LLEN", args -> {
+            LinkedList<String> list = lookup(args.get(0), LinkedList.class);
+            return Objects.isNull(list) ? 0L : (long) list.size();
+        });
+        register("LRANGE", args -> {
+            LinkedList<String> list = lookup(args.get(0), LinkedList.class);
+            if (Objects.isNull(list)) {
+                return new ArrayList<>();
+            }
+            int size = list.size();
+            int start = normalizeIndex(Integer.parseInt(args.get(1)), size);
+            int end = Math.min(normalizeIndex(Integer.parseInt(args.get(2)), size), size - 1);
+            return start > end ? new ArrayList<>() : new ArrayList<>(list.subList(start, end + 1));
+        });
+    }
+
+    private void registerPubSubCommands() {
+        register("SUBSCRIBE", args -> {
+            OutputStream out = currentOut.get();
+            List<Object> replies = new ArrayList<>();
+            for (String channel : args) {
+                subscriptions.computeIfAbsent(channel, k -> new LinkedHashSet<>()).add(out);
+                replies.add(Arrays.asList("subscribe", channel, subscribedCount(out)));
+            }
+            return new Replies(replies);
+        });
+        register("UNSUBSCRIBE", args -> {
+            OutputStream out = currentOut.get();
+            List<String> channels = new ArrayList<>(args);
+            if (channels.isEmpty()) {
+                subscriptions.forEach((channel, subscribers) -> {
+                    if (subscribers.contains(out)) {
+                        channels.add(channel);
+                    }
+                });
+            }
+            List<Object> replies = new ArrayList<>();
+            for (String channel : channels) {
+                Set<OutputStream> subscribers = subscriptions.get(channel);
+                if (Objects.nonNull(subscribers)) {
+                    subscribers.remove(out);
+                }
+                replies.add(Arrays.asList("unsubscribe", channel, subscribedCount(out)));
+            }
+            if (replies.isEmpty()) {
+                replies.add(Arrays.asList("unsubscribe", null, 0L));
+            }
+            return new Replies(replies);
+        });
+        register("PUBLISH", args -> {
+            Set<OutputStream> subscribers = subscriptions.getOrDefault(args.get(0), new LinkedHashSet<>());
+            for (OutputStream subscriber : subscribers) {
+                pendingDeliveries.get().add(new AbstractMap.SimpleImmutableEntry<>(subscriber, Arrays.asList("message", args.get(0), args.get(1))));
+            }
+            return (long) subscribers.size();
+        });
+    }
+
+    private void registerScriptCommands() {
+        register("EVAL", args -> {
+            String sha1 = RedisScriptRegistry.sha1Hex(args.get(0));
+            if (!scripts.containsKey(sha1)) {
+                throw new RedisError("ERR fake server has no implementation for script " + sha1);
+            }
+            loadedScripts.add(sha1);
+            return evalScript(sha1, args);
+        });
+        register("EVALSHA", args -> {
+            String sha1 = args.get(0).toLowerCase(Locale.ROOT);
+            if (!loadedScripts.contains(sha1)) {
+                throw new RedisError("NOSCRIPT No matching script. Please use EVAL.");
+            }
+            return evalScript(sha1, args);
+        });
+        register("SCRIPT", args -> {
+            String subCommand = args.get(0).toUpperCase(Locale.ROOT);
+            if ("LOAD".equals(subCommand)) {
+                String sha1 = RedisScriptRegistry.sha1Hex(args.get(1));
+                loadedScripts.add(sha1);
+                return sha1;
+            }
+            if ("EXISTS".equals(subCommand)) {
+                return args.subList(1, args.size()).stream().map(sha1 -> loadedScripts.contains(sha1.toLowerCase(Locale.ROOT)) ? 1L : 0L).collect(Collectors.toList());
+            }
+            if ("FLUSH".equals(subCommand)) {
+                loadedScripts.clear();
+                return OK;
+            }
+            throw new RedisError("ERR unknown SCRIPT subcommand " + subCommand);
+        });
+        registerLockScripts();
+        registerQueueScripts();
+        registerScript(RedisScriptRegistry.HSET_AND_EXPIRE_SCRIPT, (keys, argv) -> {
+            Map<String, String> hash = lookupOrCreate(keys.get(0), Map.class, LinkedHashMap::new);
+            for (int i = 1; i + 1 < argv.size(); i += 2) {
+                hash.put(argv.get(i), argv.get(i + 1));
+            }
+            long ttlSeconds = Long.parseLong(argv.get(0));
+            if (ttlSeconds > 0) {
+                expire(keys.get(0), ttlSeconds * 1000);
+            }
+            removeIfEmpty(keys.get(0), hash);
+            return 1L;
+        });
+        registerScript(RedisScriptRegistry.COMPARE_AND_DELETE_SCRIPT,
+                (keys, argv) -> Objects.equals(lookup(keys.get(0), String.class), argv.get(0)) && remove(keys.get(0)) ? 1L : 0L);
+        registerScript(RedisScriptRegistry.SLIDING_WINDOW_SCRIPT, (keys, argv) -> {
+            long now = Long.parseLong(argv.get(0));
+            long window = Long.parseLong(argv.get(1));
+            ZSet zset = lookupOrCreate(keys.get(0), ZSet.class, ZSet::new);
+            zset.scores.values().removeIf(score -> score <= now - window);
+            long allowed = 0L;
+            if (zset.scores.size() < Long.parseLong(argv.get(2))) {
+                zset.scores.put(argv.get(3), (double) now);
+                expire(keys.get(0), window);
+                allowed = 1L;
+            }
+            removeIfEmpty(keys.get(0), zset.scores);
+            return allowed;
+        });
+        registerScript(RedisScriptRegistry.TOKEN_BUCKET_SCRIPT, (keys, argv) -> {
+            double capacity = Double.parseDouble(argv.get(0));
+            double rate = Double.parseDouble(argv.get(1));
+            long now = Long.parseLong(argv.get(2));
+            double permits = Double.parseDouble(argv.get(3));
+            Map<String, String> bucket = lookupOrCreate(keys.get(0), Map.class, LinkedHashMap::new);
+            double tokens = bucket.containsKey("tokens") ? Double.parseDouble(bucket.get("tokens")) : capacity;
+            long ts = bucket.containsKey("ts") ? Long.parseLong(bucket.get("ts")) : now;
+            if (now > ts) {
+                tokens = Math.min(capacity, tokens + (now - ts) * rate / 1000);
+                ts = now;
+            }
+            long allowed = 0L;
+            if (tokens >= permits) {
+                tokens -= permits;
+                allowed = 1L;
+            }
+            bucket.put("tokens", String.valueOf(tokens));
+            bucket.put("ts", String.valueOf(ts));
+            expire(keys.get(0), (long) Math.ceil(capacity * 1000 / rate));
+            return allowed;
+        });
+    }
+
+    private void registerQueueScripts() {
+        registerScript(RedisScriptRegistry.LIST_BATCH_POP_SCRIPT, (keys, argv) -> {
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < Integer.parseInt(argv.get(0)); i++) {
+                String item = pop(keys.get(0), true);
+                if (Objects.isNull(item)) {
+                    break;
+                }
+                items.add(item);
+            }
+            return items;
+        });
+        registerScript(RedisScriptRegistry.LIST_BATCH_MOVE_SCRIPT, (keys, argv) -> batchMove(keys.get(0), keys.get(1), Integer.parseInt(argv.get(0))));
+        registerScript(RedisScriptRegistry.LIST_REQUEUE_AND_MOVE_SCRIPT, (keys, argv) -> {
+            if ((Long) commands.get("LLEN").apply(keys.subList(0, 1)) == 0L) {
+                return Collections.singletonList(argv.get(1));
+            }
+            commands.get("LREM").apply(Arrays.asList(keys.get(1), "1", argv.get(1)));
+            commands.get("RPUSH").apply(Arrays.asList(keys.get(0), argv.get(1)));
+            return batchMove(keys.get(0), keys.get(1), Integer.parseInt(argv.get(0)));
+        });
+        registerScript(RedisQueueConsumer.RECOVER_SCRIPT, (keys, argv) -> {
+            long moved = 0;
+            while (Objects.nonNull(popPush(keys.get(0), keys.get(1)))) {
+                moved++;
+            }
+            return moved;
+        });
+        registerScript(RedisQueueConsumer.TRANSFER_SCRIPT, (keys, argv) -> {
+            if ((Long) commands.get("LREM").apply(Arrays.asList(keys.get(0), "1", argv.get(0))) == 0) {
+                return 0L;
+            }
+            lookupOrCreate(keys.get(1), LinkedList.class, LinkedList::new).addLast(argv.get(0));
+            return 1L;
+        });
+    }
+
+    private void registerLockScripts() {
+        registerScript(D8RedisLock.ACQUIRE_SCRIPT, (keys, argv) -> {
+            String lockKey = keys.get(0);
+            if (Objects.nonNull(lookup(lockKey, Object.class))) {
+                return Arrays.asList(0L, pttl(lockKey));
+            }
+            data.put(lockKey, argv.get(0));
+            expireAt.put(lockKey, System.currentTimeMillis() + Long.parseLong(argv.get(1)));
+            String fence = lookup(keys.get(1), String.class);
+            long token = (Objects.isNull(fence) ? 0L : Long.parseLong(fence)) + 1;
+            data.put(keys.get(1), String.valueOf(token));
+            return Arrays.asList(1L, token);
+        });
+        registerScript(D8RedisLock.RENEW_SCRIPT, (keys, argv) -> Objects.equals(lookup(keys.get(0), String.class), argv.get(0))
+                ? expire(keys.get(0), Long.parseLong(argv.get(1))) : 0L);
+        registerScript(D8RedisLock.RELEASE_SCRIPT, (keys, argv) -> {
+            if (!Objects.equals(lookup(keys.get(0), String.class), argv.get(0))) {
+                return 0L;
+            }
+            remove(keys.get(0));
+            commands.get("PUBLISH").apply(Arrays.asList(argv.get(1), keys.get(0)));
+            return 1L;
+        });
+    }
+
+    private Object evalScript(String sha1, List<String> args) {
+        int numKeys = Integer.parseInt(args.get(1));
+        List<String> keys = args.subList(2, 2 + numKeys);
+        List<String> argv = args.subList(2 + numKeys, args.size());
+        return scripts.get(sha1).apply(keys, argv);
+    }
+
+    private void deliverPending() {
+        List<Map.Entry<OutputStream, Object>> deliveries = pendingDeliveries.get();
+        if (deliveries.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<OutputStream, Object> delivery : deliveries) {
+            OutputStream subscriber = delivery.getKey();
+            String channel = String.valueOf(((List<?>) delivery.getValue()).get(1));
+            synchronized (subscriber) {
+                // 投递前订阅方可能已退订并归还连接池, 此时丢弃消息, 与Redis退订后不再推送一致
+                synchronized (this) {
+                    if (!subscriptions.getOrDefault(channel, Collections.emptySet()).contains(subscriber)) {
+                        continue;
+                    }
+                }
+                try {
+                    writeReply(subscriber, delivery.getValue());
+                    subscriber.flush();
+                } catch (IOException e) {
+                    // 订阅连接已关闭
+                }
+            }
+        }
+        deliveries.clear();
+    }
+
+    /**
+     * SCAN系列命令的一页
+     * 游标对应上一页最后检查的元素, 按元素有序遍历, 遍历期间删除元素不影响后续页; COUNT为本次检查的元素数, MATCH在检查后过滤
+     *
+     * @param items  当前全部元素
+     * @param args   游标及MATCH/COUNT选项
+     * @param toItem 元素在回复中的展开形式
+     * @return
+     */
+    private List<Object> scanPage(Collection<String> items, List<String> args, Function<String, List<String>> toItem) {
+        String last = "0".equals(args.get(0)) ? null : scanCursors.remove(Long.parseLong(args.get(0)));
+        List<String> remaining = items.stream().filter(item -> Objects.isNull(last) || item.compareTo(last) > 0).sorted().collect(Collectors.toList());
+        Pattern pattern = null;
+        int count = 10;
+        for (int i = 1; i + 1 < args.size(); i += 2) {
+            if ("MATCH".equalsIgnoreCase(args.get(i))) {
+                pattern = globToPattern(args.get(i + 1));
+            } else if ("COUNT".equalsIgnoreCase(args.get(i))) {
+                count = Integer.parseInt(args.get(i + 1));
+            }
+        }
+        int end = Math.min(count, remaining.size());
+        List<String> page = new ArrayList<>();
+        for (String item : remaining.subList(0, end)) {
+            if (Objects.isNull(pattern) || pattern.matcher(item).matches()) {
+                page.addAll(toItem.apply(item));
+            }
+        }
+        if (end >= remaining.size()) {
+            return Arrays.asList("0", page);
+        }
+        long cursor = scanCursorSequence.incrementAndGet();
+        scanCursors.put(cursor, remaining.get(end - 1));
+        return Arrays.asList(String.valueOf(cursor), page);
+    }
+
+    private long subscribedCount(OutputStream out) {
+        return subscriptions.values().stream().filter(subscribers -> subscribers.contains(out)).count();
+    }
+
+    private long expire(String key, long ttlMillis) {
+        if (Objects.isNull(lookup(key, Object.class))) {
+            return 0L;
+        }
+        expireAt.put(key, System.currentTimeMillis() + ttlMillis);
+        return 1L;
+    }
+
+    private long pttl(String key) {
+        if (Objects.isNull(lookup(key, Object.class))) {
+            return -2L;
+        }
+        Long deadline = expireAt.get(key);
+        return Objects.isNull(deadline) ? -1L : Math.max(0L, deadline - System.currentTimeMillis());
+    }
+
+    private String pop(String key, boolean head) {
+        LinkedList<String> list = lookup(key, LinkedList.class);
+        if (Objects.isNull(list) || list.isEmpty()) {
+            return null;
+        }
+        String value = head ? list.removeFirst() : list.removeLast();
+        removeIfEmpty(key, list);
+        return value;
+    }
+
+    private List<String> batchMove(String source, String destination, int maxCount) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < maxCount; i++) {
+            String item = pop(source, true);
+            if (Objects.isNull(item)) {
+                break;
+            }
+            lookupOrCreate(destination, LinkedList.class, LinkedList::new).addLast(item);
+            items.add(item);
+        }
+        return items;
+    }
+
+    private String popPush(String source, String destination) {
+        String value = pop(source, false);
+        if (Objects.nonNull(value)) {
+            lookupOrCreate(destination, LinkedList.class, LinkedList::new).addFirst(value);
+        }
+        return value;
+    }
+
+    /**
+     * 在全局锁上等待直到popper取到元素或超时, 其他命令执行后会唤醒重新检查
+     *
+     * @param keys           按顺序检查的key
+     * @param timeoutSeconds 超时秒数, 0表示一直等待
+     * @param popper         取元素, 无元素时返回null
+     * @return
+     */
+    private Object blockingPop(List<String> keys, String timeoutSeconds, Function<String, Object> popper) {
+        long timeoutMillis = (long) (Double.parseDouble(timeoutSeconds) * 1000);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!closed) {
+            for (String key : keys) {
+                Object value = popper.apply(key);
+                if (Objects.nonNull(value)) {
+                    return value;
+                }
+            }
+            long remaining = timeoutMillis == 0 ? 1000L : deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return null;
+    }
+
+    private void removeIfEmpty(String key, Object container) {
+        boolean empty = container instanceof Map ? ((Map<?, ?>) container).isEmpty()
+                : container instanceof Collection && ((Collection<?>) container).isEmpty();
+        if (empty) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Redis glob风格匹配: *任意字符, ?单个字符, [...]字符集, \\转义
+     */
+    private static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                int close = glob.indexOf(']', i + 1);
+                if (close < 0) {
+                    regex.append("\\[");
+                } else {
+                    regex.append('[').append(glob, i + 1, close).append(']');
+                    i = close;
+                }
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static int normalizeIndex(int index, int size) {
+        return Math.max(0, index < 0 ? size + index : index);
+    }
+
+    /**
+     * 有序集合
+     */
+    static final class ZSet {
+        final Map<String, Double> scores = new HashMap<>();
+    }
+}
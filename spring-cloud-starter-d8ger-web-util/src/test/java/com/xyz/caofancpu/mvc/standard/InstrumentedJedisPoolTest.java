@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import com.xyz.caofancpu.logger.metrics.EndpointMetricsSnapshot;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 连接池统计与自适应调节
+ *
+ * @author D8GER
+ */
+public class InstrumentedJedisPoolTest {
+
+    private FakeRedisServer server;
+    private InstrumentedJedisPool jedisPool;
+
+    @Before
+    public void setUp()
+            throws Exception {
+        server = new FakeRedisServer();
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(2);
+        config.setMaxIdle(2);
+        config.setMinIdle(0);
+        config.setMaxWaitMillis(50);
+        jedisPool = new InstrumentedJedisPool(config, server.getHost(), server.getPort(), 2000, null);
+    }
+
+    @After
+    public void tearDown()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Test
+    public void borrowAndCommandMetrics() {
+        JedisService jedisService = new JedisService(jedisPool, 0);
+        jedisService.setEx("pool:key", "v", 60);
+        jedisService.setEx("pool:key", "v", 60);
+        Assert.assertTrue(jedisService.isExist("pool:key"));
+        Map<String, EndpointMetricsSnapshot> commands = jedisPool.getMetrics().commandSnapshots().stream()
+                .collect(Collectors.toMap(EndpointMetricsSnapshot::getEndpoint, Function.identity()));
+        Assert.assertEquals(2L, commands.get("setEx").getCount());
+        Assert.assertEquals(1L, commands.get("isExist").getCount());
+
+        try (Jedis first = jedisPool.getResource(); Jedis second = jedisPool.getResource()) {
+            Assert.assertEquals(2, jedisPool.getMetrics().snapshot().getActive());
+            try {
+                jedisPool.getResource();
+                Assert.fail();
+            } catch (JedisExhaustedPoolException e) {
+                // 等待50毫秒后放弃
+            }
+        }
+        RedisPoolSnapshot snapshot = jedisPool.getMetrics().snapshot();
+        Assert.assertEquals(5L, snapshot.getBorrowCount());
+        Assert.assertEquals(1L, snapshot.getExhaustedCount());
+        Assert.assertEquals(0, snapshot.getActive());
+        // 未指定操作名的借用
+        Assert.assertTrue(jedisPool.getMetrics().commandSnapshots().stream().anyMatch(command -> InstrumentedJedisPool.UNNAMED_COMMAND.equals(command.getEndpoint())));
+
+        // 连接损坏单独计数
+        jedisPool.returnBrokenResource(jedisPool.getResource("hGetAll"));
+        Assert.assertEquals(1L, jedisPool.getMetrics().snapshot().getBrokenCount());
+        Assert.assertEquals(Long.valueOf(1L), jedisPool.getMetrics().commandBrokenCounts().get("hGetAll"));
+        Assert.assertTrue(jedisPool.getMetrics().commandSnapshots().stream().allMatch(command -> command.getErrorCount() == 0L));
+    }
+
+    @Test
+    public void autoSize() {
+        RedisPoolAutoSizer.Options options = new RedisPoolAutoSizer.Options().setMaxTotalLowerBound(2).setMaxTotalUpperBound(3)
+                .setMinIdleUpperBound(1).setShrinkAfterPeriods(2);
+        try (RedisPoolAutoSizer autoSizer = new RedisPoolAutoSizer(jedisPool, options)) {
+            try (Jedis first = jedisPool.getResource(); Jedis second = jedisPool.getResource()) {
+                jedisPool.getResource();
+                Assert.fail();
+            } catch (JedisExhaustedPoolException e) {
+                // 耗尽后扩容, 不超过上界
+            }
+            Assert.assertTrue(autoSizer.adjust());
+            Assert.assertEquals(3, jedisPool.getMaxTotal());
+            Assert.assertEquals(1, jedisPool.getMinIdle());
+            try (Jedis first = jedisPool.getResource(); Jedis second = jedisPool.getResource(); Jedis third = jedisPool.getResource()) {
+                Assert.assertEquals(3, jedisPool.getMetrics().snapshot().getActive());
+            }
+
+            // 连续空闲周期后缩容, 不低于下界
+            jedisPool.drainPeriod();
+            Assert.assertFalse(autoSizer.adjust());
+            Assert.assertTrue(autoSizer.adjust());
+            Assert.assertEquals(2, jedisPool.getMaxTotal());
+            Assert.assertEquals(0, jedisPool.getMinIdle());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量读取基准: 逐个getValue vs 分片Pipeline串行 vs 分片Pipeline多连接并行
+ * 基于内嵌的FakeRedisServer, 非单元测试, 直接运行main方法
+ *
+ * @author D8GER
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JedisServiceBatchBenchmark {
+
+    private static final int KEY_COUNT = 2000;
+
+    private FakeRedisServer server;
+    private JedisPool jedisPool;
+    private JedisService serialService;
+    private JedisService parallelService;
+    private List<String> keys;
+
+    public static void main(String[] args)
+            throws Exception {
+        new Runner(new OptionsBuilder().include(JedisServiceBatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+        serialService = new JedisService(jedisPool, 0, 250);
+        parallelService = new JedisService(jedisPool, 0, 250, 4);
+        Map<String, String> kvMap = new HashMap<>();
+        keys = new ArrayList<>(KEY_COUNT);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            kvMap.put("bench:" + i, "value-" + i);
+            keys.add("bench:" + i);
+        }
+        serialService.multiSet(kvMap, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+            throws Exception {
+        parallelService.destroy();
+        jedisPool.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int getOneByOne() {
+        int found = 0;
+        for (String key : keys) {
+            if (serialService.getValue(key) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int multiGetSerialChunks() {
+        return serialService.multiGet(keys).size();
+    }
+
+    @Benchmark
+    public int multiGetParallelChunks() {
+        return parallelService.multiGet(keys).size();
+    }
+}
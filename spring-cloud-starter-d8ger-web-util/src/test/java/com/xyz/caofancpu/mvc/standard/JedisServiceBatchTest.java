@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * JedisService分片批量操作
+ *
+ * @author D8GER
+ */
+public class JedisServiceBatchTest {
+
+    private static FakeRedisServer server;
+    private static JedisPool jedisPool;
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+    }
+
+    @Test
+    public void multiStringOpsChunked()
+            throws Exception {
+        // 每片7条命令, 1000个key被拆为多片, 由3个连接并行执行
+        Set<Thread> existingThreads = pipelineThreads();
+        JedisService jedisService = new JedisService(jedisPool, 0, 7, 3);
+        Map<String, String> kvMap = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            kvMap.put("k" + i, "v" + i);
+        }
+        Assert.assertTrue(jedisService.multiSet(kvMap, 100));
+        List<String> keys = new ArrayList<>(kvMap.keySet());
+        keys.add("missing");
+        Map<String, String> values = jedisService.multiGet(keys);
+        Assert.assertEquals(keys, new ArrayList<>(values.keySet()));
+        Assert.assertEquals("v999", values.get("k999"));
+        Assert.assertNull(values.get("missing"));
+        Assert.assertTrue(values.containsKey("missing"));
+
+        Map<String, Long> ttl = jedisService.multiTtl(Arrays.asList("k0", "missing"));
+        Assert.assertTrue(ttl.get("k0") > 0 && ttl.get("k0") <= 100);
+        Assert.assertEquals(Long.valueOf(-2), ttl.get("missing"));
+        Map<String, Boolean> expired = jedisService.multiExpire(Arrays.asList("k1", "missing"), 10);
+        Assert.assertTrue(expired.get("k1"));
+        Assert.assertFalse(expired.get("missing"));
+        Assert.assertEquals(Long.valueOf(1000), jedisService.multiDelete(keys));
+        Assert.assertNull(jedisService.getValue("k0"));
+
+        // 销毁后并行线程退出
+        Set<Thread> threads = pipelineThreads();
+        threads.removeAll(existingThreads);
+        Assert.assertFalse(threads.isEmpty());
+        jedisService.destroy();
+        for (Thread thread : threads) {
+            thread.join(1000);
+            Assert.assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test
+    public void multiHashAndZSet() {
+        JedisService jedisService = new JedisService(jedisPool, 0, 5);
+        Map<String, Map<String, String>> keyFvMap = new LinkedHashMap<>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, String> fvMap = new HashMap<>();
+            fvMap.put("name", "hero" + i);
+            keyFvMap.put("h" + i, fvMap);
+        }
+        Assert.assertTrue(jedisService.multiHSet(keyFvMap, 60));
+        Map<String, String> names = jedisService.multiHGet(Arrays.asList("h3", "h19", "h20"), "name");
+        Assert.assertEquals("hero3", names.get("h3"));
+        Assert.assertEquals("hero19", names.get("h19"));
+        Assert.assertNull(names.get("h20"));
+        Assert.assertTrue(jedisService.multiTtl(Arrays.asList("h0")).get("h0") > 0);
+
+        Map<String, Double> memberScoreMap = new HashMap<>();
+        for (int i = 0; i < 12; i++) {
+            memberScoreMap.put("m" + i, i * 1.5);
+        }
+        jedisService.zBatchAdd("rank", memberScoreMap);
+        Map<String, Double> scores = jedisService.multiZScore("rank", Arrays.asList("m0", "m11", "none"));
+        Assert.assertEquals(0.0, scores.get("m0"), 0.0);
+        Assert.assertEquals(16.5, scores.get("m11"), 0.0);
+        Assert.assertNull(scores.get("none"));
+    }
+
+    @Test
+    public void oversizedBatchSplitInsteadOfRejected() {
+        JedisService jedisService = new JedisService(jedisPool, 0, 3);
+        List<String> values = Arrays.asList("a", "b", "c", "d", "e", "f", "g");
+        Assert.assertTrue(jedisService.batchTailInsertList("queue", values, null));
+        // 顺序分片, 元素顺序不变
+        Assert.assertEquals(values, jedisService.getList("queue", 0, -1));
+        Map<String, String> kvMap = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            kvMap.put("s" + i, "x");
+        }
+        Assert.assertTrue(jedisService.batchAdd(kvMap));
+        Assert.assertTrue(jedisService.batchSetExpireTime(kvMap.keySet(), 30));
+        Assert.assertEquals(10, jedisService.getProbableExpireTime(kvMap.keySet()).size());
+    }
+
+    private static Set<Thread> pipelineThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("d8-jedis-pipeline-"))
+                .collect(Collectors.toSet());
+    }
+}
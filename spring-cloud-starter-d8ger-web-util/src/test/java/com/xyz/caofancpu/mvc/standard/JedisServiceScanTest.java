@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 基于SCAN系列命令的key及集合遍历
+ *
+ * @author D8GER
+ */
+public class JedisServiceScanTest {
+
+    private static final int KEY_COUNT = 2500;
+
+    private static FakeRedisServer server;
+    private static JedisPool jedisPool;
+    private static JedisService jedisService;
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+        jedisService = new JedisService(jedisPool, 0);
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+        for (int i = 0; i < KEY_COUNT; i++) {
+            server.execute("SET", "scan:" + i, String.valueOf(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            server.execute("SET", "other:" + i, String.valueOf(i));
+        }
+    }
+
+    @Test
+    public void lazyIteration() {
+        long commandCount = server.getCommandCount();
+        Iterator<String> iterator = jedisService.scanKeyIterator("scan:*", 100);
+        Assert.assertEquals(commandCount, server.getCommandCount());
+        Assert.assertTrue(iterator.next().startsWith("scan:"));
+        // 仅加载到第一页非空结果
+        Assert.assertTrue(server.getCommandCount() - commandCount < 10);
+
+        Set<String> keys = new HashSet<>();
+        jedisService.scanKeyIterator("scan:*", 100).forEachRemaining(keys::add);
+        Assert.assertEquals(KEY_COUNT, keys.size());
+        Assert.assertEquals(5, jedisService.scanKeyStream("other:*", 3).limit(5).count());
+        try (Jedis jedis = jedisPool.getResource()) {
+            Assert.assertEquals(jedis.keys("scan:1*"), jedisService.searchByKeyRegex("scan:1*"));
+        }
+    }
+
+    @Test
+    public void batchCallbackAndClear() {
+        List<Integer> batchSizes = new ArrayList<>();
+        long total = jedisService.scanKeys("scan:*", 200, batch -> batchSizes.add(batch.size()));
+        Assert.assertEquals(KEY_COUNT, total);
+        Assert.assertTrue(batchSizes.stream().allMatch(size -> size > 0 && size <= 200));
+
+        // 扫描与删除共用一个连接, 连接池只有一个连接时同样可用
+        JedisPoolConfig singleConfig = new JedisPoolConfig();
+        singleConfig.setMaxTotal(1);
+        singleConfig.setMaxWaitMillis(500L);
+        try (JedisPool singlePool = new JedisPool(singleConfig, server.getHost(), server.getPort(), 2000, null)) {
+            long commandCount = server.getCommandCount();
+            Assert.assertEquals(Long.valueOf(KEY_COUNT), new JedisService(singlePool, 0).clearByKeyRegex("scan:*", 50));
+            // 每页一次SCAN和一次UNLINK
+            Assert.assertTrue(server.getCommandCount() - commandCount <= 2 * (KEY_COUNT / 50 + 1) + 2);
+        }
+        Assert.assertTrue(jedisService.searchByKeyRegex("scan:*").isEmpty());
+        Assert.assertEquals(10, jedisService.searchByKeyRegex("*").size());
+    }
+
+    @Test
+    public void springRedisUtilScan() {
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        try {
+            new SpringRedisUtil(new StringRedisTemplate(connectionFactory));
+            List<Integer> batchSizes = new ArrayList<>();
+            Set<String> keys = new HashSet<>();
+            long total = SpringRedisUtil.scan("scan:*", 300, batch -> {
+                batchSizes.add(batch.size());
+                keys.addAll(batch);
+            });
+            Assert.assertEquals(KEY_COUNT, total);
+            Assert.assertEquals(KEY_COUNT, keys.size());
+            Assert.assertTrue(batchSizes.subList(0, batchSizes.size() - 1).stream().allMatch(size -> size == 300));
+            Assert.assertEquals(keys.stream().filter(key -> key.startsWith("scan:2")).collect(Collectors.toSet()), SpringRedisUtil.keys("scan:2*"));
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    public void collectionScan() {
+        for (int i = 0; i < KEY_COUNT; i += 100) {
+            List<String> hsetArgs = new ArrayList<>(Arrays.asList("HSET", "big:hash"));
+            List<String> saddArgs = new ArrayList<>(Arrays.asList("SADD", "big:set"));
+            List<String> zaddArgs = new ArrayList<>(Arrays.asList("ZADD", "big:zset"));
+            for (int j = i; j < i + 100; j++) {
+                hsetArgs.addAll(Arrays.asList("f" + j, "v" + j));
+                saddArgs.add("m" + j);
+                zaddArgs.addAll(Arrays.asList(String.valueOf(j), "m" + j));
+            }
+            server.execute(hsetArgs.toArray(new String[0]));
+            server.execute(saddArgs.toArray(new String[0]));
+            server.execute(zaddArgs.toArray(new String[0]));
+        }
+        Map<String, String> hash = new HashMap<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        Assert.assertEquals(KEY_COUNT, jedisService.hScan("big:hash", null, 300, batch -> {
+            batchSizes.add(batch.size());
+            batch.forEach(entry -> hash.put(entry.getKey(), entry.getValue()));
+            return true;
+        }));
+        Assert.assertEquals(jedisService.hGetAll("big:hash"), hash);
+        Assert.assertTrue(batchSizes.stream().allMatch(size -> size <= 300));
+
+        // 提前终止后不再请求后续页
+        long commandCount = server.getCommandCount();
+        Assert.assertEquals(200, jedisService.sScan("big:set", null, 200, batch -> false));
+        Assert.assertEquals(commandCount + 1, server.getCommandCount());
+        Assert.assertEquals(jedisService.sGetAllMembers("big:set"), jedisService.sScanStream("big:set", null, 500).collect(Collectors.toSet()));
+        Assert.assertEquals(Arrays.asList("m1", "m10", "m100"), jedisService.sScanStream("big:set", "m1*", 500).sorted().limit(3).collect(Collectors.toList()));
+
+        Map<String, Double> scores = jedisService.zScanStream("big:zset", "m2??", 1000).collect(Collectors.toMap(Tuple::getElement, Tuple::getScore));
+        Assert.assertEquals(100, scores.size());
+        Assert.assertEquals(Double.valueOf(250), scores.get("m250"));
+        Assert.assertFalse(jedisService.hScanIterator("big:missing", null, 10).hasNext());
+    }
+
+    @Test
+    public void parallelCollectionScan() {
+        List<String> keys = new ArrayList<>();
+        for (int k = 0; k < 4; k++) {
+            keys.add("par:set:" + k);
+            for (int i = 0; i < 500; i += 100) {
+                List<String> args = new ArrayList<>(Arrays.asList("SADD", "par:set:" + k));
+                for (int j = i; j < i + 100; j++) {
+                    args.add("m" + j);
+                }
+                server.execute(args.toArray(new String[0]));
+            }
+        }
+        JedisService parallelService = new JedisService(jedisPool, 0, 0, 4);
+        Map<String, Set<String>> members = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        Map<String, Long> counts = parallelService.sScanParallel(keys, null, 50, (key, batch) -> {
+            threads.add(Thread.currentThread().getName());
+            members.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).addAll(batch);
+            return true;
+        });
+        Assert.assertEquals(keys, new ArrayList<>(counts.keySet()));
+        Assert.assertTrue(counts.values().stream().allMatch(count -> count == 500));
+        Assert.assertTrue(members.values().stream().allMatch(set -> set.size() == 500));
+        Assert.assertTrue(threads.stream().allMatch(name -> name.startsWith("d8-jedis-pipeline-")));
+
+        // 任一回调返回false时终止全部遍历
+        Map<String, Long> stopped = parallelService.sScanParallel(keys, null, 50, (key, batch) -> false);
+        Assert.assertTrue(stopped.values().stream().mapToLong(Long::longValue).sum() < 2000);
+    }
+}
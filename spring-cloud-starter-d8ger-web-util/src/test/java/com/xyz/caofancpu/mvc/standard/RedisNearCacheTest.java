@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import com.google.common.collect.Sets;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Redis近端缓存
+ *
+ * @author D8GER
+ */
+public class RedisNearCacheTest {
+
+    private static FakeRedisServer server;
+    private static JedisPool jedisPool;
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+    }
+
+    @Test
+    public void readThroughAndInvalidateOnWrite() {
+        RedisNearCache nearCache = new RedisNearCache().addRegion("dict:", 100, 60000).addRegion("dict:hot:", 100, 60000);
+        JedisService jedisService = new JedisService(jedisPool, 0, 0, 1, nearCache);
+        server.execute("SET", "dict:a", "1");
+        server.execute("HSET", "dict:h", "f1", "v1");
+        server.execute("SET", "other", "x");
+
+        Assert.assertEquals("1", jedisService.getValue("dict:a"));
+        long commandCount = server.getCommandCount();
+        Assert.assertEquals("1", jedisService.getValue("dict:a"));
+        Assert.assertNull(jedisService.getValue("dict:missing"));
+        Assert.assertNull(jedisService.getValue("dict:missing"));
+        Map<String, String> hash = jedisService.hGetAll("dict:h");
+        hash.put("f2", "dirty");
+        Assert.assertEquals(Collections.singletonMap("f1", "v1"), jedisService.hGetAll("dict:h"));
+        Assert.assertEquals("v1", jedisService.hGet("dict:h", "f1"));
+        Assert.assertNull(jedisService.hGet("dict:h", "f2"));
+        // 仅dict:missing与dict:h各访问一次Redis(连接已在0号库, 不再发送SELECT)
+        Assert.assertEquals(commandCount + 2, server.getCommandCount());
+        // 未匹配前缀的key直接透传
+        Assert.assertEquals("x", jedisService.getValue("other"));
+        Assert.assertEquals(commandCount + 3, server.getCommandCount());
+
+        jedisService.setEx("dict:a", "2", null);
+        Assert.assertEquals("2", jedisService.getValue("dict:a"));
+        jedisService.hSetAndExpire("dict:h", "f2", "v2", null);
+        Assert.assertEquals("v2", jedisService.hGet("dict:h", "f2"));
+        jedisService.hDel("dict:h", Sets.newHashSet("f1"));
+        Assert.assertEquals(Collections.singletonMap("f2", "v2"), jedisService.hGetAll("dict:h"));
+        jedisService.deleteKey("dict:a");
+        Assert.assertNull(jedisService.getValue("dict:a"));
+
+        RedisNearCache.NearCacheStats stats = nearCache.stats().get("dict:");
+        Assert.assertEquals(5, stats.getHitCount());
+        Assert.assertEquals(7, stats.getMissCount());
+        // 最长前缀优先
+        jedisService.getValue("dict:hot:a");
+        Assert.assertEquals(1, nearCache.stats().get("dict:hot:").getMissCount());
+    }
+
+    @Test
+    public void evictBySizeAndTtl()
+            throws InterruptedException {
+        RedisNearCache nearCache = new RedisNearCache().addRegion("size:", 2, 60000).addRegion("ttl:", 100, 50);
+        JedisService jedisService = new JedisService(jedisPool, 0, 0, 1, nearCache);
+        for (int i = 0; i < 10; i++) {
+            jedisService.getValue("size:" + i);
+        }
+        RedisNearCache.NearCacheStats stats = nearCache.stats().get("size:");
+        Assert.assertTrue(stats.getSize() <= 2);
+        Assert.assertTrue(stats.getEvictionCount() >= 8);
+
+        server.execute("SET", "ttl:a", "1");
+        Assert.assertEquals("1", jedisService.getValue("ttl:a"));
+        server.execute("SET", "ttl:a", "2");
+        Assert.assertEquals("1", jedisService.getValue("ttl:a"));
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertEquals("2", jedisService.getValue("ttl:a"));
+    }
+
+    @Test
+    public void invalidateByBroadcast()
+            throws InterruptedException {
+        RedisNearCache writerCache = new RedisNearCache().addRegion("dict:", 100, 60000);
+        RedisNearCache readerCache = new RedisNearCache().addRegion("dict:", 100, 60000);
+        try {
+            writerCache.subscribe(jedisPool, "d8ger-near-cache");
+            readerCache.subscribe(jedisPool, "d8ger-near-cache");
+            Assert.assertTrue(await(() -> writerCache.isSubscribed() && readerCache.isSubscribed()));
+            JedisService writer = new JedisService(jedisPool, 0, 0, 1, writerCache);
+            JedisService reader = new JedisService(jedisPool, 0, 0, 1, readerCache);
+
+            writer.setEx("dict:a", "1", null);
+            Assert.assertEquals("1", reader.getValue("dict:a"));
+            writer.setEx("dict:a", "2", null);
+            Assert.assertTrue(await(() -> "2".equals(reader.getValue("dict:a"))));
+        } finally {
+            writerCache.close();
+            readerCache.close();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Redis列表批量队列消费者
+ *
+ * @author D8GER
+ */
+public class RedisQueueConsumerTest {
+
+    private static FakeRedisServer server;
+    private static JedisPool jedisPool;
+    private static JedisService jedisService;
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+        jedisService = new JedisService(jedisPool, 0);
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+    }
+
+    @Test
+    public void batchDrainWithoutIdleSpin()
+            throws Exception {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            messages.add("msg-" + i);
+        }
+        jedisService.batchTailInsertList("queue:batch", messages, null);
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        AtomicReference<RedisQueueConsumer> holder = new AtomicReference<>();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        RedisQueueConsumer.Options options = new RedisQueueConsumer.Options().setBatchSize(100).setMaxInFlight(200);
+        try (RedisQueueConsumer consumer = new RedisQueueConsumer(jedisService, "queue:batch", options, message -> {
+            received.add(message);
+            maxInFlight.accumulateAndGet(holder.get().getInFlightCount(), Math::max);
+        })) {
+            holder.set(consumer);
+            consumer.start();
+            await(() -> consumer.getConsumedCount() == 1000);
+            Assert.assertEquals(new HashSet<>(messages), received);
+            // 积压时一次往返取走一批, 在途消息不超过上限
+            Assert.assertTrue(consumer.getFetchCount() < 100);
+            Assert.assertTrue(maxInFlight.get() <= 200);
+
+            // 空闲时每个阻塞周期只有一次批量脚本和一次BLPOP
+            long commands = server.getCommandCount();
+            TimeUnit.MILLISECONDS.sleep(1500);
+            Assert.assertTrue(server.getCommandCount() - commands <= 6);
+
+            // 阻塞中的拉取被新消息及时唤醒
+            long start = System.currentTimeMillis();
+            jedisService.insertQueue("queue:batch", "late");
+            await(() -> received.contains("late"));
+            Assert.assertTrue(System.currentTimeMillis() - start < 500);
+        }
+    }
+
+    @Test
+    public void reliableAckRequeueAndRecover()
+            throws Exception {
+        // 上次进程崩溃遗留在处理中列表的消息
+        jedisService.insertQueue("queue:reliable:processing", "left");
+        jedisService.batchTailInsertList("queue:reliable", Arrays.asList("a", "flaky", "b"), null);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger flakyAttempts = new AtomicInteger();
+        RedisQueueConsumer.Options options = new RedisQueueConsumer.Options().setReliable(true).setBatchSize(10);
+        try (RedisQueueConsumer consumer = new RedisQueueConsumer(jedisService, "queue:reliable", options, message -> {
+            if ("flaky".equals(message) && flakyAttempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("first attempt fails");
+            }
+            handled.add(message);
+        })) {
+            Assert.assertEquals("queue:reliable:processing", consumer.getProcessingKey());
+            consumer.start();
+            await(() -> handled.size() == 4);
+            Assert.assertEquals(new HashSet<>(Arrays.asList("left", "a", "flaky", "b")), new HashSet<>(handled));
+            Assert.assertEquals(2, flakyAttempts.get());
+            Assert.assertEquals(1L, consumer.getFailedCount());
+            await(() -> jedisService.getQueueCount("queue:reliable:processing") == 0);
+            Assert.assertEquals(0L, (long) jedisService.getQueueCount("queue:reliable"));
+        }
+    }
+
+    @Test
+    public void deadLetter()
+            throws Exception {
+        jedisService.batchTailInsertList("queue:dlq", Arrays.asList("ok", "poison"), null);
+        RedisQueueConsumer.Options options = new RedisQueueConsumer.Options().setReliable(true).setDeadLetterKey("queue:dlq:dead");
+        try (RedisQueueConsumer consumer = new RedisQueueConsumer(jedisService, "queue:dlq", options, message -> {
+            if ("poison".equals(message)) {
+                throw new IllegalArgumentException("cannot handle");
+            }
+        })) {
+            consumer.start();
+            await(() -> consumer.getConsumedCount() == 1 && consumer.getFailedCount() == 1 && consumer.getInFlightCount() == 0);
+            Assert.assertEquals(Collections.singletonList("poison"), jedisService.getList("queue:dlq:dead", 0, -1));
+            Assert.assertEquals(0L, (long) jedisService.getQueueCount("queue:dlq:processing"));
+        }
+    }
+
+    @Test
+    public void blockingMoveTakesHeadAfterWakeUp()
+            throws Exception {
+        // 阻塞期间一次写入多条, 唤醒后与有积压时一样从头部按序移动
+        Thread producer = new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            server.execute("RPUSH", "queue:order", "m1", "m2", "m3");
+        });
+        producer.start();
+        List<String> moved = jedisService.blockingBatchMove("queue:order", "queue:order:processing", 2, 2);
+        producer.join();
+        Assert.assertEquals(Arrays.asList("m1", "m2"), moved);
+        Assert.assertEquals(Collections.singletonList("m3"), jedisService.getList("queue:order", 0, -1));
+        Assert.assertEquals(2L, (long) jedisService.getQueueCount("queue:order:processing"));
+    }
+
+    private static void await(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
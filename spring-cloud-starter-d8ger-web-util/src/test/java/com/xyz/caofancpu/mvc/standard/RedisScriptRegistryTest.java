@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.Collections;
+
+/**
+ * Lua脚本注册表及内置原子操作
+ *
+ * @author D8GER
+ */
+public class RedisScriptRegistryTest {
+
+    private static FakeRedisServer server;
+    private static JedisPool jedisPool;
+    private static JedisService jedisService;
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+        jedisService = new JedisService(jedisPool, 0);
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+        server.execute("SCRIPT", "FLUSH");
+    }
+
+    @Test
+    public void evalShaFallback() {
+        // 首次EVALSHA返回NOSCRIPT, 回退EVAL并载入
+        long before = server.getCommandCount();
+        Assert.assertTrue(jedisService.hSetAndExpire("script:h", "f1", "v1", 60));
+        Assert.assertEquals(2, server.getCommandCount() - before);
+        // 已载入后一次往返
+        before = server.getCommandCount();
+        Assert.assertTrue(jedisService.hMultiSetAndExpire("script:h", ImmutableMap.of("f2", "v2", "f3", "v3"), 60));
+        Assert.assertEquals(1, server.getCommandCount() - before);
+        Assert.assertEquals(ImmutableMap.of("f1", "v1", "f2", "v2", "f3", "v3"), jedisService.hGetAll("script:h"));
+        Assert.assertTrue((Long) server.execute("TTL", "script:h") > 0);
+        jedisService.hSetAndExpire("script:persist", "f", "v", null);
+        Assert.assertEquals(-1L, server.execute("TTL", "script:persist"));
+
+        // 自定义脚本
+        jedisService.getScriptRegistry().register("ping", "return 'PONG'");
+        server.registerScript("return 'PONG'", (keys, args) -> "PONG");
+        Assert.assertEquals("PONG", jedisService.evalScript("ping", Collections.emptyList(), Collections.emptyList()));
+        try {
+            jedisService.evalScript("missing", Collections.emptyList(), Collections.emptyList());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 未注册
+        }
+
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        try {
+            new SpringRedisUtil(new StringRedisTemplate(connectionFactory));
+            SpringRedisUtil.hset("script:spring", "f", "v", 60);
+            Assert.assertEquals("v", server.execute("HGET", "script:spring", "f"));
+            Assert.assertTrue((Long) server.execute("TTL", "script:spring") > 0);
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    public void lockPrimitives() {
+        Assert.assertTrue(jedisService.setNx("script:lock", "owner-1", 30));
+        Assert.assertFalse(jedisService.setNx("script:lock", "owner-2", 30));
+        Assert.assertTrue((Long) server.execute("TTL", "script:lock") > 0);
+        Assert.assertFalse(jedisService.compareAndDelete("script:lock", "owner-2"));
+        Assert.assertEquals("owner-1", jedisService.getValue("script:lock"));
+        Assert.assertTrue(jedisService.compareAndDelete("script:lock", "owner-1"));
+        Assert.assertFalse(jedisService.isExist("script:lock"));
+    }
+
+    @Test
+    public void rateLimiters() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(jedisService.tryAcquireSlidingWindow("script:window", 60_000L, 3));
+        }
+        Assert.assertFalse(jedisService.tryAcquireSlidingWindow("script:window", 60_000L, 3));
+        Assert.assertEquals(3L, server.execute("ZCARD", "script:window"));
+
+        Assert.assertTrue(jedisService.tryAcquireTokenBucket("script:bucket", 2, 1D, 1));
+        Assert.assertTrue(jedisService.tryAcquireTokenBucket("script:bucket", 2, 1D, 1));
+        Assert.assertFalse(jedisService.tryAcquireTokenBucket("script:bucket", 2, 1D, 1));
+        // 上次补充时间回拨1秒, 模拟经过1秒补充1个令牌
+        long ts = Long.parseLong((String) server.execute("HGET", "script:bucket", "ts"));
+        server.execute("HSET", "script:bucket", "ts", String.valueOf(ts - 1000));
+        Assert.assertTrue(jedisService.tryAcquireTokenBucket("script:bucket", 2, 1D, 1));
+        Assert.assertFalse(jedisService.tryAcquireTokenBucket("script:bucket", 2, 1D, 1));
+        Assert.assertFalse(jedisService.tryAcquireTokenBucket("script:bucket", 2, 1D, 3));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard;
+
+import com.alibaba.fastjson.TypeReference;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存旁路加载防击穿
+ *
+ * @author D8GER
+ */
+public class SpringRedisUtilLoadTest {
+
+    private static final TypeReference<List<String>> LIST_TYPE = new TypeReference<List<String>>() {
+    };
+
+    private static FakeRedisServer server;
+    private static JedisConnectionFactory connectionFactory;
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+        connectionFactory.afterPropertiesSet();
+        new SpringRedisUtil(new StringRedisTemplate(connectionFactory));
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        connectionFactory.destroy();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad()
+            throws Exception {
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return SpringRedisUtil.getOrLoad("hero:list", 60, LIST_TYPE, () -> {
+                        loadCount.incrementAndGet();
+                        sleep(200);
+                        return Arrays.asList("D8GER", "NEO");
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<List<String>> future : futures) {
+                Assert.assertEquals(Arrays.asList("D8GER", "NEO"), future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, loadCount.get());
+        // 命中缓存, 不再加载
+        Assert.assertEquals(Arrays.asList("D8GER", "NEO"), SpringRedisUtil.getOrLoad("hero:list", 60, LIST_TYPE, () -> {
+            throw new IllegalStateException("should hit cache");
+        }));
+    }
+
+    @Test
+    public void negativeCachingAndEarlyRefresh() {
+        AtomicInteger loadCount = new AtomicInteger();
+        SpringRedisUtil.LoadPolicy nullPolicy = new SpringRedisUtil.LoadPolicy().setNullExpire(30);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertNull(SpringRedisUtil.getOrLoad("hero:missing", LIST_TYPE, () -> {
+                loadCount.incrementAndGet();
+                return null;
+            }, nullPolicy));
+        }
+        Assert.assertEquals(1, loadCount.get());
+
+        // 关闭提前刷新时命中即返回
+        SpringRedisUtil.LoadPolicy noRefresh = new SpringRedisUtil.LoadPolicy().setEarlyRefreshBeta(0);
+        SpringRedisUtil.getOrLoad("hero:refresh", LIST_TYPE, () -> Arrays.asList("v" + loadCount.incrementAndGet()), noRefresh);
+        Assert.assertEquals(Arrays.asList("v2"), SpringRedisUtil.getOrLoad("hero:refresh", LIST_TYPE, () -> Arrays.asList("v" + loadCount.incrementAndGet()), noRefresh));
+        // 系数极大时每次命中都提前刷新, 返回刷新后的值
+        SpringRedisUtil.LoadPolicy eagerRefresh = new SpringRedisUtil.LoadPolicy().setEarlyRefreshBeta(1e12);
+        Assert.assertEquals(Arrays.asList("v3"), SpringRedisUtil.getOrLoad("hero:refresh", LIST_TYPE, () -> Arrays.asList("v" + loadCount.incrementAndGet()), eagerRefresh));
+        Assert.assertEquals(Arrays.asList("v3"), SpringRedisUtil.getOrLoad("hero:refresh", LIST_TYPE, () -> Arrays.asList("v" + loadCount.get()), noRefresh));
+    }
+
+    @Test
+    public void distributedLockWaitsForOtherNode()
+            throws Exception {
+        SpringRedisUtil.LoadPolicy lockPolicy = new SpringRedisUtil.LoadPolicy().setDistributedLock(true).setLockWaitMillis(2000);
+        // 模拟其他节点持有加载锁, 稍后写入缓存
+        server.execute("SET", "hero:lock:load-lock", "other-node", "PX", "5000");
+        Thread otherNode = new Thread(() -> {
+            sleep(200);
+            server.execute("SET", "hero:lock", "{\"v\":[\"other\"],\"d\":10,\"e\":" + (System.currentTimeMillis() + 60000) + "}");
+        });
+        otherNode.start();
+        Assert.assertEquals(Arrays.asList("other"), SpringRedisUtil.getOrLoad("hero:lock", LIST_TYPE, () -> {
+            throw new IllegalStateException("should wait for other node");
+        }, lockPolicy));
+        otherNode.join();
+
+        // 持锁加载后释放锁
+        Assert.assertEquals(Arrays.asList("self"), SpringRedisUtil.getOrLoad("hero:self", LIST_TYPE, () -> Arrays.asList("self"), lockPolicy));
+        Assert.assertNull(server.execute("GET", "hero:self:load-lock"));
+    }
+
+    @Test
+    public void earlyRefreshKeepsStaleValue() {
+        SpringRedisUtil.LoadPolicy eagerRefresh = new SpringRedisUtil.LoadPolicy().setEarlyRefreshBeta(1e12);
+        SpringRedisUtil.getOrLoad("hero:stale", LIST_TYPE, () -> Arrays.asList("old"), eagerRefresh);
+        // 刷新结果为null且不缓存空值时返回旧值, 缓存保持不变
+        Assert.assertEquals(Arrays.asList("old"), SpringRedisUtil.getOrLoad("hero:stale", LIST_TYPE, () -> null, eagerRefresh));
+        Assert.assertEquals(Arrays.asList("old"), SpringRedisUtil.getOrLoad("hero:stale", LIST_TYPE, () -> null, eagerRefresh));
+
+        // 其他节点持有加载锁时不刷新, 直接返回旧值
+        SpringRedisUtil.LoadPolicy lockRefresh = new SpringRedisUtil.LoadPolicy().setEarlyRefreshBeta(1e12).setDistributedLock(true);
+        server.execute("SET", "hero:stale:load-lock", "other-node", "PX", "5000");
+        AtomicInteger loadCount = new AtomicInteger();
+        Assert.assertEquals(Arrays.asList("old"), SpringRedisUtil.getOrLoad("hero:stale", LIST_TYPE, () -> {
+            loadCount.incrementAndGet();
+            return Arrays.asList("new");
+        }, lockRefresh));
+        Assert.assertEquals(0, loadCount.get());
+        server.execute("DEL", "hero:stale:load-lock");
+        Assert.assertEquals(Arrays.asList("new"), SpringRedisUtil.getOrLoad("hero:stale", LIST_TYPE, () -> Arrays.asList("new"), lockRefresh));
+        Assert.assertNull(server.execute("GET", "hero:stale:load-lock"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编解码耗时基准: fastjson文本 vs 紧凑二进制, 及叠加LZ4/Deflate压缩
+ * 非单元测试, 直接运行main方法, 运行前先打印各编码结果大小
+ *
+ * @author D8GER
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RedisValueCodecBenchmark {
+
+    @Param({"json", "binary", "binary+lz4", "json+deflate"})
+    private String codecName;
+
+    private RedisValueCodec codec;
+    private List<RedisValueCodecTest.CodecHero> heroes;
+    private byte[] encoded;
+
+    public static void main(String[] args)
+            throws Exception {
+        List<RedisValueCodecTest.CodecHero> heroes = RedisValueCodecTest.heroes(200);
+        for (Map.Entry<String, RedisValueCodec> entry : codecs().entrySet()) {
+            System.out.printf("%-14s %8d bytes%n", entry.getKey(), entry.getValue().encode(heroes).length);
+        }
+        new Runner(new OptionsBuilder().include(RedisValueCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static Map<String, RedisValueCodec> codecs() {
+        Map<String, RedisValueCodec> codecs = new LinkedHashMap<>();
+        codecs.put("json", JsonRedisValueCodec.INSTANCE);
+        codecs.put("binary", BinaryRedisValueCodec.INSTANCE);
+        codecs.put("binary+lz4", new CompressedRedisValueCodec(BinaryRedisValueCodec.INSTANCE, CompressedRedisValueCodec.Compression.LZ4));
+        codecs.put("json+deflate", new CompressedRedisValueCodec(JsonRedisValueCodec.INSTANCE, CompressedRedisValueCodec.Compression.DEFLATE));
+        return codecs;
+    }
+
+    @Setup
+    public void setup() {
+        codec = codecs().get(codecName);
+        heroes = RedisValueCodecTest.heroes(200);
+        encoded = codec.encode(heroes);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(heroes);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return codec.decode(encoded, RedisValueCodecTest.HERO_LIST_TYPE);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.codec;
+
+import com.alibaba.fastjson.TypeReference;
+import com.xyz.caofancpu.mvc.standard.FakeRedisServer;
+import com.xyz.caofancpu.mvc.standard.JedisService;
+import com.xyz.caofancpu.mvc.standard.SpringRedisUtil;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis值编解码
+ *
+ * @author D8GER
+ */
+public class RedisValueCodecTest {
+
+    static final Type HERO_LIST_TYPE = new TypeReference<List<CodecHero>>() {
+    }.getType();
+
+    private static final List<RedisValueCodec> CODECS = Arrays.asList(
+            JsonRedisValueCodec.INSTANCE,
+            BinaryRedisValueCodec.INSTANCE,
+            new CompressedRedisValueCodec(BinaryRedisValueCodec.INSTANCE, CompressedRedisValueCodec.Compression.LZ4, 64),
+            new CompressedRedisValueCodec(JsonRedisValueCodec.INSTANCE, CompressedRedisValueCodec.Compression.DEFLATE, 64)
+    );
+
+    static List<CodecHero> heroes(int size) {
+        List<CodecHero> heroes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, Integer> skills = new LinkedHashMap<>();
+            skills.put("Q", i);
+            skills.put("R", -i * 1000);
+            heroes.add(new CodecHero().setId(i * 100_000_007L).setName("英雄" + i).setLevel(i % 18)
+                    .setScore(i + 0.25D).setMoney(new BigDecimal("12.50").add(BigDecimal.valueOf(i)))
+                    .setBirth(new Date(1_600_000_000_000L + i)).setRole(CodecRole.values()[i % 2])
+                    .setTags(Arrays.asList("top", "tank")).setSkills(skills).setAlive(i % 3 == 0));
+        }
+        return heroes;
+    }
+
+    @Test
+    public void roundTrip() {
+        List<CodecHero> heroes = heroes(50);
+        heroes.get(1).setName(null).setTags(Collections.emptyList());
+        for (RedisValueCodec codec : CODECS) {
+            String name = codec.getClass().getSimpleName();
+            Assert.assertEquals(name, heroes, codec.decode(codec.encode(heroes), HERO_LIST_TYPE));
+            Assert.assertEquals(name, "D8GER", codec.decode(codec.encode("D8GER"), String.class));
+            Assert.assertEquals(name, Long.MIN_VALUE, (long) codec.decode(codec.encode(Long.MIN_VALUE), Long.class));
+            Assert.assertNull(name, codec.decode(codec.encode(null), CodecHero.class));
+        }
+        int jsonSize = JsonRedisValueCodec.INSTANCE.encode(heroes).length;
+        int binarySize = BinaryRedisValueCodec.INSTANCE.encode(heroes).length;
+        Assert.assertTrue(binarySize + " < " + jsonSize, binarySize < jsonSize * 0.7);
+    }
+
+    @Test
+    public void compressionThreshold()
+            throws Exception {
+        CompressedRedisValueCodec codec = new CompressedRedisValueCodec(BinaryRedisValueCodec.INSTANCE, CompressedRedisValueCodec.Compression.LZ4, 1024);
+        byte[] small = codec.encode("D8GER");
+        Assert.assertEquals(0, small[0]);
+        byte[] raw = BinaryRedisValueCodec.INSTANCE.encode(heroes(200));
+        byte[] compressed = codec.encode(heroes(200));
+        Assert.assertEquals(2, compressed[0]);
+        Assert.assertTrue(compressed.length < raw.length);
+        // 与标准LZ4块格式兼容
+        byte[] lz4 = Lz4Block.compress(raw);
+        Assert.assertArrayEquals(raw, IOUtils.toByteArray(new BlockLZ4CompressorInputStream(new ByteArrayInputStream(lz4))));
+        byte[] repeated = new byte[4096];
+        Arrays.fill(repeated, (byte) 'x');
+        Assert.assertArrayEquals(repeated, Lz4Block.decompress(Lz4Block.compress(repeated), 0, repeated.length));
+        try {
+            BinaryRedisValueCodec.INSTANCE.decode(Arrays.copyOf(raw, raw.length / 2), HERO_LIST_TYPE);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 数据截断
+        }
+    }
+
+    @Test
+    public void redisUtilities()
+            throws Exception {
+        RedisValueCodec codec = CODECS.get(2);
+        List<CodecHero> heroes = heroes(100);
+        try (FakeRedisServer server = new FakeRedisServer();
+             JedisPool jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null)) {
+            JedisService jedisService = new JedisService(jedisPool, 0);
+            Assert.assertTrue(jedisService.setObject("hero:list", heroes, 60, codec));
+            Assert.assertEquals(heroes, jedisService.getObject("hero:list", HERO_LIST_TYPE, codec));
+            Assert.assertNull(jedisService.getObject("hero:missing", HERO_LIST_TYPE, codec));
+            jedisService.hSetObject("hero:hash", "first", heroes.get(0), codec);
+            Assert.assertEquals(heroes.get(0), jedisService.hGetObject("hero:hash", "first", CodecHero.class, codec));
+            Map<String, List<CodecHero>> values = jedisService.multiGetObject(Arrays.asList("hero:list", "hero:missing"), HERO_LIST_TYPE, codec);
+            Assert.assertEquals(heroes, values.get("hero:list"));
+            Assert.assertNull(values.get("hero:missing"));
+
+            JedisConnectionFactory connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(server.getHost(), server.getPort()));
+            connectionFactory.afterPropertiesSet();
+            try {
+                new SpringRedisUtil(new StringRedisTemplate(connectionFactory));
+                TypeReference<List<CodecHero>> typeReference = new TypeReference<List<CodecHero>>() {
+                };
+                Assert.assertEquals(heroes, SpringRedisUtil.get("hero:list", typeReference, codec));
+                SpringRedisUtil.set("hero:spring", heroes, SpringRedisUtil.NOT_EXPIRE, codec);
+                Assert.assertEquals(heroes, jedisService.getObject("hero:spring", HERO_LIST_TYPE, codec));
+                SpringRedisUtil.hset("hero:hash", "second", heroes.get(1), codec);
+                Assert.assertEquals(heroes.get(1), SpringRedisUtil.hget("hero:hash", "second", new TypeReference<CodecHero>() {
+                }, codec));
+            } finally {
+                connectionFactory.destroy();
+            }
+        }
+    }
+
+    public enum CodecRole {
+        TANK, MAGE
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class CodecHero {
+        private Long id;
+        private String name;
+        private int level;
+        private double score;
+        private BigDecimal money;
+        private Date birth;
+        private CodecRole role;
+        private List<String> tags;
+        private Map<String, Integer> skills;
+        private boolean alive;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.logger.metrics.MQMetricsRegistry;
+import com.xyz.caofancpu.logger.metrics.MQMetricsSnapshot;
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * MQ批量消费
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class AbstractD8MQConcurrentlyListenerTest {
+
+    private final MQProperties mqProperties = new MQProperties().setConsumerRetryTimesWhenHandleFailed(2);
+    private TestListener listener;
+    private RecordingConsumerListener orderListener;
+    private RecordingConsumerListener userListener;
+
+    @Before
+    public void setUp() {
+        listener = new TestListener(mqProperties);
+        orderListener = new RecordingConsumerListener();
+        userListener = new RecordingConsumerListener();
+        listener.mqConsumerListenerMap.put("ORDER", orderListener);
+        listener.mqConsumerListenerMap.put("USER", userListener);
+    }
+
+    @Test
+    public void batchGroupedByLogicTopic() {
+        List<MessageExt> batch = Arrays.asList(message("ORDER", "o1"), message("USER", "u1"), message("ORDER", "o2"), message("USER", "u2"));
+        ConsumeConcurrentlyContext context = context();
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(batch, context));
+        // 每个逻辑主题一次批量回调
+        Assert.assertEquals(1, orderListener.batches.size());
+        Assert.assertEquals(Arrays.asList("o1", "o2"), orderListener.consumedKeys);
+        Assert.assertEquals(Arrays.asList("u1", "u2"), userListener.consumedKeys);
+        Assert.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+    }
+
+    @Test
+    public void partialFailureAcksPrefix() {
+        userListener.failingKey = "u2";
+        List<MessageExt> batch = Arrays.asList(message("ORDER", "o1"), message("USER", "u1"), message("ORDER", "o2"), message("USER", "u2"), message("ORDER", "o3"));
+        ConsumeConcurrentlyContext context = context();
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(batch, context));
+        // u2及其后的消息重新投递
+        Assert.assertEquals(2, context.getAckIndex());
+        Assert.assertEquals(Arrays.asList("o1", "o2", "o3"), orderListener.consumedKeys);
+
+        userListener.failingKey = "u1";
+        Assert.assertEquals(ConsumeConcurrentlyStatus.RECONSUME_LATER, listener.consumeMessage(Arrays.asList(message("USER", "u1"), message("ORDER", "o4")), context()));
+    }
+
+    @Test
+    public void retryExhaustedGoesToFailedCallback() {
+        orderListener.failingKey = "o2";
+        MessageExt exhausted = message("ORDER", "o2");
+        exhausted.setReconsumeTimes(3);
+        ConsumeConcurrentlyContext context = context();
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(Arrays.asList(message("ORDER", "o1"), exhausted, message("ORDER", "o3")), context));
+        Assert.assertEquals(Integer.MAX_VALUE, context.getAckIndex());
+        Assert.assertEquals(Arrays.asList("o1", "o3"), orderListener.consumedKeys);
+        Assert.assertEquals(Arrays.asList("o2"), orderListener.failedKeys);
+
+        // 缺少监听器的主题全部重新投递
+        Assert.assertEquals(ConsumeConcurrentlyStatus.RECONSUME_LATER, listener.consumeMessage(Arrays.asList(message("UNKNOWN", "x1")), context()));
+    }
+
+    @Test
+    public void metricsPerTopicAndTag() {
+        RecordingConsumerListener metricListener = new RecordingConsumerListener();
+        listener.mqConsumerListenerMap.put("METRIC", metricListener);
+        metricListener.failingKey = "m3";
+        MessageExt retried = message("METRIC", "m2");
+        retried.setReconsumeTimes(1);
+        MessageExt other = message("METRIC", "m4");
+        other.setTags("B");
+        List<MessageExt> batch = Arrays.asList(message("METRIC", "m1"), retried, message("METRIC", "m3"), other);
+        batch.forEach(msg -> msg.setBornTimestamp(System.currentTimeMillis() - 50));
+        listener.consumeMessage(batch, context());
+
+        MQMetricsSnapshot tagA = snapshot("METRIC", "A");
+        Assert.assertEquals(3, tagA.getConsumeCount());
+        Assert.assertEquals(1, tagA.getConsumeFailedCount());
+        Assert.assertEquals(1, tagA.getReconsumeCount());
+        Assert.assertEquals(0, tagA.getConsumeInFlight());
+        Assert.assertTrue(tagA.getEndToEndP50Nanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+        // 首条失败之后未处理的消息不计入
+        MQMetricsSnapshot tagB = snapshot("METRIC", "B");
+        Assert.assertEquals(0, tagB.getConsumeCount());
+        Assert.assertEquals(0, tagB.getConsumeInFlight());
+    }
+
+    private static MQMetricsSnapshot snapshot(String topic, String tag) {
+        return MQMetricsRegistry.getDefault().snapshots().stream()
+                .filter(snapshot -> snapshot.getTopic().equals(topic) && snapshot.getTag().equals(tag))
+                .findFirst().orElseThrow(IllegalStateException::new);
+    }
+
+    private MessageExt message(String logicTopic, String key) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(mqProperties.wrapperTopic(logicTopic));
+        messageExt.setKeys(key);
+        messageExt.setTags("A");
+        messageExt.setMsgId("ID-" + key);
+        messageExt.setBody(key.getBytes());
+        return messageExt;
+    }
+
+    private static ConsumeConcurrentlyContext context() {
+        return new ConsumeConcurrentlyContext(new MessageQueue("D8MqEnv_ORDER", "broker-a", 0));
+    }
+
+    private static class TestListener extends AbstractD8MQConcurrentlyListener {
+        private TestListener(MQProperties mqProperties) {
+            this.mqProperties = mqProperties;
+            init();
+        }
+
+        @Override
+        public void init() {
+            this.MQ_LOG = log;
+        }
+    }
+
+    /**
+     * 逐条处理, 按key模拟失败
+     */
+    private static class RecordingConsumerListener implements D8MQConsumerListener {
+        private final List<List<String>> batches = new ArrayList<>();
+        private final List<String> consumedKeys = new ArrayList<>();
+        private final List<String> failedKeys = new ArrayList<>();
+        private String failingKey;
+
+        @Override
+        public int consumeMessages(List<MessageExt> messageExtList)
+                throws Exception {
+            batches.add(messageExtList.stream().map(MessageExt::getKeys).collect(Collectors.toList()));
+            return D8MQConsumerListener.super.consumeMessages(messageExtList);
+        }
+
+        @Override
+        public void consumeMessage(MessageExt messageExt) {
+            if (messageExt.getKeys().equals(failingKey)) {
+                throw new IllegalStateException("failed: " + failingKey);
+            }
+            consumedKeys.add(messageExt.getKeys());
+        }
+
+        @Override
+        public void consumeFailed(MessageExt messageExt) {
+            failedKeys.add(messageExt.getKeys());
+        }
+    }
+}
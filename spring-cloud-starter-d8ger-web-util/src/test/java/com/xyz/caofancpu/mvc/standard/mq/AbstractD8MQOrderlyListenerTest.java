@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按key有序发送与有序消费
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class AbstractD8MQOrderlyListenerTest {
+
+    private final MQProperties mqProperties = new MQProperties().setConsumerRetryTimesWhenHandleFailed(2).setConsumerOrderlySuspendMillis(200);
+
+    @Test
+    public void keyHashSelector() {
+        List<MessageQueue> mqs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            mqs.add(new MessageQueue("D8MqEnv_ORDER", "broker-a", i));
+        }
+        KeyHashQueueSelector selector = new KeyHashQueueSelector();
+        Set<Integer> usedQueues = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            String key = "ORDER-" + i;
+            MessageQueue first = selector.select(mqs, new Message("D8MqEnv_ORDER", "TAG", key, new byte[0]), null);
+            // 同一key总是选中同一队列
+            Assert.assertSame(first, selector.select(mqs, new Message("D8MqEnv_ORDER", "TAG", key, new byte[0]), null));
+            usedQueues.add(first.getQueueId());
+        }
+        Assert.assertEquals(8, usedQueues.size());
+        Assert.assertEquals(0, KeyHashQueueSelector.indexFor(null, 8));
+    }
+
+    @Test
+    public void failureSuspendsQueue() {
+        TestListener listener = new TestListener(mqProperties);
+        RecordingConsumerListener orderListener = new RecordingConsumerListener();
+        listener.mqConsumerListenerMap.put("ORDER", orderListener);
+
+        orderListener.failingKey = "o2";
+        ConsumeOrderlyContext context = context();
+        Assert.assertEquals(ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT,
+                listener.consumeMessage(Arrays.asList(message("o1"), message("o2"), message("o3")), context));
+        Assert.assertEquals(200, context.getSuspendCurrentQueueTimeMillis());
+        // 不越过失败消息
+        Assert.assertEquals(Arrays.asList("o1"), orderListener.consumedKeys);
+
+        // 超过重试次数交由失败回调, 继续后续消息
+        MessageExt exhausted = message("o2");
+        exhausted.setReconsumeTimes(3);
+        Assert.assertEquals(ConsumeOrderlyStatus.SUCCESS, listener.consumeMessage(Arrays.asList(exhausted, message("o3")), context()));
+        Assert.assertEquals(Arrays.asList("o1", "o3"), orderListener.consumedKeys);
+        Assert.assertEquals(Arrays.asList("o2"), orderListener.failedKeys);
+
+        orderListener.failingKey = null;
+        Assert.assertEquals(ConsumeOrderlyStatus.SUCCESS, listener.consumeMessage(Arrays.asList(message("o4"), message("o5")), context()));
+        Assert.assertEquals(Arrays.asList("o1", "o3", "o4", "o5"), orderListener.consumedKeys);
+    }
+
+    private MessageExt message(String key) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(mqProperties.wrapperTopic("ORDER"));
+        messageExt.setKeys(key);
+        messageExt.setMsgId("ID-" + key);
+        messageExt.setBody(key.getBytes());
+        return messageExt;
+    }
+
+    private static ConsumeOrderlyContext context() {
+        return new ConsumeOrderlyContext(new MessageQueue("D8MqEnv_ORDER", "broker-a", 0));
+    }
+
+    private static class TestListener extends AbstractD8MQOrderlyListener {
+        private TestListener(MQProperties mqProperties) {
+            this.mqProperties = mqProperties;
+            init();
+        }
+
+        @Override
+        public void init() {
+            this.MQ_LOG = log;
+        }
+    }
+
+    /**
+     * 逐条处理, 按key模拟失败
+     */
+    private static class RecordingConsumerListener implements D8MQConsumerListener {
+        private final List<String> consumedKeys = new ArrayList<>();
+        private final List<String> failedKeys = new ArrayList<>();
+        private String failingKey;
+
+        @Override
+        public void consumeMessage(MessageExt messageExt) {
+            if (messageExt.getKeys().equals(failingKey)) {
+                throw new IllegalStateException("failed: " + failingKey);
+            }
+            consumedKeys.add(messageExt.getKeys());
+        }
+
+        @Override
+        public void consumeFailed(MessageExt messageExt) {
+            failedKeys.add(messageExt.getKeys());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.google.common.collect.ImmutableMap;
+import com.xyz.caofancpu.core.JSONUtil;
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单机MQ吞吐量基准, 基于进程内Broker: 生产者发送、经由AbstractD8MQConcurrentlyListener的消费分发、消息体序列化
+ * 非单元测试, 直接运行main方法
+ *
+ * @author D8GER
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class D8MQBenchmark {
+
+    private static final int DISPATCH_MESSAGES = 1000;
+
+    private final MQProperties mqProperties = new MQProperties()
+            .setConsumerTopicTagMap(ImmutableMap.of("BENCH_DISPATCH", "*"))
+            .setConsumerMaxThreads(8)
+            .setConsumerMessageBatchMaxSize(32);
+    private final CountingConsumerListener countingListener = new CountingConsumerListener();
+    private InMemoryMQBroker broker;
+    private D8MQProducerTransport rawTransport;
+    private D8BaseProducer producer;
+    private D8BaseConsumer consumer;
+    private D8BaseMessage<Payload> sendMessage;
+    private Payload payload;
+    private byte[] body;
+
+    public static void main(String[] args)
+            throws Exception {
+        new Runner(new OptionsBuilder().include(D8MQBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @Setup
+    public void setup()
+            throws Exception {
+        // 发送主题无订阅者, 限制积压防止内存持续增长
+        broker = new InMemoryMQBroker(new InMemoryMQBroker.Options().setMaxQueueMessages(10_000));
+        rawTransport = broker.producerTransport();
+        BenchListener listener = new BenchListener(mqProperties);
+        listener.mqConsumerListenerMap.put("BENCH_DISPATCH", countingListener);
+        consumer = new D8BaseConsumer(mqProperties, listener, broker.consumerTransport(mqProperties));
+        consumer.init();
+        producer = new D8BaseProducer(mqProperties, null, broker.producerTransport());
+        producer.init();
+        payload = new Payload().setId(10086L).setName("D8GER").setAmount(new BigDecimal("99.95"))
+                .setCreateTime(new Date()).setTags(Arrays.asList("top", "mid", "jungle"));
+        sendMessage = new D8BaseMessage<Payload>().setTopic("BENCH_SEND").setTag("A").setKey("D8GER").setData(payload);
+        body = JSONUtil.toJSONStringWithDateFormat(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        producer.destroy();
+        consumer.destroy();
+        broker.close();
+    }
+
+    /**
+     * 生产者同步发送, 含消息体序列化及统计
+     */
+    @Benchmark
+    public void producerSend() {
+        producer.sendMsgSyn(sendMessage);
+    }
+
+    /**
+     * 消费分发: 直接写入Broker后等待监听器全部处理完成, 不含生产者开销
+     */
+    @Benchmark
+    @OperationsPerInvocation(DISPATCH_MESSAGES)
+    public void consumerDispatch()
+            throws Exception {
+        CountDownLatch latch = new CountDownLatch(DISPATCH_MESSAGES);
+        countingListener.latch = latch;
+        String topic = mqProperties.wrapperTopic("BENCH_DISPATCH");
+        for (int i = 0; i < DISPATCH_MESSAGES; i++) {
+            rawTransport.send(new Message(topic, "A", "D8GER", body), mqProperties.getProducerSynTimeOutMillis());
+        }
+        latch.await();
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return JSONUtil.toJSONStringWithDateFormat(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Payload deserialize() {
+        return JSONUtil.deserializeJSON(new String(body, StandardCharsets.UTF_8), Payload.class);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @Accessors(chain = true)
+    public static class Payload implements Serializable {
+        private Long id;
+        private String name;
+        private BigDecimal amount;
+        private Date createTime;
+        private List<String> tags;
+    }
+
+    @Slf4j
+    private static class BenchListener extends AbstractD8MQConcurrentlyListener {
+        private BenchListener(MQProperties mqProperties) {
+            this.mqProperties = mqProperties;
+            init();
+        }
+
+        @Override
+        public void init() {
+            this.MQ_LOG = log;
+        }
+    }
+
+    /**
+     * 反序列化消息体后计数
+     */
+    private static class CountingConsumerListener implements D8MQConsumerListener {
+        private volatile CountDownLatch latch;
+
+        @Override
+        public void consumeMessage(MessageExt messageExt) {
+            JSONUtil.deserializeJSON(new String(messageExt.getBody(), StandardCharsets.UTF_8), Payload.class);
+            latch.countDown();
+        }
+
+        @Override
+        public void consumeFailed(MessageExt messageExt) {
+        }
+    }
+}
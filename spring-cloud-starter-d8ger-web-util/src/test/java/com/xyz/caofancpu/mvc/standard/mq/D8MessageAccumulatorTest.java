@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 生产者消息累积器
+ *
+ * @author D8GER
+ */
+public class D8MessageAccumulatorTest {
+
+    private final List<List<Message>> sentBatches = new CopyOnWriteArrayList<>();
+    private final List<String> succeeded = new CopyOnWriteArrayList<>();
+    private final List<String> failed = new CopyOnWriteArrayList<>();
+    private volatile boolean brokerDown;
+
+    @Test
+    public void flushOnMaxMessages() {
+        try (D8MessageAccumulator<String> accumulator = newAccumulator(60_000L, 3, 1024 * 1024)) {
+            for (int i = 0; i < 7; i++) {
+                accumulator.append(message("T_A", i), "A" + i);
+            }
+            accumulator.append(message("T_B", 0), "B0");
+            accumulator.flush();
+        }
+        List<Integer> sizes = new ArrayList<>();
+        sentBatches.forEach(batch -> sizes.add(batch.size()));
+        Collections.sort(sizes);
+        Assert.assertEquals("[1, 1, 3, 3]", sizes.toString());
+        sentBatches.forEach(batch -> Assert.assertEquals(1, batch.stream().map(Message::getTopic).distinct().count()));
+        Assert.assertEquals(8, succeeded.size());
+    }
+
+    @Test
+    public void flushOnMaxBytes() {
+        int size = D8MessageAccumulator.estimateSize(message("T_A", 0));
+        try (D8MessageAccumulator<String> accumulator = newAccumulator(60_000L, 100, size * 2 + 1)) {
+            for (int i = 0; i < 5; i++) {
+                accumulator.append(message("T_A", i), "A" + i);
+            }
+        }
+        Assert.assertEquals(3, sentBatches.size());
+        sentBatches.forEach(batch -> Assert.assertTrue(batch.size() <= 2));
+        Assert.assertEquals(5, succeeded.size());
+    }
+
+    @Test
+    public void lingerAndFailure()
+            throws InterruptedException {
+        brokerDown = true;
+        CountDownLatch latch = new CountDownLatch(2);
+        try (D8MessageAccumulator<String> accumulator = new D8MessageAccumulator<>(sender(), (attachments, sendResult, error) -> {
+            Assert.assertNotNull(error);
+            failed.addAll(attachments);
+            attachments.forEach(attachment -> latch.countDown());
+        }, 20L, 100, 1024 * 1024, 1, 4)) {
+            accumulator.append(message("T_A", 0), "A0");
+            accumulator.append(message("T_A", 1), "A1");
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, sentBatches.size());
+        Assert.assertEquals("[A0, A1]", failed.toString());
+    }
+
+    @Test
+    public void lingerFlushNotSentOnLingerThread()
+            throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> sendThreads = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        D8MessageAccumulator.BatchSender blockingSender = new D8MessageAccumulator.BatchSender() {
+            @Override
+            public SendResult send(Message message)
+                    throws Exception {
+                return send(Collections.singletonList(message));
+            }
+
+            @Override
+            public SendResult send(List<Message> messages)
+                    throws Exception {
+                sendThreads.add(Thread.currentThread().getName());
+                release.await();
+                return sender().send(messages);
+            }
+        };
+        D8MessageAccumulator<String> accumulator = new D8MessageAccumulator<>(blockingSender, (attachments, sendResult, error) -> {
+            if (error == null) {
+                succeeded.addAll(attachments);
+            } else {
+                failed.addAll(attachments);
+                errors.add(error);
+            }
+        }, 10L, 100, 1024 * 1024, 1, 1);
+        try {
+            // 第1批占用发送线程, 第2批占满队列, 第3批由linger线程提交时被拒绝
+            accumulator.append(message("T_A", 0), "A0");
+            waitUntil(() -> sendThreads.size() == 1);
+            accumulator.append(message("T_B", 0), "B0");
+            TimeUnit.MILLISECONDS.sleep(100);
+            accumulator.append(message("T_C", 0), "C0");
+            waitUntil(() -> failed.size() == 1);
+            Assert.assertEquals("[C0]", failed.toString());
+            Assert.assertTrue(errors.get(0) instanceof RejectedExecutionException);
+        } finally {
+            release.countDown();
+            accumulator.close();
+        }
+        Assert.assertEquals("[A0, B0]", succeeded.toString());
+        sendThreads.forEach(name -> Assert.assertTrue(name.startsWith("d8-mq-batch-sender-")));
+
+        // 关闭后追加的消息直接按失败回调
+        accumulator.append(message("T_A", 1), "A1");
+        Assert.assertEquals("[C0, A1]", failed.toString());
+    }
+
+    private static void waitUntil(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private D8MessageAccumulator<String> newAccumulator(long lingerMillis, int maxMessages, int maxBytes) {
+        return new D8MessageAccumulator<>(sender(), (attachments, sendResult, error) -> {
+            Assert.assertNull(error);
+            succeeded.addAll(attachments);
+        }, lingerMillis, maxMessages, maxBytes, 2, 4);
+    }
+
+    private D8MessageAccumulator.BatchSender sender() {
+        return new D8MessageAccumulator.BatchSender() {
+            @Override
+            public SendResult send(Message message) {
+                return send(Collections.singletonList(message));
+            }
+
+            @Override
+            public SendResult send(List<Message> messages) {
+                sentBatches.add(new ArrayList<>(messages));
+                if (brokerDown) {
+                    throw new IllegalStateException("broker down");
+                }
+                SendResult sendResult = new SendResult();
+                sendResult.setSendStatus(SendStatus.SEND_OK);
+                return sendResult;
+            }
+        };
+    }
+
+    private static Message message(String topic, int index) {
+        return new Message(topic, "TAG", "KEY" + index, ("{\"index\":" + index + "}").getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.xyz.caofancpu.mvc.standard.FakeRedisServer;
+import com.xyz.caofancpu.mvc.standard.JedisService;
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 消费端消息去重
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class D8MessageDeduplicatorTest {
+
+    private static FakeRedisServer server;
+    private static JedisPool jedisPool;
+    private static JedisService jedisService;
+
+    private final MQProperties mqProperties = new MQProperties().setConsumerRetryTimesWhenHandleFailed(2);
+
+    @BeforeClass
+    public static void beforeClass()
+            throws Exception {
+        server = new FakeRedisServer();
+        jedisPool = new JedisPool(new JedisPoolConfig(), server.getHost(), server.getPort(), 2000, null);
+        jedisService = new JedisService(jedisPool, 0);
+    }
+
+    @AfterClass
+    public static void afterClass()
+            throws Exception {
+        jedisPool.close();
+        server.close();
+    }
+
+    @Before
+    public void setUp() {
+        server.execute("FLUSHDB");
+        mqProperties.getConsumerDedupTopicMap().put("ORDER", new MQProperties.ConsumerDedup().setLocalMaxSize(100));
+    }
+
+    @Test
+    public void localDedup() {
+        RecordingConsumerListener orderListener = new RecordingConsumerListener();
+        RecordingConsumerListener userListener = new RecordingConsumerListener();
+        TestListener listener = new TestListener(mqProperties, new D8MessageDeduplicator(mqProperties, null));
+        listener.mqConsumerListenerMap.put("ORDER", orderListener);
+        listener.mqConsumerListenerMap.put("USER", userListener);
+
+        List<MessageExt> batch = Arrays.asList(message("ORDER", "o1"), message("ORDER", "o1"), message("ORDER", "o2"), message("USER", "u1"), message("USER", "u1"));
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(batch, context()));
+        Assert.assertEquals(Arrays.asList("o1", "o2"), orderListener.consumedKeys);
+        // 未配置去重的主题不受影响
+        Assert.assertEquals(Arrays.asList("u1", "u1"), userListener.consumedKeys);
+
+        // 失败后释放占位, 重新投递可再次消费
+        orderListener.failingKey = "o3";
+        Assert.assertEquals(ConsumeConcurrentlyStatus.RECONSUME_LATER, listener.consumeMessage(Arrays.asList(message("ORDER", "o3")), context()));
+        orderListener.failingKey = null;
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(Arrays.asList(message("ORDER", "o2"), message("ORDER", "o3")), context()));
+        Assert.assertEquals(Arrays.asList("o1", "o2", "o3"), orderListener.consumedKeys);
+
+        // 有序业务键相同的不同消息不视为重复
+        MessageExt first = message("ORDER", "o4");
+        MessageExt second = message("ORDER", "o4");
+        second.setMsgId("ID-o4-2");
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(Arrays.asList(first, second), context()));
+        Assert.assertEquals(Arrays.asList("o1", "o2", "o3", "o4", "o4"), orderListener.consumedKeys);
+
+        D8MessageDeduplicator.DedupStats stats = listener.messageDeduplicator.stats().get(0);
+        Assert.assertEquals("ORDER", stats.getLogicTopic());
+        Assert.assertEquals(2, stats.getLocalHits());
+        Assert.assertEquals(1, stats.getReleased());
+    }
+
+    @Test
+    public void redisDedupAcrossInstances() {
+        mqProperties.getConsumerDedupTopicMap().put("PAY", new MQProperties.ConsumerDedup().setRedisEnable(true));
+        RecordingConsumerListener first = new RecordingConsumerListener();
+        RecordingConsumerListener second = new RecordingConsumerListener();
+        TestListener instanceA = new TestListener(mqProperties, new D8MessageDeduplicator(mqProperties, jedisService));
+        TestListener instanceB = new TestListener(mqProperties, new D8MessageDeduplicator(mqProperties, jedisService));
+        instanceA.mqConsumerListenerMap.put("PAY", first);
+        instanceB.mqConsumerListenerMap.put("PAY", second);
+
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, instanceA.consumeMessage(Arrays.asList(message("PAY", "p1")), context()));
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, instanceB.consumeMessage(Arrays.asList(message("PAY", "p1"), message("PAY", "p2")), context()));
+        Assert.assertEquals(Arrays.asList("p1"), first.consumedKeys);
+        Assert.assertEquals(Arrays.asList("p2"), second.consumedKeys);
+        Assert.assertEquals("1", jedisService.getValue("d8:mq:dedup:D8MqEnv_PAY:ID-p1"));
+        Assert.assertEquals(1, instanceB.messageDeduplicator.stats().get(0).getRedisHits());
+
+        // 优先按生产端唯一ID去重
+        MessageExt uniq = message("PAY", "p3");
+        MessageAccessor.putProperty(uniq, MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX, "UNIQ-p3");
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, instanceA.consumeMessage(Arrays.asList(uniq), context()));
+        Assert.assertEquals("1", jedisService.getValue("d8:mq:dedup:D8MqEnv_PAY:UNIQ-p3"));
+
+        try {
+            new D8MessageDeduplicator(mqProperties, null);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 开启Redis去重必须提供JedisService
+        }
+    }
+
+    @Test
+    public void inProgressReconsumedLater() {
+        mqProperties.getConsumerDedupTopicMap().put("PAY", new MQProperties.ConsumerDedup().setRedisEnable(true));
+        RecordingConsumerListener consumerListener = new RecordingConsumerListener();
+        TestListener listener = new TestListener(mqProperties, new D8MessageDeduplicator(mqProperties, jedisService));
+        listener.mqConsumerListenerMap.put("PAY", consumerListener);
+
+        // 其他实例占位后宕机, 占位未过期前重新投递的消息不能被当作重复消息确认
+        jedisService.setNx("d8:mq:dedup:D8MqEnv_PAY:ID-p2", "0", 60);
+        ConsumeConcurrentlyContext context = context();
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(Arrays.asList(message("PAY", "p1"), message("PAY", "p2")), context));
+        Assert.assertEquals(0, context.getAckIndex());
+        Assert.assertEquals(ConsumeConcurrentlyStatus.RECONSUME_LATER, listener.consumeMessage(Arrays.asList(message("PAY", "p2")), context()));
+        Assert.assertEquals(Arrays.asList("p1"), consumerListener.consumedKeys);
+        Assert.assertEquals(2, listener.messageDeduplicator.stats().get(0).getInProgress());
+
+        // 占位过期后重新投递的消息正常消费
+        jedisService.deleteKey("d8:mq:dedup:D8MqEnv_PAY:ID-p2");
+        Assert.assertEquals(ConsumeConcurrentlyStatus.CONSUME_SUCCESS, listener.consumeMessage(Arrays.asList(message("PAY", "p2")), context()));
+        Assert.assertEquals(Arrays.asList("p1", "p2"), consumerListener.consumedKeys);
+    }
+
+    private MessageExt message(String logicTopic, String key) {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(mqProperties.wrapperTopic(logicTopic));
+        messageExt.setKeys(key);
+        messageExt.setMsgId("ID-" + key);
+        messageExt.setBody(key.getBytes());
+        return messageExt;
+    }
+
+    private static ConsumeConcurrentlyContext context() {
+        return new ConsumeConcurrentlyContext(new MessageQueue("D8MqEnv_ORDER", "broker-a", 0));
+    }
+
+    private static class TestListener extends AbstractD8MQConcurrentlyListener {
+        private TestListener(MQProperties mqProperties, D8MessageDeduplicator messageDeduplicator) {
+            this.mqProperties = mqProperties;
+            this.messageDeduplicator = messageDeduplicator;
+            init();
+        }
+
+        @Override
+        public void init() {
+            this.MQ_LOG = log;
+        }
+    }
+
+    private static class RecordingConsumerListener implements D8MQConsumerListener {
+        private final List<String> consumedKeys = new ArrayList<>();
+        private String failingKey;
+
+        @Override
+        public void consumeMessage(MessageExt messageExt) {
+            if (messageExt.getKeys().equals(failingKey)) {
+                throw new IllegalStateException("failed: " + failingKey);
+            }
+            consumedKeys.add(messageExt.getKeys());
+        }
+
+        @Override
+        public void consumeFailed(MessageExt messageExt) {
+        }
+    }
+}
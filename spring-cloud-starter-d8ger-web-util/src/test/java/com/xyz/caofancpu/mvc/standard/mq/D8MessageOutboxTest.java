@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import org.apache.rocketmq.common.message.Message;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * MQ本地重投队列
+ *
+ * @author D8GER
+ */
+public class D8MessageOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Message> delivered = new CopyOnWriteArrayList<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger remainingFailures = new AtomicInteger();
+
+    @Test
+    public void redeliverWithBackoffAndBatching()
+            throws Exception {
+        remainingFailures.set(2);
+        D8MessageOutbox.Options options = new D8MessageOutbox.Options().setInitialBackoffMillis(10).setForceIntervalMillis(20);
+        try (D8MessageOutbox outbox = new D8MessageOutbox(folder.getRoot(), options, sender())) {
+            for (int i = 0; i < 5; i++) {
+                Assert.assertTrue(outbox.append(message("T_A", i), false));
+            }
+            Message delayed = message("T_B", 5);
+            delayed.setDelayTimeLevel(3);
+            Assert.assertTrue(outbox.append(delayed, false));
+            Assert.assertTrue(outbox.append(message("T_B", 6), true));
+            outbox.start();
+            await(() -> delivered.size() == 7);
+            await(() -> outbox.getPendingBytes() == 0);
+            Assert.assertEquals(7, outbox.getRedeliveredCount());
+        }
+        // 连续同主题无序消息合并为一批, 有序消息单独发送
+        Assert.assertEquals("[5, 1, 1]", batchSizes.subList(batchSizes.size() - 3, batchSizes.size()).toString());
+        Assert.assertEquals("KEY0", delivered.get(0).getKeys());
+        Assert.assertEquals("TAG", delivered.get(0).getTags());
+        Assert.assertEquals("{\"index\":4}", new String(delivered.get(4).getBody(), StandardCharsets.UTF_8));
+        Assert.assertEquals(3, delivered.get(5).getDelayTimeLevel());
+    }
+
+    @Test
+    public void delayedMessageSentAlone()
+            throws Exception {
+        D8MessageOutbox.Options options = new D8MessageOutbox.Options().setInitialBackoffMillis(10).setForceIntervalMillis(20).setMaxAttempts(1);
+        try (D8MessageOutbox outbox = new D8MessageOutbox(folder.getRoot(), options, sender())) {
+            Assert.assertTrue(outbox.append(message("T_A", 0), false));
+            Message delayed = message("T_A", 1);
+            delayed.setDelayTimeLevel(3);
+            Assert.assertTrue(outbox.append(delayed, false));
+            Assert.assertTrue(outbox.append(message("T_A", 2), false));
+            Assert.assertTrue(outbox.append(message("T_A", 3), false));
+            outbox.start();
+            await(() -> outbox.getPendingBytes() == 0);
+            Assert.assertEquals(0, outbox.getDroppedCount());
+            Assert.assertEquals(4, outbox.getRedeliveredCount());
+        }
+        // 延时消息截断批次并单独发送, 不进入批量
+        Assert.assertEquals("[1, 1, 2]", batchSizes.toString());
+        Assert.assertEquals(3, delivered.get(1).getDelayTimeLevel());
+    }
+
+    @Test
+    public void resumeFromCheckpointAfterRestart()
+            throws Exception {
+        D8MessageOutbox.Options options = new D8MessageOutbox.Options().setSegmentBytes(256).setBatchSize(2).setInitialBackoffMillis(10).setForceIntervalMillis(20);
+        try (D8MessageOutbox outbox = new D8MessageOutbox(folder.getRoot(), options, sender())) {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(outbox.append(message("T_A", i), false));
+            }
+            outbox.start();
+            await(() -> delivered.size() == 4);
+            await(() -> outbox.getPendingBytes() == 0);
+            // Broker不可用时继续写入, 跨越多个分段
+            remainingFailures.set(Integer.MAX_VALUE);
+            for (int i = 4; i < 10; i++) {
+                Assert.assertTrue(outbox.append(message("T_A", i), false));
+            }
+        }
+        Assert.assertTrue(Objects.requireNonNull(folder.getRoot().list((dir, name) -> name.endsWith(".log"))).length > 1);
+
+        remainingFailures.set(0);
+        delivered.clear();
+        try (D8MessageOutbox outbox = new D8MessageOutbox(folder.getRoot(), options, sender())) {
+            outbox.start();
+            await(() -> delivered.size() == 6);
+            await(() -> outbox.getPendingBytes() == 0);
+        }
+        List<String> keys = new ArrayList<>();
+        delivered.forEach(message -> keys.add(message.getKeys()));
+        Assert.assertEquals("[KEY4, KEY5, KEY6, KEY7, KEY8, KEY9]", keys.toString());
+        // 已重投完毕的分段被删除
+        Assert.assertEquals(1, Objects.requireNonNull(folder.getRoot().list((dir, name) -> name.endsWith(".log"))).length);
+    }
+
+    @Test
+    public void truncateTornTail()
+            throws Exception {
+        D8MessageOutbox.Options options = new D8MessageOutbox.Options().setSegmentBytes(4096).setInitialBackoffMillis(10).setForceIntervalMillis(20);
+        try (D8MessageOutbox outbox = new D8MessageOutbox(folder.getRoot(), options, sender())) {
+            Assert.assertTrue(outbox.append(message("T_A", 0), false));
+            Assert.assertTrue(outbox.append(message("T_A", 1), false));
+        }
+        // 模拟第二条记录写入一半时崩溃
+        corruptLastRecordBody(new File(folder.getRoot(), String.format("%020d", 0) + ".log"));
+        try (D8MessageOutbox outbox = new D8MessageOutbox(folder.getRoot(), options, sender())) {
+            outbox.start();
+            await(() -> delivered.size() == 1);
+            Assert.assertTrue(outbox.append(message("T_A", 2), false));
+            await(() -> delivered.size() == 2);
+        }
+        Assert.assertEquals("KEY0", delivered.get(0).getKeys());
+        Assert.assertEquals("KEY2", delivered.get(1).getKeys());
+        // 超过分段大小的消息拒绝写入
+        try (D8MessageOutbox outbox = new D8MessageOutbox(folder.newFolder(), new D8MessageOutbox.Options().setSegmentBytes(32), sender())) {
+            Assert.assertFalse(outbox.append(message("T_A", 3), false));
+        }
+    }
+
+    private void corruptLastRecordBody(File segment)
+            throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            int position = 0;
+            int last = 0;
+            while (true) {
+                file.seek(position);
+                int length = file.readInt();
+                if (length == 0) {
+                    break;
+                }
+                last = position;
+                position += 8 + length;
+            }
+            file.seek(position - 1);
+            int lastByte = file.read();
+            file.seek(position - 1);
+            file.write(~lastByte);
+            Assert.assertTrue(last > 0);
+        }
+    }
+
+    private D8MessageOutbox.Sender sender() {
+        return new D8MessageOutbox.Sender() {
+            @Override
+            public void send(List<Message> messages) {
+                // 与RocketMQ一致, 批量发送不支持延时
+                if (messages.stream().anyMatch(message -> message.getDelayTimeLevel() > 0)) {
+                    throw new UnsupportedOperationException("TimeDelayLevel is not supported for batching");
+                }
+                deliver(messages);
+            }
+
+            @Override
+            public void send(Message message) {
+                deliver(Collections.singletonList(message));
+            }
+
+            @Override
+            public void sendOrdered(Message message) {
+                deliver(Collections.singletonList(message));
+            }
+
+            private void deliver(List<Message> messages) {
+                if (remainingFailures.getAndDecrement() > 0) {
+                    throw new IllegalStateException("broker down");
+                }
+                batchSizes.add(messages.size());
+                delivered.addAll(messages);
+            }
+        };
+    }
+
+    private static Message message(String topic, int index) {
+        return new Message(topic, "TAG", "KEY" + index, ("{\"index\":" + index + "}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("等待超时", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
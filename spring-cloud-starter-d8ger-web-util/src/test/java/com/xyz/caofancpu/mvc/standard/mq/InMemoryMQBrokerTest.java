@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016-2020 the original author
+ *
+ * @D8GER(https://github.com/caofanCPU).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xyz.caofancpu.mvc.standard.mq;
+
+import com.google.common.collect.ImmutableMap;
+import com.xyz.caofancpu.core.JSONUtil;
+import com.xyz.caofancpu.property.MQProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 进程内Broker: 经由D8BaseProducer/D8BaseConsumer的发送、过滤、延时、重新消费、死信及有序消费
+ *
+ * @author D8GER
+ */
+@Slf4j
+public class InMemoryMQBrokerTest {
+
+    private final InMemoryMQBroker broker = new InMemoryMQBroker(new InMemoryMQBroker.Options().setDelayTimeScale(0.001).setMaxReconsumeTimes(2));
+
+    @After
+    public void tearDown() {
+        broker.close();
+    }
+
+    @Test
+    public void sendFilterAndReconsume()
+            throws Exception {
+        MQProperties mqProperties = new MQProperties().setConsumerTopicTagMap(ImmutableMap.of("PAY", "A || C"));
+        RecordingConsumerListener payListener = new RecordingConsumerListener();
+        payListener.failingOrders.add("p2");
+        TestConcurrentlyListener listener = new TestConcurrentlyListener(mqProperties);
+        listener.mqConsumerListenerMap.put("PAY", payListener);
+        D8BaseConsumer consumer = new D8BaseConsumer(mqProperties, listener, broker.consumerTransport(mqProperties));
+        consumer.init();
+        D8BaseProducer producer = new D8BaseProducer(mqProperties, null, broker.producerTransport());
+        producer.init();
+        try {
+            producer.sendMsgSyn(message("PAY", "A", "p1"));
+            producer.sendMsgAsyn(message("PAY", "A", "p2"));
+            producer.sendMsgSyn(message("PAY", "B", "p3"));
+            producer.sendMsgSyn(message("PAY", "C", "p4"));
+            // p2首次失败, 以延时级别3(缩放后10毫秒)重新投递
+            awaitUntil(() -> payListener.reconsumeTimesMap.size() == 3);
+            Assert.assertEquals(ImmutableMap.of("p1", 0, "p2", 1, "p4", 0), payListener.reconsumeTimesMap);
+            Assert.assertEquals("p1", payListener.keyMap.get("p1"));
+            Assert.assertEquals(4, broker.getStoredCount());
+        } finally {
+            producer.destroy();
+            consumer.destroy();
+        }
+    }
+
+    @Test
+    public void delayAndDeadLetter()
+            throws Exception {
+        MQProperties mqProperties = new MQProperties().setConsumerTopicTagMap(ImmutableMap.of("DELAY", "*"));
+        RecordingConsumerListener delayListener = new RecordingConsumerListener();
+        TestConcurrentlyListener listener = new TestConcurrentlyListener(mqProperties);
+        listener.mqConsumerListenerMap.put("DELAY", delayListener);
+        D8BaseProducer producer = new D8BaseProducer(mqProperties, null, broker.producerTransport());
+        producer.init();
+        // 订阅前发送的消息暂存于主题
+        long sendMillis = System.currentTimeMillis();
+        producer.sendMsgDelayAsyn(message("DELAY", "A", "d1"));
+        D8BaseConsumer consumer = new D8BaseConsumer(mqProperties, listener, broker.consumerTransport(mqProperties));
+        consumer.init();
+
+        D8MQConsumerTransport rawTransport = broker.consumerTransport("RAW_GROUP", 1, 1);
+        List<Integer> rawReconsumeTimes = Collections.synchronizedList(new ArrayList<>());
+        rawTransport.subscribe(mqProperties.wrapperTopic("DEAD"), "*");
+        rawTransport.registerMessageListener((MessageListenerConcurrently) (msgs, context) -> {
+            rawReconsumeTimes.add(msgs.get(0).getReconsumeTimes());
+            return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+        });
+        rawTransport.start();
+        try {
+            producer.sendMsgSyn(message("DEAD", "A", "x1"));
+            awaitUntil(() -> delayListener.consumedMillisMap.containsKey("d1") && !broker.getDeadLetters("RAW_GROUP").isEmpty());
+            // 30秒级别缩放后为30毫秒
+            Assert.assertTrue(delayListener.consumedMillisMap.get("d1") - sendMillis >= 30);
+            Assert.assertEquals(Arrays.asList(0, 1, 2), rawReconsumeTimes);
+            Assert.assertEquals("x1", broker.getDeadLetters("RAW_GROUP").get(0).getKeys());
+        } finally {
+            rawTransport.shutdown();
+            producer.destroy();
+            consumer.destroy();
+        }
+    }
+
+    @Test
+    public void orderlyPerKey()
+            throws Exception {
+        MQProperties mqProperties = new MQProperties().setConsumerTopicTagMap(ImmutableMap.of("ORDER", "*")).setConsumerOrderlySuspendMillis(10);
+        RecordingConsumerListener orderListener = new RecordingConsumerListener();
+        orderListener.failingOrders.add("k1-1");
+        TestOrderlyListener listener = new TestOrderlyListener(mqProperties);
+        listener.mqConsumerListenerMap.put("ORDER", orderListener);
+        D8BaseConsumer consumer = new D8BaseConsumer(mqProperties, listener, broker.consumerTransport(mqProperties));
+        consumer.init();
+        D8BaseProducer producer = new D8BaseProducer(mqProperties, null, broker.producerTransport());
+        producer.init();
+        try {
+            for (int seq = 0; seq < 5; seq++) {
+                for (int key = 0; key < 4; key++) {
+                    // 同一key内有序, 序号放在消息体
+                    producer.sendMsgSyn(new D8BaseMessage<Order>().setTopic("ORDER").setTag("A").setKey("k" + key)
+                            .setData(new Order("k" + key + "-" + seq)).setConsumeOrdered(true));
+                }
+            }
+            awaitUntil(() -> orderListener.reconsumeTimesMap.size() == 20);
+            for (int key = 0; key < 4; key++) {
+                String prefix = "k" + key + "-";
+                Assert.assertEquals("k" + key, orderListener.keyMap.get(prefix + 0));
+                List<String> keyOrder = new ArrayList<>();
+                for (String consumed : orderListener.consumedOrders) {
+                    if (consumed.startsWith(prefix)) {
+                        keyOrder.add(consumed);
+                    }
+                }
+                Assert.assertEquals(Arrays.asList(prefix + 0, prefix + 1, prefix + 2, prefix + 3, prefix + 4), keyOrder);
+            }
+            Assert.assertEquals(Integer.valueOf(1), orderListener.reconsumeTimesMap.get("k1-1"));
+        } finally {
+            producer.destroy();
+            consumer.destroy();
+        }
+    }
+
+    /**
+     * 以消息体中的order标识消息
+     */
+    private static String orderOf(MessageExt messageExt) {
+        return JSONUtil.deserializeJSON(new String(messageExt.getBody(), StandardCharsets.UTF_8), Order.class).getOrder();
+    }
+
+    private static D8BaseMessage<Order> message(String topic, String tag, String key) {
+        return new D8BaseMessage<Order>().setTopic(topic).setTag(tag).setKey(key).setData(new Order(key));
+    }
+
+    private static void awaitUntil(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    public static class Order implements Serializable {
+        private String order;
+
+        public Order() {
+        }
+
+        Order(String order) {
+            this.order = order;
+        }
+
+        public String getOrder() {
+            return order;
+        }
+
+        public void setOrder(String order) {
+            this.order = order;
+        }
+    }
+
+    private static class TestConcurrentlyListener extends AbstractD8MQConcurrentlyListener {
+        private TestConcurrentlyListener(MQProperties mqProperties) {
+            this.mqProperties = mqProperties;
+            init();
+        }
+
+        @Override
+        public void init() {
+            this.MQ_LOG = log;
+        }
+    }
+
+    private static class TestOrderlyListener extends AbstractD8MQOrderlyListener {
+        private TestOrderlyListener(MQProperties mqProperties) {
+            this.mqProperties = mqProperties;
+            init();
+        }
+
+        @Override
+        public void init() {
+            this.MQ_LOG = log;
+        }
+    }
+
+    /**
+     * 按消息体order记录消费结果, 指定order首次消费失败
+     */
+    private static class RecordingConsumerListener implements D8MQConsumerListener {
+        private final List<String> consumedOrders = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, Integer> reconsumeTimesMap = new ConcurrentHashMap<>();
+        private final Map<String, Long> consumedMillisMap = new ConcurrentHashMap<>();
+        private final Map<String, String> keyMap = new ConcurrentHashMap<>();
+        private final List<String> failingOrders = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void consumeMessage(MessageExt messageExt) {
+            String order = orderOf(messageExt);
+            if (failingOrders.remove(order)) {
+                throw new IllegalStateException("failed: " + order);
+            }
+            consumedOrders.add(order);
+            reconsumeTimesMap.put(order, messageExt.getReconsumeTimes());
+            consumedMillisMap.put(order, System.currentTimeMillis());
+            keyMap.put(order, messageExt.getKeys());
+        }
+
+        @Override
+        public void consumeFailed(MessageExt messageExt) {
+        }
+    }
+}